@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.benchmark;
+
+import com.joyent.manta.client.MantaDirectoryListingIterator;
+import com.joyent.test.server.RequestStats;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sweeps the page size of {@link MantaDirectoryListingIterator} over large
+ * directories, to choose paging settings from data rather than guesswork.
+ *
+ * <p>{@link #listAll} pages through the whole directory. Next to the
+ * listings per millisecond, it reports the {@code entries} and
+ * {@code bytes} secondary scores: entries listed and response bytes sent
+ * by the local server per millisecond, so {@code bytes / entries} is the
+ * wire cost of an entry at that page size. Bytes are only counted against
+ * the local endpoint. Run with {@code -prof gc}; {@code gc.alloc.rate.norm}
+ * is then the heap churn of one full listing.</p>
+ *
+ * <p>{@link #firstEntry} opens an iterator and takes one entry, which is
+ * the time a caller waits before it can start working on a listing.</p>
+ *
+ * <p>A full sweep seeds a million entries for every page size and takes a
+ * while; narrow it with e.g. {@code -p directorySize=100000 -p pageSize=256,1024}.</p>
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class DirectoryPagingBenchmark extends LocalEndpointState {
+    private static final byte[] ENTRY_CONTENT = "paged".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"10", "32", "128", "256", "512", "1024"})
+    public int pageSize;
+
+    @Param({"10000", "100000", "1000000"})
+    public int directorySize;
+
+    private String directory;
+
+    /**
+     * Entries and response bytes of the listings of a measurement iteration,
+     * reported by JMH as rates.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class PagingCounters {
+        public long entries;
+        public long bytes;
+
+        /**
+         * Clears the counts before each iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            entries = 0;
+            bytes = 0;
+        }
+    }
+
+    /**
+     * Connects the client and seeds the paged directory.
+     *
+     * @throws IOException thrown when the directory can't be seeded
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        setUpClient();
+        directory = basePath + "paging";
+        seedDirectory(directory, directorySize, ENTRY_CONTENT);
+    }
+
+    /**
+     * Removes the benchmark directory and closes the client. A seeded
+     * directory is dropped from the local store in one step rather than
+     * deleted entry by entry.
+     *
+     * @throws IOException thrown when the directory can't be removed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.getStore().deleteTree(directory);
+        }
+
+        tearDownClient();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, time = 10)
+    @Measurement(iterations = 5, time = 10)
+    public long listAll(final PagingCounters counters, final Blackhole blackhole) throws IOException {
+        final long bytesBefore = bytesSent();
+        long count = 0;
+
+        try (MantaDirectoryListingIterator iterator = client.streamingIterator(directory, pageSize)) {
+            while (iterator.hasNext()) {
+                final Map<String, Object> entry = iterator.next();
+                blackhole.consume(entry);
+                count++;
+            }
+        }
+
+        counters.entries += count;
+        counters.bytes += bytesSent() - bytesBefore;
+        return count;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 5)
+    @Measurement(iterations = 5, time = 5)
+    public Map<String, Object> firstEntry() throws IOException {
+        try (MantaDirectoryListingIterator iterator = client.streamingIterator(directory, pageSize)) {
+            return iterator.next();
+        }
+    }
+
+    /**
+     * @return response bytes the local server sent for the directory so
+     *         far, or zero against a remote endpoint
+     */
+    private long bytesSent() {
+        if (server == null) {
+            return 0L;
+        }
+
+        final RequestStats stats = server.getRequestStats();
+        return stats.getBytesSent("GET", directory);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.benchmark;
+
+import com.joyent.manta.client.MantaObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Throughput and latency of listing a whole directory with
+ * {@link com.joyent.manta.client.MantaClient#listObjects(String)}, which
+ * pages through the listing and parses every entry into a
+ * {@link MantaObject}.
+ *
+ * <p>Run with {@code -prof gc} to add the allocation rate per listing.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ListObjectsBenchmark extends LocalEndpointState {
+    private static final byte[] ENTRY_CONTENT = "listed".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"10", "1000", "10000"})
+    public int directorySize;
+
+    private String directory;
+
+    /**
+     * Connects the client and seeds the listed directory.
+     *
+     * @throws IOException thrown when the directory can't be seeded
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        setUpClient();
+        directory = basePath + "listing";
+        seedDirectory(directory, directorySize, ENTRY_CONTENT);
+    }
+
+    /**
+     * Removes the benchmark directory and closes the client.
+     *
+     * @throws IOException thrown when the directory can't be removed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        tearDownClient();
+    }
+
+    @Benchmark
+    public long listObjects(final Blackhole blackhole) throws IOException {
+        long count = 0;
+
+        try (Stream<MantaObject> objects = client.listObjects(directory)) {
+            for (MantaObject object : (Iterable<MantaObject>) objects::iterator) {
+                blackhole.consume(object);
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.benchmark;
+
+import com.joyent.manta.client.MantaClient;
+import com.joyent.manta.config.IntegrationTestConfigContext;
+import com.joyent.test.server.LocalMantaServer;
+import com.joyent.test.server.MantaStore;
+import com.joyent.test.server.ObjectBody;
+import com.joyent.test.util.RandomInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.UUID;
+
+/**
+ * Base of benchmark states holding a {@link MantaClient} and a directory for
+ * the benchmark's objects. Subclasses call {@link #setUpClient()} and
+ * {@link #tearDownClient()} from their own trial level setup and tear down,
+ * so the order of the steps doesn't depend on how JMH orders inherited
+ * helper methods.
+ *
+ * <p>The client is configured by {@link IntegrationTestConfigContext} with
+ * the in-process {@link LocalMantaServer} enabled unless manta.it.local is
+ * set explicitly, so benchmarks measure the client and the loopback stack
+ * rather than a remote endpoint. Setting manta.it.local to false benchmarks
+ * the configured endpoint instead.</p>
+ */
+public abstract class LocalEndpointState {
+    /**
+     * Client shared by the benchmark threads.
+     */
+    protected MantaClient client;
+
+    /**
+     * Directory holding the benchmark's objects, with a trailing separator.
+     */
+    protected String basePath;
+
+    /**
+     * Local server the client talks to, or null when benchmarking a remote
+     * endpoint.
+     */
+    protected LocalMantaServer server;
+
+    /**
+     * Connects the client and creates the benchmark directory.
+     *
+     * @throws IOException thrown when the directory can't be created
+     */
+    protected void setUpClient() throws IOException {
+        if (System.getenv("MANTA_IT_LOCAL") == null && System.getProperty("manta.it.local") == null) {
+            System.setProperty("manta.it.local", "true");
+        }
+
+        final IntegrationTestConfigContext config = new IntegrationTestConfigContext(false);
+        configure(config);
+        client = new MantaClient(config);
+        server = IntegrationTestConfigContext.localEndpointEnabled()
+                ? LocalMantaServer.sharedInstanceIfStarted() : null;
+        basePath = IntegrationTestConfigContext.generateBasePath(config, "benchmark-" + UUID.randomUUID());
+        client.putDirectory(basePath, true);
+    }
+
+    /**
+     * Adjusts the client configuration before the client is created. Does
+     * nothing by default.
+     *
+     * @param config configuration the client will be created with
+     */
+    protected void configure(final IntegrationTestConfigContext config) {
+    }
+
+    /**
+     * Removes the benchmark directory and closes the client.
+     *
+     * @throws IOException thrown when the directory can't be removed
+     */
+    protected void tearDownClient() throws IOException {
+        try {
+            client.deleteRecursive(basePath);
+        } finally {
+            client.closeWithWarning();
+        }
+    }
+
+    /**
+     * Creates a directory of identical small objects named by their
+     * zero-padded index. Objects go straight into the local server's store,
+     * so large directories cost no requests; against a remote endpoint they
+     * are uploaded one by one.
+     *
+     * @param directory path of the directory to create
+     * @param entries number of objects to create
+     * @param content content of every object
+     * @throws IOException thrown when an object can't be stored
+     */
+    protected void seedDirectory(final String directory, final int entries, final byte[] content)
+            throws IOException {
+        client.putDirectory(directory, true);
+
+        if (server == null) {
+            for (int i = 0; i < entries; i++) {
+                client.put(entryPath(directory, i), content);
+            }
+
+            return;
+        }
+
+        final MantaStore store = server.getStore();
+        final MessageDigest md5 = MantaStore.newMd5();
+        final ObjectBody body = store.storeBody(new ByteArrayInputStream(content), md5);
+        final byte[] digest = md5.digest();
+
+        try {
+            for (int i = 0; i < entries; i++) {
+                store.putObject(entryPath(directory, i), body, "application/octet-stream", digest,
+                        Collections.emptyMap(), 2);
+            }
+        } finally {
+            body.release();
+        }
+    }
+
+    /**
+     * Uploads an object of generated content.
+     *
+     * @param path path of the object
+     * @param size object size in bytes
+     * @param seed seed of the content
+     * @throws IOException thrown when the upload fails
+     */
+    protected void putGenerated(final String path, final long size, final long seed) throws IOException {
+        client.put(path, new RandomInputStream(size, seed), size, null, null);
+    }
+
+    /**
+     * @param directory directory seeded by {@link #seedDirectory}
+     * @param index index of an entry
+     * @return path of the entry
+     */
+    protected static String entryPath(final String directory, final int index) {
+        return String.format("%s/%07d", directory, index);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.benchmark;
+
+import com.joyent.manta.client.MantaObjectResponse;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput and latency of the {@link com.joyent.manta.client.MantaClient}
+ * calls tests make most often, on small objects. Each call is a single
+ * request, so the scores are dominated by per-request client overhead:
+ * signing, header handling and connection reuse.
+ *
+ * <p>Run with {@code -prof gc} to add the allocation rate per operation.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MantaClientBenchmark extends LocalEndpointState {
+    /**
+     * Number of distinct paths written by {@link #put()}, so that repeated
+     * puts overwrite objects rather than grow the directory.
+     */
+    private static final int PUT_PATHS = 1024;
+
+    @Param({"16", "1024", "16384"})
+    public int objectSize;
+
+    private final AtomicInteger putCounter = new AtomicInteger();
+    private String content;
+    private String existingPath;
+    private String missingPath;
+    private String[] putPaths;
+
+    /**
+     * Connects the client and creates the object read by the benchmarks.
+     *
+     * @throws IOException thrown when the object can't be uploaded
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        setUpClient();
+        content = RandomStringUtils.randomAlphanumeric(objectSize);
+        existingPath = basePath + "existing";
+        missingPath = basePath + "missing";
+        putPaths = new String[PUT_PATHS];
+
+        for (int i = 0; i < PUT_PATHS; i++) {
+            putPaths[i] = basePath + "put-" + i;
+        }
+
+        client.put(existingPath, content);
+    }
+
+    /**
+     * Removes the benchmark directory and closes the client.
+     *
+     * @throws IOException thrown when the directory can't be removed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        tearDownClient();
+    }
+
+    @Benchmark
+    public MantaObjectResponse put() throws IOException {
+        return client.put(putPaths[putCounter.getAndIncrement() & (PUT_PATHS - 1)], content);
+    }
+
+    @Benchmark
+    public String getAsString() throws IOException {
+        return client.getAsString(existingPath);
+    }
+
+    @Benchmark
+    public MantaObjectResponse head() throws IOException {
+        return client.head(existingPath);
+    }
+
+    @Benchmark
+    public boolean existsAndIsAccessible() {
+        return client.existsAndIsAccessible(existingPath);
+    }
+
+    @Benchmark
+    public boolean existsAndIsAccessibleMissing() {
+        return client.existsAndIsAccessible(missingPath);
+    }
+}
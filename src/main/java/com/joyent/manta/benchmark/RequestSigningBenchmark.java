@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.benchmark;
+
+import com.joyent.http.signature.Signer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the http-signature {@code Authorization} header the client adds to
+ * every request, per key type. Each thread uses its own {@link Signer}, as
+ * the client does.
+ *
+ * <p>Run with {@code -prof gc} to add the allocation rate per signature.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestSigningBenchmark {
+    private static final String ACCOUNT = "benchmark";
+
+    /**
+     * Key algorithm and size, separated by a colon.
+     */
+    @Param({"RSA:2048", "RSA:4096", "EC:256", "EC:384"})
+    public String key;
+
+    private KeyPair keyPair;
+    private Signer signer;
+    private String date;
+
+    @Setup
+    public void setUp() throws NoSuchAlgorithmException {
+        final String[] algorithmAndSize = key.split(":");
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithmAndSize[0]);
+        generator.initialize(Integer.parseInt(algorithmAndSize[1]));
+        keyPair = generator.generateKeyPair();
+        signer = new Signer.Builder(keyPair).build();
+        date = signer.defaultSignDateAsString();
+    }
+
+    @Benchmark
+    public String createAuthorizationHeader() {
+        return signer.createAuthorizationHeader(ACCOUNT, keyPair, date);
+    }
+
+    @Benchmark
+    public String createAuthorizationHeaderWithDate() {
+        return signer.createAuthorizationHeader(ACCOUNT, keyPair, signer.defaultSignDateAsString());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of reads through
+ * {@link com.joyent.manta.client.MantaClient#getSeekableByteChannel(String)}:
+ * a read of a block at a random position, which opens a ranged request, and
+ * a read of the whole object block by block.
+ *
+ * <p>Run with {@code -prof gc} to add the allocation rate per read.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SeekableByteChannelBenchmark extends LocalEndpointState {
+    private static final long CONTENT_SEED = 0x5eedL;
+
+    @Param({"1048576", "16777216"})
+    public long objectSize;
+
+    @Param({"4096", "65536"})
+    public int blockSize;
+
+    private String path;
+
+    /**
+     * Connects the client and uploads the object read by the benchmarks.
+     *
+     * @throws IOException thrown when the object can't be uploaded
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        setUpClient();
+        path = basePath + "seekable";
+        putGenerated(path, objectSize, CONTENT_SEED);
+    }
+
+    /**
+     * Removes the benchmark directory and closes the client.
+     *
+     * @throws IOException thrown when the directory can't be removed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        tearDownClient();
+    }
+
+    /**
+     * Buffer and random positions of one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ReaderState {
+        private final SplittableRandom random = new SplittableRandom();
+        private ByteBuffer buffer;
+
+        @Setup(Level.Trial)
+        public void allocate(final SeekableByteChannelBenchmark benchmark) {
+            buffer = ByteBuffer.allocate(benchmark.blockSize);
+        }
+    }
+
+    @Benchmark
+    public int randomBlock(final ReaderState reader) throws IOException {
+        final long position = reader.random.nextLong(objectSize - blockSize + 1);
+        reader.buffer.clear();
+
+        try (SeekableByteChannel channel = client.getSeekableByteChannel(path)) {
+            channel.position(position);
+
+            while (reader.buffer.hasRemaining() && channel.read(reader.buffer) != -1) {
+                // read the whole block
+            }
+        }
+
+        return reader.buffer.position();
+    }
+
+    @Benchmark
+    public long sequential(final ReaderState reader) throws IOException {
+        long total = 0;
+
+        try (SeekableByteChannel channel = client.getSeekableByteChannel(path)) {
+            int read;
+
+            do {
+                reader.buffer.clear();
+                read = channel.read(reader.buffer);
+                total += Math.max(read, 0);
+            } while (read != -1);
+        }
+
+        return total;
+    }
+}
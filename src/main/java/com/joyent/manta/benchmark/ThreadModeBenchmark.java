@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.benchmark;
+
+import com.joyent.manta.config.IntegrationTestConfigContext;
+import com.joyent.test.util.ThreadMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Time to complete a burst of concurrent HEAD requests on platform and
+ * virtual threads. Each invocation submits {@code concurrency} requests and
+ * waits for all of them, so the score is bursts, not requests, per
+ * millisecond.
+ *
+ * <p>Two limits show up in the results. With fewer connections than
+ * requests in flight, the burst is capped by the client's connection pool
+ * whatever the thread mode, and virtual threads only save the cost of
+ * parking platform threads on the pool. {@link #headPinned()} is a
+ * synthetic baseline: it takes a monitor of its own around each request,
+ * which on Java 21 to 23 pins a virtual thread to its carrier during the
+ * blocking I/O, so the burst runs no wider than the number of carriers. It
+ * says nothing about pinning inside the client; find that by running with
+ * {@code -jvmArgsAppend -Djdk.tracePinnedThreads=full} or by recording the
+ * {@code jdk.VirtualThreadPinned} JFR event.</p>
+ *
+ * <p>Virtual threads need a Java 21 runtime. On older runtimes the virtual
+ * trials fail in setup rather than report platform thread scores under the
+ * virtual label.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ThreadModeBenchmark extends LocalEndpointState {
+    @Param({"PLATFORM", "VIRTUAL"})
+    public ThreadMode threadMode;
+
+    @Param({"16", "256", "1024"})
+    public int concurrency;
+
+    @Param({"24", "1024"})
+    public int maxConnections;
+
+    private ExecutorService executor;
+    private String path;
+    private Object[] monitors;
+
+    /**
+     * Connects the client, creates the object the requests look up and
+     * starts the executor.
+     *
+     * @throws IOException thrown when the object can't be uploaded
+     * @throws IllegalStateException thrown for virtual threads on a runtime
+     *         without them
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (threadMode == ThreadMode.VIRTUAL && !ThreadMode.virtualThreadsAvailable()) {
+            throw new IllegalStateException("Virtual threads need Java 21, running on "
+                    + System.getProperty("java.version"));
+        }
+
+        setUpClient();
+        path = basePath + "object";
+        client.put(path, "head");
+        executor = threadMode.newExecutor("benchmark", concurrency);
+        monitors = new Object[concurrency];
+
+        for (int i = 0; i < concurrency; i++) {
+            monitors[i] = new Object();
+        }
+    }
+
+    /**
+     * Stops the executor and removes the benchmark directory.
+     *
+     * @throws IOException thrown when the directory can't be removed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        tearDownClient();
+    }
+
+    @Override
+    protected void configure(final IntegrationTestConfigContext config) {
+        config.setMaximumConnections(maxConnections);
+    }
+
+    @Benchmark
+    public int head() throws Exception {
+        return burst(index -> () -> {
+            client.head(path);
+            return null;
+        });
+    }
+
+    @Benchmark
+    public int headPinned() throws Exception {
+        return burst(index -> () -> {
+            // a monitor of its own per request, reachable from a field so the
+            // JIT can't elide the lock: only pinning slows the burst down
+            synchronized (monitors[index]) {
+                client.head(path);
+            }
+
+            return null;
+        });
+    }
+
+    private int burst(final IntFunction<Callable<Void>> requests) throws Exception {
+        final List<Future<Void>> futures = new ArrayList<>(concurrency);
+
+        for (int i = 0; i < concurrency; i++) {
+            futures.add(executor.submit(requests.apply(i)));
+        }
+
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+
+                throw (Error) e.getCause();
+            }
+        }
+
+        return futures.size();
+    }
+}
@@ -8,6 +8,8 @@
 package com.joyent.manta.client;
 
 import com.joyent.manta.config.IntegrationTestConfigContext;
+import com.joyent.test.server.LocalMantaServer;
+import com.joyent.test.server.RequestStats;
 import com.joyent.test.util.MantaAssert;
 import com.joyent.test.util.MantaFunction;
 import org.apache.commons.lang3.RandomUtils;
@@ -183,6 +185,49 @@ public class MantaClientDirectoriesIT {
         directorySkipping(false);
     }
 
+    /**
+     * Counts the requests a recursive directory creation makes on the
+     * server, which catches amplification that the operation count returned
+     * by the strategy can't see, such as retries or extra HEADs. Runs on a
+     * private {@link LocalMantaServer} so that every request it sees, for
+     * existing ancestors as well as new levels, belongs to this test.
+     */
+    @Test
+    public void putDirectoryRecursiveMakesAtMostOneRequestPerLevel() throws IOException {
+        try (LocalMantaServer server = new LocalMantaServer("directories-it").start()) {
+            final IntegrationTestConfigContext privateConfig = new IntegrationTestConfigContext(false);
+            privateConfig.setMantaURL(server.getUrl());
+            privateConfig.setMantaUser(server.getAccount());
+            privateConfig.setMantaKeyId(server.getKeyId());
+            privateConfig.setMantaKeyPath(server.getKeyPath().toString());
+            privateConfig.setPrivateKeyContent(null);
+
+            try (MantaClient client = new MantaClient(privateConfig)) {
+                final String base = SEPARATOR + server.getAccount() + "/stor/" + UUID.randomUUID();
+                client.putDirectory(base, true);
+
+                final StringBuilder dirBuilder = new StringBuilder(base);
+                for (int i = 0; i < 4; i++) {
+                    dirBuilder.append(SEPARATOR).append(STRING_GENERATOR.generate(3));
+                }
+                final String dir = dirBuilder.toString();
+                final int depth = writeablePrefixPaths(dir).length;
+
+                final RequestStats stats = server.getRequestStats();
+                stats.reset();
+
+                client.putDirectory(dir, true);
+
+                final long requests = stats.getRequestCount();
+                LOG.info("putDirectory({}, true) made {} requests for depth {}:\n{}", dir, requests, depth, stats);
+
+                Assert.assertTrue(requests <= depth + 1,
+                        String.format("Creating a directory %d levels deep took %d requests", depth, requests));
+                Assert.assertTrue(client.head(dir).isDirectory());
+            }
+        }
+    }
+
     private void directorySkipping(final boolean settingCorrectDepth) throws IOException {
         final int parentAddedDepth = RandomUtils.nextInt(1, 5);
         final int childAddedDepth = RandomUtils.nextInt(2, 5); // child depth of 1 would trigger parts.length <= skipDepth early exit
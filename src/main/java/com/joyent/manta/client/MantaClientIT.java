@@ -14,6 +14,10 @@ import com.joyent.manta.exception.MantaClientHttpResponseException;
 import com.joyent.manta.exception.MantaErrorCode;
 import com.joyent.manta.exception.MantaUnexpectedObjectTypeException;
 import com.joyent.manta.http.MantaHttpHeaders;
+import com.joyent.manta.load.Operation;
+import com.joyent.manta.load.Workload;
+import com.joyent.manta.load.WorkloadReport;
+import com.joyent.manta.load.WorkloadSpec;
 import com.joyent.manta.util.MantaUtils;
 import com.joyent.test.util.MantaAssert;
 import com.joyent.test.util.MantaFunction;
@@ -34,7 +38,6 @@ import java.util.Date;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
@@ -144,14 +147,19 @@ public class MantaClientIT {
 
         Callable<InputStream> callable = () -> mantaClient.getAsInputStream(path);
 
-        ExecutorService service = Executors.newFixedThreadPool(1);
-        InputStream in = service.submit(callable).get();
+        ExecutorService service = IntegrationTestConfigContext.threadMode().newExecutor("stream-opener", 1);
 
         try {
-            IOUtils.copyLarge(in, out);
+            InputStream in = service.submit(callable).get();
+
+            try {
+                IOUtils.copyLarge(in, out);
+            } finally {
+                in.close();
+                out.close();
+            }
         } finally {
-            in.close();
-            out.close();
+            service.shutdown();
         }
     }
 
@@ -171,6 +179,29 @@ public class MantaClientIT {
         mantaClient.deleteRecursive(dir);
     }
 
+    @Test
+    public final void testMixedWorkload() throws IOException, InterruptedException {
+        final int operations = 400;
+        final WorkloadSpec spec = WorkloadSpec.builder()
+                .mix(Operation.PUT, 3).mix(Operation.GET, 4).mix(Operation.HEAD, 2)
+                .mix(Operation.LIST, 1).mix(Operation.DELETE, 1).mix(Operation.MOVE, 1)
+                .objectSizes(1, 64 * 1024, 1)
+                .concurrency(4)
+                .operations(operations)
+                .fanOut(4, 1)
+                .initialObjects(20)
+                .verify(true)
+                .threads(IntegrationTestConfigContext.threadMode())
+                .build();
+        final String dir = testPathPrefix + "workload";
+
+        final WorkloadReport report = new Workload(mantaClient, dir, spec).run();
+
+        Assert.assertEquals(report.getTotalErrorCount(), 0, report.toString());
+        Assert.assertEquals(report.getTotalCount(), operations, report.toString());
+        mantaClient.deleteRecursive(dir);
+    }
+
     @Test
     public final void testCRUDWithFileObject() throws IOException {
         final String name = UUID.randomUUID().toString();
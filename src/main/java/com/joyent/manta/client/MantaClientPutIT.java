@@ -10,9 +10,15 @@ package com.joyent.manta.client;
 import com.joyent.manta.config.ConfigContext;
 import com.joyent.manta.config.IntegrationTestConfigContext;
 import com.joyent.manta.http.MantaHttpHeaders;
+import com.joyent.test.util.CompressibleInputStream;
+import com.joyent.test.util.DeterministicContent;
+import com.joyent.test.util.FixtureRegistry;
 import com.joyent.test.util.MantaAssert;
 import com.joyent.test.util.MantaFunction;
+import com.joyent.test.util.ParallelPayloadInputStream;
 import com.joyent.test.util.RandomInputStream;
+import com.joyent.test.util.ThrottledInputStream;
+import com.joyent.test.util.TokenBucket;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.BooleanUtils;
@@ -23,7 +29,6 @@ import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.util.Arrays;
 import java.util.UUID;
 
 import static com.joyent.manta.exception.MantaErrorCode.RESOURCE_NOT_FOUND_ERROR;
@@ -126,6 +131,105 @@ public class MantaClientPutIT {
         }
     }
 
+    /**
+     * Uploads a large object whose content is generated ahead of the upload
+     * on the fork-join pool, so the uploading thread only waits on the network.
+     * Set manta.it.large_object_size to control the object size.
+     */
+    @Test
+    public final void testPutWithPregeneratedLargeStream() throws IOException {
+        final String name = UUID.randomUUID().toString();
+        final String path = testPathPrefix + name;
+        final long length = IntegrationTestConfigContext.largeObjectSize();
+        final DeterministicContent content = DeterministicContent.withRandomSeed();
+
+        try (ParallelPayloadInputStream in = new ParallelPayloadInputStream(content, length)) {
+            mantaClient.put(path, in, length, null, null);
+            System.out.printf("Upload of [%d] bytes waited [%d] ms on payload generation\n",
+                    length, in.getWaitNanos() / 1_000_000L);
+        }
+
+        try (MantaObjectInputStream object = mantaClient.getAsInputStream(path)) {
+            final long mismatch = content.firstMismatch(object, 0, length);
+            Assert.assertEquals(mismatch, -1L,
+                    "Downloaded object differed from uploaded content at offset " + mismatch);
+        }
+    }
+
+    @DataProvider(name = "compressiblePayloads")
+    public Object[][] compressiblePayloads() {
+        return new Object[][] {
+                {CompressibleInputStream.Mode.TEXT, 0.1},
+                {CompressibleInputStream.Mode.TEXT, 0.5},
+                {CompressibleInputStream.Mode.BINARY, 0.3},
+                {CompressibleInputStream.Mode.BINARY, 1.0},
+        };
+    }
+
+    @Test(dataProvider = "compressiblePayloads")
+    public final void testPutAndGetCompressiblePayload(final CompressibleInputStream.Mode mode,
+                                                      final double ratio) throws IOException {
+        final String name = UUID.randomUUID().toString();
+        final String path = testPathPrefix + name;
+        final long length = IntegrationTestConfigContext.largeObjectSize();
+        final long seed = System.nanoTime();
+
+        final long uploadStart = System.nanoTime();
+        try (InputStream in = new CompressibleInputStream(length, ratio, mode, seed)) {
+            mantaClient.put(path, in, length, null, null);
+        }
+        final long uploadNanos = System.nanoTime() - uploadStart;
+
+        final long downloadStart = System.nanoTime();
+        try (InputStream expected = new CompressibleInputStream(length, ratio, mode, seed);
+             MantaObjectInputStream actual = mantaClient.getAsInputStream(path)) {
+            Assert.assertTrue(IOUtils.contentEquals(expected, actual),
+                    "Downloaded object differed from uploaded content");
+        }
+        final long downloadNanos = System.nanoTime() - downloadStart;
+
+        final ConfigContext config = mantaClient.getContext();
+        final String cipher = BooleanUtils.isTrue(config.isClientEncryptionEnabled())
+                ? config.getEncryptionAlgorithm() : "none";
+        System.out.printf("%s payload at ratio [%.2f], cipher [%s]: upload [%d] ms, download [%d] ms\n",
+                mode, ratio, cipher, uploadNanos / 1_000_000L, downloadNanos / 1_000_000L);
+    }
+
+    @Test
+    public final void testPutAndGetOverThrottledLink() throws IOException {
+        final String name = UUID.randomUUID().toString();
+        final String path = testPathPrefix + name;
+        final TokenBucket link = TokenBucket.ofRate(IntegrationTestConfigContext.throttleBytesPerSecond());
+        final long length = 2 * link.getBytesPerSecond();
+        final DeterministicContent content = DeterministicContent.withRandomSeed();
+
+        final long uploadStart = System.nanoTime();
+        try (InputStream in = new ThrottledInputStream(content.newInputStream(length), link)) {
+            mantaClient.put(path, in, length, null, null);
+        }
+        final long uploadNanos = System.nanoTime() - uploadStart;
+
+        final long downloadStart = System.nanoTime();
+        try (ThrottledInputStream in = new ThrottledInputStream(mantaClient.getAsInputStream(path), link,
+                downloadStart)) {
+            final long mismatch = content.firstMismatch(in, 0, length);
+            final long downloadNanos = System.nanoTime() - downloadStart;
+            Assert.assertEquals(mismatch, -1L,
+                    "Downloaded object differed from uploaded content at offset " + mismatch);
+
+            // measured from sending the GET, so the round trip is in it, but the body isn't
+            final long timeToFirstByteNanos = in.getTimeToFirstByteNanos();
+            Assert.assertTrue(timeToFirstByteNanos > 0, "No time to first byte recorded");
+            Assert.assertTrue(timeToFirstByteNanos < downloadNanos / 2,
+                    String.format("Time to first byte [%d] ns was most of the [%d] ns download",
+                            timeToFirstByteNanos, downloadNanos));
+
+            System.out.printf("Throttled to [%d] B/s: upload [%d] ms, download [%d] ms, time to first byte [%d] ms\n",
+                    link.getBytesPerSecond(), uploadNanos / 1_000_000L, downloadNanos / 1_000_000L,
+                    timeToFirstByteNanos / 1_000_000L);
+        }
+    }
+
     @Test
     public final void testPutWithStreamAndKnownContentLength() throws IOException {
         final String name = UUID.randomUUID().toString();
@@ -299,25 +403,17 @@ public class MantaClientPutIT {
     public final void testPutWithJPGFile() throws IOException {
         final String name = UUID.randomUUID().toString();
         final String path = testPathPrefix + name;
-        File temp = File.createTempFile("upload", ".jpg");
-        FileUtils.forceDeleteOnExit(temp);
-        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        final File fixture = FixtureRegistry.path(TEST_FILENAME).toFile();
 
-        try (InputStream testDataInputStream = classLoader.getResourceAsStream(TEST_FILENAME);
-             OutputStream out = new FileOutputStream(temp)) {
-            IOUtils.copy(testDataInputStream, out);
-            MantaObject response = mantaClient.put(path, temp);
-            String contentType = response.getContentType();
-            Assert.assertEquals(contentType, "image/jpeg",
-                    "Content type wasn't detected correctly");
-
-            try (InputStream in = mantaClient.getAsInputStream(path)) {
-                byte[] actual = IOUtils.toByteArray(in);
-                byte[] expected = FileUtils.readFileToByteArray(temp);
+        MantaObject response = mantaClient.put(path, fixture);
+        String contentType = response.getContentType();
+        Assert.assertEquals(contentType, "image/jpeg",
+                "Content type wasn't detected correctly");
 
-                Assert.assertTrue(Arrays.equals(actual, expected),
-                        "Uploaded file isn't the same as actual file");
-            }
+        try (InputStream in = mantaClient.getAsInputStream(path);
+             InputStream expected = FixtureRegistry.inputStream(TEST_FILENAME)) {
+            Assert.assertTrue(IOUtils.contentEquals(in, expected),
+                    "Uploaded file isn't the same as actual file");
         }
     }
 
@@ -9,6 +9,8 @@ package com.joyent.manta.client;
 
 import com.joyent.manta.config.*;
 import com.joyent.manta.http.MantaHttpHeaders;
+import com.joyent.test.util.DeterministicContent;
+import com.joyent.test.util.FixtureObjectPool;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.testng.Assert;
@@ -82,11 +84,9 @@ public class MantaClientRangeIT {
     }
 
     public final void canGetWithRangeHeader() throws IOException {
-        final String name = UUID.randomUUID().toString();
-        final String path = testPathPrefix + name;
         final String expected = TEST_DATA.substring(7, 18); // substring is inclusive, exclusive
 
-        mantaClient.put(path, TEST_DATA);
+        final String path = FixtureObjectPool.pathFor(mantaClient, TEST_DATA);
 
         final MantaHttpHeaders headers = new MantaHttpHeaders();
         // Range is inclusive, inclusive
@@ -100,12 +100,10 @@ public class MantaClientRangeIT {
 
     public final void canGetWithComputedRangeHeader() throws IOException {
         // see testCanGetWithRangeHeader above
-        final String name = UUID.randomUUID().toString();
-        final String path = testPathPrefix + name;
         final long startPos = 7;
         final long endPos = 49;
         final String expected = TEST_DATA.substring((int)startPos, (int)endPos + 1); // substring is inclusive, exclusive
-        mantaClient.put(path, TEST_DATA);
+        final String path = FixtureObjectPool.pathFor(mantaClient, TEST_DATA);
 
         final MantaHttpHeaders headers = new MantaHttpHeaders();
         try (final InputStream min = mantaClient.getAsInputStream(path, headers, startPos, endPos)) {
@@ -115,11 +113,9 @@ public class MantaClientRangeIT {
     }
 
     public final void canGetWithUnboundedEndRange() throws IOException {
-        final String name = UUID.randomUUID().toString();
-        final String path = testPathPrefix + name;
         final String expected = StringUtils.substring(TEST_DATA, 50);
 
-        mantaClient.put(path, TEST_DATA);
+        final String path = FixtureObjectPool.pathFor(mantaClient, TEST_DATA);
 
         final MantaHttpHeaders headers = new MantaHttpHeaders();
         // Range is inclusive, inclusive
@@ -132,11 +128,9 @@ public class MantaClientRangeIT {
     }
 
     public final void canGetWithUnboundedStartRange() throws IOException {
-        final String name = UUID.randomUUID().toString();
-        final String path = testPathPrefix + name;
         final String expected = StringUtils.substring(TEST_DATA, -50);
 
-        mantaClient.put(path, TEST_DATA);
+        final String path = FixtureObjectPool.pathFor(mantaClient, TEST_DATA);
 
         final MantaHttpHeaders headers = new MantaHttpHeaders();
         // Range is inclusive, inclusive
@@ -149,11 +143,9 @@ public class MantaClientRangeIT {
     }
 
     public final void canGetWithEndRangeBeyondObjectSize() throws IOException {
-        final String name = UUID.randomUUID().toString();
-        final String path = testPathPrefix + name;
         final String expected = StringUtils.substring(TEST_DATA, 50);
 
-        mantaClient.put(path, TEST_DATA);
+        final String path = FixtureObjectPool.pathFor(mantaClient, TEST_DATA);
 
         final MantaHttpHeaders headers = new MantaHttpHeaders();
         // Range is inclusive, inclusive
@@ -166,11 +158,9 @@ public class MantaClientRangeIT {
     }
 
     public final void canGetWithZeroRange() throws IOException {
-        final String name = UUID.randomUUID().toString();
-        final String path = testPathPrefix + name;
         final String expected = StringUtils.substring(TEST_DATA, 0, 1);
 
-        mantaClient.put(path, TEST_DATA);
+        final String path = FixtureObjectPool.pathFor(mantaClient, TEST_DATA);
 
         final MantaHttpHeaders headers = new MantaHttpHeaders();
         // Range is inclusive, inclusive
@@ -184,14 +174,12 @@ public class MantaClientRangeIT {
 
     @Test
     public final void canGetAllRanges() throws IOException {
-        final String name = UUID.randomUUID().toString();
-        final String path = testPathPrefix + name;
 
         String testData = TEST_DATA;
         for (int i = 0; i < 501; i++) {
             testData += TEST_DATA;
         }
-        mantaClient.put(path, testData);
+        final String path = FixtureObjectPool.pathFor(mantaClient, testData);
         int fifth = testData.length() / 5;
 
         for (int start = 0; start <= testData.length(); start += fifth) {
@@ -211,4 +199,48 @@ public class MantaClientRangeIT {
             }
         }
     }
+
+    /**
+     * Verifies ranges spread across a generated object whose expected bytes
+     * are computed from the content seed rather than held in memory. Set
+     * manta.it.large_object_size to run against objects of any size.
+     */
+    public final void canGetRangesOfLargeGeneratedObject() throws IOException {
+        final String name = UUID.randomUUID().toString();
+        final String path = testPathPrefix + name;
+        final long size = IntegrationTestConfigContext.largeObjectSize();
+        final DeterministicContent content = DeterministicContent.withRandomSeed();
+
+        try (InputStream in = content.newInputStream(size)) {
+            mantaClient.put(path, in, size, null, null);
+        }
+
+        final long step = Math.max(1L, size / 7);
+        final long window = Math.min(step, 1024L * 1024);
+
+        for (long start = 0; start < size; start += step) {
+            final long end = Math.min(size - 1, start + window - 1);
+
+            final MantaHttpHeaders headers = new MantaHttpHeaders();
+            // Range is inclusive, inclusive
+            final String rangeHeader = "bytes=" + start + "-" + end;
+            headers.setRange(rangeHeader);
+
+            try (final InputStream min = mantaClient.getAsInputStream(path, headers)) {
+                final long mismatch = content.firstMismatch(min, start, end - start + 1);
+                Assert.assertEquals(mismatch, -1L,
+                        "Range [" + rangeHeader + "] differed from uploaded content at offset " + mismatch);
+            }
+        }
+
+        final long tailStart = Math.max(0L, size - window);
+        final MantaHttpHeaders headers = new MantaHttpHeaders();
+        headers.setRange("bytes=" + tailStart + "-");
+
+        try (final InputStream min = mantaClient.getAsInputStream(path, headers)) {
+            final long mismatch = content.firstMismatch(min, tailStart, size - tailStart);
+            Assert.assertEquals(mismatch, -1L,
+                    "Unbounded range differed from uploaded content at offset " + mismatch);
+        }
+    }
 }
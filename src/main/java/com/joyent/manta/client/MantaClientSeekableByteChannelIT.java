@@ -11,7 +11,11 @@ import com.joyent.manta.config.BaseChainedConfigContext;
 import com.joyent.manta.config.EncryptionAuthenticationMode;
 import com.joyent.manta.config.IntegrationTestConfigContext;
 import com.joyent.manta.config.SettableConfigContext;
+import com.joyent.test.util.DeterministicContent;
+import com.joyent.test.util.FixtureObjectPool;
+import com.joyent.test.util.RandomByteChannel;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.testng.Assert;
 import org.testng.annotations.*;
 
@@ -64,9 +68,7 @@ public class MantaClientSeekableByteChannelIT {
     }
 
     public final void seekableByteSize() throws IOException {
-        final String name = UUID.randomUUID().toString();
-        final String path = testPathPrefix + name;
-        mantaClient.put(path, TEST_DATA);
+        final String path = FixtureObjectPool.pathFor(mantaClient, TEST_DATA);
 
         final long expectedSize = TEST_DATA.getBytes(StandardCharsets.UTF_8).length;
 
@@ -77,9 +79,7 @@ public class MantaClientSeekableByteChannelIT {
     }
 
     public final void getAllSeekableBytes() throws IOException {
-        final String name = UUID.randomUUID().toString();
-        final String path = testPathPrefix + name;
-        mantaClient.put(path, TEST_DATA);
+        final String path = FixtureObjectPool.pathFor(mantaClient, TEST_DATA);
 
         try (SeekableByteChannel channel = mantaClient.getSeekableByteChannel(path)) {
             String actual = new String(readAllBytes(channel), StandardCharsets.UTF_8);
@@ -88,9 +88,7 @@ public class MantaClientSeekableByteChannelIT {
     }
 
     public final void getAllSeekableBytesAtPosition() throws IOException {
-        final String name = UUID.randomUUID().toString();
-        final String path = testPathPrefix + name;
-        mantaClient.put(path, TEST_DATA);
+        final String path = FixtureObjectPool.pathFor(mantaClient, TEST_DATA);
 
         final int position = 5;
         final String expected = TEST_DATA.substring(position);
@@ -102,9 +100,7 @@ public class MantaClientSeekableByteChannelIT {
     }
 
     public final void readFromDifferentPositions() throws IOException {
-        final String name = UUID.randomUUID().toString();
-        final String path = testPathPrefix + name;
-        mantaClient.put(path, TEST_DATA);
+        final String path = FixtureObjectPool.pathFor(mantaClient, TEST_DATA);
 
         try (SeekableByteChannel channel = mantaClient.getSeekableByteChannel(path)) {
             ByteBuffer first5Bytes = ByteBuffer.allocate(5);
@@ -125,9 +121,7 @@ public class MantaClientSeekableByteChannelIT {
     }
 
     public final void readAllSeekableBytesFromPositionAsInputStream() throws IOException {
-        final String name = UUID.randomUUID().toString();
-        final String path = testPathPrefix + name;
-        mantaClient.put(path, TEST_DATA);
+        final String path = FixtureObjectPool.pathFor(mantaClient, TEST_DATA);
 
         final int position = 5;
 
@@ -148,9 +142,7 @@ public class MantaClientSeekableByteChannelIT {
     }
 
     public final void skipUsingInputStream() throws IOException {
-        final String name = UUID.randomUUID().toString();
-        final String path = testPathPrefix + name;
-        mantaClient.put(path, TEST_DATA);
+        final String path = FixtureObjectPool.pathFor(mantaClient, TEST_DATA);
 
         try (MantaSeekableByteChannel channel = mantaClient.getSeekableByteChannel(path)) {
             final String expected = TEST_DATA.substring(5);
@@ -168,9 +160,7 @@ public class MantaClientSeekableByteChannelIT {
     @SuppressWarnings("try")
     @Test(expectedExceptions = ClosedChannelException.class)
     public final void closeAndAttemptToRead() throws IOException {
-        final String name = UUID.randomUUID().toString();
-        final String path = testPathPrefix + name;
-        mantaClient.put(path, TEST_DATA);
+        final String path = FixtureObjectPool.pathFor(mantaClient, TEST_DATA);
 
         try (SeekableByteChannel channel = mantaClient.getSeekableByteChannel(path)) {
             ByteBuffer buffer = ByteBuffer.wrap(new byte[2]);
@@ -185,9 +175,7 @@ public class MantaClientSeekableByteChannelIT {
     @SuppressWarnings("try")
     @Test(expectedExceptions = ClosedChannelException.class)
     public final void closeAndAttemptToSize() throws IOException {
-        final String name = UUID.randomUUID().toString();
-        final String path = testPathPrefix + name;
-        mantaClient.put(path, TEST_DATA);
+        final String path = FixtureObjectPool.pathFor(mantaClient, TEST_DATA);
 
         try (SeekableByteChannel channel = mantaClient.getSeekableByteChannel(path)) {
             ByteBuffer buffer = ByteBuffer.wrap(new byte[2]);
@@ -202,9 +190,7 @@ public class MantaClientSeekableByteChannelIT {
 
     @Test(expectedExceptions = NonWritableChannelException.class)
     public final void attemptToWrite() throws IOException {
-        final String name = UUID.randomUUID().toString();
-        final String path = testPathPrefix + name;
-        mantaClient.put(path, TEST_DATA);
+        final String path = FixtureObjectPool.pathFor(mantaClient, TEST_DATA);
 
         try (SeekableByteChannel channel = mantaClient.getSeekableByteChannel(path)) {
             ByteBuffer buffer = ByteBuffer.wrap(new byte[2]);
@@ -213,9 +199,7 @@ public class MantaClientSeekableByteChannelIT {
     }
 
     public final void getFromForwardPosition() throws IOException {
-        final String name = UUID.randomUUID().toString();
-        final String path = testPathPrefix + name;
-        mantaClient.put(path, TEST_DATA);
+        final String path = FixtureObjectPool.pathFor(mantaClient, TEST_DATA);
 
         final int positionIndex = 4;
         final String expectedPosition1 = TEST_DATA.substring(positionIndex);
@@ -230,9 +214,7 @@ public class MantaClientSeekableByteChannelIT {
     }
 
     public final void getFromBaseChannelThenForwardPosition() throws IOException {
-        final String name = UUID.randomUUID().toString();
-        final String path = testPathPrefix + name;
-        mantaClient.put(path, TEST_DATA);
+        final String path = FixtureObjectPool.pathFor(mantaClient, TEST_DATA);
 
         final int positionIndex = 4;
         final String expectedPosition1 = TEST_DATA.substring(positionIndex);
@@ -250,9 +232,7 @@ public class MantaClientSeekableByteChannelIT {
     }
 
     public final void getFromForwardPositionThenBackwardPosition() throws IOException {
-        final String name = UUID.randomUUID().toString();
-        final String path = testPathPrefix + name;
-        mantaClient.put(path, TEST_DATA);
+        final String path = FixtureObjectPool.pathFor(mantaClient, TEST_DATA);
 
         final int position1Index = 4;
         final String expectedPosition1 = TEST_DATA.substring(position1Index);
@@ -277,6 +257,82 @@ public class MantaClientSeekableByteChannelIT {
         }
     }
 
+    /**
+     * Seeks to positions spread across a generated object and verifies a
+     * window of bytes at each one against the content seed, so the object
+     * never needs to be held in memory. Set manta.it.large_object_size to
+     * run against objects of any size.
+     */
+    public final void canSeekWithinLargeGeneratedObject() throws IOException {
+        final String name = UUID.randomUUID().toString();
+        final String path = testPathPrefix + name;
+        final long size = IntegrationTestConfigContext.largeObjectSize();
+        final DeterministicContent content = DeterministicContent.withRandomSeed();
+
+        try (InputStream in = content.newInputStream(size)) {
+            mantaClient.put(path, in, size, null, null);
+        }
+
+        final long window = Math.min(size, 64L * 1024);
+        final long[] positions = { size / 2, size / 3, size - window, 0L, size / 5 * 4 };
+
+        try (SeekableByteChannel channel = mantaClient.getSeekableByteChannel(path)) {
+            Assert.assertEquals(channel.size(), size, "Size was not equal to uploaded test data");
+
+            for (long position : positions) {
+                final long expectedLength = Math.min(window, size - position);
+
+                try (SeekableByteChannel positioned = channel.position(position);
+                     InputStream in = new BoundedInputStream(Channels.newInputStream(positioned), expectedLength)) {
+                    final long mismatch = content.firstMismatch(in, position, expectedLength);
+                    Assert.assertEquals(mismatch, -1L,
+                            "Bytes read after seeking to [" + position + "] differed at offset " + mismatch);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads an object through the channel into direct buffers and compares
+     * it with a {@link RandomByteChannel} over the same content, so the NIO
+     * read path is exercised without copying through heap arrays.
+     */
+    public final void canReadIntoDirectBuffers() throws IOException {
+        final String name = UUID.randomUUID().toString();
+        final String path = testPathPrefix + name;
+        final long size = Math.min(IntegrationTestConfigContext.largeObjectSize(), 4L * 1024 * 1024);
+        final DeterministicContent content = DeterministicContent.withRandomSeed();
+
+        try (InputStream in = content.newInputStream(size)) {
+            mantaClient.put(path, in, size, null, null);
+        }
+
+        final ByteBuffer actual = ByteBuffer.allocateDirect(64 * 1024);
+        final ByteBuffer expected = ByteBuffer.allocateDirect(64 * 1024);
+        long position = 0;
+
+        try (SeekableByteChannel channel = mantaClient.getSeekableByteChannel(path);
+             RandomByteChannel source = content.newChannel(size)) {
+            while (channel.read(actual) != -1) {
+                actual.flip();
+                expected.limit(actual.remaining());
+                while (expected.hasRemaining()) {
+                    source.read(expected);
+                }
+                expected.flip();
+
+                Assert.assertEquals(actual, expected,
+                        "Bytes read into direct buffer differed within offsets starting at " + position);
+
+                position += actual.remaining();
+                actual.clear();
+                expected.clear();
+            }
+        }
+
+        Assert.assertEquals(position, size, "Didn't read the number of bytes written");
+    }
+
     public static byte[] readAllBytes(SeekableByteChannel sbc) throws IOException {
         try (InputStream in = Channels.newInputStream(sbc);
              ByteArrayOutputStream out = new ByteArrayOutputStream()) {
@@ -9,16 +9,27 @@ package com.joyent.manta.client;
 
 import com.joyent.manta.config.ConfigContext;
 import com.joyent.manta.config.IntegrationTestConfigContext;
+import com.joyent.test.server.LocalMantaServer;
+import com.joyent.test.server.MantaStore;
+import com.joyent.test.server.ObjectBody;
+import com.joyent.test.server.RequestStats;
+import org.HdrHistogram.Histogram;
 import org.testng.Assert;
+import org.testng.SkipException;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests the proper functioning of the dynamically paging iterator.
@@ -27,6 +38,8 @@ import java.util.concurrent.ConcurrentHashMap;
 public class MantaDirectoryListingIteratorIT {
     private static final String TEST_DATA = "EPISODEII_IS_BEST_EPISODE";
 
+    private static final int LARGE_DIRECTORY_PAGE_SIZE = 1024;
+
     private MantaClient mantaClient;
 
     private String testPathPrefix;
@@ -124,9 +137,9 @@ public class MantaDirectoryListingIteratorIT {
             };
 
             // Start 3 threads that iterate at the same time
-            Thread thread1 = new Thread(search);
-            Thread thread2 = new Thread(search);
-            Thread thread3 = new Thread(search);
+            Thread thread1 = IntegrationTestConfigContext.threadMode().newThread("pager-1", search);
+            Thread thread2 = IntegrationTestConfigContext.threadMode().newThread("pager-2", search);
+            Thread thread3 = IntegrationTestConfigContext.threadMode().newThread("pager-3", search);
 
             thread1.start();
             thread2.start();
@@ -170,6 +183,73 @@ public class MantaDirectoryListingIteratorIT {
         }
     }
 
+    /**
+     * Pages through a directory the size of a busy production one. The entries
+     * are seeded straight into the local server's store, so this only runs
+     * with {@code manta.it.local}; the server's share of the time is reported
+     * separately from the total and the number of pages requested is checked
+     * against the page size.
+     */
+    public void canPageLargeDirectory() throws IOException, InterruptedException {
+        final LocalMantaServer server = LocalMantaServer.sharedInstanceIfStarted();
+
+        if (server == null) {
+            throw new SkipException("Paging a large directory needs the local server (manta.it.local)");
+        }
+
+        final String dir = String.format("%s%s", testPathPrefix, UUID.randomUUID());
+        final int max = IntegrationTestConfigContext.largeDirectorySize();
+        final MantaStore store = server.getStore();
+        mantaClient.putDirectory(dir);
+
+        final MessageDigest md5 = MantaStore.newMd5();
+        final ObjectBody body = store.storeBody(
+                new ByteArrayInputStream(TEST_DATA.getBytes(StandardCharsets.UTF_8)), md5);
+        final byte[] digest = md5.digest();
+
+        try {
+            for (int i = 1; i <= max; i++) {
+                store.putObject(String.format("%s/%07d", dir, i), body, "text/plain", digest,
+                        Collections.emptyMap(), 2);
+            }
+        } finally {
+            body.release();
+        }
+
+        final long listingsBefore = server.getRequestStats().getRequestCount("GET", dir);
+        final long start = System.nanoTime();
+        int count = 0;
+
+        try (MantaDirectoryListingIterator itr = mantaClient.streamingIterator(dir, LARGE_DIRECTORY_PAGE_SIZE)) {
+            while (itr.hasNext()) {
+                count++;
+                Assert.assertEquals(itr.next().get("name").toString(), String.format("%07d", count));
+            }
+        } finally {
+            store.deleteTree(dir);
+        }
+
+        final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        Assert.assertEquals(count, max);
+
+        // pages after the first start with the marker entry, so each adds at most pageSize - 1 entries
+        final long pages = server.getRequestStats().getRequestCount("GET", dir) - listingsBefore;
+        final long maxPages = (max + LARGE_DIRECTORY_PAGE_SIZE - 2) / (LARGE_DIRECTORY_PAGE_SIZE - 1) + 1;
+        Assert.assertTrue(pages <= maxPages,
+                String.format("Listing %d entries took %d pages of %d", max, pages, LARGE_DIRECTORY_PAGE_SIZE));
+
+        // store-wide listing stats would include listings of tests running in parallel; the
+        // per path request stats only cover the pages of this directory
+        final RequestStats stats = server.getRequestStats();
+        // latency is recorded once a response is written, so the last page can trail the client
+        Assert.assertTrue(stats.awaitCompleted("GET", dir, stats.getRequestCount("GET", dir), 5, TimeUnit.SECONDS));
+        final Histogram serverTime = stats.getLatency("GET", dir);
+        System.out.printf("Paged %d entries in %dms; server time for %d pages: total=%dms p50=%dus max=%dus%n",
+                count, elapsedMillis, serverTime.getTotalCount(),
+                (long) (serverTime.getMean() * serverTime.getTotalCount()) / 1_000_000,
+                serverTime.getValueAtPercentile(50) / 1_000, serverTime.getMaxValue() / 1_000);
+    }
+
     private void listDirectoryUsingSmallPagingSize(final String dir) throws IOException {
         mantaClient.putDirectory(dir, true);
 
@@ -10,19 +10,19 @@ package com.joyent.manta.client;
 import com.joyent.manta.config.ConfigContext;
 import com.joyent.manta.config.IntegrationTestConfigContext;
 import com.joyent.manta.exception.MantaIOException;
-import org.apache.commons.codec.digest.DigestUtils;
+import com.joyent.test.util.ChunkedDigest;
+import com.joyent.test.util.DigestingOutputStream;
+import com.joyent.test.util.VerifyingInputStream;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang3.RandomUtils;
 import org.apache.commons.lang3.exception.ExceptionContext;
 import org.testng.Assert;
-import org.testng.AssertJUnit;
 import org.testng.annotations.*;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
 import java.util.UUID;
 
 /**
@@ -99,9 +99,8 @@ public class MantaObjectOutputStreamIT {
     public void canUploadMuchLargerFile() throws IOException {
         String path = testPathPrefix + "uploaded-" + UUID.randomUUID() + ".txt";
         MantaObjectOutputStream out = mantaClient.putAsOutputStream(path);
-        ByteArrayOutputStream bout = new ByteArrayOutputStream(6553600);
+        DigestingOutputStream dout = new DigestingOutputStream(out);
 
-        MessageDigest md5Digest = DigestUtils.getMd5Digest();
         long totalBytes = 0;
 
         try {
@@ -110,37 +109,27 @@ public class MantaObjectOutputStreamIT {
                 System.out.printf("[%03d] Writing to OutputStream with [%06d] sized chunk\n",
                         i+1, chunkSize);
                 byte[] randomBytes = RandomUtils.nextBytes(chunkSize);
-                md5Digest.update(randomBytes);
                 totalBytes += randomBytes.length;
-                out.write(randomBytes);
-                bout.write(randomBytes);
+                dout.write(randomBytes);
 
                 // periodically flush
                 if (i % 25 == 0) {
                     System.out.println("  Flushing OutputStream");
-                    out.flush();
+                    dout.flush();
                 }
             }
         } finally {
-            out.close();
-            bout.close();
+            dout.close();
         }
 
-        try (InputStream in = mantaClient.getAsInputStream(path)) {
-            byte[] expected = bout.toByteArray();
-            byte[] actual = IOUtils.readFully(in, (int)totalBytes);
-
-            AssertJUnit.assertArrayEquals("Bytes written via OutputStream don't match read bytes",
-                    expected, actual);
-        }
+        assertDownloadMatches(path, dout.getDigest(), totalBytes);
     }
 
     public void canUploadMuchLargerFileWithPeriodicWaits() throws Exception {
         String path = testPathPrefix + "uploaded-" + UUID.randomUUID() + ".txt";
         MantaObjectOutputStream out = mantaClient.putAsOutputStream(path);
-        ByteArrayOutputStream bout = new ByteArrayOutputStream(6553600);
+        DigestingOutputStream dout = new DigestingOutputStream(out);
 
-        MessageDigest md5Digest = DigestUtils.getMd5Digest();
         long totalBytes = 0;
         int chunkSize = -1;
 
@@ -152,10 +141,8 @@ public class MantaObjectOutputStreamIT {
                 final byte[] randomBytes = RandomUtils.nextBytes(chunkSize);
                 System.out.printf("[%03d] Writing to OutputStream with [%06d] sized chunk\n",
                         i+1, chunkSize);
-                md5Digest.update(randomBytes);
                 totalBytes += randomBytes.length;
-                out.write(randomBytes);
-                bout.write(randomBytes);
+                dout.write(randomBytes);
 
                 // periodically wait
                 if (i % 3 == 0) {
@@ -167,10 +154,8 @@ public class MantaObjectOutputStreamIT {
         } catch (MantaIOException e) {
             failureException = e;
         } finally {
-            bout.close();
-
             try {
-                out.close();
+                dout.close();
                 // Test to see if the file was successfully created
                 mantaClient.head(path);
             } catch (MantaIOException e) {
@@ -187,13 +172,20 @@ public class MantaObjectOutputStreamIT {
             throw failureException;
         }
 
-        try (InputStream in = mantaClient.getAsInputStream(path)) {
-            byte[] expected = bout.toByteArray();
-            byte[] actual = IOUtils.readFully(in, (int)totalBytes);
+        assertDownloadMatches(path, dout.getDigest(), totalBytes);
+    }
 
-            AssertJUnit.assertArrayEquals("Bytes written via "
-                            + "OutputStream doesn't match read bytes",
-                    expected, actual);
+    /**
+     * Streams an object back and checks it against the digest recorded while
+     * it was written, so memory use doesn't grow with the object size.
+     */
+    private void assertDownloadMatches(final String path, final ChunkedDigest expected,
+                                       final long totalBytes) throws IOException {
+        try (InputStream in = new VerifyingInputStream(mantaClient.getAsInputStream(path), expected)) {
+            final long actualBytes = IOUtils.copyLarge(in, NullOutputStream.NULL_OUTPUT_STREAM);
+
+            Assert.assertEquals(actualBytes, totalBytes,
+                    "Bytes written via OutputStream don't match read bytes");
         }
     }
 }
@@ -12,11 +12,16 @@ import com.joyent.manta.client.crypto.SecretKeyUtils;
 import com.joyent.manta.client.crypto.SupportedCipherDetails;
 import com.joyent.manta.client.crypto.SupportedCiphersLookupMap;
 import com.joyent.manta.util.MantaUtils;
+import com.joyent.test.server.LocalMantaServer;
+import com.joyent.test.server.RecordingProxy;
+import com.joyent.test.server.ReplayServer;
+import com.joyent.test.util.ThreadMode;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.ObjectUtils;
 
 import javax.crypto.SecretKey;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Base64;
 import java.util.UUID;
 
@@ -32,6 +37,16 @@ import static com.joyent.manta.client.MantaClient.SEPARATOR;
  */
 public class IntegrationTestConfigContext extends SystemSettingsConfigContext {
 
+    private static final long DEFAULT_LARGE_OBJECT_SIZE = 16L * 1024 * 1024;
+
+    private static final long DEFAULT_THROTTLE_BYTES_PER_SECOND = 256L * 1024;
+
+    private static final int DEFAULT_LARGE_DIRECTORY_SIZE = 1_000_000;
+
+    private static final String LOCAL_ENDPOINT_USER = "manta-it";
+
+    private static final double DEFAULT_REPLAY_TIME_SCALE = 0.0;
+
     private static String suiteRunId = UUID.randomUUID().toString();
 
     /**
@@ -40,6 +55,8 @@ public class IntegrationTestConfigContext extends SystemSettingsConfigContext {
      */
     public IntegrationTestConfigContext() {
         super(enableTestEncryption(new StandardConfigContext(), encryptionEnabled(), encryptionCipher()));
+        useLocalEndpointIfEnabled();
+        recordOrReplayIfEnabled();
     }
 
     /**
@@ -51,6 +68,8 @@ public class IntegrationTestConfigContext extends SystemSettingsConfigContext {
         super(enableTestEncryption(new StandardConfigContext(),
                 (encryptionEnabled() && usingEncryption == null) ||
                         BooleanUtils.isTrue(usingEncryption), encryptionCipher()));
+        useLocalEndpointIfEnabled();
+        recordOrReplayIfEnabled();
     }
 
     /**
@@ -71,6 +90,49 @@ public class IntegrationTestConfigContext extends SystemSettingsConfigContext {
         super(enableTestEncryption(new StandardConfigContext(),
                 (encryptionEnabled() && usingEncryption == null) ||
                         BooleanUtils.isTrue(usingEncryption), encryptionCipher));
+        useLocalEndpointIfEnabled();
+        recordOrReplayIfEnabled();
+    }
+
+    /**
+     * Points this context at the in-process {@link LocalMantaServer} when
+     * {@link #localEndpointEnabled()} is set, keeping the configured user.
+     */
+    private void useLocalEndpointIfEnabled() {
+        if (!localEndpointEnabled()) {
+            return;
+        }
+
+        final String user = ObjectUtils.firstNonNull(getMantaUser(), LOCAL_ENDPOINT_USER);
+        final LocalMantaServer server = LocalMantaServer.sharedInstance(user);
+
+        setMantaURL(server.getUrl());
+        setMantaUser(user);
+        setMantaKeyId(server.getKeyId());
+        setMantaKeyPath(server.getKeyPath().toString());
+        setPrivateKeyContent(null);
+    }
+
+    /**
+     * Points this context at a {@link ReplayServer} when {@link #replayLog()}
+     * is set, or at a {@link RecordingProxy} in front of the configured
+     * endpoint when {@link #recordLog()} is set. Credentials are left alone,
+     * so replays need the same user and key as the recording or
+     * manta.it.local for a throwaway key.
+     */
+    private void recordOrReplayIfEnabled() {
+        final String replayLog = replayLog();
+
+        if (replayLog != null) {
+            setMantaURL(ReplayServer.sharedInstance(Paths.get(replayLog), replayTimeScale()).getUrl());
+            return;
+        }
+
+        final String recordLog = recordLog();
+
+        if (recordLog != null) {
+            setMantaURL(RecordingProxy.sharedInstance(getMantaURL(), Paths.get(recordLog)).getUrl());
+        }
     }
 
     private static <T> SettableConfigContext<T> enableTestEncryption(
@@ -125,6 +187,108 @@ public class IntegrationTestConfigContext extends SystemSettingsConfigContext {
         return sysProp != null ? sysProp : envVar;
     }
 
+    /**
+     * Size of the generated objects used by tests that verify large uploads,
+     * ranges and seeks. Defaults to 16 MiB.
+     *
+     * @return object size in bytes
+     */
+    public static long largeObjectSize() {
+        final String size = ObjectUtils.firstNonNull(
+                System.getenv("MANTA_IT_LARGE_OBJECT_SIZE"),
+                System.getProperty("manta.it.large_object_size"));
+
+        return size != null ? Long.parseLong(size) : DEFAULT_LARGE_OBJECT_SIZE;
+    }
+
+    /**
+     * Number of entries in the directory used by tests that page through
+     * very large listings. Defaults to one million.
+     *
+     * @return number of entries
+     */
+    public static int largeDirectorySize() {
+        final String size = ObjectUtils.firstNonNull(
+                System.getenv("MANTA_IT_LARGE_DIRECTORY_SIZE"),
+                System.getProperty("manta.it.large_directory_size"));
+
+        return size != null ? Integer.parseInt(size) : DEFAULT_LARGE_DIRECTORY_SIZE;
+    }
+
+    /**
+     * Bandwidth used by tests that emulate a slow link. Defaults to 256 KiB/s,
+     * roughly an ISDN/DSL line.
+     *
+     * @return rate in bytes per second
+     */
+    public static long throttleBytesPerSecond() {
+        final String rate = ObjectUtils.firstNonNull(
+                System.getenv("MANTA_IT_THROTTLE_RATE"),
+                System.getProperty("manta.it.throttle_rate"));
+
+        return rate != null ? Long.parseLong(rate) : DEFAULT_THROTTLE_BYTES_PER_SECOND;
+    }
+
+    /**
+     * Whether tests run against an in-process Manta stand-in instead of the
+     * configured endpoint, so that the suite needs no network or credentials.
+     *
+     * @return true when MANTA_IT_LOCAL or manta.it.local is true
+     */
+    public static boolean localEndpointEnabled() {
+        return BooleanUtils.toBoolean(ObjectUtils.firstNonNull(
+                System.getenv("MANTA_IT_LOCAL"),
+                System.getProperty("manta.it.local")));
+    }
+
+    /**
+     * Kind of thread the tests that issue concurrent requests run them on.
+     * Virtual threads fall back to platform threads on JVMs without them.
+     *
+     * @return mode from MANTA_IT_THREAD_MODE or manta.it.thread_mode,
+     *         platform by default
+     */
+    public static ThreadMode threadMode() {
+        final String mode = ObjectUtils.firstNonNull(
+                System.getenv("MANTA_IT_THREAD_MODE"),
+                System.getProperty("manta.it.thread_mode"));
+
+        return mode != null ? ThreadMode.forName(mode) : ThreadMode.PLATFORM;
+    }
+
+    /**
+     * @return session log every exchange is recorded to, from MANTA_IT_RECORD
+     *         or manta.it.record, or null when not recording
+     */
+    public static String recordLog() {
+        return ObjectUtils.firstNonNull(
+                System.getenv("MANTA_IT_RECORD"),
+                System.getProperty("manta.it.record"));
+    }
+
+    /**
+     * @return session log responses are served from instead of an endpoint,
+     *         from MANTA_IT_REPLAY or manta.it.replay, or null when not replaying
+     */
+    public static String replayLog() {
+        return ObjectUtils.firstNonNull(
+                System.getenv("MANTA_IT_REPLAY"),
+                System.getProperty("manta.it.replay"));
+    }
+
+    /**
+     * @return factor applied to recorded latencies during a replay, from
+     *         MANTA_IT_REPLAY_TIME_SCALE or manta.it.replay_time_scale; 0
+     *         replays as fast as possible and 1 at the recorded pace
+     */
+    public static double replayTimeScale() {
+        final String scale = ObjectUtils.firstNonNull(
+                System.getenv("MANTA_IT_REPLAY_TIME_SCALE"),
+                System.getProperty("manta.it.replay_time_scale"));
+
+        return scale != null ? Double.parseDouble(scale) : DEFAULT_REPLAY_TIME_SCALE;
+    }
+
     public static String generateSuiteBasePath(final ConfigContext config) {
         final String integrationTestBase = ObjectUtils.firstNonNull(
                 System.getenv("MANTA_IT_PATH"),
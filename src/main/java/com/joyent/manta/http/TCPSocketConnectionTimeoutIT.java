@@ -9,26 +9,43 @@ package com.joyent.manta.http;
 
 import com.joyent.manta.client.MantaClient;
 import com.joyent.manta.config.*;
-import com.joyent.manta.exception.MantaIOException;
+import com.joyent.test.server.StallingEndpoint;
+import org.HdrHistogram.Histogram;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.testng.Assert;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
-import java.time.Duration;
-import java.time.Instant;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Integration tests for verifying the connection timeout behaviour for an invalid connection,
- * implies having an invalid value for MANTA_URL.
- * This Integration test is written for the sole purpose of verifying Issue #441.
+ * Integration tests for verifying the connection and socket timeout behaviour
+ * against a local endpoint that stalls connections in a chosen phase.
+ * This Integration test was first written for the sole purpose of verifying Issue #441.
  *
  * @author <a href="https://github.com/dekobon">Ashwin A Nair</a>
  */
 @Test(groups = {"timeout"})
 public class TCPSocketConnectionTimeoutIT {
+    /**
+     * Requests timed for each kind of stall.
+     */
+    private static final int TRIALS = 5;
+
+    private static final int TIMEOUT_MILLIS = 1000;
+
+    /**
+     * Timers may fire this much before the deadline.
+     */
+    private static final long TIMER_SLACK_MILLIS = 10;
+
+    private static final long MEDIAN_TOLERANCE_MILLIS = 250;
+
+    private static final long MAX_TOLERANCE_MILLIS = 1000;
+
     private MantaClient mantaClient;
 
     private String testPathPrefix;
@@ -56,52 +73,90 @@ public class TCPSocketConnectionTimeoutIT {
     /**
      * Test that verifies that the connection timeout setting
      * {@link ConfigContext#getTimeout()} is applied and is actually working.
-     *
-     * Note: this test will not work correctly when run through a proxy server.
+     * Connections go to a local endpoint that drops SYNs, so no unroutable
+     * address or network path is involved.
      */
     public void verifyConnectionTimeoutSettingWorks() throws IOException {
+        verifyTimeout(StallingEndpoint.Mode.BLACK_HOLE, "ConnectTimeoutException");
+    }
+
+    @DataProvider(name = "stalledPhases")
+    public Object[][] stalledPhases() {
+        return new Object[][] {
+                {StallingEndpoint.Mode.STALL_AFTER_ACCEPT},
+                {StallingEndpoint.Mode.STALL_MID_TLS},
+                {StallingEndpoint.Mode.STALL_AFTER_HEADERS}
+        };
+    }
+
+    /**
+     * Test that verifies that the socket timeout setting
+     * {@link ConfigContext#getTcpSocketTimeout()} is applied whichever phase
+     * of a request the server stops answering in.
+     */
+    @Test(dataProvider = "stalledPhases")
+    public void verifySocketTimeoutSettingWorks(final StallingEndpoint.Mode mode) throws IOException {
+        verifyTimeout(mode, "SocketTimeoutException");
+    }
+
+    /**
+     * Times several requests to a stalling endpoint and checks the
+     * distribution of the times against the configured timeout, which
+     * tolerates scheduling noise that an exact one second check does not.
+     */
+    private void verifyTimeout(final StallingEndpoint.Mode mode, final String expectedCause) throws IOException {
+        final Histogram millis = new Histogram(3);
+
+        try (StallingEndpoint endpoint = new StallingEndpoint(mode).start();
+             MantaClient client = new MantaClient(stalledConfig(endpoint.getUrl()))) {
+            for (int i = 0; i < TRIALS; i++) {
+                final long start = System.nanoTime();
+
+                try {
+                    if (mode == StallingEndpoint.Mode.STALL_AFTER_HEADERS) {
+                        client.getAsString(testPathPrefix + "stalled-object");
+                    } else {
+                        client.head(testPathPrefix);
+                    }
+
+                    Assert.fail("Request to a stalled endpoint completed");
+                } catch (IOException e) {
+                    final boolean timedOut = ExceptionUtils.getThrowableList(e).stream()
+                            .anyMatch(t -> t.getClass().getSimpleName().equals(expectedCause));
+
+                    Assert.assertTrue(timedOut, "Expected exception " + expectedCause
+                            + " was not thrown. Actual Exception:\n" + ExceptionUtils.getStackTrace(e));
+                }
+
+                millis.recordValue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }
+
+        final String summary = String.format("%s timed out in p50=%dms p90=%dms max=%dms over %d requests",
+                mode, millis.getValueAtPercentile(50), millis.getValueAtPercentile(90), millis.getMaxValue(),
+                millis.getTotalCount());
+        System.out.println(summary);
+
+        Assert.assertTrue(millis.getMinValue() >= TIMEOUT_MILLIS - TIMER_SLACK_MILLIS, summary);
+        Assert.assertTrue(millis.getValueAtPercentile(50) < TIMEOUT_MILLIS + MEDIAN_TOLERANCE_MILLIS, summary);
+        Assert.assertTrue(millis.getMaxValue() < TIMEOUT_MILLIS + MAX_TOLERANCE_MILLIS, summary);
+    }
+
+    private ConfigContext stalledConfig(final String url) {
         final AuthAwareConfigContext authConfig = new AuthAwareConfigContext(
                 new IntegrationTestConfigContext());
 
-        final ConfigContext badConfig = new ChainedConfigContext(
+        return new ChainedConfigContext(
                 config,
                 new StandardConfigContext()
                         .setRetries(0)
-                        .setTimeout(1000)
+                        .setTimeout(TIMEOUT_MILLIS)
+                        .setTcpSocketTimeout(TIMEOUT_MILLIS)
                         .setMantaUser(authConfig.getMantaUser())
                         .setMantaKeyId(authConfig.getMantaKeyId())
                         .setMantaKeyPath(authConfig.getMantaKeyPath())
-                        /* This *should* be an invalid IP/port. 192.0.2.0/24
-                           is intended to be reserved as TEST-NET-1 thus giving
-                           us an invalid/unreachable MANTA_URL value. */
-                        .setMantaURL("https://192.0.2.0:9324"),
+                        .setMantaURL(url),
                 new DefaultsConfigContext()
         );
-
-        Instant start = null;
-        Instant stop;
-
-        try (MantaClient client = new MantaClient(badConfig)){
-            start = Instant.now();
-            client.head(testPathPrefix);
-        } catch (MantaIOException e) {
-            final Throwable cause = ExceptionUtils.getThrowableList(e).get(1);
-
-            Assert.assertEquals(cause.getClass().getSimpleName(),
-                    "ConnectTimeoutException",
-                    "Expected exception ConnectTimeoutException was not thrown. Actual Exception:\n"
-                            + ExceptionUtils.getStackTrace(e));
-        } finally {
-            stop = Instant.now();
-        }
-
-        Duration totalTime = Duration.between(start, stop);
-
-        if (totalTime.getSeconds() != 1) {
-            final String msg = String.format("Expected total connection time duration "
-                    + "to be 1 second. Actually [%d] ms",
-                    totalTime.toMillis());
-            Assert.fail(msg);
-        }
     }
 }
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.load;
+
+/**
+ * Kinds of operation a {@link Workload} issues. Operations other than
+ * {@link #PUT} and {@link #LIST} act on an object the worker created
+ * earlier; a worker without objects issues a {@link #PUT} instead.
+ */
+public enum Operation {
+    /** Uploads a new object of a size drawn from the spec. */
+    PUT,
+    /** Downloads an object to the end, verifying it if the spec asks to. */
+    GET,
+    /** Reads the metadata of an object. */
+    HEAD,
+    /** Lists a directory of the tree to the end. */
+    LIST,
+    /** Deletes an object. */
+    DELETE,
+    /** Moves an object to a new name in a random directory of the tree. */
+    MOVE
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.load;
+
+import com.joyent.manta.client.MantaClient;
+import com.joyent.manta.client.MantaObject;
+import com.joyent.manta.config.ConfigContext;
+import com.joyent.manta.config.IntegrationTestConfigContext;
+import com.joyent.test.util.DeterministicContent;
+import com.joyent.test.util.RandomInputStream;
+import com.joyent.test.util.ThreadMode;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import static com.joyent.manta.client.MantaClient.SEPARATOR;
+
+/**
+ * Generates the load described by a {@link WorkloadSpec} with a
+ * {@link MantaClient} and reports throughput and latency per operation.
+ *
+ * <p>Each worker issues one operation at a time, drawing the operation and
+ * object size from the spec, and keeps track of the objects it created so
+ * that reads, deletes and moves never race with another worker. Objects are
+ * named after the worker and spread over the leaf directories of the tree,
+ * which is created under the base directory before the run; the base
+ * directory is left for the caller to remove.</p>
+ *
+ * <p>In a closed loop the workers issue operations back to back. In an open
+ * loop, when the spec has a rate, operation {@code n} is scheduled to start
+ * {@code n / rate} seconds into the run; the next free worker claims it,
+ * waits for its scheduled start if it is early and measures its latency from
+ * that start. A stalled endpoint therefore shows up in the latency of every
+ * operation scheduled during the stall, instead of silently lowering the
+ * request rate as it does in a closed loop.</p>
+ *
+ * <p>Workers run on the spec's {@link ThreadMode}. Each worker keeps one
+ * request in flight, so with virtual threads the client's maximum number of
+ * connections, not the number of threads, bounds the requests in flight;
+ * set {@code manta.max_connections} at least as high as the concurrency.</p>
+ *
+ * <p>Run from the command line with the spec as arguments, configured like
+ * the integration tests, e.g.
+ * {@code java -Dmanta.it.local=true com.joyent.manta.load.Workload mix=put:1,get:4 operations=10000}.</p>
+ */
+public class Workload {
+    /**
+     * Size of the buffer each worker reads downloads into, kept small so
+     * that thousands of virtual thread workers stay cheap.
+     */
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Most failures kept for the report.
+     */
+    private static final int MAX_FAILURES = 10;
+
+    private final MantaClient client;
+    private final String basePath;
+    private final WorkloadSpec spec;
+    private final List<String> leafDirectories = new ArrayList<>();
+    private final List<Throwable> failures = new ArrayList<>();
+
+    /**
+     * Creates a new workload; call {@link #run()} to generate the load.
+     *
+     * @param client client to issue operations with
+     * @param basePath directory the tree is created under
+     * @param spec load to generate
+     */
+    public Workload(final MantaClient client, final String basePath, final WorkloadSpec spec) {
+        this.client = client;
+        this.basePath = StringUtils.removeEnd(basePath, SEPARATOR);
+        this.spec = spec;
+    }
+
+    /**
+     * Creates the directory tree and the initial objects, then generates
+     * load until the spec's duration or operation count is reached.
+     *
+     * @return results of the run
+     * @throws IOException thrown when the tree or initial objects can't be created
+     * @throws InterruptedException thrown when interrupted while waiting for the workers
+     */
+    public WorkloadReport run() throws IOException, InterruptedException {
+        leafDirectories.clear();
+
+        synchronized (failures) {
+            failures.clear();
+        }
+
+        createTree(basePath, spec.getFanOutDepth());
+
+        final List<Worker> workers = new ArrayList<>(spec.getConcurrency());
+        final SplittableRandom seeds = new SplittableRandom(spec.getSeed());
+
+        for (int i = 0; i < spec.getConcurrency(); i++) {
+            workers.add(new Worker(i, seeds.split()));
+        }
+
+        final ExecutorService executor = spec.getThreadMode().newExecutor("workload", spec.getConcurrency());
+
+        try {
+            final List<Callable<Void>> preloads = new ArrayList<>(workers.size());
+            final int initialObjects = spec.getInitialObjects();
+
+            for (Worker worker : workers) {
+                final int count = initialObjects / workers.size()
+                        + (worker.id < initialObjects % workers.size() ? 1 : 0);
+                preloads.add(() -> {
+                    worker.preload(count);
+                    return null;
+                });
+            }
+
+            awaitAll(executor.invokeAll(preloads));
+
+            final long start = System.nanoTime();
+            final long runNanos = spec.getDuration() != null ? spec.getDuration().toNanos() : Long.MAX_VALUE;
+            final long limit = spec.getOperations() > 0 ? spec.getOperations() : Long.MAX_VALUE;
+            final AtomicLong claimed = new AtomicLong();
+            final List<Callable<Void>> runs = new ArrayList<>(workers.size());
+
+            for (Worker worker : workers) {
+                runs.add(() -> {
+                    if (spec.isOpenLoop()) {
+                        worker.runOpenLoop(start, runNanos, limit, claimed);
+                    } else {
+                        worker.runClosedLoop(start, runNanos, limit, claimed);
+                    }
+
+                    return null;
+                });
+            }
+
+            awaitAll(executor.invokeAll(runs));
+            final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            final List<Map<Operation, WorkloadReport.OperationStats>> stats = new ArrayList<>(workers.size());
+
+            for (Worker worker : workers) {
+                stats.add(worker.stats);
+            }
+
+            synchronized (failures) {
+                return WorkloadReport.merge(spec, elapsed, stats, new ArrayList<>(failures));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void createTree(final String directory, final int depth) throws IOException {
+        if (depth == 0) {
+            client.putDirectory(directory, true);
+            leafDirectories.add(directory);
+            return;
+        }
+
+        for (int i = 0; i < spec.getFanOutWidth(); i++) {
+            createTree(directory + SEPARATOR + "d" + i, depth - 1);
+        }
+    }
+
+    private static void awaitAll(final List<Future<Void>> futures) throws IOException, InterruptedException {
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+
+                throw new IllegalStateException("Workload worker failed", e.getCause());
+            }
+        }
+    }
+
+    private void recordFailure(final Throwable failure) {
+        synchronized (failures) {
+            if (failures.size() < MAX_FAILURES) {
+                failures.add(failure);
+            }
+        }
+    }
+
+    /**
+     * Object created by a worker, with what is needed to verify it.
+     */
+    private static final class LiveObject {
+        private final String path;
+        private final long size;
+        private final long seed;
+
+        private LiveObject(final String path, final long size, final long seed) {
+            this.path = path;
+            this.size = size;
+            this.seed = seed;
+        }
+    }
+
+    /**
+     * Issues operations one at a time on behalf of a single thread.
+     */
+    private final class Worker {
+        private final int id;
+        private final SplittableRandom random;
+        private final Map<Operation, WorkloadReport.OperationStats> stats = WorkloadReport.newWorkerStats();
+        private final List<LiveObject> objects = new ArrayList<>();
+        private byte[] buffer;
+        private long sequence = 0L;
+
+        private Worker(final int id, final SplittableRandom random) {
+            this.id = id;
+            this.random = random;
+        }
+
+        private void preload(final int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                put();
+            }
+        }
+
+        /**
+         * Issues operations back to back until the run time is over or the
+         * operation budget runs out.
+         *
+         * @param start {@link System#nanoTime()} the run started at
+         * @param runNanos time to run for
+         * @param limit operations to issue across all workers
+         * @param claimed operations claimed by all workers so far
+         */
+        private void runClosedLoop(final long start, final long runNanos, final long limit,
+                                   final AtomicLong claimed) {
+            while (System.nanoTime() - start < runNanos && !Thread.currentThread().isInterrupted()
+                    && claimed.getAndIncrement() < limit) {
+                issue(spec.nextOperation(random), System.nanoTime());
+            }
+        }
+
+        /**
+         * Claims scheduled operations in order and issues each at its
+         * scheduled start, or at once if it is already late, until the
+         * schedule passes the run time or the operation budget runs out.
+         *
+         * @param start {@link System#nanoTime()} the schedule starts at
+         * @param runNanos time to run for
+         * @param limit operations to issue across all workers
+         * @param claimed operations claimed by all workers so far
+         */
+        private void runOpenLoop(final long start, final long runNanos, final long limit,
+                                 final AtomicLong claimed) {
+            final double intervalNanos = spec.getIntervalNanos();
+
+            while (!Thread.currentThread().isInterrupted()) {
+                final long slot = claimed.getAndIncrement();
+                final long offset = (long) (slot * intervalNanos);
+
+                if (slot >= limit || offset >= runNanos) {
+                    return;
+                }
+
+                final long scheduled = start + offset;
+                long wait;
+
+                while ((wait = scheduled - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                }
+
+                issue(spec.nextOperation(random), scheduled);
+            }
+        }
+
+        /**
+         * Issues one operation and records its outcome.
+         *
+         * @param drawn operation drawn from the mix
+         * @param scheduled {@link System#nanoTime()} the operation was due to
+         *                  start, which its latency is measured from
+         */
+        private void issue(final Operation drawn, final long scheduled) {
+            final Operation operation = drawn != Operation.PUT && drawn != Operation.LIST && objects.isEmpty()
+                    ? Operation.PUT : drawn;
+            final long start = System.nanoTime();
+
+            try {
+                final long bytes = execute(operation);
+                final long end = System.nanoTime();
+                stats.get(operation).record(end - scheduled, end - start, bytes);
+            } catch (IOException | RuntimeException e) {
+                stats.get(operation).recordError();
+                recordFailure(e);
+            }
+        }
+
+        /**
+         * @return bytes uploaded or downloaded
+         */
+        private long execute(final Operation operation) throws IOException {
+            switch (operation) {
+                case PUT:
+                    return put();
+                case GET:
+                    return get(objects.get(random.nextInt(objects.size())));
+                case HEAD:
+                    client.head(objects.get(random.nextInt(objects.size())).path);
+                    return 0L;
+                case LIST:
+                    try (Stream<MantaObject> listing = client.listObjects(randomLeaf())) {
+                        listing.count();
+                    }
+                    return 0L;
+                case DELETE:
+                    client.delete(removeRandomObject().path);
+                    return 0L;
+                case MOVE:
+                    final LiveObject moved = removeRandomObject();
+                    final String destination = newObjectPath();
+                    client.move(moved.path, destination);
+                    objects.add(new LiveObject(destination, moved.size, moved.seed));
+                    return 0L;
+                default:
+                    throw new IllegalArgumentException("Unknown operation " + operation);
+            }
+        }
+
+        private long put() throws IOException {
+            final String path = newObjectPath();
+            final long size = spec.nextObjectSize(random);
+            final long seed = random.nextLong();
+            client.put(path, new RandomInputStream(size, seed), size, null, null);
+            objects.add(new LiveObject(path, size, seed));
+            return size;
+        }
+
+        private long get(final LiveObject object) throws IOException {
+            try (InputStream in = client.getAsInputStream(object.path)) {
+                if (spec.isVerify()) {
+                    final long mismatch = new DeterministicContent(object.seed).firstMismatch(in, 0L, object.size);
+
+                    if (mismatch != -1L) {
+                        throw new IOException(String.format("Content of %s differs from the upload at byte %d",
+                                object.path, mismatch));
+                    }
+
+                    return object.size;
+                }
+
+                if (buffer == null) {
+                    buffer = new byte[READ_BUFFER_SIZE];
+                }
+
+                long total = 0L;
+                int read;
+
+                while ((read = in.read(buffer)) != -1) {
+                    total += read;
+                }
+
+                return total;
+            }
+        }
+
+        /**
+         * Removes an object from the worker's objects, swapping the last one
+         * into its place.
+         */
+        private LiveObject removeRandomObject() {
+            final int index = random.nextInt(objects.size());
+            final LiveObject removed = objects.get(index);
+            final LiveObject last = objects.remove(objects.size() - 1);
+
+            if (index < objects.size()) {
+                objects.set(index, last);
+            }
+
+            return removed;
+        }
+
+        private String newObjectPath() {
+            return randomLeaf() + SEPARATOR + "w" + id + "-" + sequence++;
+        }
+
+        private String randomLeaf() {
+            return leafDirectories.get(random.nextInt(leafDirectories.size()));
+        }
+    }
+
+    /**
+     * Runs a workload against the endpoint the integration tests are
+     * configured for and prints the report.
+     *
+     * @param args spec in text form, see {@link WorkloadSpec#parse(String)}
+     * @throws Exception thrown when the run fails
+     */
+    public static void main(final String[] args) throws Exception {
+        final WorkloadSpec spec = WorkloadSpec.parse(String.join(" ", args));
+        final ConfigContext config = new IntegrationTestConfigContext(false);
+        final String basePath = IntegrationTestConfigContext.generateBasePathWithoutSeparator(config, "workload");
+
+        try (MantaClient client = new MantaClient(config)) {
+            try {
+                System.out.println(new Workload(client, basePath, spec).run());
+            } finally {
+                client.deleteRecursive(basePath);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.load;
+
+import com.joyent.manta.client.MantaClient;
+import com.joyent.manta.config.IntegrationTestConfigContext;
+import com.joyent.test.server.LocalMantaServer;
+import com.joyent.test.server.NetworkProfile;
+import org.HdrHistogram.Histogram;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs workloads against a private {@link LocalMantaServer}, so that the
+ * network profile can be changed without affecting other tests and the
+ * scheduling of open loop runs can be checked against a known service time.
+ */
+@Test(groups = {"load"}, singleThreaded = true)
+public class WorkloadIT {
+    private LocalMantaServer server;
+    private MantaClient client;
+    private String basePath;
+
+    @BeforeClass
+    public void beforeClass() throws IOException {
+        server = new LocalMantaServer("workload-it").start();
+
+        final IntegrationTestConfigContext config = new IntegrationTestConfigContext(false);
+        config.setMantaURL(server.getUrl());
+        config.setMantaUser(server.getAccount());
+        config.setMantaKeyId(server.getKeyId());
+        config.setMantaKeyPath(server.getKeyPath().toString());
+        config.setPrivateKeyContent(null);
+
+        client = new MantaClient(config);
+        basePath = "/" + server.getAccount() + "/stor/" + UUID.randomUUID();
+    }
+
+    @AfterMethod
+    public void resetNetwork() {
+        server.setNetworkProfile(NetworkProfile.NONE);
+    }
+
+    @AfterClass
+    public void afterClass() throws IOException {
+        if (client != null) {
+            client.closeWithWarning();
+        }
+
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    public void openLoopIssuesOperationsOnSchedule() throws IOException, InterruptedException {
+        final int operations = 200;
+        final double rate = 400.0;
+        final WorkloadSpec spec = WorkloadSpec.builder()
+                .mix(Operation.HEAD, 1)
+                .concurrency(4)
+                .initialObjects(4)
+                .operations(operations)
+                .rate(rate)
+                .build();
+
+        final WorkloadReport report = new Workload(client, basePath + "/schedule", spec).run();
+
+        Assert.assertEquals(report.getTotalErrorCount(), 0, report.toString());
+        Assert.assertEquals(report.getTotalCount(), operations, report.toString());
+
+        // the last operation is not due before (operations - 1) / rate seconds
+        final long lastDueNanos = (long) ((operations - 1) * TimeUnit.SECONDS.toNanos(1) / rate);
+        Assert.assertTrue(report.getElapsed().toNanos() >= lastDueNanos,
+                "Open loop ran ahead of its schedule: " + report);
+    }
+
+    /**
+     * With a single worker and a service time four times the scheduled
+     * interval, every operation starts later than the one before it. A
+     * closed loop would report the service time alone; the open loop must
+     * report the growing delay.
+     */
+    public void openLoopLatencyIncludesTimeSpentBehindSchedule() throws IOException, InterruptedException {
+        final Duration roundTrip = Duration.ofMillis(20);
+        final int operations = 50;
+        final WorkloadSpec spec = WorkloadSpec.builder()
+                .mix(Operation.HEAD, 1)
+                .initialObjects(1)
+                .operations(operations)
+                .rate(200.0)
+                .build();
+        server.setNetworkProfile(new NetworkProfile("stalling", roundTrip, Duration.ZERO, 0.0, 0L));
+
+        final WorkloadReport report = new Workload(client, basePath + "/behind", spec).run();
+        final Histogram latency = report.getOperation(Operation.HEAD).getLatency();
+        final Histogram serviceTime = report.getOperation(Operation.HEAD).getServiceTime();
+
+        Assert.assertEquals(report.getTotalErrorCount(), 0, report.toString());
+        Assert.assertEquals(report.getTotalCount(), operations, report.toString());
+        Assert.assertTrue(serviceTime.getValueAtPercentile(50) >= roundTrip.toNanos(), report.toString());
+        Assert.assertTrue(latency.getMaxValue() > 5 * serviceTime.getMaxValue(),
+                "Latency doesn't include the time spent behind schedule: " + report);
+    }
+
+    public void closedLoopLatencyIsServiceTime() throws IOException, InterruptedException {
+        final WorkloadSpec spec = WorkloadSpec.builder()
+                .mix(Operation.PUT, 1).mix(Operation.GET, 1)
+                .concurrency(2)
+                .operations(100)
+                .build();
+
+        final WorkloadReport report = new Workload(client, basePath + "/closed", spec).run();
+
+        Assert.assertEquals(report.getTotalErrorCount(), 0, report.toString());
+
+        for (WorkloadReport.OperationStats stats : report.getOperations().values()) {
+            final long serviceMax = stats.getServiceTime().getMaxValue();
+            Assert.assertTrue(stats.getLatency().getMaxValue() - serviceMax
+                            <= Math.max(TimeUnit.MILLISECONDS.toNanos(1), serviceMax / 10),
+                    "Closed loop latency should be its service time: " + report);
+        }
+    }
+}
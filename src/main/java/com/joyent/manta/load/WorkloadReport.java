@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.load;
+
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a {@link Workload} run: per operation counts, bytes moved and
+ * latency histograms, and the throughput they add up to.
+ *
+ * <p>Each operation has two histograms. Latency is measured from the
+ * scheduled start in an open loop, so time spent waiting for a free worker
+ * behind a stalled request is included, as it would be for a real client;
+ * service time is measured from the moment the request was actually sent.
+ * In a closed loop the two are the same.</p>
+ */
+public final class WorkloadReport {
+    /**
+     * Precision of the latency histograms.
+     */
+    static final int SIGNIFICANT_DIGITS = 3;
+
+    /**
+     * Most failures kept as examples.
+     */
+    private static final int MAX_FAILURE_SAMPLES = 10;
+
+    /**
+     * Results of one kind of operation. Instances are filled by a single
+     * worker and merged into the report once the run is over.
+     */
+    public static final class OperationStats {
+        private final Operation operation;
+        private final Histogram latency = new Histogram(SIGNIFICANT_DIGITS);
+        private final Histogram serviceTime = new Histogram(SIGNIFICANT_DIGITS);
+        private long count;
+        private long errors;
+        private long bytes;
+
+        OperationStats(final Operation operation) {
+            this.operation = operation;
+        }
+
+        /**
+         * @param latencyNanos time from the scheduled start of a successful
+         *                     operation to its end
+         * @param serviceNanos time from the actual start of the operation
+         *                     to its end
+         * @param bytesMoved bytes uploaded or downloaded by the operation
+         */
+        void record(final long latencyNanos, final long serviceNanos, final long bytesMoved) {
+            latency.recordValue(Math.max(0L, latencyNanos));
+            serviceTime.recordValue(Math.max(0L, serviceNanos));
+            count++;
+            bytes += bytesMoved;
+        }
+
+        /**
+         * Counts a failed operation, which is left out of the latencies.
+         */
+        void recordError() {
+            errors++;
+        }
+
+        void add(final OperationStats other) {
+            latency.add(other.latency);
+            serviceTime.add(other.serviceTime);
+            count += other.count;
+            errors += other.errors;
+            bytes += other.bytes;
+        }
+
+        /**
+         * @return kind of operation
+         */
+        public Operation getOperation() {
+            return operation;
+        }
+
+        /**
+         * @return successful operations
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return failed operations
+         */
+        public long getErrorCount() {
+            return errors;
+        }
+
+        /**
+         * @return bytes uploaded or downloaded by successful operations
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return latencies of successful operations in nanoseconds, from
+         *         the scheduled start in an open loop
+         */
+        public Histogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return service times of successful operations in nanoseconds,
+         *         from the actual start
+         */
+        public Histogram getServiceTime() {
+            return serviceTime;
+        }
+    }
+
+    private final WorkloadSpec spec;
+    private final Duration elapsed;
+    private final Map<Operation, OperationStats> operations;
+    private final List<Throwable> failures;
+
+    private WorkloadReport(final WorkloadSpec spec, final Duration elapsed,
+                           final Map<Operation, OperationStats> operations, final List<Throwable> failures) {
+        this.spec = spec;
+        this.elapsed = elapsed;
+        this.operations = operations;
+        this.failures = failures;
+    }
+
+    /**
+     * Merges the statistics of the workers of a run.
+     *
+     * @param spec spec the run followed
+     * @param elapsed time the run took, excluding preparation
+     * @param workerStats statistics of each worker
+     * @param failures failures seen by the workers, in no particular order
+     * @return new report
+     */
+    static WorkloadReport merge(final WorkloadSpec spec, final Duration elapsed,
+                                final List<Map<Operation, OperationStats>> workerStats,
+                                final List<Throwable> failures) {
+        final Map<Operation, OperationStats> merged = new EnumMap<>(Operation.class);
+
+        for (Map<Operation, OperationStats> stats : workerStats) {
+            for (OperationStats operation : stats.values()) {
+                merged.computeIfAbsent(operation.getOperation(), OperationStats::new).add(operation);
+            }
+        }
+
+        final List<Throwable> samples = new ArrayList<>(
+                failures.subList(0, Math.min(failures.size(), MAX_FAILURE_SAMPLES)));
+
+        return new WorkloadReport(spec, elapsed, Collections.unmodifiableMap(merged),
+                Collections.unmodifiableList(samples));
+    }
+
+    /**
+     * Creates the per operation statistics a worker fills.
+     *
+     * @return statistics for every operation
+     */
+    static Map<Operation, OperationStats> newWorkerStats() {
+        final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats(operation));
+        }
+
+        return stats;
+    }
+
+    /**
+     * @return spec the run followed
+     */
+    public WorkloadSpec getSpec() {
+        return spec;
+    }
+
+    /**
+     * @return time the run took, excluding preparation
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * @return statistics of the operations issued, in operation order
+     */
+    public Map<Operation, OperationStats> getOperations() {
+        return operations;
+    }
+
+    /**
+     * @param operation kind of operation
+     * @return statistics of the operation, empty when it wasn't issued
+     */
+    public OperationStats getOperation(final Operation operation) {
+        final OperationStats stats = operations.get(operation);
+        return stats != null ? stats : new OperationStats(operation);
+    }
+
+    /**
+     * @return successful operations of every kind
+     */
+    public long getTotalCount() {
+        long count = 0;
+
+        for (OperationStats stats : operations.values()) {
+            count += stats.getCount();
+        }
+
+        return count;
+    }
+
+    /**
+     * @return failed operations of every kind
+     */
+    public long getTotalErrorCount() {
+        long errors = 0;
+
+        for (OperationStats stats : operations.values()) {
+            errors += stats.getErrorCount();
+        }
+
+        return errors;
+    }
+
+    /**
+     * @return successful operations per second
+     */
+    public double getThroughput() {
+        return perSecond(getTotalCount());
+    }
+
+    /**
+     * @return up to ten failures seen during the run, as examples
+     */
+    public List<Throwable> getFailureSamples() {
+        return failures;
+    }
+
+    private double perSecond(final long count) {
+        final long nanos = Math.max(1L, elapsed.toNanos());
+        return count * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder table = new StringBuilder();
+        table.append(String.format("%s%nelapsed=%dms throughput=%.1f ops/s errors=%d%n",
+                spec, elapsed.toMillis(), getThroughput(), getTotalErrorCount()));
+        table.append(String.format("%-6s %9s %7s %10s %10s %9s %9s %9s %9s %9s %12s%n",
+                "op", "count", "errors", "ops/s", "MiB/s", "p50(us)", "p90(us)", "p99(us)", "p99.9(us)",
+                "max(us)", "svc p99(us)"));
+
+        for (OperationStats stats : operations.values()) {
+            if (stats.getCount() == 0 && stats.getErrorCount() == 0) {
+                continue;
+            }
+
+            final Histogram latency = stats.getLatency();
+            table.append(String.format("%-6s %9d %7d %10.1f %10.2f %9d %9d %9d %9d %9d %12d%n",
+                    stats.getOperation(), stats.getCount(), stats.getErrorCount(),
+                    perSecond(stats.getCount()), perSecond(stats.getBytes()) / (1024 * 1024),
+                    micros(latency.getValueAtPercentile(50)), micros(latency.getValueAtPercentile(90)),
+                    micros(latency.getValueAtPercentile(99)), micros(latency.getValueAtPercentile(99.9)),
+                    micros(latency.getMaxValue()), micros(stats.getServiceTime().getValueAtPercentile(99))));
+        }
+
+        for (Throwable failure : failures) {
+            table.append("failure: ").append(failure).append('\n');
+        }
+
+        return table.toString();
+    }
+
+    private static long micros(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,780 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.load;
+
+import com.joyent.test.util.ThreadMode;
+import org.apache.commons.lang3.StringUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable description of the load a {@link Workload} generates: the mix of
+ * operations, the distribution of object sizes, how many operations run at
+ * once, when the run stops and how objects are spread over a directory tree.
+ * Specs are built with {@link #builder()} or parsed from their text form
+ * with {@link #parse(String)}.
+ *
+ * <p>Example: sixteen workers doing mostly reads of small objects with a
+ * few large uploads, over a tree of 256 directories, for five minutes:</p>
+ * <pre>
+ * WorkloadSpec spec = WorkloadSpec.builder()
+ *         .mix(Operation.GET, 60).mix(Operation.HEAD, 20).mix(Operation.PUT, 15)
+ *         .mix(Operation.LIST, 3).mix(Operation.DELETE, 2)
+ *         .objectSizes(1024, 64 * 1024, 95)
+ *         .objectSizes(1024 * 1024, 16 * 1024 * 1024, 5)
+ *         .concurrency(16)
+ *         .fanOut(16, 2)
+ *         .initialObjects(10_000)
+ *         .duration(Duration.ofMinutes(5))
+ *         .build();
+ * </pre>
+ * <p>or, as text:</p>
+ * <pre>
+ * mix=get:60,head:20,put:15,list:3,delete:2 sizes=1k-64k:95,1m-16m:5
+ * concurrency=16 fanout=16x2 objects=10000 duration=5m
+ * </pre>
+ *
+ * <p>Without a {@link Builder#rate(double) rate} the workers issue
+ * operations back to back (a closed loop), so a slow response delays the
+ * requests behind it and their latency goes unrecorded. With a rate,
+ * operations are issued on a fixed schedule (an open loop) and latency is
+ * measured from each operation's scheduled start, which is what a client
+ * arriving at that moment would see.</p>
+ *
+ * <p>Workers run on platform threads unless {@link Builder#threads(ThreadMode)
+ * virtual threads} are asked for, which makes a concurrency of thousands
+ * affordable; the client's connection pool then becomes the limit on
+ * requests in flight.</p>
+ */
+public final class WorkloadSpec {
+    /**
+     * Range of object sizes drawn uniformly, with the weight of the range
+     * among all ranges of a spec.
+     */
+    public static final class SizeRange {
+        private final long min;
+        private final long max;
+        private final int weight;
+
+        private SizeRange(final long min, final long max, final int weight) {
+            this.min = min;
+            this.max = max;
+            this.weight = weight;
+        }
+
+        /**
+         * @return smallest size in bytes
+         */
+        public long getMin() {
+            return min;
+        }
+
+        /**
+         * @return largest size in bytes
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @return weight of the range
+         */
+        public int getWeight() {
+            return weight;
+        }
+
+        @Override
+        public String toString() {
+            final String range = min == max ? formatSize(min) : formatSize(min) + "-" + formatSize(max);
+            return range + ":" + weight;
+        }
+    }
+
+    /**
+     * Builder for {@link WorkloadSpec} instances.
+     */
+    public static final class Builder {
+        private final Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        private final List<SizeRange> sizes = new ArrayList<>();
+        private int concurrency = 1;
+        private Duration duration;
+        private long operations;
+        private int fanOutWidth = 1;
+        private int fanOutDepth = 0;
+        private int initialObjects = 0;
+        private long seed = 0L;
+        private boolean verify = false;
+        private double rate = 0.0;
+        private ThreadMode threadMode = ThreadMode.PLATFORM;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the weight of an operation in the mix. Operations left out
+         * aren't issued.
+         *
+         * @param operation operation to weigh
+         * @param weight relative frequency of the operation, zero to remove it
+         * @return this builder
+         */
+        public Builder mix(final Operation operation, final int weight) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weight of " + operation + " must not be negative");
+            }
+
+            if (weight == 0) {
+                mix.remove(operation);
+            } else {
+                mix.put(operation, weight);
+            }
+
+            return this;
+        }
+
+        /**
+         * Adds a single object size to the size distribution.
+         *
+         * @param size object size in bytes
+         * @param weight relative frequency of the size
+         * @return this builder
+         */
+        public Builder objectSize(final long size, final int weight) {
+            return objectSizes(size, size, weight);
+        }
+
+        /**
+         * Adds a range of object sizes, drawn uniformly, to the size
+         * distribution.
+         *
+         * @param min smallest size in bytes
+         * @param max largest size in bytes
+         * @param weight relative frequency of the range
+         * @return this builder
+         */
+        public Builder objectSizes(final long min, final long max, final int weight) {
+            if (min < 0 || max < min) {
+                throw new IllegalArgumentException("Invalid size range " + min + "-" + max);
+            }
+
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Weight of a size range must be positive");
+            }
+
+            sizes.add(new SizeRange(min, max, weight));
+            return this;
+        }
+
+        /**
+         * @param workers operations in flight at once
+         * @return this builder
+         */
+        public Builder concurrency(final int workers) {
+            if (workers <= 0) {
+                throw new IllegalArgumentException("Concurrency must be positive");
+            }
+
+            this.concurrency = workers;
+            return this;
+        }
+
+        /**
+         * Stops the run after a time, or at the operation count if that is
+         * reached first.
+         *
+         * @param runTime time to generate load for
+         * @return this builder
+         */
+        public Builder duration(final Duration runTime) {
+            if (runTime.isNegative() || runTime.isZero()) {
+                throw new IllegalArgumentException("Duration must be positive");
+            }
+
+            this.duration = runTime;
+            return this;
+        }
+
+        /**
+         * Stops the run after a number of operations, or at the duration if
+         * that is reached first.
+         *
+         * @param count operations to issue
+         * @return this builder
+         */
+        public Builder operations(final long count) {
+            if (count <= 0) {
+                throw new IllegalArgumentException("Operation count must be positive");
+            }
+
+            this.operations = count;
+            return this;
+        }
+
+        /**
+         * Spreads objects over a tree of directories {@code depth} levels
+         * deep, each directory having {@code width} subdirectories; objects
+         * and listings go to the {@code width^depth} leaf directories.
+         *
+         * @param width subdirectories per directory
+         * @param depth levels below the workload's base directory
+         * @return this builder
+         */
+        public Builder fanOut(final int width, final int depth) {
+            if (width <= 0 || depth < 0) {
+                throw new IllegalArgumentException("Invalid fan-out " + width + "x" + depth);
+            }
+
+            if (Math.pow(width, depth) > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Fan-out " + width + "x" + depth + " has too many directories");
+            }
+
+            this.fanOutWidth = width;
+            this.fanOutDepth = depth;
+            return this;
+        }
+
+        /**
+         * @param count objects uploaded before the run, spread over the
+         *              workers, for reads to find from the start
+         * @return this builder
+         */
+        public Builder initialObjects(final int count) {
+            if (count < 0) {
+                throw new IllegalArgumentException("Initial object count must not be negative");
+            }
+
+            this.initialObjects = count;
+            return this;
+        }
+
+        /**
+         * @param randomSeed seed of the operation, size, path and content
+         *                   choices, so a run can be repeated
+         * @return this builder
+         */
+        public Builder seed(final long randomSeed) {
+            this.seed = randomSeed;
+            return this;
+        }
+
+        /**
+         * @param verifyContent whether downloads are compared with the
+         *                      content uploaded, failing the operation on a
+         *                      mismatch
+         * @return this builder
+         */
+        public Builder verify(final boolean verifyContent) {
+            this.verify = verifyContent;
+            return this;
+        }
+
+        /**
+         * Issues operations at a constant rate instead of back to back. At
+         * most {@link #concurrency(int)} operations are in flight; when all
+         * of them are busy, operations due meanwhile start late and the
+         * delay counts toward their latency.
+         *
+         * @param operationsPerSecond target arrival rate, or zero for a
+         *                            closed loop
+         * @return this builder
+         */
+        public Builder rate(final double operationsPerSecond) {
+            if (operationsPerSecond < 0 || Double.isNaN(operationsPerSecond)
+                    || Double.isInfinite(operationsPerSecond)) {
+                throw new IllegalArgumentException("Rate must be a finite, non-negative number");
+            }
+
+            this.rate = operationsPerSecond;
+            return this;
+        }
+
+        /**
+         * @param mode kind of thread the workers run on
+         * @return this builder
+         */
+        public Builder threads(final ThreadMode mode) {
+            if (mode == null) {
+                throw new IllegalArgumentException("Thread mode must not be null");
+            }
+
+            this.threadMode = mode;
+            return this;
+        }
+
+        /**
+         * @return new spec
+         */
+        public WorkloadSpec build() {
+            if (mix.isEmpty()) {
+                throw new IllegalArgumentException("Operation mix must not be empty");
+            }
+
+            if (duration == null && operations == 0) {
+                throw new IllegalArgumentException("Either a duration or an operation count is required");
+            }
+
+            final List<SizeRange> sizeRanges = sizes.isEmpty()
+                    ? Collections.singletonList(new SizeRange(DEFAULT_OBJECT_SIZE, DEFAULT_OBJECT_SIZE, 1))
+                    : new ArrayList<>(sizes);
+
+            return new WorkloadSpec(this, Collections.unmodifiableList(sizeRanges));
+        }
+    }
+
+    /**
+     * Object size used when a spec has no size distribution.
+     */
+    private static final long DEFAULT_OBJECT_SIZE = 1024L;
+
+    private final Map<Operation, Integer> mix;
+    private final List<SizeRange> sizes;
+    private final int concurrency;
+    private final Duration duration;
+    private final long operations;
+    private final int fanOutWidth;
+    private final int fanOutDepth;
+    private final int initialObjects;
+    private final long seed;
+    private final boolean verify;
+    private final double rate;
+    private final ThreadMode threadMode;
+
+    /**
+     * Operations in mix order with the running sum of their weights.
+     */
+    private final Operation[] mixOperations;
+    private final int[] mixCumulativeWeights;
+
+    /**
+     * Running sum of the weights of the size ranges.
+     */
+    private final int[] sizeCumulativeWeights;
+
+    private WorkloadSpec(final Builder builder, final List<SizeRange> sizes) {
+        this.mix = Collections.unmodifiableMap(new EnumMap<>(builder.mix));
+        this.sizes = sizes;
+        this.concurrency = builder.concurrency;
+        this.duration = builder.duration;
+        this.operations = builder.operations;
+        this.fanOutWidth = builder.fanOutWidth;
+        this.fanOutDepth = builder.fanOutDepth;
+        this.initialObjects = builder.initialObjects;
+        this.seed = builder.seed;
+        this.verify = builder.verify;
+        this.rate = builder.rate;
+        this.threadMode = builder.threadMode;
+
+        this.mixOperations = mix.keySet().toArray(new Operation[0]);
+        this.mixCumulativeWeights = new int[mixOperations.length];
+        int total = 0;
+
+        for (int i = 0; i < mixOperations.length; i++) {
+            total = Math.addExact(total, mix.get(mixOperations[i]));
+            mixCumulativeWeights[i] = total;
+        }
+
+        this.sizeCumulativeWeights = new int[sizes.size()];
+        total = 0;
+
+        for (int i = 0; i < sizes.size(); i++) {
+            total = Math.addExact(total, sizes.get(i).getWeight());
+            sizeCumulativeWeights[i] = total;
+        }
+    }
+
+    /**
+     * @return new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Parses the text form of a spec: whitespace or semicolon separated
+     * {@code key=value} settings, as produced by {@link #toString()}.
+     * <ul>
+     *     <li>{@code mix=put:2,get:5} operation weights</li>
+     *     <li>{@code sizes=512,1k-64k:9,1m:1} sizes or ranges with optional
+     *     weights, using k, m and g for binary multiples</li>
+     *     <li>{@code concurrency=16}</li>
+     *     <li>{@code duration=90s} in ms, s, m or h</li>
+     *     <li>{@code operations=10000}</li>
+     *     <li>{@code fanout=16x2} width and depth</li>
+     *     <li>{@code objects=1000} initial objects</li>
+     *     <li>{@code seed=42}</li>
+     *     <li>{@code verify=true}</li>
+     *     <li>{@code rate=500} operations per second, optionally
+     *     followed by {@code /s}</li>
+     *     <li>{@code threads=virtual} or {@code platform}</li>
+     * </ul>
+     *
+     * @param text spec in text form
+     * @return new spec
+     * @throws IllegalArgumentException thrown when the text is malformed
+     */
+    public static WorkloadSpec parse(final String text) {
+        final Builder builder = builder();
+
+        for (String setting : text.trim().split("[\\s;]+")) {
+            if (setting.isEmpty()) {
+                continue;
+            }
+
+            final int equals = setting.indexOf('=');
+
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected key=value but got " + setting);
+            }
+
+            final String key = setting.substring(0, equals).toLowerCase(Locale.ROOT);
+            final String value = setting.substring(equals + 1);
+
+            switch (key) {
+                case "mix":
+                    for (String entry : value.split(",")) {
+                        final String[] operationAndWeight = entry.split(":", 2);
+                        builder.mix(Operation.valueOf(operationAndWeight[0].toUpperCase(Locale.ROOT)),
+                                operationAndWeight.length > 1 ? Integer.parseInt(operationAndWeight[1]) : 1);
+                    }
+                    break;
+                case "sizes":
+                    for (String entry : value.split(",")) {
+                        final String[] rangeAndWeight = entry.split(":", 2);
+                        final String[] range = rangeAndWeight[0].split("-", 2);
+                        final long min = parseSize(range[0]);
+                        builder.objectSizes(min, range.length > 1 ? parseSize(range[1]) : min,
+                                rangeAndWeight.length > 1 ? Integer.parseInt(rangeAndWeight[1]) : 1);
+                    }
+                    break;
+                case "concurrency":
+                    builder.concurrency(Integer.parseInt(value));
+                    break;
+                case "duration":
+                    builder.duration(parseDuration(value));
+                    break;
+                case "operations":
+                    builder.operations(Long.parseLong(value));
+                    break;
+                case "fanout":
+                    final String[] widthAndDepth = value.toLowerCase(Locale.ROOT).split("x", 2);
+                    builder.fanOut(Integer.parseInt(widthAndDepth[0]),
+                            widthAndDepth.length > 1 ? Integer.parseInt(widthAndDepth[1]) : 1);
+                    break;
+                case "objects":
+                    builder.initialObjects(Integer.parseInt(value));
+                    break;
+                case "seed":
+                    builder.seed(Long.parseLong(value));
+                    break;
+                case "verify":
+                    builder.verify(Boolean.parseBoolean(value));
+                    break;
+                case "rate":
+                    builder.rate(Double.parseDouble(StringUtils.removeEnd(value, "/s")));
+                    break;
+                case "threads":
+                    builder.threads(ThreadMode.forName(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown workload setting " + key);
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * @return operation weights, in operation order
+     */
+    public Map<Operation, Integer> getMix() {
+        return mix;
+    }
+
+    /**
+     * @return object size ranges
+     */
+    public List<SizeRange> getObjectSizes() {
+        return sizes;
+    }
+
+    /**
+     * @return operations in flight at once
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @return time to generate load for, or null to stop at the operation count
+     */
+    public Duration getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return operations to issue, or 0 to stop at the duration
+     */
+    public long getOperations() {
+        return operations;
+    }
+
+    /**
+     * @return subdirectories per directory of the tree
+     */
+    public int getFanOutWidth() {
+        return fanOutWidth;
+    }
+
+    /**
+     * @return levels of the tree below the base directory
+     */
+    public int getFanOutDepth() {
+        return fanOutDepth;
+    }
+
+    /**
+     * @return number of leaf directories objects are spread over
+     */
+    public int getLeafDirectories() {
+        int leaves = 1;
+
+        for (int i = 0; i < fanOutDepth; i++) {
+            leaves *= fanOutWidth;
+        }
+
+        return leaves;
+    }
+
+    /**
+     * @return objects uploaded before the run
+     */
+    public int getInitialObjects() {
+        return initialObjects;
+    }
+
+    /**
+     * @return seed of the random choices
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return whether downloads are verified
+     */
+    public boolean isVerify() {
+        return verify;
+    }
+
+    /**
+     * @return target operations per second, or zero for a closed loop
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * @return whether operations are issued on a fixed schedule
+     */
+    public boolean isOpenLoop() {
+        return rate > 0;
+    }
+
+    /**
+     * @return time between scheduled operation starts in nanoseconds, for
+     *         an open loop
+     */
+    public double getIntervalNanos() {
+        return TimeUnit.SECONDS.toNanos(1) / rate;
+    }
+
+    /**
+     * @return kind of thread the workers run on
+     */
+    public ThreadMode getThreadMode() {
+        return threadMode;
+    }
+
+    /**
+     * Draws an operation from the mix.
+     *
+     * @param random source of randomness
+     * @return operation to issue
+     */
+    Operation nextOperation(final SplittableRandom random) {
+        return mixOperations[pick(mixCumulativeWeights, random)];
+    }
+
+    /**
+     * Draws an object size from the size distribution.
+     *
+     * @param random source of randomness
+     * @return object size in bytes
+     */
+    long nextObjectSize(final SplittableRandom random) {
+        final SizeRange range = sizes.get(pick(sizeCumulativeWeights, random));
+
+        if (range.min == range.max) {
+            return range.min;
+        }
+
+        return range.min + random.nextLong(range.max - range.min + 1);
+    }
+
+    private static int pick(final int[] cumulativeWeights, final SplittableRandom random) {
+        final int target = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int low = 0;
+        int high = cumulativeWeights.length - 1;
+
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+
+            if (cumulativeWeights[middle] > target) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+
+        return low;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder text = new StringBuilder("mix=");
+        boolean first = true;
+
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            text.append(first ? "" : ",").append(entry.getKey().name().toLowerCase(Locale.ROOT))
+                    .append(':').append(entry.getValue());
+            first = false;
+        }
+
+        text.append(" sizes=");
+        first = true;
+
+        for (SizeRange range : sizes) {
+            text.append(first ? "" : ",").append(range);
+            first = false;
+        }
+
+        text.append(" concurrency=").append(concurrency);
+
+        if (duration != null) {
+            text.append(" duration=").append(duration.toMillis()).append("ms");
+        }
+
+        if (operations > 0) {
+            text.append(" operations=").append(operations);
+        }
+
+        text.append(" fanout=").append(fanOutWidth).append('x').append(fanOutDepth)
+                .append(" objects=").append(initialObjects)
+                .append(" seed=").append(seed)
+                .append(" verify=").append(verify);
+
+        if (rate > 0) {
+            text.append(" rate=").append(rate);
+        }
+
+        if (threadMode != ThreadMode.PLATFORM) {
+            text.append(" threads=").append(threadMode.name().toLowerCase(Locale.ROOT));
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Parses a byte count with an optional k, m or g binary multiple.
+     */
+    static long parseSize(final String text) {
+        final String size = text.trim().toLowerCase(Locale.ROOT);
+
+        if (size.isEmpty()) {
+            throw new IllegalArgumentException("Empty size");
+        }
+
+        final char unit = size.charAt(size.length() - 1);
+        final long multiple;
+
+        switch (unit) {
+            case 'k':
+                multiple = 1024L;
+                break;
+            case 'm':
+                multiple = 1024L * 1024;
+                break;
+            case 'g':
+                multiple = 1024L * 1024 * 1024;
+                break;
+            default:
+                return Long.parseLong(size);
+        }
+
+        return Math.multiplyExact(Long.parseLong(size.substring(0, size.length() - 1)), multiple);
+    }
+
+    /**
+     * Parses a duration with an ms, s, m or h unit.
+     */
+    static Duration parseDuration(final String text) {
+        final String duration = text.trim().toLowerCase(Locale.ROOT);
+
+        if (duration.isEmpty() || Character.isDigit(duration.charAt(duration.length() - 1))) {
+            throw new IllegalArgumentException("Duration needs a unit of ms, s, m or h: " + text);
+        }
+
+        if (duration.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(duration.substring(0, duration.length() - 2)));
+        }
+
+        final long amount = Long.parseLong(duration.substring(0, duration.length() - 1));
+
+        switch (duration.charAt(duration.length() - 1)) {
+            case 's':
+                return Duration.ofSeconds(amount);
+            case 'm':
+                return Duration.ofMinutes(amount);
+            case 'h':
+                return Duration.ofHours(amount);
+            default:
+                throw new IllegalArgumentException("Duration needs a unit of ms, s, m or h: " + text);
+        }
+    }
+
+    /**
+     * Formats a byte count with the largest exact binary multiple.
+     */
+    static String formatSize(final long size) {
+        if (size == 0) {
+            return "0";
+        }
+
+        if (size % (1024L * 1024 * 1024) == 0) {
+            return size / (1024L * 1024 * 1024) + "g";
+        }
+
+        if (size % (1024L * 1024) == 0) {
+            return size / (1024L * 1024) + "m";
+        }
+
+        if (size % 1024L == 0) {
+            return size / 1024L + "k";
+        }
+
+        return Long.toString(size);
+    }
+}
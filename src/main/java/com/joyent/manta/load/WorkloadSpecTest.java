@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.load;
+
+import com.joyent.test.util.ThreadMode;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+@Test
+public class WorkloadSpecTest {
+
+    public void parsesTextForm() {
+        final WorkloadSpec spec = WorkloadSpec.parse(
+                "mix=put:2,get:5,move;sizes=512,1k-64k:9 concurrency=16\nduration=90s fanout=16x2 objects=100 "
+                        + "seed=42 verify=true");
+
+        Assert.assertEquals(spec.getMix().get(Operation.PUT), Integer.valueOf(2));
+        Assert.assertEquals(spec.getMix().get(Operation.GET), Integer.valueOf(5));
+        Assert.assertEquals(spec.getMix().get(Operation.MOVE), Integer.valueOf(1));
+        Assert.assertFalse(spec.getMix().containsKey(Operation.DELETE));
+        Assert.assertEquals(spec.getObjectSizes().size(), 2);
+        Assert.assertEquals(spec.getObjectSizes().get(0).getMax(), 512L);
+        Assert.assertEquals(spec.getObjectSizes().get(1).getMin(), 1024L);
+        Assert.assertEquals(spec.getObjectSizes().get(1).getMax(), 64L * 1024);
+        Assert.assertEquals(spec.getObjectSizes().get(1).getWeight(), 9);
+        Assert.assertEquals(spec.getConcurrency(), 16);
+        Assert.assertEquals(spec.getDuration(), Duration.ofSeconds(90));
+        Assert.assertEquals(spec.getOperations(), 0L);
+        Assert.assertEquals(spec.getLeafDirectories(), 256);
+        Assert.assertEquals(spec.getInitialObjects(), 100);
+        Assert.assertEquals(spec.getSeed(), 42L);
+        Assert.assertTrue(spec.isVerify());
+    }
+
+    public void textFormRoundTrips() {
+        final WorkloadSpec spec = WorkloadSpec.builder()
+                .mix(Operation.HEAD, 3).mix(Operation.LIST, 1)
+                .objectSize(100, 1)
+                .objectSizes(1024 * 1024, 16 * 1024 * 1024, 2)
+                .concurrency(4)
+                .operations(1000)
+                .fanOut(4, 3)
+                .build();
+
+        Assert.assertEquals(WorkloadSpec.parse(spec.toString()).toString(), spec.toString());
+    }
+
+    public void drawsOperationsByWeight() {
+        final WorkloadSpec spec = WorkloadSpec.builder()
+                .mix(Operation.PUT, 1).mix(Operation.GET, 3).mix(Operation.DELETE, 0)
+                .operations(1)
+                .build();
+        final SplittableRandom random = new SplittableRandom(1);
+        final Map<Operation, Integer> counts = new EnumMap<>(Operation.class);
+        final int draws = 40_000;
+
+        for (int i = 0; i < draws; i++) {
+            counts.merge(spec.nextOperation(random), 1, Integer::sum);
+        }
+
+        Assert.assertEquals(counts.keySet().size(), 2, "Only weighted operations are drawn: " + counts);
+        Assert.assertEquals(counts.get(Operation.GET) / (double) draws, 0.75, 0.01);
+    }
+
+    public void drawsSizesWithinRanges() {
+        final WorkloadSpec spec = WorkloadSpec.parse("mix=put sizes=10-20:1,1m:1 operations=1");
+        final SplittableRandom random = new SplittableRandom(2);
+        int large = 0;
+
+        for (int i = 0; i < 10_000; i++) {
+            final long size = spec.nextObjectSize(random);
+
+            if (size == 1024 * 1024) {
+                large++;
+            } else {
+                Assert.assertTrue(size >= 10 && size <= 20, "Size out of range: " + size);
+            }
+        }
+
+        Assert.assertEquals(large / 10_000.0, 0.5, 0.03);
+    }
+
+    public void defaultsToOneKibObjectsInTheBaseDirectory() {
+        final WorkloadSpec spec = WorkloadSpec.parse("mix=get operations=5");
+
+        Assert.assertEquals(spec.nextObjectSize(new SplittableRandom()), 1024L);
+        Assert.assertEquals(spec.getLeafDirectories(), 1);
+        Assert.assertEquals(spec.getConcurrency(), 1);
+    }
+
+    public void parsesRate() {
+        final WorkloadSpec spec = WorkloadSpec.parse("mix=head rate=250/s duration=1m");
+
+        Assert.assertTrue(spec.isOpenLoop());
+        Assert.assertEquals(spec.getRate(), 250.0);
+        Assert.assertEquals(spec.getIntervalNanos(), 4_000_000.0);
+        Assert.assertEquals(WorkloadSpec.parse(spec.toString()).toString(), spec.toString());
+        Assert.assertFalse(WorkloadSpec.parse("mix=head duration=1m").isOpenLoop());
+    }
+
+    public void parsesThreadMode() {
+        final WorkloadSpec spec = WorkloadSpec.parse("mix=head concurrency=2000 operations=1 threads=virtual");
+
+        Assert.assertEquals(spec.getThreadMode(), ThreadMode.VIRTUAL);
+        Assert.assertEquals(WorkloadSpec.parse(spec.toString()).getThreadMode(), ThreadMode.VIRTUAL);
+        Assert.assertEquals(WorkloadSpec.parse("mix=head operations=1").getThreadMode(), ThreadMode.PLATFORM);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void rejectsNegativeRate() {
+        WorkloadSpec.builder().rate(-1.0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void requiresAStopCondition() {
+        WorkloadSpec.parse("mix=put:1 concurrency=2");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void rejectsDurationWithoutUnit() {
+        WorkloadSpec.parse("mix=put:1 duration=30");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void rejectsUnknownSetting() {
+        WorkloadSpec.parse("mix=put:1 operations=1 bogus=10");
+    }
+}
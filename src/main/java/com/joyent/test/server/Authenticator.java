@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+/**
+ * Works out which account a request to {@link LocalMantaServer} acts as.
+ */
+@FunctionalInterface
+public interface Authenticator {
+    /**
+     * @param request request to check
+     * @return account the request is authenticated as or null if it carries
+     *         no credentials
+     * @throws MantaServerException thrown when the credentials are invalid
+     */
+    String authenticate(HttpRequest request);
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+/**
+ * Where a {@link MantaStore} keeps object content.
+ */
+public interface BodyStorage extends Closeable {
+    /**
+     * Reads content into storage, computing its MD5 digest as it goes. The
+     * returned body holds one reference for the caller, which must be
+     * released once the body has been handed to the store or abandoned.
+     *
+     * @param in content to store, read to the end
+     * @param md5 digest updated with the content
+     * @return stored content
+     * @throws IOException thrown when reading or storing fails
+     */
+    ObjectBody store(InputStream in, MessageDigest md5) throws IOException;
+
+    /**
+     * @return bytes of content currently held
+     */
+    long getStoredBytes();
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a request body sent with {@code Transfer-Encoding: chunked}.
+ * Trailers are read and discarded. Closing the stream leaves the connection
+ * open.
+ */
+class ChunkedInputStream extends InputStream {
+    private static final int EOF = -1;
+
+    private final InputStream in;
+    private long chunkRemaining = 0L;
+    private boolean finished = false;
+
+    ChunkedInputStream(final InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] single = new byte[1];
+        return read(single, 0, 1) == EOF ? EOF : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!nextChunk()) {
+            return EOF;
+        }
+
+        final int read = in.read(b, off, (int) Math.min(len, chunkRemaining));
+
+        if (read == EOF) {
+            throw new EOFException("Connection closed within a chunk");
+        }
+
+        chunkRemaining -= read;
+
+        if (chunkRemaining == 0) {
+            HttpServer.readLine(in);
+        }
+
+        return read;
+    }
+
+    /**
+     * Reads the next chunk header when the current chunk is used up.
+     *
+     * @return false once the last chunk has been read
+     */
+    private boolean nextChunk() throws IOException {
+        if (finished) {
+            return false;
+        }
+
+        if (chunkRemaining > 0) {
+            return true;
+        }
+
+        final String header = HttpServer.readLine(in);
+
+        if (header == null) {
+            throw new EOFException("Connection closed before the last chunk");
+        }
+
+        final int extension = header.indexOf(';');
+        final String size = (extension < 0 ? header : header.substring(0, extension)).trim();
+
+        try {
+            chunkRemaining = Long.parseLong(size, 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid chunk size: " + header);
+        }
+
+        if (chunkRemaining == 0) {
+            String trailer;
+            do {
+                trailer = HttpServer.readLine(in);
+            } while (trailer != null && !trailer.isEmpty());
+
+            finished = true;
+            return false;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Directory in the {@link MantaStore} namespace. Children are indexed by name
+ * in a skip list, so that a page of a listing starting at any marker is found
+ * in logarithmic time however large the directory grows, and the number of
+ * entries is tracked separately because counting a skip list is linear.
+ *
+ * <p>Reads are lock free; changes are made by the store while holding its
+ * lock.</p>
+ */
+public final class DirectoryNode extends StoreNode {
+    /**
+     * Children keyed by name.
+     */
+    private final ConcurrentSkipListMap<String, StoreNode> children = new ConcurrentSkipListMap<>();
+
+    /**
+     * Number of children.
+     */
+    private final AtomicLong size = new AtomicLong();
+
+    DirectoryNode(final Instant mtime, final Map<String, String> metadata) {
+        super(mtime, metadata);
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return true;
+    }
+
+    /**
+     * @param name child name
+     * @return child or null if there is none
+     */
+    public StoreNode get(final String name) {
+        return children.get(name);
+    }
+
+    /**
+     * @return number of children
+     */
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * @return true if the directory has no children
+     */
+    public boolean isEmpty() {
+        return children.isEmpty();
+    }
+
+    /**
+     * @param marker first name to include or null for all children
+     * @return read only view of the children from the marker on, in name order
+     */
+    public NavigableMap<String, StoreNode> entriesFrom(final String marker) {
+        return Collections.unmodifiableNavigableMap(
+                marker == null ? children : children.tailMap(marker, true));
+    }
+
+    /**
+     * Adds or replaces a child.
+     *
+     * @return previous child or null
+     */
+    StoreNode put(final String name, final StoreNode child) {
+        final StoreNode previous = children.put(name, child);
+
+        if (previous == null) {
+            size.incrementAndGet();
+        }
+
+        return previous;
+    }
+
+    /**
+     * Removes a child.
+     *
+     * @return removed child or null
+     */
+    StoreNode remove(final String name) {
+        final StoreNode removed = children.remove(name);
+
+        if (removed != null) {
+            size.decrementAndGet();
+        }
+
+        return removed;
+    }
+}
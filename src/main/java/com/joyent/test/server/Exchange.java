@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * One recorded request and its response, as stored in a {@link SessionLog}.
+ * Request bodies are kept as a length and SHA-256 digest only; response
+ * bodies are kept whole unless they were too large, in which case only their
+ * length and digest are known.
+ */
+public final class Exchange {
+    private final long startNanos;
+    private final long latencyNanos;
+    private final long durationNanos;
+    private final String method;
+    private final String target;
+    private final Map<String, String> requestHeaders;
+    private final long requestBodyLength;
+    private final byte[] requestBodyDigest;
+    private final int status;
+    private final Map<String, String> responseHeaders;
+    private final long responseBodyLength;
+    private final byte[] responseBody;
+    private final byte[] responseBodyDigest;
+
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    Exchange(final long startNanos, final long latencyNanos, final long durationNanos,
+             final String method, final String target, final Map<String, String> requestHeaders,
+             final long requestBodyLength, final byte[] requestBodyDigest,
+             final int status, final Map<String, String> responseHeaders,
+             final long responseBodyLength, final byte[] responseBody, final byte[] responseBodyDigest) {
+        this.startNanos = startNanos;
+        this.latencyNanos = latencyNanos;
+        this.durationNanos = durationNanos;
+        this.method = method;
+        this.target = target;
+        this.requestHeaders = Collections.unmodifiableMap(requestHeaders);
+        this.requestBodyLength = requestBodyLength;
+        this.requestBodyDigest = requestBodyDigest;
+        this.status = status;
+        this.responseHeaders = Collections.unmodifiableMap(responseHeaders);
+        this.responseBodyLength = responseBodyLength;
+        this.responseBody = responseBody;
+        this.responseBodyDigest = responseBodyDigest;
+    }
+
+    /**
+     * @return nanoseconds between the start of the session and the request
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return nanoseconds between receiving the request and the response headers
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * @return nanoseconds between receiving the request and the end of the response body
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return request method
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return request target in origin form
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * @return request headers, without credentials
+     */
+    public Map<String, String> getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    /**
+     * @return bytes in the request body
+     */
+    public long getRequestBodyLength() {
+        return requestBodyLength;
+    }
+
+    /**
+     * @return SHA-256 digest of the request body or null if it was empty
+     */
+    public byte[] getRequestBodyDigest() {
+        return requestBodyDigest;
+    }
+
+    /**
+     * @return response status code
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return response headers
+     */
+    public Map<String, String> getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    /**
+     * @return bytes in the response body as relayed
+     */
+    public long getResponseBodyLength() {
+        return responseBodyLength;
+    }
+
+    /**
+     * @return response body or null if the response had none or it was too
+     *         large to record
+     */
+    public byte[] getResponseBody() {
+        return responseBody;
+    }
+
+    /**
+     * @return SHA-256 digest of the response body or null if it was empty
+     */
+    public byte[] getResponseBodyDigest() {
+        return responseBodyDigest;
+    }
+
+    /**
+     * @return true if the response had a body that was not recorded whole
+     */
+    public boolean isResponseBodyOmitted() {
+        return responseBodyLength > 0 && responseBody == null;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + target + " -> " + status;
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import com.joyent.test.util.FaultInjectingInputStream;
+import com.joyent.test.util.FaultSchedule;
+import com.joyent.test.util.ThrottledInputStream;
+import com.joyent.test.util.TokenBucket;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reverse proxy that drops the client connection part way through response
+ * bodies. Unlike a stub server, which can only fail a response before or
+ * after its body, the proxy relays a real response and cuts the connection
+ * at a configured body offset or after the body has been flowing for a
+ * configured time, so client code that resumes interrupted downloads can be
+ * exercised without manual intervention.
+ *
+ * <p>Faults apply to successful GET responses only and each arming cuts a
+ * fixed number of responses; the responses after that are relayed
+ * untouched. Bodies may additionally be throttled, which makes time based
+ * cuts land at predictable offsets.</p>
+ */
+public class FaultInjectingProxy implements Closeable {
+    private final HttpServer server;
+
+    /**
+     * Responses still to be cut by the current arming.
+     */
+    private final AtomicInteger remainingFaults = new AtomicInteger();
+
+    /**
+     * Responses whose connection was cut.
+     */
+    private final AtomicInteger cutCount = new AtomicInteger();
+
+    /**
+     * GET responses relayed, cut or not.
+     */
+    private final AtomicInteger responseCount = new AtomicInteger();
+
+    /**
+     * Faults injected into selected responses; null when disarmed.
+     */
+    private volatile FaultSchedule schedule;
+
+    /**
+     * Body time after which selected responses are cut; null for no limit.
+     */
+    private volatile Duration cutAfter;
+
+    /**
+     * Shortest body a response needs in order to be selected.
+     */
+    private volatile long minimumLength;
+
+    /**
+     * Bucket throttling all relayed bodies; null for no limit.
+     */
+    private volatile TokenBucket bandwidth;
+
+    /**
+     * Creates a new proxy; call {@link #start()} to listen.
+     *
+     * @param upstream base URL of the endpoint to relay
+     */
+    public FaultInjectingProxy(final String upstream) {
+        this.server = new HttpServer(new Handler(upstream));
+    }
+
+    /**
+     * Starts listening on an ephemeral loopback port.
+     *
+     * @return this proxy
+     * @throws IOException thrown when the port can't be bound
+     */
+    public FaultInjectingProxy start() throws IOException {
+        server.start();
+        return this;
+    }
+
+    /**
+     * @return URL to use as the endpoint in place of the upstream
+     */
+    public String getUrl() {
+        return server.getUrl();
+    }
+
+    /**
+     * Limits the combined rate of all relayed bodies.
+     *
+     * @param bytesPerSecond rate limit or zero for none
+     * @return this proxy
+     */
+    public FaultInjectingProxy withBandwidth(final long bytesPerSecond) {
+        this.bandwidth = bytesPerSecond > 0 ? TokenBucket.ofRate(bytesPerSecond) : null;
+        return this;
+    }
+
+    /**
+     * Cuts the next {@code times} responses whose body is longer than
+     * {@code offset} after exactly {@code offset} body bytes.
+     *
+     * @param offset body bytes relayed before the cut
+     * @param times number of responses to cut
+     */
+    public void cutAt(final long offset, final int times) {
+        arm(FaultSchedule.builder().failAt(offset).build(), null, offset + 1, times);
+    }
+
+    /**
+     * Cuts the next {@code times} responses once their body has been
+     * flowing for {@code elapsed}. Responses that complete sooner are not
+     * cut but still use up one of the faults.
+     *
+     * @param elapsed time between the first body byte and the cut
+     * @param times number of responses to cut
+     */
+    public void cutAfter(final Duration elapsed, final int times) {
+        arm(null, elapsed, 0, times);
+    }
+
+    /**
+     * Applies a fault schedule to the bodies of the next {@code times}
+     * responses.
+     *
+     * @param faults faults injected into each selected body
+     * @param times number of responses to inject faults into
+     */
+    public void inject(final FaultSchedule faults, final int times) {
+        arm(faults, null, 0, times);
+    }
+
+    /**
+     * Relays every following response untouched.
+     */
+    public void disarm() {
+        remainingFaults.set(0);
+    }
+
+    /**
+     * Clears the counters.
+     */
+    public void resetCounts() {
+        cutCount.set(0);
+        responseCount.set(0);
+    }
+
+    /**
+     * @return responses still to be selected by the current arming
+     */
+    public int getRemainingFaults() {
+        return remainingFaults.get();
+    }
+
+    /**
+     * @return responses whose connection was cut
+     */
+    public int getCutCount() {
+        return cutCount.get();
+    }
+
+    /**
+     * @return GET responses relayed
+     */
+    public int getResponseCount() {
+        return responseCount.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    private synchronized void arm(final FaultSchedule faults, final Duration elapsed, final long minimum,
+                                  final int times) {
+        remainingFaults.set(0);
+        this.schedule = faults;
+        this.cutAfter = elapsed;
+        this.minimumLength = minimum;
+        remainingFaults.set(times);
+    }
+
+    /**
+     * Takes one fault from the current arming if the body qualifies.
+     */
+    private boolean select(final long length) {
+        if (length >= 0 && length < minimumLength) {
+            return false;
+        }
+
+        int remaining;
+        do {
+            remaining = remainingFaults.get();
+
+            if (remaining <= 0) {
+                return false;
+            }
+        } while (!remainingFaults.compareAndSet(remaining, remaining - 1));
+
+        return true;
+    }
+
+    /**
+     * Handler applying the armed faults to relayed bodies.
+     */
+    private final class Handler extends ForwardingHandler {
+        Handler(final String upstream) {
+            super(upstream);
+        }
+
+        @Override
+        protected InputStream wrapResponseBody(final HttpRequest request, final int status, final long length,
+                                               final InputStream body) {
+            if (!"GET".equals(request.getMethod()) || (status != 200 && status != 206)) {
+                return body;
+            }
+
+            responseCount.incrementAndGet();
+            InputStream wrapped = body;
+
+            final TokenBucket bucket = bandwidth;
+            if (bucket != null) {
+                wrapped = new ThrottledInputStream(wrapped, bucket);
+            }
+
+            if (!select(length)) {
+                return wrapped;
+            }
+
+            final FaultSchedule faults = schedule;
+            if (faults != null) {
+                wrapped = new FaultInjectingInputStream(wrapped, faults);
+            }
+
+            final Duration elapsed = cutAfter;
+            if (elapsed != null) {
+                wrapped = new TimedCutInputStream(wrapped, elapsed.toNanos());
+            }
+
+            return new CutCountingInputStream(wrapped);
+        }
+    }
+
+    /**
+     * Fails reads once a body has been flowing for a fixed time.
+     */
+    private static final class TimedCutInputStream extends FilterInputStream {
+        private final long limitNanos;
+        private long firstByteNanos = -1L;
+
+        TimedCutInputStream(final InputStream in, final long limitNanos) {
+            super(in);
+            this.limitNanos = limitNanos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkElapsed();
+            return super.read();
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            checkElapsed();
+            return super.read(b, off, len);
+        }
+
+        private void checkElapsed() throws IOException {
+            final long now = System.nanoTime();
+
+            if (firstByteNanos < 0) {
+                firstByteNanos = now;
+            } else if (now - firstByteNanos >= limitNanos) {
+                throw new IOException("Connection cut after " + Duration.ofNanos(limitNanos));
+            }
+        }
+    }
+
+    /**
+     * Counts the bodies that end in an injected failure.
+     */
+    private final class CutCountingInputStream extends FilterInputStream {
+        private boolean counted = false;
+
+        CutCountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException e) {
+                countCut();
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            try {
+                return super.read(b, off, len);
+            } catch (IOException e) {
+                countCut();
+                throw e;
+            }
+        }
+
+        private void countCut() {
+            if (!counted) {
+                counted = true;
+                cutCount.incrementAndGet();
+            }
+        }
+    }
+}
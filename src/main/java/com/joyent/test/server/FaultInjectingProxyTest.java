@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import com.joyent.test.util.FaultSchedule;
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+@Test(singleThreaded = true)
+public class FaultInjectingProxyTest {
+    private static final int BODY_SIZE = 64 * 1024;
+
+    private final byte[] content = new byte[BODY_SIZE];
+
+    private HttpServer upstream;
+    private FaultInjectingProxy proxy;
+
+    @BeforeClass
+    public void start() throws IOException {
+        new Random(42).nextBytes(content);
+
+        upstream = new HttpServer(request -> {
+            if ("PUT".equals(request.getMethod())) {
+                return new HttpResponse(201).body(ResponseBody.of(IOUtils.toByteArray(request.getBody())),
+                        "application/octet-stream");
+            }
+
+            if (request.getPath().equals("/small")) {
+                return new HttpResponse(200).body("small", "text/plain");
+            }
+
+            return new HttpResponse(200)
+                    .header("m-upstream", "true")
+                    .body(ResponseBody.of(content), "application/octet-stream");
+        }).start();
+
+        proxy = new FaultInjectingProxy(upstream.getUrl()).start();
+    }
+
+    @AfterClass
+    public void stop() throws IOException {
+        proxy.close();
+        upstream.close();
+    }
+
+    @BeforeMethod
+    public void reset() {
+        proxy.disarm();
+        proxy.withBandwidth(0);
+        proxy.resetCounts();
+    }
+
+    public void relaysUntouchedWhenDisarmed() throws IOException {
+        final HttpURLConnection get = open("/object");
+        Assert.assertEquals(get.getResponseCode(), 200);
+        Assert.assertEquals(get.getHeaderField("m-upstream"), "true");
+        Assert.assertEquals(get.getContentLengthLong(), BODY_SIZE);
+        Assert.assertEquals(readFully(get), content);
+        Assert.assertEquals(proxy.getCutCount(), 0);
+        Assert.assertEquals(proxy.getResponseCount(), 1);
+    }
+
+    public void cutsAtOffsetTheConfiguredNumberOfTimes() throws IOException {
+        final int offset = 10_000;
+        proxy.cutAt(offset, 2);
+
+        for (int i = 0; i < 2; i++) {
+            final HttpURLConnection get = open("/object");
+            Assert.assertEquals(get.getResponseCode(), 200);
+
+            final byte[] received = readUntilCut(get);
+            Assert.assertEquals(received, Arrays.copyOf(content, offset));
+        }
+
+        Assert.assertEquals(readFully(open("/object")), content);
+        Assert.assertEquals(proxy.getCutCount(), 2);
+        Assert.assertEquals(proxy.getRemainingFaults(), 0);
+    }
+
+    public void shortBodiesAreNotSelected() throws IOException {
+        proxy.cutAt(1024, 1);
+
+        Assert.assertEquals(new String(readFully(open("/small")), StandardCharsets.UTF_8), "small");
+        Assert.assertEquals(proxy.getRemainingFaults(), 1);
+    }
+
+    public void requestBodiesAreForwarded() throws IOException {
+        proxy.cutAt(1, 1);
+
+        final byte[] payload = "forwarded".getBytes(StandardCharsets.UTF_8);
+        final HttpURLConnection put = open("/object");
+        put.setRequestMethod("PUT");
+        put.setDoOutput(true);
+        put.setFixedLengthStreamingMode(payload.length);
+        try (OutputStream out = put.getOutputStream()) {
+            out.write(payload);
+        }
+
+        Assert.assertEquals(put.getResponseCode(), 201);
+        Assert.assertEquals(readFully(put), payload);
+        Assert.assertEquals(proxy.getRemainingFaults(), 1);
+    }
+
+    public void cutsAfterElapsedTimeOnThrottledLink() throws IOException {
+        proxy.withBandwidth(BODY_SIZE);
+        proxy.cutAfter(Duration.ofMillis(200), 1);
+
+        final byte[] received = readUntilCut(open("/object"));
+        Assert.assertTrue(received.length > 0 && received.length < BODY_SIZE,
+                "Unexpected bytes before cut: " + received.length);
+        Assert.assertEquals(proxy.getCutCount(), 1);
+    }
+
+    public void appliesFaultSchedules() throws IOException {
+        proxy.inject(FaultSchedule.builder().stallAt(100, Duration.ofMillis(100)).failAt(2_000).build(), 1);
+
+        final long start = System.nanoTime();
+        Assert.assertEquals(readUntilCut(open("/object")).length, 2_000);
+        Assert.assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 100);
+    }
+
+    private HttpURLConnection open(final String path) throws IOException {
+        return (HttpURLConnection) new URL(proxy.getUrl() + path).openConnection();
+    }
+
+    /**
+     * Reads a body that is expected to end early. HttpURLConnection reports
+     * a connection closed before Content-Length bytes either as an error or
+     * as a plain end of stream, depending on the JDK.
+     */
+    private static byte[] readUntilCut(final HttpURLConnection connection) throws IOException {
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        try (InputStream in = connection.getInputStream()) {
+            IOUtils.copy(in, received);
+        } catch (IOException e) {
+            // the cut surfaced as an error
+        }
+
+        Assert.assertTrue(received.size() < BODY_SIZE, "Expected the connection to be cut");
+        return received.toByteArray();
+    }
+
+    private static byte[] readFully(final HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+}
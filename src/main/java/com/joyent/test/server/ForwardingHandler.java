@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * {@link RequestHandler} that forwards every request to an upstream endpoint
+ * and streams the upstream response back, turning an {@link HttpServer} into
+ * a reverse proxy. Subclasses observe or alter bodies by overriding
+ * {@link #wrapRequestBody(HttpRequest, InputStream)} and
+ * {@link #wrapResponseBody(HttpRequest, int, long, InputStream)}, which are
+ * called on the thread handling the request.
+ *
+ * <p>Requests are signed by the client with the date header only, so they
+ * stay valid when sent to a different host.</p>
+ */
+public class ForwardingHandler implements RequestHandler {
+    /**
+     * Headers that describe a single hop or that {@link HttpURLConnection}
+     * sets itself; they are never copied between connections.
+     */
+    private static final Set<String> HOP_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        HOP_HEADERS.addAll(Arrays.asList("Connection", "Keep-Alive", "Proxy-Connection", "Proxy-Authorization",
+                "TE", "Trailer", "Transfer-Encoding", "Upgrade", "Expect", "Host", "Content-Length"));
+    }
+
+    /**
+     * Size of the buffer copying bodies.
+     */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Base URL requests are forwarded to, without a trailing slash.
+     */
+    private final String upstream;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param upstream base URL requests are forwarded to
+     */
+    public ForwardingHandler(final String upstream) {
+        this.upstream = upstream.endsWith("/") ? upstream.substring(0, upstream.length() - 1) : upstream;
+    }
+
+    /**
+     * @return base URL requests are forwarded to
+     */
+    public String getUpstream() {
+        return upstream;
+    }
+
+    @Override
+    public HttpResponse handle(final HttpRequest request) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(upstream + request.getTarget())
+                .openConnection();
+        connection.setInstanceFollowRedirects(false);
+        connection.setUseCaches(false);
+        connection.setRequestMethod(request.getMethod());
+
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            if (!HOP_HEADERS.contains(header.getKey())) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+
+        sendBody(request, connection);
+
+        final int status = connection.getResponseCode();
+        final HttpResponse response = new HttpResponse(status);
+        String contentType = null;
+
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            final String name = header.getKey();
+
+            if (name == null || HOP_HEADERS.contains(name)) {
+                continue;
+            }
+
+            if (name.equalsIgnoreCase("Content-Type")) {
+                contentType = header.getValue().get(0);
+            }
+
+            response.header(name, String.join(", ", header.getValue()));
+        }
+
+        final InputStream upstreamBody = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        final long length = connection.getContentLengthLong();
+
+        if ("HEAD".equals(request.getMethod()) || upstreamBody == null) {
+            if (upstreamBody != null) {
+                upstreamBody.close();
+            }
+
+            if (length >= 0) {
+                response.header("Content-Length", length);
+            }
+
+            return response;
+        }
+
+        final InputStream body = wrapResponseBody(request, status, length, upstreamBody);
+
+        if (length < 0) {
+            try (InputStream in = body) {
+                return response.body(ResponseBody.of(IOUtils.toByteArray(in)), contentType);
+            }
+        }
+
+        return response.body(new StreamingBody(body, length, connection), contentType);
+    }
+
+    /**
+     * Hook for subclasses to observe or alter a request body as it is sent
+     * upstream. Only called for requests that have a body.
+     *
+     * @param request request being forwarded
+     * @param body request body
+     * @return stream to send, by default the body itself
+     * @throws IOException thrown when wrapping fails
+     */
+    protected InputStream wrapRequestBody(final HttpRequest request, final InputStream body) throws IOException {
+        return body;
+    }
+
+    /**
+     * Hook for subclasses to observe or alter a response body as it is
+     * relayed. An exception thrown while reading the returned stream
+     * aborts the connection to the client mid-body.
+     *
+     * @param request request being answered
+     * @param status upstream status code
+     * @param length upstream body length or -1 if unknown
+     * @param body upstream response body
+     * @return stream to relay, by default the upstream body itself
+     * @throws IOException thrown when wrapping fails
+     */
+    protected InputStream wrapResponseBody(final HttpRequest request, final int status, final long length,
+                                           final InputStream body) throws IOException {
+        return body;
+    }
+
+    private void sendBody(final HttpRequest request, final HttpURLConnection connection)
+            throws IOException {
+        final String contentLength = request.getHeader("Content-Length");
+        final boolean chunked = request.getHeader("Transfer-Encoding") != null;
+
+        if (!chunked && (contentLength == null || "0".equals(contentLength.trim()))) {
+            return;
+        }
+
+        connection.setDoOutput(true);
+
+        if (chunked) {
+            connection.setChunkedStreamingMode(BUFFER_SIZE);
+        } else {
+            connection.setFixedLengthStreamingMode(Long.parseLong(contentLength.trim()));
+        }
+
+        try (OutputStream out = connection.getOutputStream()) {
+            IOUtils.copyLarge(wrapRequestBody(request, request.getBody()), out, new byte[BUFFER_SIZE]);
+        }
+    }
+
+    /**
+     * Body copied from the upstream connection as the client reads it.
+     */
+    private static final class StreamingBody implements ResponseBody {
+        private final InputStream in;
+        private final long length;
+        private final HttpURLConnection connection;
+
+        StreamingBody(final InputStream in, final long length, final HttpURLConnection connection) {
+            this.in = in;
+            this.length = length;
+            this.connection = connection;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public void writeTo(final WritableByteChannel channel) throws IOException {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            boolean complete = false;
+
+            try {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    ResponseBody.writeFully(channel, ByteBuffer.wrap(buffer, 0, read));
+                }
+
+                complete = true;
+            } finally {
+                in.close();
+
+                // a partly read upstream connection can't be reused
+                if (!complete) {
+                    connection.disconnect();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link BodyStorage} keeping content in byte arrays. Only suitable for small
+ * objects; content is freed by the garbage collector, so the stored byte
+ * count only ever grows.
+ */
+public class HeapBodyStorage implements BodyStorage {
+    /**
+     * Size of the buffer used when storing object content.
+     */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final AtomicLong storedBytes = new AtomicLong();
+
+    @Override
+    public ObjectBody store(final InputStream in, final MessageDigest md5) throws IOException {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        int read;
+
+        try (InputStream digesting = new DigestInputStream(in, md5)) {
+            while ((read = digesting.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+        }
+
+        storedBytes.addAndGet(content.size());
+        return new HeapObjectBody(content.toByteArray());
+    }
+
+    @Override
+    public long getStoredBytes() {
+        return storedBytes.get();
+    }
+
+    @Override
+    public void close() {
+    }
+}
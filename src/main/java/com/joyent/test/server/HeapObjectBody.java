@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * {@link ObjectBody} held in a byte array.
+ */
+class HeapObjectBody implements ObjectBody {
+    private final byte[] content;
+
+    HeapObjectBody(final byte[] content) {
+        this.content = content;
+    }
+
+    @Override
+    public long size() {
+        return content.length;
+    }
+
+    @Override
+    public ResponseBody slice(final long offset, final long length) {
+        return new ResponseBody() {
+            @Override
+            public long length() {
+                return length;
+            }
+
+            @Override
+            public void writeTo(final WritableByteChannel channel) throws IOException {
+                ResponseBody.writeFully(channel, ByteBuffer.wrap(content, (int) offset, (int) length));
+            }
+        };
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * HTTP request received by {@link HttpServer}. The body stream is limited to
+ * the request body, whether it was sent with a length or chunked.
+ */
+public final class HttpRequest {
+    private final String method;
+    private final String target;
+    private final String path;
+    private final Map<String, String> query;
+    private final Map<String, String> headers;
+    private final InputStream body;
+    private final long receivedNanos;
+
+    HttpRequest(final String method, final String target, final Map<String, String> headers,
+                final InputStream body, final long receivedNanos) {
+        this.method = method;
+        this.target = target;
+        this.headers = Collections.unmodifiableMap(headers);
+        this.body = body;
+        this.receivedNanos = receivedNanos;
+
+        final int queryStart = target.indexOf('?');
+        final String rawPath = queryStart < 0 ? target : target.substring(0, queryStart);
+        this.path = normalize(decode(rawPath));
+        this.query = queryStart < 0
+                ? Collections.emptyMap()
+                : parseQuery(target.substring(queryStart + 1));
+    }
+
+    /**
+     * @return request method in upper case
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return request target exactly as sent, in origin form
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * @return decoded path without duplicate or trailing slashes
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @param name parameter name
+     * @return decoded value of the first parameter with the name or null
+     */
+    public String getQueryParameter(final String name) {
+        return query.get(name);
+    }
+
+    /**
+     * @return decoded query parameters in the order they were sent
+     */
+    public Map<String, String> getQueryParameters() {
+        return query;
+    }
+
+    /**
+     * @param name header name, in any case
+     * @return header value or null if the header was not sent
+     */
+    public String getHeader(final String name) {
+        return headers.get(name);
+    }
+
+    /**
+     * @return headers keyed case-insensitively
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return request body; empty when the request has none
+     */
+    public InputStream getBody() {
+        return body;
+    }
+
+    /**
+     * @return value of {@link System#nanoTime()} when the request line arrived
+     */
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + target;
+    }
+
+    /**
+     * Creates a case-insensitive header map.
+     *
+     * @return new empty map
+     */
+    static Map<String, String> newHeaderMap() {
+        return new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    }
+
+    /**
+     * Removes duplicate and trailing slashes from a path.
+     *
+     * @param path decoded path
+     * @return normalized path, "/" for the root
+     */
+    static String normalize(final String path) {
+        final StringBuilder normalized = new StringBuilder(path.length());
+
+        for (int i = 0; i < path.length(); i++) {
+            final char c = path.charAt(i);
+
+            if (c == '/' && normalized.length() > 0 && normalized.charAt(normalized.length() - 1) == '/') {
+                continue;
+            }
+
+            normalized.append(c);
+        }
+
+        if (normalized.length() > 1 && normalized.charAt(normalized.length() - 1) == '/') {
+            normalized.setLength(normalized.length() - 1);
+        }
+
+        if (normalized.length() == 0 || normalized.charAt(0) != '/') {
+            normalized.insert(0, '/');
+        }
+
+        return normalized.toString();
+    }
+
+    /**
+     * Decodes percent escapes as UTF-8. Unlike {@link java.net.URLDecoder}
+     * plus signs are kept, as they are in paths.
+     *
+     * @param encoded encoded text
+     * @return decoded text
+     */
+    static String decode(final String encoded) {
+        if (encoded.indexOf('%') < 0) {
+            return encoded;
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(encoded.length());
+
+        for (int i = 0; i < encoded.length(); i++) {
+            final char c = encoded.charAt(i);
+
+            if (c == '%' && i + 2 < encoded.length()) {
+                final int hi = Character.digit(encoded.charAt(i + 1), 16);
+                final int lo = Character.digit(encoded.charAt(i + 2), 16);
+
+                if (hi >= 0 && lo >= 0) {
+                    bytes.write((hi << 4) | lo);
+                    i += 2;
+                    continue;
+                }
+            }
+
+            final byte[] utf8 = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+            bytes.write(utf8, 0, utf8.length);
+        }
+
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> parseQuery(final String query) {
+        final Map<String, String> parameters = new LinkedHashMap<>();
+
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+
+            final int equals = pair.indexOf('=');
+            final String name = decode((equals < 0 ? pair : pair.substring(0, equals)).replace('+', ' '));
+            final String value = equals < 0 ? "" : decode(pair.substring(equals + 1).replace('+', ' '));
+            parameters.putIfAbsent(name, value);
+        }
+
+        return Collections.unmodifiableMap(parameters);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * HTTP response written by {@link HttpServer}. Unless a handler sets
+ * {@code Content-Length} itself, as it does for HEAD responses, the length is
+ * taken from the body.
+ */
+public final class HttpResponse {
+    private final int status;
+    private final Map<String, String> headers = HttpRequest.newHeaderMap();
+    private ResponseBody body;
+
+    /**
+     * Creates a response without a body.
+     *
+     * @param status status code
+     */
+    public HttpResponse(final int status) {
+        this.status = status;
+    }
+
+    /**
+     * @return status code
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return headers keyed case-insensitively
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @param name header name, in any case
+     * @return header value or null
+     */
+    public String getHeader(final String name) {
+        return headers.get(name);
+    }
+
+    /**
+     * Sets a header, replacing any previous value.
+     *
+     * @param name header name
+     * @param value header value
+     * @return this response
+     */
+    public HttpResponse header(final String name, final Object value) {
+        headers.put(name, String.valueOf(value));
+        return this;
+    }
+
+    /**
+     * @return body or null if the response has none
+     */
+    public ResponseBody getBody() {
+        return body;
+    }
+
+    /**
+     * @param body response body
+     * @param contentType value of the Content-Type header
+     * @return this response
+     */
+    public HttpResponse body(final ResponseBody body, final String contentType) {
+        this.body = body;
+        return header("Content-Type", contentType);
+    }
+
+    /**
+     * @param text body encoded as UTF-8
+     * @param contentType value of the Content-Type header
+     * @return this response
+     */
+    public HttpResponse body(final String text, final String contentType) {
+        return body(ResponseBody.of(text.getBytes(StandardCharsets.UTF_8)), contentType);
+    }
+
+    /**
+     * @param status status code
+     * @return standard reason phrase for the status
+     */
+    static String reason(final int status) {
+        switch (status) {
+            case 100: return "Continue";
+            case 200: return "OK";
+            case 201: return "Created";
+            case 204: return "No Content";
+            case 206: return "Partial Content";
+            case 304: return "Not Modified";
+            case 400: return "Bad Request";
+            case 401: return "Unauthorized";
+            case 403: return "Forbidden";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 409: return "Conflict";
+            case 412: return "Precondition Failed";
+            case 416: return "Requested Range Not Satisfiable";
+            case 500: return "Internal Server Error";
+            case 501: return "Not Implemented";
+            case 503: return "Service Unavailable";
+            default: return "Unknown";
+        }
+    }
+}
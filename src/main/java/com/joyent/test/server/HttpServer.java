@@ -0,0 +1,457 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal HTTP/1.1 server built on blocking NIO channels. Each connection is
+ * served by its own thread and kept alive between requests; request bodies
+ * may be sent with a length or chunked, and response bodies are written
+ * directly to the socket channel so that file-backed content can be sent with
+ * {@link java.nio.channels.FileChannel#transferTo}. Requests in absolute form,
+ * as sent to a proxy, are accepted.
+ *
+ * <p>Connections can be made to behave like a slower, lossy link by setting
+ * a {@link NetworkProfile}; the profile can be changed at any time and
+ * applies to open connections as well as new ones.</p>
+ *
+ * <p>This is a test fixture: it trusts its clients, keeps no limits beyond a
+ * maximum header line length and does not support TLS.</p>
+ */
+public class HttpServer implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpServer.class);
+
+    /**
+     * Longest request or header line accepted.
+     */
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    /**
+     * Size of the buffer reading each connection.
+     */
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Longest wait for connection threads to finish when closing.
+     */
+    private static final long CLOSE_TIMEOUT_SECONDS = 5;
+
+    /**
+     * Format of the Date header.
+     */
+    static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME;
+
+    /**
+     * Handler producing responses.
+     */
+    private final RequestHandler handler;
+
+    /**
+     * Open connections, closed when the server stops.
+     */
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Threads serving connections.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Listening channel.
+     */
+    private ServerSocketChannel serverChannel;
+
+    /**
+     * True while the server accepts connections.
+     */
+    private volatile boolean running = false;
+
+    /**
+     * Requests served, by method and path.
+     */
+    private final RequestStats requestStats = new RequestStats();
+
+    /**
+     * Link emulated on every connection.
+     */
+    private volatile NetworkProfile networkProfile = NetworkProfile.NONE;
+
+    /**
+     * Creates a new server; call {@link #start()} to listen.
+     *
+     * @param handler handler producing responses
+     */
+    public HttpServer(final RequestHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Starts listening on an ephemeral loopback port.
+     *
+     * @return this server
+     * @throws IOException thrown when the port can't be bound
+     */
+    public HttpServer start() throws IOException {
+        return start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    /**
+     * Starts listening on an address.
+     *
+     * @param address address to bind
+     * @return this server
+     * @throws IOException thrown when the address can't be bound
+     */
+    public synchronized HttpServer start(final InetSocketAddress address) throws IOException {
+        if (running) {
+            throw new IllegalStateException("Server already started");
+        }
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(address);
+
+        final String name = "http-server-" + getPort();
+        final AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, name + "-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        running = true;
+        executor.execute(this::acceptConnections);
+        return this;
+    }
+
+    /**
+     * @return port the server listens on
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * @return base URL of the server without a trailing slash
+     */
+    public String getUrl() {
+        return "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + getPort();
+    }
+
+    /**
+     * @return number of connections currently open
+     */
+    public int getOpenConnections() {
+        return connections.size();
+    }
+
+    /**
+     * @return requests served, by method and path
+     */
+    public RequestStats getRequestStats() {
+        return requestStats;
+    }
+
+    /**
+     * @return link emulated on every connection
+     */
+    public NetworkProfile getNetworkProfile() {
+        return networkProfile;
+    }
+
+    /**
+     * Sets the link emulated on every connection, open or not.
+     *
+     * @param networkProfile profile to apply, {@link NetworkProfile#NONE} to
+     *                       serve at loopback speed
+     * @return this server
+     */
+    public HttpServer setNetworkProfile(final NetworkProfile networkProfile) {
+        this.networkProfile = networkProfile;
+        return this;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        serverChannel.close();
+
+        for (SocketChannel connection : connections) {
+            connection.close();
+        }
+
+        executor.shutdownNow();
+
+        // let handlers whose connection was closed under them finish up
+        try {
+            executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptConnections() {
+        while (running) {
+            try {
+                final SocketChannel connection = serverChannel.accept();
+                connection.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                connections.add(connection);
+                executor.execute(() -> serve(connection));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                LOG.warn("Unable to accept connection", e);
+            }
+        }
+    }
+
+    /**
+     * Serves requests on a connection until the client closes it or asks
+     * for it to be closed.
+     *
+     * @param connection connection to serve
+     */
+    private void serve(final SocketChannel connection) {
+        try (ByteChannel channel = new ShapedChannel(connection, this::getNetworkProfile)) {
+            final InputStream in = new BufferedInputStream(Channels.newInputStream(channel), READ_BUFFER_SIZE);
+
+            while (running) {
+                final String requestLine = readLine(in);
+
+                if (requestLine == null) {
+                    return;
+                }
+
+                if (requestLine.isEmpty()) {
+                    continue;
+                }
+
+                if (!serveRequest(requestLine, in, channel)) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            LOG.debug("Connection closed with error", e);
+        } finally {
+            connections.remove(connection);
+        }
+    }
+
+    /**
+     * Reads the rest of a request, handles it and writes the response.
+     *
+     * @return true if the connection should be kept open
+     */
+    private boolean serveRequest(final String requestLine, final InputStream in, final WritableByteChannel channel)
+            throws IOException {
+        final long receivedNanos = System.nanoTime();
+        final String[] parts = requestLine.split(" ");
+
+        if (parts.length != 3 || !parts[2].startsWith("HTTP/1.")) {
+            write(channel, "GET", new HttpResponse(400).body("Malformed request line\n", "text/plain"), false, null);
+            return false;
+        }
+
+        final Map<String, String> headers = readHeaders(in);
+        final String method = parts[0].toUpperCase();
+        final InputStream body = requestBody(headers, in);
+
+        if ("100-continue".equalsIgnoreCase(headers.get("Expect"))) {
+            ResponseBody.writeFully(channel, ByteBuffer.wrap(
+                    "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1)));
+        }
+
+        final HttpRequest request = new HttpRequest(method, originForm(parts[1]), headers, body, receivedNanos);
+        HttpResponse response;
+
+        try {
+            response = handler.handle(request);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Handler failed for {}", request, e);
+            response = new HttpResponse(500).body(e + "\n", "text/plain");
+        }
+
+        // leave the connection positioned at the next request
+        final byte[] discard = new byte[8192];
+        while (body.read(discard) != -1) {
+            continue;
+        }
+
+        final String connectionHeader = headers.get("Connection");
+        final boolean keepAlive = parts[2].equals("HTTP/1.1")
+                ? !"close".equalsIgnoreCase(connectionHeader)
+                : "keep-alive".equalsIgnoreCase(connectionHeader);
+
+        final RequestStats.PathStats stats = requestStats.count(method, request.getPath(), response.getStatus());
+
+        try {
+            write(channel, method, response, keepAlive, stats);
+        } finally {
+            requestStats.complete(stats, System.nanoTime() - receivedNanos);
+        }
+
+        return keepAlive;
+    }
+
+    private static Map<String, String> readHeaders(final InputStream in) throws IOException {
+        final Map<String, String> headers = HttpRequest.newHeaderMap();
+        String line;
+
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            final int colon = line.indexOf(':');
+
+            if (colon <= 0) {
+                continue;
+            }
+
+            final String name = line.substring(0, colon).trim();
+            final String value = line.substring(colon + 1).trim();
+            headers.merge(name, value, (first, second) -> first + ", " + second);
+        }
+
+        return headers;
+    }
+
+    private static InputStream requestBody(final Map<String, String> headers, final InputStream in) {
+        final String transferEncoding = headers.get("Transfer-Encoding");
+
+        if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+            return new ChunkedInputStream(in);
+        }
+
+        final String contentLength = headers.get("Content-Length");
+
+        if (contentLength != null) {
+            final BoundedInputStream bounded = new BoundedInputStream(in, Long.parseLong(contentLength));
+            bounded.setPropagateClose(false);
+            return bounded;
+        }
+
+        return new ByteArrayInputStream(new byte[0]);
+    }
+
+    /**
+     * Converts an absolute-form request target into origin form.
+     */
+    private static String originForm(final String target) {
+        if (target.startsWith("http://") || target.startsWith("https://")) {
+            final int pathStart = target.indexOf('/', target.indexOf("://") + 3);
+            return pathStart < 0 ? "/" : target.substring(pathStart);
+        }
+
+        return target;
+    }
+
+    private static void write(final WritableByteChannel channel, final String method, final HttpResponse response,
+                              final boolean keepAlive, final RequestStats.PathStats stats) throws IOException {
+        final int status = response.getStatus();
+        final ResponseBody body = response.getBody();
+        final Map<String, String> headers = response.getHeaders();
+
+        headers.putIfAbsent("Date", HTTP_DATE.format(ZonedDateTime.now(ZoneOffset.UTC)));
+
+        if (status != 204 && status != 304) {
+            headers.putIfAbsent("Content-Length", String.valueOf(body == null ? 0 : body.length()));
+        }
+
+        if (!keepAlive) {
+            headers.put("Connection", "close");
+        }
+
+        final StringBuilder head = new StringBuilder(256)
+                .append("HTTP/1.1 ").append(status).append(' ').append(HttpResponse.reason(status)).append("\r\n");
+
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+
+        head.append("\r\n");
+        final byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+        final boolean sendBody = body != null && !"HEAD".equals(method) && status != 204 && status != 304;
+
+        if (stats != null) {
+            stats.recordBytesSent(headBytes.length + (sendBody ? body.length() : 0L));
+        }
+
+        try {
+            ResponseBody.writeFully(channel, ByteBuffer.wrap(headBytes));
+
+            if (sendBody) {
+                body.writeTo(channel instanceof ShapedChannel ? ((ShapedChannel) channel).bodyTarget() : channel);
+            }
+        } finally {
+            if (body != null) {
+                body.release();
+            }
+        }
+    }
+
+    /**
+     * Reads a CRLF or LF terminated line as ISO-8859-1.
+     *
+     * @param in stream to read
+     * @return line without its terminator or null at the end of the stream
+     * @throws IOException thrown when reading fails or the line is too long
+     */
+    static String readLine(final InputStream in) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                final byte[] bytes = line.toByteArray();
+                final int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r'
+                        ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+            }
+
+            if (line.size() >= MAX_LINE_LENGTH) {
+                throw new IOException("Line exceeds " + MAX_LINE_LENGTH + " bytes");
+            }
+
+            line.write(b);
+        }
+
+        return line.size() == 0 ? null : line.toString("ISO-8859-1");
+    }
+}
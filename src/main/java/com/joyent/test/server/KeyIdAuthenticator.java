@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import com.joyent.http.signature.KeyFingerprinter;
+
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link Authenticator} that checks the structure of http-signature
+ * {@code Authorization} headers and that the key id names a key registered
+ * for an existing account. Signatures themselves are not verified; see
+ * {@link SignatureAuthenticator} for that.
+ */
+public class KeyIdAuthenticator implements Authenticator {
+    /**
+     * Registered key fingerprints keyed by account.
+     */
+    private final Map<String, Set<String>> fingerprints = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a public key for an account under both its MD5 and SHA256
+     * fingerprints.
+     *
+     * @param account account name
+     * @param key public key
+     */
+    public void register(final String account, final PublicKey key) {
+        final KeyPair keyPair = new KeyPair(key, null);
+        final Set<String> keys = fingerprints.computeIfAbsent(account, a -> ConcurrentHashMap.newKeySet());
+        keys.add(KeyFingerprinter.md5Fingerprint(keyPair));
+        keys.add("SHA256:" + KeyFingerprinter.sha256Fingerprint(keyPair));
+    }
+
+    @Override
+    public String authenticate(final HttpRequest request) {
+        final String authorization = request.getHeader("Authorization");
+
+        if (authorization == null) {
+            return null;
+        }
+
+        final Map<String, String> parameters = parseSignature(authorization);
+        final String[] keyId = parseKeyId(parameters.get("keyId"));
+        final String account = keyId[0];
+        final Set<String> keys = fingerprints.get(account);
+
+        if (keys == null) {
+            throw new MantaServerException(403, "AccountDoesNotExist", account + " does not exist");
+        }
+
+        if (!keys.contains(keyId[1])) {
+            throw new MantaServerException(403, "KeyDoesNotExist",
+                    "Key " + keyId[1] + " is not registered for " + account);
+        }
+
+        if (request.getHeader("Date") == null && request.getHeader("x-date") == null) {
+            throw new MantaServerException(400, "MissingParameter", "Date header is required");
+        }
+
+        return account;
+    }
+
+    /**
+     * Parses the parameters of a {@code Signature} authorization header.
+     * Callers may rely on {@code keyId}, {@code algorithm} and
+     * {@code signature} being present in the result.
+     *
+     * @param authorization header value
+     * @return parameters keyed by name
+     * @throws MantaServerException 401 InvalidAuthenticationToken when the
+     *         header isn't a signature or lacks one of the required parameters
+     */
+    static Map<String, String> parseSignature(final String authorization) {
+        if (!authorization.regionMatches(true, 0, "Signature ", 0, 10)) {
+            throw new MantaServerException(401, "InvalidAuthenticationToken",
+                    "Only Signature authorization is supported");
+        }
+
+        final Map<String, String> parameters = new HashMap<>();
+        int position = 10;
+
+        while (position < authorization.length()) {
+            final int equals = authorization.indexOf('=', position);
+
+            if (equals < 0 || equals + 1 >= authorization.length() || authorization.charAt(equals + 1) != '"') {
+                break;
+            }
+
+            final int closingQuote = authorization.indexOf('"', equals + 2);
+
+            if (closingQuote < 0) {
+                break;
+            }
+
+            parameters.put(authorization.substring(position, equals).trim(),
+                    authorization.substring(equals + 2, closingQuote));
+            position = authorization.indexOf(',', closingQuote);
+
+            if (position < 0) {
+                break;
+            }
+
+            position++;
+        }
+
+        for (String required : new String[] {"keyId", "algorithm", "signature"}) {
+            if (!parameters.containsKey(required)) {
+                throw new MantaServerException(401, "InvalidAuthenticationToken",
+                        "Authorization header is missing " + required);
+            }
+        }
+
+        return parameters;
+    }
+
+    /**
+     * Splits a key id of the form {@code /account[/subuser]/keys/fingerprint}.
+     *
+     * @param keyId key id
+     * @return account and fingerprint
+     */
+    static String[] parseKeyId(final String keyId) {
+        final int keys = keyId.lastIndexOf("/keys/");
+        final String login = keys > 0 ? keyId.substring(1, keys) : "";
+
+        if (!keyId.startsWith("/") || login.isEmpty()) {
+            throw new MantaServerException(403, "InvalidKeyId", "Malformed key id: " + keyId);
+        }
+
+        final int subuser = login.indexOf('/');
+        return new String[] {
+                subuser < 0 ? login : login.substring(0, subuser),
+                keyId.substring(keys + 6)
+        };
+    }
+}
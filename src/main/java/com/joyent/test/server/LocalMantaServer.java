@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import com.joyent.http.signature.KeyFingerprinter;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * In-process stand-in for a Manta endpoint. Starts an {@link HttpServer}
+ * serving a {@link MantaStore} on a loopback port, with object content kept
+ * off the heap in a {@link SegmentBodyStorage} and a freshly generated
+ * RSA key registered for each account so that an unmodified client can
+ * authenticate against it. Request signatures and signed URLs are verified
+ * by a {@link SignatureAuthenticator}.
+ *
+ * <p>Integration tests use the shared instance when {@code manta.it.local}
+ * is set, so the suite can run without network access or credentials.</p>
+ */
+public class LocalMantaServer implements Closeable {
+    /**
+     * Size of the generated RSA key.
+     */
+    private static final int KEY_SIZE = 2048;
+
+    /**
+     * Server shared by a test run, started on first use.
+     */
+    private static LocalMantaServer sharedInstance;
+
+    private final String account;
+    private final KeyPair keyPair;
+    private final String keyId;
+    private final Path keyPath;
+    private final MantaStore store;
+    private final SignatureAuthenticator authenticator = new SignatureAuthenticator();
+    private final HttpServer server;
+
+    /**
+     * Creates a new server for an account; call {@link #start()} to listen.
+     *
+     * @param account account owning the generated key
+     * @throws IOException thrown when the private key can't be written
+     */
+    public LocalMantaServer(final String account) throws IOException {
+        this.account = account;
+        this.keyPair = generateKeyPair();
+        this.keyId = KeyFingerprinter.md5Fingerprint(keyPair);
+        this.keyPath = writePrivateKey(keyPair);
+        this.store = new MantaStore(new SegmentBodyStorage());
+        addAccount(account);
+        this.server = new HttpServer(new MantaRequestHandler(store, authenticator));
+    }
+
+    /**
+     * Returns the server shared by a test run, starting it on first use.
+     * Each distinct account is added to the same server and key.
+     *
+     * @param account account the caller authenticates as
+     * @return running server
+     */
+    public static synchronized LocalMantaServer sharedInstance(final String account) {
+        try {
+            if (sharedInstance == null) {
+                sharedInstance = new LocalMantaServer(account).start();
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        sharedInstance.close();
+                    } catch (IOException e) {
+                        // the process is exiting
+                    }
+                }));
+            } else if (!sharedInstance.store.hasAccount(account)) {
+                sharedInstance.addAccount(account);
+            }
+
+            return sharedInstance;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to start local Manta server", e);
+        }
+    }
+
+    /**
+     * @return the shared server if it has been started, otherwise null
+     */
+    public static synchronized LocalMantaServer sharedInstanceIfStarted() {
+        return sharedInstance;
+    }
+
+    /**
+     * Starts listening on an ephemeral loopback port.
+     *
+     * @return this server
+     * @throws IOException thrown when the port can't be bound
+     */
+    public LocalMantaServer start() throws IOException {
+        server.start();
+        return this;
+    }
+
+    /**
+     * Adds an account that authenticates with this server's key.
+     *
+     * @param name account name
+     */
+    public void addAccount(final String name) {
+        store.addAccount(name);
+        authenticator.register(name, keyPair.getPublic());
+    }
+
+    /**
+     * @return URL to use as the Manta endpoint
+     */
+    public String getUrl() {
+        return server.getUrl();
+    }
+
+    /**
+     * @return account the server was created for
+     */
+    public String getAccount() {
+        return account;
+    }
+
+    /**
+     * @return MD5 fingerprint of the generated key
+     */
+    public String getKeyId() {
+        return keyId;
+    }
+
+    /**
+     * @return PEM file holding the generated private key
+     */
+    public Path getKeyPath() {
+        return keyPath;
+    }
+
+    /**
+     * @return generated key pair
+     */
+    public KeyPair getKeyPair() {
+        return keyPair;
+    }
+
+    /**
+     * @return authenticator verifying requests, for registering more keys
+     */
+    public SignatureAuthenticator getAuthenticator() {
+        return authenticator;
+    }
+
+    /**
+     * @return namespace served, for tests that seed or inspect it directly
+     */
+    public MantaStore getStore() {
+        return store;
+    }
+
+    /**
+     * Sets the link emulated between clients and this server.
+     *
+     * @param profile profile to apply
+     * @return this server
+     */
+    public LocalMantaServer setNetworkProfile(final NetworkProfile profile) {
+        server.setNetworkProfile(profile);
+        return this;
+    }
+
+    /**
+     * @return requests served, by method and path
+     */
+    public RequestStats getRequestStats() {
+        return server.getRequestStats();
+    }
+
+    /**
+     * @return underlying HTTP server
+     */
+    public HttpServer getHttpServer() {
+        return server;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        store.close();
+    }
+
+    private static KeyPair generateKeyPair() {
+        try {
+            final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(KEY_SIZE);
+            return generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("RSA is not available", e);
+        }
+    }
+
+    private static Path writePrivateKey(final KeyPair keyPair) throws IOException {
+        final Path path = Files.createTempFile("local-manta-", ".pem");
+        path.toFile().deleteOnExit();
+
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.US_ASCII);
+             JcaPEMWriter pem = new JcaPEMWriter(writer)) {
+            pem.writeObject(keyPair.getPrivate());
+        }
+
+        return path;
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import com.joyent.http.signature.Signer;
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+@Test
+public class LocalMantaServerTest {
+    private static final String ACCOUNT = "local-test";
+
+    private LocalMantaServer server;
+    private Signer signer;
+
+    @BeforeClass
+    public void start() throws IOException {
+        server = new LocalMantaServer(ACCOUNT).start();
+        signer = new Signer.Builder(server.getKeyPair()).build();
+    }
+
+    @AfterClass
+    public void stop() throws IOException {
+        server.close();
+    }
+
+    public void putAndGetObject() throws Exception {
+        final byte[] content = "hello local manta".getBytes(StandardCharsets.UTF_8);
+        final HttpURLConnection put = request("PUT", "/stor/object.txt");
+        put.setRequestProperty("Content-Type", "text/plain");
+        put.setRequestProperty("m-color", "blue");
+        send(put, content);
+
+        Assert.assertEquals(put.getResponseCode(), 204);
+        final String computed = Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(content));
+        Assert.assertEquals(put.getHeaderField("Computed-MD5"), computed);
+        final String etag = put.getHeaderField("Etag");
+        Assert.assertNotNull(etag);
+
+        final HttpURLConnection get = request("GET", "/stor/object.txt");
+        Assert.assertEquals(get.getResponseCode(), 200);
+        Assert.assertEquals(read(get), content);
+        Assert.assertEquals(get.getHeaderField("Content-Type"), "text/plain");
+        Assert.assertEquals(get.getHeaderField("Content-MD5"), computed);
+        Assert.assertEquals(get.getHeaderField("Etag"), etag);
+        Assert.assertEquals(get.getHeaderField("m-color"), "blue");
+        Assert.assertNotNull(get.getHeaderField("x-request-id"));
+
+        final HttpURLConnection head = request("HEAD", "/stor/object.txt");
+        Assert.assertEquals(head.getResponseCode(), 200);
+        Assert.assertEquals(head.getContentLengthLong(), content.length);
+    }
+
+    public void rangesAreServed() throws Exception {
+        putText("/stor/range.txt", "0123456789");
+
+        Assert.assertEquals(rangeRequest("bytes=2-4", 206), "234");
+        Assert.assertEquals(rangeRequest("bytes=7-", 206), "789");
+        Assert.assertEquals(rangeRequest("bytes=-2", 206), "89");
+        Assert.assertEquals(rangeRequest("bytes=8-100", 206), "89");
+
+        final HttpURLConnection unsatisfiable = request("GET", "/stor/range.txt");
+        unsatisfiable.setRequestProperty("Range", "bytes=10-");
+        Assert.assertEquals(unsatisfiable.getResponseCode(), 416);
+        Assert.assertEquals(unsatisfiable.getHeaderField("Content-Range"), "bytes */10");
+    }
+
+    public void conditionalRequests() throws Exception {
+        final String etag = putText("/stor/conditional.txt", "v1");
+
+        final HttpURLConnection notModified = request("GET", "/stor/conditional.txt");
+        notModified.setRequestProperty("If-None-Match", etag);
+        Assert.assertEquals(notModified.getResponseCode(), 304);
+
+        final HttpURLConnection failed = request("PUT", "/stor/conditional.txt");
+        failed.setRequestProperty("If-Match", "not-the-etag");
+        send(failed, "v2".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(failed.getResponseCode(), 412);
+        Assert.assertTrue(errorBody(failed).contains("PreconditionFailed"));
+    }
+
+    public void contentMd5MismatchIsRejected() throws Exception {
+        final HttpURLConnection put = request("PUT", "/stor/bad-md5.txt");
+        put.setRequestProperty("Content-MD5", Base64.getEncoder().encodeToString(new byte[16]));
+        send(put, "payload".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(put.getResponseCode(), 400);
+        Assert.assertEquals(request("HEAD", "/stor/bad-md5.txt").getResponseCode(), 404);
+    }
+
+    public void directoriesArePagedInOrder() throws Exception {
+        Assert.assertEquals(mkdir("/stor/listing").getResponseCode(), 204);
+
+        final HttpURLConnection again = mkdir("/stor/listing");
+        Assert.assertEquals(again.getResponseCode(), 204);
+        Assert.assertNotNull(again.getHeaderField("Last-Modified"));
+
+        for (String name : new String[] {"c", "a", "d", "b"}) {
+            putText("/stor/listing/" + name, name);
+        }
+        mkdir("/stor/listing/e");
+
+        final HttpURLConnection first = request("GET", "/stor/listing?limit=2");
+        Assert.assertEquals(first.getResponseCode(), 200);
+        Assert.assertEquals(first.getHeaderField("Result-Set-Size"), "5");
+        final String[] page = new String(read(first), StandardCharsets.UTF_8).split("\n");
+        Assert.assertEquals(page.length, 2);
+        Assert.assertTrue(page[0].startsWith("{\"name\":\"a\",\"type\":\"object\""), page[0]);
+        Assert.assertTrue(page[1].startsWith("{\"name\":\"b\""), page[1]);
+
+        final String[] rest = new String(read(request("GET", "/stor/listing?marker=b&limit=10")),
+                StandardCharsets.UTF_8).split("\n");
+        Assert.assertEquals(rest.length, 4);
+        Assert.assertTrue(rest[0].startsWith("{\"name\":\"b\""), rest[0]);
+        Assert.assertTrue(rest[3].startsWith("{\"name\":\"e\",\"type\":\"directory\""), rest[3]);
+
+        final HttpURLConnection notEmpty = request("DELETE", "/stor/listing");
+        Assert.assertEquals(notEmpty.getResponseCode(), 400);
+        Assert.assertTrue(errorBody(notEmpty).contains("DirectoryNotEmpty"));
+    }
+
+    public void snaplinkSurvivesSourceDelete() throws Exception {
+        putText("/stor/source.txt", "linked");
+
+        final HttpURLConnection link = request("PUT", "/stor/link.txt");
+        link.setRequestProperty("Content-Type", "application/json; type=link");
+        link.setRequestProperty("Location", "/" + ACCOUNT + "/stor/source.txt");
+        send(link, new byte[0]);
+        Assert.assertEquals(link.getResponseCode(), 204);
+
+        Assert.assertEquals(request("DELETE", "/stor/source.txt").getResponseCode(), 204);
+        Assert.assertEquals(new String(read(request("GET", "/stor/link.txt")), StandardCharsets.UTF_8), "linked");
+    }
+
+    public void metadataUpdateKeepsContent() throws Exception {
+        putText("/stor/metadata.txt", "content");
+
+        final HttpURLConnection update = request("PUT", "/stor/metadata.txt?metadata=true");
+        update.setRequestProperty("m-state", "updated");
+        send(update, new byte[0]);
+        Assert.assertEquals(update.getResponseCode(), 204);
+
+        final HttpURLConnection get = request("GET", "/stor/metadata.txt");
+        Assert.assertEquals(get.getHeaderField("m-state"), "updated");
+        Assert.assertEquals(new String(read(get), StandardCharsets.UTF_8), "content");
+    }
+
+    public void missingObjectsAndParents() throws Exception {
+        final HttpURLConnection missing = request("GET", "/stor/does-not-exist");
+        Assert.assertEquals(missing.getResponseCode(), 404);
+        Assert.assertTrue(errorBody(missing).contains("ResourceNotFound"));
+
+        final HttpURLConnection orphan = request("PUT", "/stor/no-such-dir/object");
+        send(orphan, "x".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(orphan.getResponseCode(), 404);
+        Assert.assertTrue(errorBody(orphan).contains("DirectoryDoesNotExist"));
+    }
+
+    public void unauthenticatedRequestsAreLimitedToPublic() throws Exception {
+        putText("/public/open.txt", "open");
+
+        final HttpURLConnection anonymous = (HttpURLConnection)
+                new URL(server.getUrl() + "/" + ACCOUNT + "/public/open.txt").openConnection();
+        Assert.assertEquals(anonymous.getResponseCode(), 200);
+
+        final HttpURLConnection denied = (HttpURLConnection)
+                new URL(server.getUrl() + "/" + ACCOUNT + "/stor").openConnection();
+        Assert.assertEquals(denied.getResponseCode(), 403);
+        Assert.assertTrue(errorBody(denied).contains("AuthorizationFailed"));
+    }
+
+    public void unknownKeyIsRejected() throws Exception {
+        final HttpURLConnection connection = (HttpURLConnection)
+                new URL(server.getUrl() + "/" + ACCOUNT + "/stor").openConnection();
+        connection.setRequestProperty("Date", signer.defaultSignDateAsString());
+        connection.setRequestProperty("Authorization",
+                "Signature keyId=\"/" + ACCOUNT + "/keys/00:11\",algorithm=\"rsa-sha256\",signature=\"AA==\"");
+        Assert.assertEquals(connection.getResponseCode(), 403);
+        Assert.assertTrue(errorBody(connection).contains("KeyDoesNotExist"));
+    }
+
+    public void forgedSignatureIsRejected() throws Exception {
+        final HttpURLConnection connection = (HttpURLConnection)
+                new URL(server.getUrl() + "/" + ACCOUNT + "/stor").openConnection();
+        final String date = signer.defaultSignDateAsString();
+        final String authorization = signer.createAuthorizationHeader(ACCOUNT, server.getKeyPair(), date);
+        connection.setRequestProperty("Date", signer.defaultSignDateAsString().replace("GMT", "+0000"));
+        connection.setRequestProperty("Authorization", authorization);
+        Assert.assertEquals(connection.getResponseCode(), 403);
+        Assert.assertTrue(errorBody(connection).contains("InvalidSignature"));
+    }
+
+    private HttpURLConnection request(final String method, final String path) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection)
+                new URL(server.getUrl() + "/" + ACCOUNT + path).openConnection();
+        final String date = signer.defaultSignDateAsString();
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Date", date);
+        connection.setRequestProperty("Authorization",
+                signer.createAuthorizationHeader(ACCOUNT, server.getKeyPair(), date));
+        return connection;
+    }
+
+    private String putText(final String path, final String text) throws IOException {
+        final HttpURLConnection put = request("PUT", path);
+        put.setRequestProperty("Content-Type", "text/plain");
+        send(put, text.getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(put.getResponseCode(), 204);
+        return put.getHeaderField("Etag");
+    }
+
+    private HttpURLConnection mkdir(final String path) throws IOException {
+        final HttpURLConnection put = request("PUT", path);
+        put.setRequestProperty("Content-Type", "application/json; type=directory");
+        send(put, new byte[0]);
+        return put;
+    }
+
+    private String rangeRequest(final String range, final int expectedStatus) throws IOException {
+        final HttpURLConnection get = request("GET", "/stor/range.txt");
+        get.setRequestProperty("Range", range);
+        Assert.assertEquals(get.getResponseCode(), expectedStatus);
+        return new String(read(get), StandardCharsets.UTF_8);
+    }
+
+    private static void send(final HttpURLConnection connection, final byte[] body) throws IOException {
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] read(final HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private static String errorBody(final HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getErrorStream()) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,474 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RequestHandler} implementing the subset of the Manta storage API
+ * used by the client: objects (PUT, GET, HEAD, DELETE, byte ranges and
+ * conditional requests), directories with paged listings, snaplinks and
+ * metadata updates. Errors are returned as Manta error documents with the
+ * codes a real Manta would send.
+ *
+ * <p>Server side multipart uploads and jobs are not supported and are
+ * answered with 501.</p>
+ */
+public class MantaRequestHandler implements RequestHandler {
+    /**
+     * Content type the client sends to create a directory.
+     */
+    private static final String DIRECTORY_REQUEST_TYPE = "type=directory";
+
+    /**
+     * Content type the client sends to create a snaplink.
+     */
+    private static final String LINK_REQUEST_TYPE = "type=link";
+
+    /**
+     * Content type of directory responses.
+     */
+    static final String DIRECTORY_CONTENT_TYPE = "application/x-json-stream; type=directory";
+
+    /**
+     * Content type of error documents.
+     */
+    private static final String ERROR_CONTENT_TYPE = "application/json";
+
+    /**
+     * Header reporting the microseconds the store spent on a listing page.
+     */
+    static final String LISTING_COST_HEADER = "x-local-listing-cost-us";
+
+    /**
+     * Page size used when a listing doesn't ask for one.
+     */
+    private static final int DEFAULT_LIMIT = 256;
+
+    /**
+     * Largest page Manta returns.
+     */
+    private static final int MAX_LIMIT = 1024;
+
+    /**
+     * Durability used when the client doesn't ask for one.
+     */
+    private static final int DEFAULT_DURABILITY = 2;
+
+    /**
+     * Format of mtime values in listings.
+     */
+    private static final DateTimeFormatter MTIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+    private final MantaStore store;
+    private final Authenticator authenticator;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param store namespace to serve
+     * @param authenticator authenticator for incoming requests
+     */
+    public MantaRequestHandler(final MantaStore store, final Authenticator authenticator) {
+        this.store = store;
+        this.authenticator = authenticator;
+    }
+
+    @Override
+    public HttpResponse handle(final HttpRequest request) throws IOException {
+        HttpResponse response;
+
+        try {
+            authorize(request);
+            response = dispatch(request);
+        } catch (RangeNotSatisfiableException e) {
+            response = error(e).header("Content-Range", e.getMessage());
+        } catch (MantaServerException e) {
+            response = error(e);
+        }
+
+        return response
+                .header("Server", "Manta")
+                .header("x-request-id", UUID.randomUUID())
+                .header("x-response-time",
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - request.getReceivedNanos()));
+    }
+
+    /**
+     * Renders an error document.
+     *
+     * @param e error to render
+     * @return error response
+     */
+    static HttpResponse error(final MantaServerException e) {
+        return new HttpResponse(e.getStatus()).body(
+                "{\"code\":\"" + escape(e.getCode()) + "\",\"message\":\"" + escape(e.getMessage()) + "\"}",
+                ERROR_CONTENT_TYPE);
+    }
+
+    private void authorize(final HttpRequest request) {
+        final String caller = authenticator.authenticate(request);
+        final String account = account(request.getPath());
+
+        if (!store.hasAccount(account)) {
+            throw new MantaServerException(403, "AccountDoesNotExist", account + " does not exist");
+        }
+
+        if (account.equals(caller)) {
+            return;
+        }
+
+        final boolean read = "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+
+        if (read && request.getPath().startsWith("/" + account + "/public")) {
+            return;
+        }
+
+        throw new MantaServerException(403, "AuthorizationFailed",
+                (caller == null ? "anonymous" : caller) + " is not allowed to access " + request.getPath());
+    }
+
+    private HttpResponse dispatch(final HttpRequest request) throws IOException {
+        switch (request.getMethod()) {
+            case "GET":
+            case "HEAD":
+                return get(request);
+            case "PUT":
+                return put(request);
+            case "DELETE":
+                store.delete(request.getPath());
+                return new HttpResponse(204);
+            default:
+                throw new MantaServerException(501, "NotImplemented",
+                        request.getMethod() + " is not supported by the local Manta server");
+        }
+    }
+
+    private HttpResponse get(final HttpRequest request) {
+        final StoreNode node;
+
+        // changes to the store are serialized on it: an object is looked up
+        // and its body retained by the response before a delete or an
+        // overwrite can release it
+        synchronized (store) {
+            node = store.lookup(request.getPath());
+
+            if (node != null && !node.isDirectory()) {
+                return getObject(request, (ObjectNode) node);
+            }
+        }
+
+        if (node == null) {
+            throw MantaServerException.notFound(request.getPath());
+        }
+
+        return getDirectory(request, (DirectoryNode) node);
+    }
+
+    private HttpResponse getObject(final HttpRequest request, final ObjectNode object) {
+        checkIfMatch(request, object);
+
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null && MantaStore.etagMatches(ifNoneMatch, object.getEtag())) {
+            return withObjectHeaders(new HttpResponse(304), object);
+        }
+
+        final long size = object.getBody().size();
+        final long[] range = parseRange(request.getHeader("Range"), size);
+
+        if (range == null) {
+            return withObjectHeaders(new HttpResponse(200), object)
+                    .header("Content-Length", size)
+                    .body(object.getBody().slice(0, size), object.getContentType());
+        }
+
+        final long length = range[1] - range[0] + 1;
+        return withObjectHeaders(new HttpResponse(206), object)
+                .header("Content-Length", length)
+                .header("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + size)
+                .body(object.getBody().slice(range[0], length), object.getContentType());
+    }
+
+    private HttpResponse getDirectory(final HttpRequest request, final DirectoryNode directory) {
+        final HttpResponse response = withNodeHeaders(new HttpResponse(200), directory);
+
+        if ("HEAD".equals(request.getMethod())) {
+            return response
+                    .header("Content-Type", DIRECTORY_CONTENT_TYPE)
+                    .header("Result-Set-Size", store.countEntries(request.getPath()));
+        }
+
+        final MantaStore.Listing listing = store.list(request.getPath(),
+                request.getQueryParameter("marker"), parseLimit(request.getQueryParameter("limit")));
+        final StringBuilder body = new StringBuilder(listing.getEntries().size() * 160);
+
+        for (Map.Entry<String, StoreNode> entry : listing.getEntries()) {
+            appendListingEntry(body, entry.getKey(), entry.getValue());
+        }
+
+        return response
+                .header("Result-Set-Size", listing.getResultSetSize())
+                .header(LISTING_COST_HEADER, TimeUnit.NANOSECONDS.toMicros(listing.getCostNanos()))
+                .body(body.toString(), DIRECTORY_CONTENT_TYPE);
+    }
+
+    private HttpResponse put(final HttpRequest request) throws IOException {
+        final String path = request.getPath();
+        final Map<String, String> metadata = metadata(request);
+
+        if ("true".equals(request.getQueryParameter("metadata"))) {
+            return withNodeHeaders(new HttpResponse(204), store.updateMetadata(path, metadata));
+        }
+
+        final String contentType = request.getHeader("Content-Type");
+
+        if (contentType != null && contentType.contains(DIRECTORY_REQUEST_TYPE)) {
+            final boolean created = store.putDirectory(path, metadata);
+            final HttpResponse response = new HttpResponse(204);
+
+            if (!created) {
+                response.header("Last-Modified", httpDate(store.lookup(path).getMtime()));
+            }
+
+            return response;
+        }
+
+        if (contentType != null && contentType.contains(LINK_REQUEST_TYPE)) {
+            final String location = request.getHeader("Location");
+
+            if (location == null) {
+                throw new MantaServerException(400, "MissingParameter", "Location header is required");
+            }
+
+            final ObjectNode link = store.link(path, HttpRequest.normalize(HttpRequest.decode(location)));
+            return withNodeHeaders(new HttpResponse(204), link).header("Etag", link.getEtag());
+        }
+
+        final MessageDigest md5 = MantaStore.newMd5();
+        final ObjectBody body = store.storeBody(request.getBody(), md5);
+        final byte[] digest = md5.digest();
+        final String computedMd5 = Base64.getEncoder().encodeToString(digest);
+        final ObjectNode object;
+
+        try {
+            final String contentMd5 = request.getHeader("Content-MD5");
+
+            if (contentMd5 != null && !contentMd5.equals(computedMd5)) {
+                throw new MantaServerException(400, "ChecksumError",
+                        "Content-MD5 " + contentMd5 + " does not match computed " + computedMd5);
+            }
+
+            object = store.putObject(path, body,
+                    contentType != null ? contentType : "application/octet-stream",
+                    digest, metadata, parseDurability(request.getHeader("Durability-Level")),
+                    request.getHeader("If-Match"));
+        } finally {
+            body.release();
+        }
+
+        return withNodeHeaders(new HttpResponse(204), object)
+                .header("Etag", object.getEtag())
+                .header("Computed-MD5", computedMd5);
+    }
+
+    private static HttpResponse withObjectHeaders(final HttpResponse response, final ObjectNode object) {
+        return withNodeHeaders(response, object)
+                .header("Etag", object.getEtag())
+                .header("Content-MD5", Base64.getEncoder().encodeToString(object.getMd5()))
+                .header("Durability-Level", object.getDurability())
+                .header("Accept-Ranges", "bytes")
+                .header("Content-Type", object.getContentType());
+    }
+
+    private static HttpResponse withNodeHeaders(final HttpResponse response, final StoreNode node) {
+        for (Map.Entry<String, String> header : node.getMetadata().entrySet()) {
+            response.header(header.getKey(), header.getValue());
+        }
+
+        return response.header("Last-Modified", httpDate(node.getMtime()));
+    }
+
+    private static void checkIfMatch(final HttpRequest request, final ObjectNode object) {
+        final String ifMatch = request.getHeader("If-Match");
+
+        if (ifMatch != null && !MantaStore.etagMatches(ifMatch, object.getEtag())) {
+            throw new MantaServerException(412, "PreconditionFailed",
+                    "If-Match " + ifMatch + " did not match " + object.getEtag());
+        }
+    }
+
+    /**
+     * Collects the headers stored with a node.
+     */
+    private static Map<String, String> metadata(final HttpRequest request) {
+        final Map<String, String> metadata = HttpRequest.newHeaderMap();
+
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            final String name = header.getKey().toLowerCase();
+
+            if (name.startsWith("m-") || name.equals("role-tag")) {
+                metadata.put(name, header.getValue());
+            }
+        }
+
+        return metadata;
+    }
+
+    /**
+     * Parses a single byte range.
+     *
+     * @return first and last positions, inclusive, or null to send the whole object
+     */
+    static long[] parseRange(final String header, final long size) {
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+
+        final String spec = header.substring(6).trim();
+        final int dash = spec.indexOf('-');
+
+        if (dash < 0) {
+            return null;
+        }
+
+        final long first;
+        final long last;
+
+        try {
+            if (dash == 0) {
+                final long suffix = Long.parseLong(spec.substring(1));
+                first = Math.max(0, size - suffix);
+                last = size - 1;
+            } else {
+                first = Long.parseLong(spec.substring(0, dash));
+                last = dash == spec.length() - 1
+                        ? size - 1
+                        : Math.min(size - 1, Long.parseLong(spec.substring(dash + 1)));
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        if (first >= size || last < first) {
+            throw new RangeNotSatisfiableException(size);
+        }
+
+        return new long[] {first, last};
+    }
+
+    private static int parseLimit(final String limit) {
+        if (limit == null) {
+            return DEFAULT_LIMIT;
+        }
+
+        try {
+            final int parsed = Integer.parseInt(limit);
+
+            if (parsed > 0 && parsed <= MAX_LIMIT) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+
+        throw new MantaServerException(400, "InvalidArgument", "limit must be between 1 and " + MAX_LIMIT);
+    }
+
+    private static int parseDurability(final String durability) {
+        if (durability == null) {
+            return DEFAULT_DURABILITY;
+        }
+
+        try {
+            return Integer.parseInt(durability.trim());
+        } catch (NumberFormatException e) {
+            throw new MantaServerException(400, "InvalidDurabilityLevel", "Invalid durability: " + durability);
+        }
+    }
+
+    private static void appendListingEntry(final StringBuilder body, final String name, final StoreNode node) {
+        body.append("{\"name\":\"").append(escape(name)).append("\",\"type\":\"")
+                .append(node.isDirectory() ? "directory" : "object")
+                .append("\",\"mtime\":\"").append(MTIME_FORMAT.format(node.getMtime())).append('"');
+
+        if (!node.isDirectory()) {
+            final ObjectNode object = (ObjectNode) node;
+            body.append(",\"size\":").append(object.getBody().size())
+                    .append(",\"etag\":\"").append(object.getEtag())
+                    .append("\",\"durability\":").append(object.getDurability());
+        }
+
+        body.append("}\n");
+    }
+
+    private static String account(final String path) {
+        final int end = path.indexOf('/', 1);
+        return end < 0 ? path.substring(1) : path.substring(1, end);
+    }
+
+    static String httpDate(final Instant instant) {
+        return HttpServer.HTTP_DATE.format(instant.atZone(ZoneOffset.UTC));
+    }
+
+    /**
+     * Escapes a string for inclusion in a JSON document.
+     */
+    static String escape(final String text) {
+        final StringBuilder escaped = new StringBuilder(text.length() + 8);
+
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+
+            switch (c) {
+                case '"':
+                    escaped.append("\\\"");
+                    break;
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    escaped.append("\\r");
+                    break;
+                case '\t':
+                    escaped.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        escaped.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        escaped.append(c);
+                    }
+            }
+        }
+
+        return escaped.toString();
+    }
+
+    /**
+     * Thrown for ranges that start beyond the end of the object.
+     */
+    private static final class RangeNotSatisfiableException extends MantaServerException {
+        private static final long serialVersionUID = 4212340925309148361L;
+
+        RangeNotSatisfiableException(final long size) {
+            super(416, "RequestedRangeNotSatisfiable", "bytes */" + size);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+/**
+ * Error returned to the client as a Manta error document,
+ * {@code {"code":"...","message":"..."}}, with the given status.
+ */
+public class MantaServerException extends RuntimeException {
+    private static final long serialVersionUID = -2954512402925713442L;
+
+    private final int status;
+    private final String code;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param status HTTP status code
+     * @param code Manta error code, e.g. {@code ResourceNotFound}
+     * @param message human readable message
+     */
+    public MantaServerException(final int status, final String code, final String message) {
+        super(message);
+        this.status = status;
+        this.code = code;
+    }
+
+    /**
+     * @return HTTP status code
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return Manta error code
+     */
+    public String getCode() {
+        return code;
+    }
+
+    static MantaServerException notFound(final String path) {
+        return new MantaServerException(404, "ResourceNotFound", path + " was not found");
+    }
+}
@@ -0,0 +1,625 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory namespace of accounts, directories and objects behind
+ * {@link LocalMantaServer}, with object content kept by a
+ * {@link BodyStorage}. Lookups are lock free; changes to the namespace are
+ * serialized on the store.
+ *
+ * <p>Each account owns the top level directories Manta creates for it
+ * ({@code stor}, {@code public}, {@code jobs}, {@code reports} and
+ * {@code uploads}); clients may not create or remove anything directly under
+ * the account or the root.</p>
+ */
+public class MantaStore implements Closeable {
+    /**
+     * Directories created for every account.
+     */
+    private static final String[] ACCOUNT_DIRECTORIES = {"stor", "public", "jobs", "reports", "uploads"};
+
+    /**
+     * Root of the namespace; its children are accounts.
+     */
+    private final DirectoryNode root = new DirectoryNode(Instant.now(), Collections.emptyMap());
+
+    /**
+     * Storage holding object content.
+     */
+    private final BodyStorage storage;
+
+    /**
+     * Cost of the listings served.
+     */
+    private final ListingStats listingStats = new ListingStats();
+
+    /**
+     * Creates a store keeping content on the heap.
+     */
+    public MantaStore() {
+        this(new HeapBodyStorage());
+    }
+
+    /**
+     * Creates a store keeping content in the given storage.
+     *
+     * @param storage storage for object content, closed with the store
+     */
+    public MantaStore(final BodyStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * A page of directory entries.
+     */
+    public static final class Listing {
+        private final List<Map.Entry<String, StoreNode>> entries;
+        private final long resultSetSize;
+        private final long costNanos;
+
+        Listing(final List<Map.Entry<String, StoreNode>> entries, final long resultSetSize,
+                final long costNanos) {
+            this.entries = entries;
+            this.resultSetSize = resultSetSize;
+            this.costNanos = costNanos;
+        }
+
+        /**
+         * @return entries in name order
+         */
+        public List<Map.Entry<String, StoreNode>> getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return total number of entries in the directory
+         */
+        public long getResultSetSize() {
+            return resultSetSize;
+        }
+
+        /**
+         * @return nanoseconds spent finding and collecting the page
+         */
+        public long getCostNanos() {
+            return costNanos;
+        }
+    }
+
+    /**
+     * Running totals of the work done serving directory listings, so that
+     * tests paging through huge directories can tell the client's cost from
+     * the server's.
+     */
+    public static final class ListingStats {
+        private final LongAdder listings = new LongAdder();
+        private final LongAdder entries = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+        void record(final int pageSize, final long nanos) {
+            listings.increment();
+            entries.add(pageSize);
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        /**
+         * @return pages served
+         */
+        public long getListings() {
+            return listings.sum();
+        }
+
+        /**
+         * @return entries returned in all pages
+         */
+        public long getEntries() {
+            return entries.sum();
+        }
+
+        /**
+         * @return nanoseconds spent on all pages
+         */
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        /**
+         * @return nanoseconds spent on the most expensive page
+         */
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * Clears the totals.
+         */
+        public void reset() {
+            listings.reset();
+            entries.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+        }
+
+        @Override
+        public String toString() {
+            final long count = getListings();
+            return String.format("%d pages, %d entries, %.1fus mean, %.1fus max", count, getEntries(),
+                    count == 0 ? 0.0 : getTotalNanos() / 1e3 / count, getMaxNanos() / 1e3);
+        }
+    }
+
+    /**
+     * Creates an account and its top level directories if it doesn't exist.
+     *
+     * @param account account name
+     */
+    public synchronized void addAccount(final String account) {
+        if (root.get(account) != null) {
+            return;
+        }
+
+        final Instant now = Instant.now();
+        final DirectoryNode home = new DirectoryNode(now, Collections.emptyMap());
+
+        for (String directory : ACCOUNT_DIRECTORIES) {
+            home.put(directory, new DirectoryNode(now, Collections.emptyMap()));
+        }
+
+        root.put(account, home);
+    }
+
+    /**
+     * @param account account name
+     * @return true if the account exists
+     */
+    public boolean hasAccount(final String account) {
+        return account != null && root.get(account) instanceof DirectoryNode;
+    }
+
+    /**
+     * Finds the node at a path.
+     *
+     * @param path normalized path
+     * @return node or null if nothing exists at the path
+     */
+    public StoreNode lookup(final String path) {
+        StoreNode node = root;
+
+        for (String segment : segments(path)) {
+            if (!(node instanceof DirectoryNode)) {
+                return null;
+            }
+
+            node = ((DirectoryNode) node).get(segment);
+
+            if (node == null) {
+                return null;
+            }
+        }
+
+        return node;
+    }
+
+    /**
+     * Creates a directory or updates the metadata of an existing one.
+     *
+     * @param path normalized path
+     * @param metadata metadata headers
+     * @return true if the directory was created, false if it already existed
+     */
+    public synchronized boolean putDirectory(final String path, final Map<String, String> metadata) {
+        if (segments(path).size() < 3 && lookup(path) instanceof DirectoryNode) {
+            // recursive creation may touch the account's own directories
+            return false;
+        }
+
+        final DirectoryNode parent = writableParent(path);
+        final String name = name(path);
+        final StoreNode existing = parent.get(name);
+
+        if (existing != null && !existing.isDirectory()) {
+            throw new MantaServerException(400, "ParentNotDirectory", path + " is an object");
+        }
+
+        if (existing != null) {
+            existing.setMetadata(metadata);
+            return false;
+        }
+
+        final Instant now = Instant.now();
+        parent.put(name, new DirectoryNode(now, metadata));
+        parent.setMtime(now);
+        return true;
+    }
+
+    /**
+     * Reads content into storage, computing its MD5 digest as it goes. The
+     * caller holds a reference to the returned body and must release it
+     * after passing it to {@link #putObject} or when abandoning the upload.
+     *
+     * @param in content to store, read to the end
+     * @param md5 digest updated with the content
+     * @return stored content
+     * @throws IOException thrown when reading fails
+     */
+    public ObjectBody storeBody(final InputStream in, final MessageDigest md5) throws IOException {
+        return storage.store(in, md5);
+    }
+
+    /**
+     * @return storage holding object content
+     */
+    public BodyStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Stores an object, replacing any object at the path.
+     *
+     * @param path normalized path
+     * @param body content returned by {@link #storeBody}
+     * @param contentType content type to report
+     * @param md5 MD5 digest of the content
+     * @param metadata metadata headers
+     * @param durability number of copies requested
+     * @return new object
+     */
+    public ObjectNode putObject(final String path, final ObjectBody body, final String contentType,
+                                final byte[] md5, final Map<String, String> metadata, final int durability) {
+        return putObject(path, body, contentType, md5, metadata, durability, null);
+    }
+
+    /**
+     * Stores an object if the object it replaces matches an {@code If-Match}
+     * condition. The condition is checked in the same step as the
+     * replacement, so of several writers holding the same ETag only one
+     * succeeds.
+     *
+     * @param path normalized path
+     * @param body content returned by {@link #storeBody}
+     * @param contentType content type to report
+     * @param md5 MD5 digest of the content
+     * @param metadata metadata headers
+     * @param durability number of copies requested
+     * @param ifMatch {@code If-Match} header value or null to replace unconditionally
+     * @return new object
+     */
+    public synchronized ObjectNode putObject(final String path, final ObjectBody body, final String contentType,
+                                             final byte[] md5, final Map<String, String> metadata,
+                                             final int durability, final String ifMatch) {
+        final DirectoryNode parent = writableParent(path);
+        final String name = name(path);
+        final StoreNode existing = parent.get(name);
+
+        if (ifMatch != null) {
+            if (!(existing instanceof ObjectNode)) {
+                throw new MantaServerException(412, "PreconditionFailed", "If-Match did not match " + path);
+            }
+
+            final String etag = ((ObjectNode) existing).getEtag();
+
+            if (!etagMatches(ifMatch, etag)) {
+                throw new MantaServerException(412, "PreconditionFailed",
+                        "If-Match " + ifMatch + " did not match " + etag);
+            }
+        }
+
+        if (existing != null && existing.isDirectory()) {
+            throw new MantaServerException(400, "OperationNotAllowedOnDirectory",
+                    path + " is a directory");
+        }
+
+        final Instant now = Instant.now();
+        final ObjectNode object = new ObjectNode(now, metadata, body, contentType, md5,
+                UUID.randomUUID().toString(), durability);
+        body.retain();
+        parent.put(name, object);
+        parent.setMtime(now);
+
+        if (existing != null) {
+            ((ObjectNode) existing).getBody().release();
+        }
+
+        return object;
+    }
+
+    /**
+     * Evaluates an {@code If-Match} or {@code If-None-Match} condition.
+     *
+     * @param condition comma separated, optionally quoted ETags or {@code *}
+     * @param etag ETag of the object
+     * @return true when the condition names the ETag or is {@code *}
+     */
+    static boolean etagMatches(final String condition, final String etag) {
+        for (String candidate : condition.split(",")) {
+            final String trimmed = candidate.trim().replace("\"", "");
+
+            if (trimmed.equals("*") || trimmed.equals(etag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Creates a snaplink: a new object sharing the content of an existing one.
+     * The content is referenced rather than copied, so linking costs the
+     * same for any object size; replacing or deleting either object later
+     * leaves the other untouched.
+     *
+     * @param path normalized path of the link
+     * @param sourcePath normalized path of the object linked to
+     * @return new object
+     */
+    public synchronized ObjectNode link(final String path, final String sourcePath) {
+        final StoreNode source = lookup(sourcePath);
+
+        if (source == null) {
+            throw new MantaServerException(404, "SourceObjectNotFound", sourcePath + " was not found");
+        }
+
+        if (source.isDirectory()) {
+            throw new MantaServerException(400, "LinkNotObject", sourcePath + " is not an object");
+        }
+
+        final ObjectNode object = (ObjectNode) source;
+        return putObject(path, object.getBody(), object.getContentType(), object.getMd5(),
+                object.getMetadata(), object.getDurability());
+    }
+
+    /**
+     * Moves a node and everything below it to a new path by re-parenting it,
+     * so the cost doesn't depend on the size of the tree or its content.
+     * Clients have no such operation; they move objects with a snaplink and
+     * a delete, which is equally cheap here because links share content.
+     * Tests use it to reshape namespaces seeded directly into the store.
+     *
+     * @param sourcePath normalized path of the node to move
+     * @param destinationPath normalized path to move it to, which must not exist
+     * @return moved node
+     */
+    public synchronized StoreNode move(final String sourcePath, final String destinationPath) {
+        if (destinationPath.equals(sourcePath) || destinationPath.startsWith(sourcePath + "/")) {
+            throw new MantaServerException(400, "InvalidArgument",
+                    "Can not move " + sourcePath + " to " + destinationPath);
+        }
+
+        final DirectoryNode sourceParent = writableParent(sourcePath);
+        final DirectoryNode destinationParent = writableParent(destinationPath);
+        final String sourceName = name(sourcePath);
+        final String destinationName = name(destinationPath);
+
+        if (sourceParent.get(sourceName) == null) {
+            throw MantaServerException.notFound(sourcePath);
+        }
+
+        if (destinationParent.get(destinationName) != null) {
+            throw new MantaServerException(400, "DestinationExists", destinationPath + " already exists");
+        }
+
+        final StoreNode node = sourceParent.remove(sourceName);
+        final Instant now = Instant.now();
+        destinationParent.put(destinationName, node);
+        sourceParent.setMtime(now);
+        destinationParent.setMtime(now);
+
+        return node;
+    }
+
+    /**
+     * Replaces the metadata of a node.
+     *
+     * @param path normalized path
+     * @param metadata new metadata headers
+     * @return updated node
+     */
+    public synchronized StoreNode updateMetadata(final String path, final Map<String, String> metadata) {
+        final StoreNode node = lookup(path);
+
+        if (node == null) {
+            throw MantaServerException.notFound(path);
+        }
+
+        if (node.isDirectory()) {
+            node.setMetadata(metadata);
+            return node;
+        }
+
+        final ObjectNode object = (ObjectNode) node;
+        final ObjectNode updated = new ObjectNode(object.getMtime(), metadata, object.getBody(),
+                object.getContentType(), object.getMd5(), object.getEtag(), object.getDurability());
+        writableParent(path).put(name(path), updated);
+        return updated;
+    }
+
+    /**
+     * Removes an object or an empty directory.
+     *
+     * @param path normalized path
+     */
+    public synchronized void delete(final String path) {
+        final DirectoryNode parent = writableParent(path);
+        final String name = name(path);
+        final StoreNode node = parent.get(name);
+
+        if (node == null) {
+            throw MantaServerException.notFound(path);
+        }
+
+        if (node.isDirectory() && !((DirectoryNode) node).isEmpty()) {
+            throw new MantaServerException(400, "DirectoryNotEmpty", path + " is not empty");
+        }
+
+        parent.remove(name);
+        parent.setMtime(Instant.now());
+
+        if (!node.isDirectory()) {
+            ((ObjectNode) node).getBody().release();
+        }
+    }
+
+    /**
+     * Removes a node and everything below it in one step, releasing the
+     * bodies of the objects removed. Clients have no such operation; tests
+     * use it to drop namespaces seeded directly into the store.
+     *
+     * @param path normalized path
+     * @return number of nodes removed
+     */
+    public synchronized long deleteTree(final String path) {
+        final DirectoryNode parent = writableParent(path);
+        final StoreNode node = parent.remove(name(path));
+
+        if (node == null) {
+            throw MantaServerException.notFound(path);
+        }
+
+        parent.setMtime(Instant.now());
+        return releaseTree(node);
+    }
+
+    @Override
+    public void close() throws IOException {
+        storage.close();
+    }
+
+    /**
+     * Lists a page of a directory's entries in name order.
+     *
+     * @param path normalized path of the directory
+     * @param marker first name to include or null to start at the beginning
+     * @param limit maximum number of entries
+     * @return page of entries
+     */
+    public Listing list(final String path, final String marker, final int limit) {
+        final StoreNode node = lookup(path);
+
+        if (!(node instanceof DirectoryNode)) {
+            throw new MantaServerException(400, "InvalidArgument", path + " is not a directory");
+        }
+
+        final long start = System.nanoTime();
+        final DirectoryNode directory = (DirectoryNode) node;
+        final List<Map.Entry<String, StoreNode>> page = new ArrayList<>(Math.min(limit, 1024));
+
+        for (Map.Entry<String, StoreNode> entry : directory.entriesFrom(marker).entrySet()) {
+            if (page.size() == limit) {
+                break;
+            }
+
+            page.add(entry);
+        }
+
+        final long costNanos = System.nanoTime() - start;
+        listingStats.record(page.size(), costNanos);
+        return new Listing(page, directory.size(), costNanos);
+    }
+
+    /**
+     * @return cost of the listings served so far
+     */
+    public ListingStats getListingStats() {
+        return listingStats;
+    }
+
+    /**
+     * @param path normalized path
+     * @return size of the directory at the path
+     */
+    public long countEntries(final String path) {
+        final StoreNode node = lookup(path);
+        return node instanceof DirectoryNode ? ((DirectoryNode) node).size() : 0;
+    }
+
+    private static long releaseTree(final StoreNode node) {
+        if (!node.isDirectory()) {
+            ((ObjectNode) node).getBody().release();
+            return 1;
+        }
+
+        long removed = 1;
+
+        for (StoreNode child : ((DirectoryNode) node).entriesFrom(null).values()) {
+            removed += releaseTree(child);
+        }
+
+        return removed;
+    }
+
+    /**
+     * Finds the directory a client may change an entry of.
+     */
+    private DirectoryNode writableParent(final String path) {
+        final List<String> segments = segments(path);
+
+        if (segments.size() < 3) {
+            throw new MantaServerException(400, "OperationNotAllowedOnRootDirectory",
+                    path + " can not be changed");
+        }
+
+        final String parentPath = path.substring(0, path.lastIndexOf('/'));
+        final StoreNode parent = lookup(parentPath);
+
+        if (parent == null) {
+            throw new MantaServerException(404, "DirectoryDoesNotExist", parentPath + " does not exist");
+        }
+
+        if (!parent.isDirectory()) {
+            throw new MantaServerException(400, "ParentNotDirectory", parentPath + " is not a directory");
+        }
+
+        return (DirectoryNode) parent;
+    }
+
+    private static String name(final String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static List<String> segments(final String path) {
+        final List<String> segments = new ArrayList<>();
+        int start = 1;
+
+        while (start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+
+            segments.add(path.substring(start, end));
+            start = end + 1;
+        }
+
+        return segments;
+    }
+
+    static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("MD5 is always available", e);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+@Test(singleThreaded = true)
+public class MantaStoreTest {
+    private static final String DIRECTORY = "/account/stor/large";
+
+    private static final int ENTRIES = 100_000;
+
+    private MantaStore store;
+
+    @BeforeClass
+    public void seed() throws IOException {
+        store = new MantaStore();
+        store.addAccount("account");
+        store.putDirectory(DIRECTORY, Collections.emptyMap());
+
+        final ObjectBody body = store.storeBody(new ByteArrayInputStream(new byte[1]), MantaStore.newMd5());
+
+        // insert out of order to exercise the index rather than appends
+        for (int i = 0; i < ENTRIES; i++) {
+            final int id = (int) ((i * 7919L) % ENTRIES);
+            store.putObject(DIRECTORY + "/" + name(id), body, "application/octet-stream", new byte[16],
+                    Collections.emptyMap(), 2);
+        }
+
+        body.release();
+    }
+
+    @AfterClass
+    public void close() throws IOException {
+        store.close();
+    }
+
+    public void firstPageIsInNameOrder() {
+        final MantaStore.Listing listing = store.list(DIRECTORY, null, 3);
+
+        Assert.assertEquals(listing.getResultSetSize(), ENTRIES);
+        Assert.assertEquals(names(listing.getEntries()), Arrays.asList(name(0), name(1), name(2)));
+        Assert.assertEquals(store.countEntries(DIRECTORY), ENTRIES);
+    }
+
+    public void markerIsInclusive() {
+        final MantaStore.Listing listing = store.list(DIRECTORY, name(ENTRIES - 2), 1024);
+        Assert.assertEquals(names(listing.getEntries()), Arrays.asList(name(ENTRIES - 2), name(ENTRIES - 1)));
+    }
+
+    public void markerBetweenNamesStartsAtNextName() {
+        final MantaStore.Listing listing = store.list(DIRECTORY, name(500) + "x", 2);
+        Assert.assertEquals(names(listing.getEntries()), Arrays.asList(name(501), name(502)));
+    }
+
+    public void pagingVisitsEveryEntryOnce() {
+        store.getListingStats().reset();
+
+        String marker = null;
+        int seen = 0;
+        String last = null;
+
+        while (true) {
+            final List<Map.Entry<String, StoreNode>> page = store.list(DIRECTORY, marker, 1024).getEntries();
+            int start = 0;
+
+            // like the client, skip the marker repeated at the top of each page
+            if (marker != null && !page.isEmpty() && page.get(0).getKey().equals(marker)) {
+                start = 1;
+            }
+
+            if (page.size() == start) {
+                break;
+            }
+
+            for (Map.Entry<String, StoreNode> entry : page.subList(start, page.size())) {
+                if (last != null) {
+                    Assert.assertTrue(entry.getKey().compareTo(last) > 0);
+                }
+
+                last = entry.getKey();
+                seen++;
+            }
+
+            marker = last;
+        }
+
+        Assert.assertEquals(seen, ENTRIES);
+        Assert.assertEquals(store.getListingStats().getListings(), ENTRIES / 1023 + 2);
+        Assert.assertTrue(store.getListingStats().getMaxNanos() > 0);
+    }
+
+    public void deleteTreeReleasesEverything() throws IOException {
+        final String path = "/account/stor/tree";
+        store.putDirectory(path, Collections.emptyMap());
+        store.putDirectory(path + "/nested", Collections.emptyMap());
+
+        final ObjectBody body = store.storeBody(new ByteArrayInputStream(new byte[10]), MantaStore.newMd5());
+        store.putObject(path + "/object", body, "text/plain", new byte[16], Collections.emptyMap(), 2);
+        store.putObject(path + "/nested/object", body, "text/plain", new byte[16], Collections.emptyMap(), 2);
+        body.release();
+
+        Assert.assertEquals(store.deleteTree(path), 4);
+        Assert.assertNull(store.lookup(path));
+    }
+
+    public void snaplinksShareContent() throws IOException {
+        final byte[] content = new byte[1024 * 1024];
+        new Random(11).nextBytes(content);
+
+        try (MantaStore linked = new MantaStore(new SegmentBodyStorage())) {
+            final SegmentBodyStorage storage = (SegmentBodyStorage) linked.getStorage();
+            linked.addAccount("account");
+            linked.putDirectory("/account/stor/links", Collections.emptyMap());
+
+            final ObjectBody body = linked.storeBody(new ByteArrayInputStream(content), MantaStore.newMd5());
+            linked.putObject("/account/stor/original", body, "application/octet-stream", new byte[16],
+                    Collections.emptyMap(), 2);
+            body.release();
+
+            for (int i = 0; i < 10_000; i++) {
+                linked.link("/account/stor/links/" + name(i), "/account/stor/original");
+            }
+
+            Assert.assertEquals(storage.getStoredBytes(), content.length);
+            Assert.assertEquals(storage.getLiveBytes(), content.length);
+
+            linked.delete("/account/stor/original");
+            Assert.assertEquals(read((ObjectNode) linked.lookup("/account/stor/links/" + name(42))), content);
+            Assert.assertEquals(storage.getLiveBytes(), content.length);
+
+            Assert.assertEquals(linked.deleteTree("/account/stor/links"), 10_001);
+            Assert.assertEquals(storage.getLiveBytes(), 0);
+        }
+    }
+
+    public void conditionalPutsWithTheSameEtagSucceedOnce() throws Exception {
+        final String path = "/account/stor/conditional";
+        final ObjectBody body = store.storeBody(new ByteArrayInputStream(new byte[1]), MantaStore.newMd5());
+        final String etag = store.putObject(path, body, "text/plain", new byte[16], Collections.emptyMap(), 2)
+                .getEtag();
+        final int writers = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(writers);
+        final List<Future<Boolean>> results = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < writers; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+
+                    try {
+                        store.putObject(path, body, "text/plain", new byte[16], Collections.emptyMap(), 2,
+                                "\"" + etag + "\"");
+                        return true;
+                    } catch (MantaServerException e) {
+                        Assert.assertEquals(e.getStatus(), 412);
+                        return false;
+                    }
+                }));
+            }
+
+            start.countDown();
+            int succeeded = 0;
+
+            for (Future<Boolean> result : results) {
+                succeeded += result.get(10, TimeUnit.SECONDS) ? 1 : 0;
+            }
+
+            Assert.assertEquals(succeeded, 1);
+            Assert.assertNotEquals(((ObjectNode) store.lookup(path)).getEtag(), etag);
+        } finally {
+            executor.shutdownNow();
+            store.delete(path);
+            body.release();
+        }
+    }
+
+    public void conditionalPutOfMissingObjectFails() throws IOException {
+        final ObjectBody body = store.storeBody(new ByteArrayInputStream(new byte[1]), MantaStore.newMd5());
+
+        try {
+            store.putObject("/account/stor/missing", body, "text/plain", new byte[16], Collections.emptyMap(),
+                    2, "*");
+            Assert.fail("If-Match of a missing object should have failed");
+        } catch (MantaServerException e) {
+            Assert.assertEquals(e.getStatus(), 412);
+        } finally {
+            body.release();
+        }
+
+        Assert.assertNull(store.lookup("/account/stor/missing"));
+    }
+
+    public void moveReparentsTree() {
+        final StoreNode directory = store.lookup(DIRECTORY);
+        final String destination = "/account/stor/moved";
+
+        store.move(DIRECTORY, destination);
+
+        try {
+            Assert.assertNull(store.lookup(DIRECTORY));
+            Assert.assertSame(store.lookup(destination), directory);
+            Assert.assertEquals(store.countEntries(destination), ENTRIES);
+            Assert.assertNotNull(store.lookup(destination + "/" + name(ENTRIES - 1)));
+        } finally {
+            store.move(destination, DIRECTORY);
+        }
+
+        Assert.assertSame(store.lookup(DIRECTORY), directory);
+    }
+
+    public void moveRefusesExistingDestinationAndOwnSubtree() {
+        store.putDirectory("/account/stor/occupied", Collections.emptyMap());
+
+        try {
+            assertMoveFails(DIRECTORY, "/account/stor/occupied", "DestinationExists");
+            assertMoveFails(DIRECTORY, DIRECTORY + "/inside", "InvalidArgument");
+            assertMoveFails("/account/stor/absent", "/account/stor/elsewhere", "ResourceNotFound");
+        } finally {
+            store.delete("/account/stor/occupied");
+        }
+    }
+
+    private void assertMoveFails(final String source, final String destination, final String code) {
+        try {
+            store.move(source, destination);
+            Assert.fail("Moving " + source + " to " + destination + " should fail");
+        } catch (MantaServerException e) {
+            Assert.assertEquals(e.getCode(), code);
+        }
+    }
+
+    private static byte[] read(final ObjectNode object) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ResponseBody slice = object.getBody().slice(0, object.getBody().size());
+
+        try {
+            slice.writeTo(Channels.newChannel(out));
+        } finally {
+            slice.release();
+        }
+
+        return out.toByteArray();
+    }
+
+    private static String name(final int id) {
+        return String.format("%07d", id);
+    }
+
+    private static List<String> names(final List<Map.Entry<String, StoreNode>> entries) {
+        final List<String> names = new ArrayList<>(entries.size());
+
+        for (Map.Entry<String, StoreNode> entry : entries) {
+            names.add(entry.getKey());
+        }
+
+        return names;
+    }
+}
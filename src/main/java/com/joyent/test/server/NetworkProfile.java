@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Characteristics of an emulated network link: round trip time, jitter,
+ * packet loss and bandwidth. {@link HttpServer} applies the profile to its
+ * connections so that tests against a loopback stand-in pay the costs a real
+ * link would impose on connection setup, request turnaround and bulk
+ * transfer.
+ *
+ * <p>Loss is modelled the way TCP experiences it: a lost segment is not
+ * dropped but delays the stream by a retransmission timeout.</p>
+ */
+public final class NetworkProfile {
+    /**
+     * Loopback as is, with nothing injected.
+     */
+    public static final NetworkProfile NONE = new NetworkProfile(
+            "none", Duration.ZERO, Duration.ZERO, 0.0, 0L);
+
+    /**
+     * Same data center: sub-millisecond round trips and gigabit bandwidth.
+     */
+    public static final NetworkProfile LAN = new NetworkProfile(
+            "lan", Duration.ofMillis(1), Duration.ofNanos(200_000), 0.0, 125_000_000L);
+
+    /**
+     * Client in another region: long round trips, rare loss, 100 Mbit/s.
+     */
+    public static final NetworkProfile CROSS_REGION = new NetworkProfile(
+            "cross-region", Duration.ofMillis(80), Duration.ofMillis(10), 0.0005, 12_500_000L);
+
+    /**
+     * Congested mobile link: slow, jittery and lossy at 2 Mbit/s.
+     */
+    public static final NetworkProfile LOSSY_MOBILE = new NetworkProfile(
+            "lossy-mobile", Duration.ofMillis(150), Duration.ofMillis(50), 0.02, 250_000L);
+
+    /**
+     * Named profiles, in order of increasing hostility.
+     */
+    private static final List<NetworkProfile> PROFILES = Collections.unmodifiableList(
+            Arrays.asList(NONE, LAN, CROSS_REGION, LOSSY_MOBILE));
+
+    /**
+     * Payload carried by one TCP segment on an Ethernet path.
+     */
+    static final int SEGMENT_SIZE = 1448;
+
+    /**
+     * Smallest retransmission timeout Linux uses.
+     */
+    private static final Duration MIN_RETRANSMIT_TIMEOUT = Duration.ofMillis(200);
+
+    private final String name;
+    private final Duration roundTrip;
+    private final Duration jitter;
+    private final double lossRate;
+    private final long bytesPerSecond;
+
+    /**
+     * Creates a custom profile.
+     *
+     * @param name name used in logs
+     * @param roundTrip round trip time
+     * @param jitter largest deviation from half the round trip on each crossing
+     * @param lossRate probability that a segment has to be retransmitted
+     * @param bytesPerSecond bandwidth in each direction or zero for no limit
+     */
+    public NetworkProfile(final String name, final Duration roundTrip, final Duration jitter,
+                          final double lossRate, final long bytesPerSecond) {
+        if (roundTrip.isNegative() || jitter.isNegative()) {
+            throw new IllegalArgumentException("Round trip time and jitter must not be negative");
+        }
+
+        if (lossRate < 0.0 || lossRate >= 1.0) {
+            throw new IllegalArgumentException("Loss rate must be at least 0 and less than 1");
+        }
+
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Bandwidth must not be negative");
+        }
+
+        this.name = name;
+        this.roundTrip = roundTrip;
+        this.jitter = jitter;
+        this.lossRate = lossRate;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Looks up a named profile. Case, underscores and hyphens are ignored, so
+     * {@code CROSS_REGION} and {@code cross-region} both name the same profile.
+     *
+     * @param name profile name
+     * @return the named profile
+     * @throws IllegalArgumentException thrown when there is no such profile
+     */
+    public static NetworkProfile forName(final String name) {
+        final String key = canonical(name);
+
+        for (NetworkProfile profile : PROFILES) {
+            if (canonical(profile.name).equals(key)) {
+                return profile;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown network profile " + name + ", expected one of " + PROFILES);
+    }
+
+    /**
+     * @return named profiles
+     */
+    public static List<NetworkProfile> values() {
+        return PROFILES;
+    }
+
+    /**
+     * @return name used in logs
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return round trip time
+     */
+    public Duration getRoundTrip() {
+        return roundTrip;
+    }
+
+    /**
+     * @return largest deviation from half the round trip on each crossing
+     */
+    public Duration getJitter() {
+        return jitter;
+    }
+
+    /**
+     * @return probability that a segment has to be retransmitted
+     */
+    public double getLossRate() {
+        return lossRate;
+    }
+
+    /**
+     * @return bandwidth in each direction or zero for no limit
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @return time a lost segment delays the stream
+     */
+    public Duration getRetransmitTimeout() {
+        final Duration timeout = roundTrip.plus(jitter.multipliedBy(4));
+        return timeout.compareTo(MIN_RETRANSMIT_TIMEOUT) > 0 ? timeout : MIN_RETRANSMIT_TIMEOUT;
+    }
+
+    /**
+     * @return true if the profile injects nothing
+     */
+    public boolean isIdeal() {
+        return roundTrip.isZero() && jitter.isZero() && lossRate == 0.0 && bytesPerSecond == 0;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static String canonical(final String name) {
+        return name.toLowerCase(Locale.ROOT).replace('_', '-').trim();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+@Test(singleThreaded = true)
+public class NetworkProfileTest {
+    private static final int BODY_SIZE = 128 * 1024;
+
+    private HttpServer server;
+
+    @BeforeClass
+    public void start() throws IOException {
+        final byte[] body = new byte[BODY_SIZE];
+        server = new HttpServer(request -> request.getPath().equals("/large")
+                ? new HttpResponse(200).body(ResponseBody.of(body), "application/octet-stream")
+                : new HttpResponse(200).body("ok", "text/plain")).start();
+    }
+
+    @AfterClass
+    public void stop() throws IOException {
+        server.close();
+    }
+
+    @BeforeMethod
+    public void reset() {
+        server.setNetworkProfile(NetworkProfile.NONE);
+    }
+
+    public void profilesAreFoundByName() {
+        Assert.assertSame(NetworkProfile.forName("CROSS_REGION"), NetworkProfile.CROSS_REGION);
+        Assert.assertSame(NetworkProfile.forName("lossy-mobile"), NetworkProfile.LOSSY_MOBILE);
+        Assert.assertSame(NetworkProfile.forName(" Lan "), NetworkProfile.LAN);
+        Assert.assertTrue(NetworkProfile.NONE.isIdeal());
+        Assert.assertFalse(NetworkProfile.LAN.isIdeal());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void unknownProfileIsRejected() {
+        NetworkProfile.forName("dial-up");
+    }
+
+    public void retransmitTimeoutHasLinuxFloor() {
+        Assert.assertEquals(NetworkProfile.LAN.getRetransmitTimeout(), Duration.ofMillis(200));
+        Assert.assertEquals(NetworkProfile.LOSSY_MOBILE.getRetransmitTimeout(), Duration.ofMillis(350));
+    }
+
+    public void newConnectionsPayForHandshake() throws IOException {
+        server.setNetworkProfile(new NetworkProfile("rtt-100", Duration.ofMillis(100), Duration.ZERO, 0.0, 0L));
+
+        try (Socket socket = connect()) {
+            final long first = timeRequest(socket, "/small");
+            final long second = timeRequest(socket, "/small");
+
+            // handshake plus one exchange, then one exchange on the reused connection
+            Assert.assertTrue(first >= 200, "first request took " + first + "ms");
+            Assert.assertTrue(second >= 100 && second < first, "second request took " + second + "ms");
+        }
+    }
+
+    public void bandwidthIsCapped() throws IOException {
+        server.setNetworkProfile(new NetworkProfile("256k", Duration.ZERO, Duration.ZERO, 0.0, 256 * 1024));
+
+        try (Socket socket = connect()) {
+            final long elapsed = timeRequest(socket, "/large");
+
+            // the first tenth of a second is a burst
+            Assert.assertTrue(elapsed >= 350, "128 KiB took " + elapsed + "ms");
+        }
+    }
+
+    public void lossStallsTheStream() throws IOException {
+        server.setNetworkProfile(new NetworkProfile("lossy", Duration.ZERO, Duration.ZERO, 0.5, 0L));
+
+        try (Socket socket = connect()) {
+            final long elapsed = timeRequest(socket, "/large");
+            Assert.assertTrue(elapsed >= 200, "lossy transfer took " + elapsed + "ms");
+        }
+    }
+
+    public void profileChangesApplyToOpenConnections() throws IOException {
+        try (Socket socket = connect()) {
+            Assert.assertTrue(timeRequest(socket, "/small") < 100);
+
+            server.setNetworkProfile(new NetworkProfile("rtt-150", Duration.ofMillis(150), Duration.ZERO, 0.0, 0L));
+            Assert.assertTrue(timeRequest(socket, "/small") >= 150);
+
+            server.setNetworkProfile(NetworkProfile.NONE);
+            Assert.assertTrue(timeRequest(socket, "/small") < 100);
+        }
+    }
+
+    private Socket connect() throws IOException {
+        final Socket socket = new Socket("127.0.0.1", new URL(server.getUrl()).getPort());
+        socket.setTcpNoDelay(true);
+        return socket;
+    }
+
+    /**
+     * Sends a request on a kept-alive connection and reads the whole response.
+     *
+     * @return milliseconds between sending the request and reading the last byte
+     */
+    private static long timeRequest(final Socket socket, final String path) throws IOException {
+        final OutputStream out = socket.getOutputStream();
+        final InputStream in = socket.getInputStream();
+        final long start = System.nanoTime();
+
+        out.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+
+        long contentLength = -1;
+        String line;
+        while (!(line = HttpServer.readLine(in)).isEmpty()) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                contentLength = Long.parseLong(line.substring(15).trim());
+            }
+        }
+
+        final byte[] buffer = new byte[8192];
+        long remaining = contentLength;
+        while (remaining > 0) {
+            final int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            Assert.assertTrue(read > 0, "connection closed early");
+            remaining -= read;
+        }
+
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
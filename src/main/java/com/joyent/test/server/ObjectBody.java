@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+/**
+ * Stored content of an object in a {@link MantaStore}. Bodies are immutable
+ * once stored and may be shared by several objects.
+ *
+ * <p>Bodies are reference counted: {@link BodyStorage#store} returns a body
+ * holding one reference for the caller, every object using the body holds
+ * another, and storage is reclaimed once the last one is released. Bodies
+ * kept on the heap are left to the garbage collector and ignore counting.</p>
+ */
+public interface ObjectBody {
+    /**
+     * @return size of the content in bytes
+     */
+    long size();
+
+    /**
+     * Creates a response body for part of the content.
+     *
+     * @param offset position of the first byte
+     * @param length number of bytes
+     * @return response body
+     */
+    ResponseBody slice(long offset, long length);
+
+    /**
+     * Adds a reference to the body.
+     */
+    default void retain() {
+    }
+
+    /**
+     * Drops a reference to the body, freeing its storage when none remain.
+     */
+    default void release() {
+    }
+}
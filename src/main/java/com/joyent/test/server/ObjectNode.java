@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Object in the {@link MantaStore} namespace.
+ */
+public final class ObjectNode extends StoreNode {
+    private final ObjectBody body;
+    private final String contentType;
+    private final byte[] md5;
+    private final String etag;
+    private final int durability;
+
+    ObjectNode(final Instant mtime, final Map<String, String> metadata, final ObjectBody body,
+               final String contentType, final byte[] md5, final String etag, final int durability) {
+        super(mtime, metadata);
+        this.body = body;
+        this.contentType = contentType;
+        this.md5 = md5;
+        this.etag = etag;
+        this.durability = durability;
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return false;
+    }
+
+    /**
+     * @return stored content
+     */
+    public ObjectBody getBody() {
+        return body;
+    }
+
+    /**
+     * @return content type sent when the object was stored
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return MD5 digest of the content
+     */
+    public byte[] getMd5() {
+        return md5.clone();
+    }
+
+    /**
+     * @return entity tag, unique per stored version
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return number of copies requested
+     */
+    public int getDurability() {
+        return durability;
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reverse proxy that appends every exchange it relays to a
+ * {@link SessionLog}, so a test run against a real endpoint can later be
+ * replayed by a {@link ReplayServer} without network access.
+ *
+ * <p>Response bodies up to {@link #DEFAULT_INLINE_LIMIT} are recorded whole;
+ * larger ones and all request bodies are recorded as a length and SHA-256
+ * digest. The Authorization header is never recorded.</p>
+ */
+public class RecordingProxy implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(RecordingProxy.class);
+
+    /**
+     * Largest response body recorded whole by default.
+     */
+    public static final int DEFAULT_INLINE_LIMIT = 1024 * 1024;
+
+    /**
+     * Proxy shared by a test run, started on first use.
+     */
+    private static RecordingProxy sharedInstance;
+
+    private final HttpServer server;
+    private final SessionLog.Writer log;
+    private final int inlineLimit;
+
+    /**
+     * Creates a new proxy; call {@link #start()} to listen.
+     *
+     * @param upstream base URL of the endpoint to record
+     * @param logPath session log appended to
+     * @param inlineLimit largest response body recorded whole
+     * @throws IOException thrown when the log can't be opened
+     */
+    public RecordingProxy(final String upstream, final Path logPath, final int inlineLimit) throws IOException {
+        this.log = SessionLog.append(logPath);
+        this.inlineLimit = inlineLimit;
+        this.server = new HttpServer(new Handler(upstream));
+    }
+
+    /**
+     * Returns the proxy shared by the test run, starting it on first use.
+     *
+     * @param upstream base URL of the endpoint to record
+     * @param logPath session log appended to
+     * @return running proxy
+     */
+    public static synchronized RecordingProxy sharedInstance(final String upstream, final Path logPath) {
+        if (sharedInstance != null) {
+            return sharedInstance;
+        }
+
+        try {
+            sharedInstance = new RecordingProxy(upstream, logPath, DEFAULT_INLINE_LIMIT).start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    sharedInstance.close();
+                } catch (IOException e) {
+                    // the process is exiting
+                }
+            }));
+            LOG.info("Recording {} to {}", upstream, logPath);
+
+            return sharedInstance;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to start recording proxy", e);
+        }
+    }
+
+    /**
+     * Starts listening on an ephemeral loopback port.
+     *
+     * @return this proxy
+     * @throws IOException thrown when the port can't be bound
+     */
+    public RecordingProxy start() throws IOException {
+        server.start();
+        return this;
+    }
+
+    /**
+     * @return URL to use as the endpoint in place of the upstream
+     */
+    public String getUrl() {
+        return server.getUrl();
+    }
+
+    /**
+     * @return exchanges recorded so far
+     */
+    public long getExchangeCount() {
+        return log.getExchangeCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            server.close();
+        } finally {
+            log.close();
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is always available", e);
+        }
+    }
+
+    /**
+     * Exchange being relayed by the current thread.
+     */
+    private final class Pending {
+        private final HttpRequest request;
+        private DigestingInputStream requestBody;
+        private DigestingInputStream responseBody;
+        private int status;
+        private Map<String, String> responseHeaders;
+        private long latencyNanos;
+
+        Pending(final HttpRequest request) {
+            this.request = request;
+        }
+
+        void complete() {
+            final long now = System.nanoTime();
+            final Map<String, String> requestHeaders = new LinkedHashMap<>(request.getHeaders());
+            requestHeaders.keySet().removeIf("Authorization"::equalsIgnoreCase);
+
+            final long requestLength = requestBody == null ? 0L : requestBody.count;
+            final long responseLength = responseBody == null ? 0L : responseBody.count;
+
+            final Exchange exchange = new Exchange(
+                    Math.max(0L, request.getReceivedNanos() - log.getSessionStartNanos()),
+                    latencyNanos, now - request.getReceivedNanos(),
+                    request.getMethod(), request.getTarget(), requestHeaders,
+                    requestLength, requestLength > 0 ? requestBody.digest.digest() : null,
+                    status, responseHeaders,
+                    responseLength, responseLength > 0 ? responseBody.inlined() : null,
+                    responseLength > 0 ? responseBody.digest.digest() : null);
+
+            try {
+                log.append(exchange);
+            } catch (IOException e) {
+                LOG.warn("Unable to record {}", exchange, e);
+            }
+        }
+    }
+
+    /**
+     * Handler recording each exchange as it is forwarded.
+     */
+    private final class Handler extends ForwardingHandler {
+        private final ThreadLocal<Pending> pending = new ThreadLocal<>();
+
+        Handler(final String upstream) {
+            super(upstream);
+        }
+
+        @Override
+        public HttpResponse handle(final HttpRequest request) throws IOException {
+            final Pending exchange = new Pending(request);
+            final HttpResponse response;
+            pending.set(exchange);
+
+            try {
+                response = super.handle(request);
+            } finally {
+                pending.remove();
+            }
+
+            exchange.latencyNanos = System.nanoTime() - request.getReceivedNanos();
+            exchange.status = response.getStatus();
+            exchange.responseHeaders = new LinkedHashMap<>(response.getHeaders());
+
+            final ResponseBody body = response.getBody();
+
+            // empty bodies, such as those of a 204, are never written
+            if (body == null || body.length() == 0) {
+                exchange.complete();
+                return response;
+            }
+
+            return response.body(new RecordingBody(body, exchange), response.getHeader("Content-Type"));
+        }
+
+        @Override
+        protected InputStream wrapRequestBody(final HttpRequest request, final InputStream body) {
+            final Pending exchange = pending.get();
+            exchange.requestBody = new DigestingInputStream(body, 0);
+            return exchange.requestBody;
+        }
+
+        @Override
+        protected InputStream wrapResponseBody(final HttpRequest request, final int status, final long length,
+                                               final InputStream body) {
+            final Pending exchange = pending.get();
+            exchange.responseBody = new DigestingInputStream(body, length <= inlineLimit ? inlineLimit : 0);
+            return exchange.responseBody;
+        }
+    }
+
+    /**
+     * Body that records its exchange once it has been relayed.
+     */
+    private static final class RecordingBody implements ResponseBody {
+        private final ResponseBody body;
+        private final Pending exchange;
+
+        RecordingBody(final ResponseBody body, final Pending exchange) {
+            this.body = body;
+            this.exchange = exchange;
+        }
+
+        @Override
+        public long length() {
+            return body.length();
+        }
+
+        @Override
+        public void writeTo(final WritableByteChannel channel) throws IOException {
+            try {
+                body.writeTo(channel);
+            } finally {
+                exchange.complete();
+            }
+        }
+
+        @Override
+        public void release() {
+            body.release();
+        }
+    }
+
+    /**
+     * Digests the bytes read through it, keeping a copy of the first
+     * {@code inlineLimit} of them.
+     */
+    private static final class DigestingInputStream extends FilterInputStream {
+        private final MessageDigest digest = sha256();
+        private final int inlineLimit;
+        private ByteArrayOutputStream copy;
+        private long count = 0L;
+
+        DigestingInputStream(final InputStream in, final int inlineLimit) {
+            super(in);
+            this.inlineLimit = inlineLimit;
+            this.copy = inlineLimit > 0 ? new ByteArrayOutputStream() : null;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+
+            if (b != -1) {
+                update(new byte[] {(byte) b}, 0, 1);
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int read = super.read(b, off, len);
+
+            if (read > 0) {
+                update(b, off, read);
+            }
+
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            // skipped bytes would be missing from the digest
+            final byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            final int read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+
+        /**
+         * @return bytes read or null if there were more than the inline limit
+         */
+        byte[] inlined() {
+            return copy == null ? null : copy.toByteArray();
+        }
+
+        private void update(final byte[] b, final int off, final int len) {
+            digest.update(b, off, len);
+            count += len;
+
+            if (copy != null) {
+                if (count > inlineLimit) {
+                    copy = null;
+                } else {
+                    copy.write(b, off, len);
+                }
+            }
+        }
+    }
+}
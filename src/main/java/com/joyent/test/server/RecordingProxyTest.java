@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Test(singleThreaded = true)
+public class RecordingProxyTest {
+    private static final int LARGE_BODY_SIZE = 256 * 1024;
+
+    private final byte[] large = new byte[LARGE_BODY_SIZE];
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final AtomicInteger version = new AtomicInteger();
+
+    private HttpServer upstream;
+    private Path directory;
+
+    @BeforeClass
+    public void start() throws IOException {
+        new Random(7).nextBytes(large);
+        directory = Files.createTempDirectory("session-log-");
+
+        upstream = new HttpServer(request -> {
+            if ("PUT".equals(request.getMethod())) {
+                objects.put(request.getPath(), IOUtils.toByteArray(request.getBody()));
+                return new HttpResponse(204).header("ETag", "v" + version.incrementAndGet());
+            }
+
+            if (request.getPath().equals("/large")) {
+                return new HttpResponse(200).body(ResponseBody.of(large), "application/octet-stream");
+            }
+
+            final byte[] object = objects.get(request.getPath());
+
+            if (object == null) {
+                return new HttpResponse(404).body("{\"code\":\"ResourceNotFound\"}", "application/json");
+            }
+
+            return new HttpResponse(200).body(ResponseBody.of(object), "application/octet-stream");
+        }).start();
+    }
+
+    @AfterClass
+    public void stop() throws IOException {
+        upstream.close();
+        Files.walk(directory).sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+
+    public void replaysRecordedSessionForDifferentUuids() throws IOException {
+        final Path log = directory.resolve("round-trip.log");
+        final String recordedPath = "/objects/" + UUID.randomUUID();
+
+        try (RecordingProxy proxy = new RecordingProxy(upstream.getUrl(), log, 1024).start()) {
+            Assert.assertEquals(put(proxy.getUrl() + recordedPath, "first"), 204);
+            Assert.assertEquals(get(proxy.getUrl() + recordedPath), "first");
+            Assert.assertEquals(put(proxy.getUrl() + recordedPath, "second"), 204);
+            Assert.assertEquals(get(proxy.getUrl() + recordedPath), "second");
+            Assert.assertEquals(status(proxy.getUrl() + "/missing"), 404);
+        }
+
+        final List<Exchange> exchanges = SessionLog.read(log);
+        Assert.assertEquals(exchanges.size(), 5);
+        Assert.assertEquals(exchanges.get(0).getMethod(), "PUT");
+        Assert.assertEquals(exchanges.get(0).getTarget(), recordedPath);
+        Assert.assertEquals(exchanges.get(0).getRequestBodyLength(), 5);
+        Assert.assertEquals(exchanges.get(0).getRequestBodyDigest(), sha256("first".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertFalse(exchanges.get(0).getRequestHeaders().containsKey("Authorization"));
+        Assert.assertEquals(exchanges.get(1).getResponseBody(), "first".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(exchanges.get(4).getStatus(), 404);
+
+        try (ReplayServer replay = new ReplayServer(exchanges, 0).start()) {
+            final String replayedPath = "/objects/" + UUID.randomUUID();
+
+            // the same request gets the recorded responses in recorded order
+            Assert.assertEquals(put(replay.getUrl() + replayedPath, "anything"), 204);
+            Assert.assertEquals(get(replay.getUrl() + replayedPath), "first");
+            Assert.assertEquals(put(replay.getUrl() + replayedPath, "anything"), 204);
+            Assert.assertEquals(get(replay.getUrl() + replayedPath), "second");
+            Assert.assertEquals(status(replay.getUrl() + "/missing"), 404);
+            Assert.assertEquals(replay.getRemainingExchanges(), 0);
+
+            Assert.assertEquals(status(replay.getUrl() + replayedPath), 501);
+            Assert.assertEquals(replay.getMissCount(), 1);
+        }
+    }
+
+    public void recordsLargeBodiesAsDigest() throws IOException {
+        final Path log = directory.resolve("large.log");
+
+        try (RecordingProxy proxy = new RecordingProxy(upstream.getUrl(), log, 1024).start()) {
+            Assert.assertEquals(getBytes(proxy.getUrl() + "/large"), large);
+        }
+
+        final Exchange exchange = SessionLog.read(log).get(0);
+        Assert.assertTrue(exchange.isResponseBodyOmitted());
+        Assert.assertEquals(exchange.getResponseBodyLength(), LARGE_BODY_SIZE);
+        Assert.assertEquals(exchange.getResponseBodyDigest(), sha256(large));
+        Assert.assertTrue(Files.size(log) < 1024, "log holds " + Files.size(log) + " bytes");
+
+        try (ReplayServer replay = new ReplayServer(Collections.singletonList(exchange), 0).start()) {
+            Assert.assertEquals(getBytes(replay.getUrl() + "/large").length, LARGE_BODY_SIZE);
+        }
+    }
+
+    public void appendsSessionsAndInternsRepeatedStrings() throws IOException {
+        final Path log = directory.resolve("sessions.log");
+        final Exchange exchange = new Exchange(0, 1, 2, "GET", "/account/stor/object",
+                Collections.singletonMap("User-Agent", "Java-Manta-SDK/3.4.0 (Java/1.8.0; Linux)"), 0, null,
+                200, Collections.singletonMap("Content-Type", "application/octet-stream"), 0, null, null);
+
+        long afterFirst;
+        try (SessionLog.Writer writer = SessionLog.append(log)) {
+            writer.append(exchange);
+            afterFirst = Files.size(log);
+            writer.append(exchange);
+        }
+
+        final long repeatedSize = Files.size(log) - afterFirst;
+        Assert.assertTrue(repeatedSize <= 16, "repeated exchange took " + repeatedSize + " bytes");
+
+        try (SessionLog.Writer writer = SessionLog.append(log)) {
+            writer.append(exchange);
+        }
+
+        final List<Exchange> read = SessionLog.read(log);
+        Assert.assertEquals(read.size(), 3);
+
+        for (Exchange e : read) {
+            Assert.assertEquals(e.getTarget(), exchange.getTarget());
+            Assert.assertEquals(e.getRequestHeaders(), exchange.getRequestHeaders());
+            Assert.assertEquals(e.getResponseHeaders(), exchange.getResponseHeaders());
+        }
+    }
+
+    public void readsTruncatedLogUpToLastCompleteExchange() throws IOException {
+        final Path log = directory.resolve("truncated.log");
+        final byte[] body = "recorded".getBytes(StandardCharsets.UTF_8);
+        final Exchange exchange = new Exchange(0, 1, 2, "GET", "/object", Collections.emptyMap(), 0, null,
+                200, Collections.emptyMap(), body.length, body, sha256(body));
+
+        try (SessionLog.Writer writer = SessionLog.append(log)) {
+            writer.append(exchange);
+            writer.append(exchange);
+        }
+
+        final byte[] bytes = Files.readAllBytes(log);
+        final List<Exchange> read = SessionLog.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 3)));
+        Assert.assertEquals(read.size(), 1);
+        Assert.assertEquals(read.get(0).getResponseBody(), body);
+    }
+
+    public void replaysAtScaledPace() throws IOException {
+        final Exchange exchange = new Exchange(0, TimeUnit.MILLISECONDS.toNanos(400),
+                TimeUnit.MILLISECONDS.toNanos(400), "GET", "/slow", Collections.emptyMap(), 0, null,
+                204, Collections.emptyMap(), 0, null, null);
+
+        try (ReplayServer replay = new ReplayServer(Arrays.asList(exchange, exchange), 0.5).start()) {
+            final long start = System.nanoTime();
+            Assert.assertEquals(status(replay.getUrl() + "/slow"), 204);
+            final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            Assert.assertTrue(elapsedMillis >= 200, "replayed in " + elapsedMillis + "ms");
+            Assert.assertTrue(elapsedMillis < 400, "replayed in " + elapsedMillis + "ms");
+        }
+    }
+
+    private static int put(final String url, final String body) throws IOException {
+        final HttpURLConnection put = (HttpURLConnection) new URL(url).openConnection();
+        put.setRequestMethod("PUT");
+        put.setRequestProperty("Authorization", "Signature keyId=\"secret\"");
+        put.setDoOutput(true);
+
+        try (OutputStream out = put.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        return put.getResponseCode();
+    }
+
+    private static String get(final String url) throws IOException {
+        return new String(getBytes(url), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] getBytes(final String url) throws IOException {
+        final HttpURLConnection get = (HttpURLConnection) new URL(url).openConnection();
+        Assert.assertEquals(get.getResponseCode(), 200);
+
+        try (InputStream in = get.getInputStream()) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private static int status(final String url) throws IOException {
+        final HttpURLConnection get = (HttpURLConnection) new URL(url).openConnection();
+        final int status = get.getResponseCode();
+        final InputStream in = status >= 400 ? get.getErrorStream() : get.getInputStream();
+
+        if (in != null) {
+            in.close();
+        }
+
+        return status;
+    }
+
+    private static byte[] sha256(final byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import com.joyent.test.util.DeterministicContent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Serves the responses of a {@link SessionLog} back in place of the
+ * endpoint they were recorded from.
+ *
+ * <p>Requests are matched by method and target, with UUIDs in the target
+ * replaced by a placeholder because tests name their objects with random
+ * UUIDs. Each recorded exchange is served once, in recorded order, so a
+ * request repeated by a test sees the same sequence of responses it saw
+ * while recording. Requests left without a recorded response get a 501
+ * with the code {@code ReplayMiss}.</p>
+ *
+ * <p>Response timing is reproduced scaled by a factor: 1 waits as long as
+ * the recorded endpoint did, 0 responds as fast as possible. Bodies that were
+ * recorded as a digest only are served as filler of the recorded length.</p>
+ */
+public class ReplayServer implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(ReplayServer.class);
+
+    /**
+     * Placeholder standing in for a UUID in a request key.
+     */
+    private static final Pattern UUID = Pattern.compile(
+            "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    /**
+     * Bytes written between pacing checks.
+     */
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * Seed of the filler served for bodies that weren't recorded.
+     */
+    private static final long FILLER_SEED = 0x5eed;
+
+    /**
+     * Server shared by a test run, started on first use.
+     */
+    private static ReplayServer sharedInstance;
+
+    private final HttpServer server;
+    private final Map<String, Deque<Exchange>> exchanges = new HashMap<>();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final double timeScale;
+    private int remaining;
+
+    /**
+     * Creates a new server; call {@link #start()} to listen.
+     *
+     * @param recorded exchanges to serve, in recorded order
+     * @param timeScale factor applied to recorded latencies, 0 for none
+     */
+    public ReplayServer(final List<Exchange> recorded, final double timeScale) {
+        if (timeScale < 0 || Double.isNaN(timeScale)) {
+            throw new IllegalArgumentException("Time scale must be zero or positive");
+        }
+
+        this.timeScale = timeScale;
+
+        for (Exchange exchange : recorded) {
+            exchanges.computeIfAbsent(key(exchange.getMethod(), exchange.getTarget()), k -> new ArrayDeque<>())
+                    .add(exchange);
+        }
+
+        this.remaining = recorded.size();
+        this.server = new HttpServer(this::handle);
+    }
+
+    /**
+     * Returns the server shared by the test run, starting it on first use.
+     *
+     * @param logPath session log to serve
+     * @param timeScale factor applied to recorded latencies, 0 for none
+     * @return running server
+     */
+    public static synchronized ReplayServer sharedInstance(final Path logPath, final double timeScale) {
+        if (sharedInstance != null) {
+            return sharedInstance;
+        }
+
+        try {
+            sharedInstance = new ReplayServer(SessionLog.read(logPath), timeScale).start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    sharedInstance.close();
+                } catch (IOException e) {
+                    // the process is exiting
+                }
+            }));
+            LOG.info("Replaying {} exchanges from {}", sharedInstance.getRemainingExchanges(), logPath);
+
+            return sharedInstance;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to start replay server", e);
+        }
+    }
+
+    /**
+     * Starts listening on an ephemeral loopback port.
+     *
+     * @return this server
+     * @throws IOException thrown when the port can't be bound
+     */
+    public ReplayServer start() throws IOException {
+        server.start();
+        return this;
+    }
+
+    /**
+     * @return URL to use as the endpoint
+     */
+    public String getUrl() {
+        return server.getUrl();
+    }
+
+    /**
+     * @return recorded exchanges not served yet
+     */
+    public synchronized int getRemainingExchanges() {
+        return remaining;
+    }
+
+    /**
+     * @return requests that had no recorded response
+     */
+    public int getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    /**
+     * @param method request method
+     * @param target request target
+     * @return key recorded and replayed requests are matched by
+     */
+    static String key(final String method, final String target) {
+        return method + " " + UUID.matcher(target).replaceAll("{uuid}");
+    }
+
+    private synchronized Exchange next(final HttpRequest request) {
+        final Deque<Exchange> queue = exchanges.get(key(request.getMethod(), request.getTarget()));
+
+        if (queue == null || queue.isEmpty()) {
+            return null;
+        }
+
+        remaining--;
+        return queue.poll();
+    }
+
+    private HttpResponse handle(final HttpRequest request) throws IOException {
+        final Exchange exchange = next(request);
+        drain(request.getBody());
+
+        if (exchange == null) {
+            misses.incrementAndGet();
+            return MantaRequestHandler.error(new MantaServerException(501, "ReplayMiss",
+                    "No recorded response for " + request));
+        }
+
+        sleepUntil(request.getReceivedNanos() + scale(exchange.getLatencyNanos()));
+
+        final HttpResponse response = new HttpResponse(exchange.getStatus());
+
+        for (Map.Entry<String, String> header : exchange.getResponseHeaders().entrySet()) {
+            response.header(header.getKey(), header.getValue());
+        }
+
+        if (exchange.getResponseBodyLength() == 0) {
+            return response;
+        }
+
+        final long bodyNanos = scale(exchange.getDurationNanos() - exchange.getLatencyNanos());
+        response.getHeaders().remove("Content-Length");
+
+        return response.body(new PacedBody(exchange, bodyNanos), response.getHeader("Content-Type"));
+    }
+
+    private long scale(final long nanos) {
+        return (long) (Math.max(0L, nanos) * timeScale);
+    }
+
+    private static void drain(final InputStream body) throws IOException {
+        final byte[] buffer = new byte[CHUNK_SIZE];
+
+        while (body.read(buffer) != -1) {
+            // request bodies were recorded as digests only
+        }
+    }
+
+    private static void sleepUntil(final long deadlineNanos) throws IOException {
+        final long wait = deadlineNanos - System.nanoTime();
+
+        if (wait <= 0) {
+            return;
+        }
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while pacing replay", e);
+        }
+    }
+
+    /**
+     * Recorded body written at the pace it was originally relayed.
+     */
+    private static final class PacedBody implements ResponseBody {
+        private final Exchange exchange;
+        private final long bodyNanos;
+
+        PacedBody(final Exchange exchange, final long bodyNanos) {
+            this.exchange = exchange;
+            this.bodyNanos = bodyNanos;
+        }
+
+        @Override
+        public long length() {
+            return exchange.getResponseBodyLength();
+        }
+
+        @Override
+        public void writeTo(final WritableByteChannel channel) throws IOException {
+            final long length = length();
+            final byte[] recorded = exchange.getResponseBody();
+            final DeterministicContent filler = recorded == null ? new DeterministicContent(FILLER_SEED) : null;
+            final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+            final long start = System.nanoTime();
+            long written = 0;
+
+            while (written < length) {
+                final int chunk = (int) Math.min(CHUNK_SIZE, length - written);
+                buffer.clear();
+
+                if (recorded != null) {
+                    buffer.put(recorded, (int) written, chunk);
+                } else {
+                    filler.fill(written, buffer, chunk);
+                }
+
+                buffer.flip();
+                ResponseBody.writeFully(channel, buffer);
+                written += chunk;
+
+                if (bodyNanos > 0) {
+                    sleepUntil(start + (long) (bodyNanos * ((double) written / length)));
+                }
+            }
+        }
+    }
+}
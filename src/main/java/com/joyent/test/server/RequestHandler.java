@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import java.io.IOException;
+
+/**
+ * Produces the response to a request received by {@link HttpServer}.
+ * Handlers are called concurrently from one thread per connection.
+ */
+@FunctionalInterface
+public interface RequestHandler {
+    /**
+     * @param request request to handle; its body need not be consumed
+     * @return response to send
+     * @throws IOException thrown when the request can't be handled; the
+     *         server answers with a 500 response
+     */
+    HttpResponse handle(HttpRequest request) throws IOException;
+}
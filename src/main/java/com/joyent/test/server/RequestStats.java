@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the requests an {@link HttpServer} served, the response bytes it
+ * sent and their latency, per method and path, so that tests can assert how
+ * many requests a client operation made and catch request amplification.
+ *
+ * <p>Requests are counted, and their response bytes recorded, before the
+ * response is written, so a client that has read a response always sees
+ * them. Latency is measured from the arrival of the request line to the
+ * last byte of the response and recorded in nanoseconds once the response
+ * has been written, so a client may read a response before its latency is
+ * recorded; call {@link #awaitCompleted} before asserting on it.</p>
+ */
+public class RequestStats {
+    /**
+     * Precision of the latency histograms.
+     */
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final ConcurrentMap<String, ConcurrentMap<String, PathStats>> byMethod = new ConcurrentHashMap<>();
+
+    /**
+     * Threads in {@link #awaitCompleted}; completions only take the monitor
+     * to wake them when there are any.
+     */
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * Counts a request as it is answered. The request is counted before its
+     * response is written, so a client that has read a response always sees
+     * it counted.
+     *
+     * @param method request method
+     * @param path request path without the query
+     * @param status status code sent
+     * @return statistics to record the latency of the request in
+     */
+    PathStats count(final String method, final String path, final int status) {
+        final PathStats stats = byMethod.computeIfAbsent(method, m -> new ConcurrentHashMap<>())
+                .computeIfAbsent(path, p -> new PathStats(method, p));
+        stats.count(status);
+        return stats;
+    }
+
+    /**
+     * Records the latency of a counted request once its response has been
+     * written.
+     *
+     * @param stats statistics returned when the request was counted
+     * @param latencyNanos time taken to serve the request
+     */
+    void complete(final PathStats stats, final long latencyNanos) {
+        stats.recordLatency(latencyNanos);
+
+        if (waiting.get() > 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until the latency of {@code responses} requests matching a
+     * method and path prefix has been recorded, that is until their responses
+     * have been written.
+     *
+     * @param method request method or null for any
+     * @param pathPrefix path or directory prefix
+     * @param responses number of responses to wait for
+     * @param timeout longest time to wait
+     * @param unit unit of the timeout
+     * @return false when the timeout elapsed first
+     * @throws InterruptedException thrown when interrupted while waiting
+     */
+    public boolean awaitCompleted(final String method, final String pathPrefix, final long responses,
+                                  final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        waiting.incrementAndGet();
+
+        try {
+            synchronized (this) {
+                while (completedCount(method, pathPrefix) < responses) {
+                    final long remaining = deadline - System.nanoTime();
+
+                    if (remaining <= 0) {
+                        return false;
+                    }
+
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            }
+        } finally {
+            waiting.decrementAndGet();
+        }
+
+        return true;
+    }
+
+    /**
+     * @return requests recorded
+     */
+    public long getRequestCount() {
+        return getRequestCount(null, "/");
+    }
+
+    /**
+     * @param method request method or null for any
+     * @return requests recorded with the method
+     */
+    public long getRequestCount(final String method) {
+        return getRequestCount(method, "/");
+    }
+
+    /**
+     * Counts the requests made to a path and everything below it.
+     *
+     * @param method request method or null for any
+     * @param pathPrefix path the requests were made to or below
+     * @return requests recorded with the method under the path
+     */
+    public long getRequestCount(final String method, final String pathPrefix) {
+        long count = 0;
+
+        for (PathStats stats : select(method, pathPrefix)) {
+            count += stats.getCount();
+        }
+
+        return count;
+    }
+
+    /**
+     * Counts the requests under a path that got a 4xx or 5xx response.
+     *
+     * @param method request method or null for any
+     * @param pathPrefix path the requests were made to or below
+     * @return failed requests recorded with the method under the path
+     */
+    public long getErrorCount(final String method, final String pathPrefix) {
+        long count = 0;
+
+        for (PathStats stats : select(method, pathPrefix)) {
+            count += stats.getErrorCount();
+        }
+
+        return count;
+    }
+
+    /**
+     * Sums the response bytes, status line and headers included, sent for
+     * the requests made to a path and everything below it. Bytes are
+     * recorded as a response starts to be written.
+     *
+     * @param method request method or null for any
+     * @param pathPrefix path the requests were made to or below
+     * @return bytes sent with the method under the path
+     */
+    public long getBytesSent(final String method, final String pathPrefix) {
+        long bytes = 0;
+
+        for (PathStats stats : select(method, pathPrefix)) {
+            bytes += stats.getBytesSent();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Merges the latency of the requests made to a path and everything below it.
+     *
+     * @param method request method or null for any
+     * @param pathPrefix path the requests were made to or below
+     * @return new histogram of latencies in nanoseconds
+     */
+    public Histogram getLatency(final String method, final String pathPrefix) {
+        final Histogram merged = new Histogram(SIGNIFICANT_DIGITS);
+
+        for (PathStats stats : select(method, pathPrefix)) {
+            merged.add(stats.latency);
+        }
+
+        return merged;
+    }
+
+    /**
+     * Lists the methods and paths below a path that were requested.
+     *
+     * @param method request method or null for any
+     * @param pathPrefix path the requests were made to or below
+     * @return per path statistics ordered by path then method
+     */
+    public List<PathStats> getPathStats(final String method, final String pathPrefix) {
+        final List<PathStats> selected = select(method, pathPrefix);
+        selected.sort(Comparator.comparing(PathStats::getPath).thenComparing(PathStats::getMethod));
+        return selected;
+    }
+
+    /**
+     * Forgets every recorded request.
+     */
+    public void reset() {
+        byMethod.clear();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder table = new StringBuilder();
+
+        for (PathStats stats : getPathStats(null, "/")) {
+            table.append(stats).append('\n');
+        }
+
+        return table.toString();
+    }
+
+    private long completedCount(final String method, final String pathPrefix) {
+        long total = 0L;
+
+        for (PathStats stats : select(method, pathPrefix)) {
+            total += stats.latency.getTotalCount();
+        }
+
+        return total;
+    }
+
+    private List<PathStats> select(final String method, final String pathPrefix) {
+        final String directoryPrefix = pathPrefix.endsWith("/") ? pathPrefix : pathPrefix + "/";
+        final List<PathStats> selected = new ArrayList<>();
+
+        for (Map.Entry<String, ConcurrentMap<String, PathStats>> entry : byMethod.entrySet()) {
+            if (method != null && !method.equals(entry.getKey())) {
+                continue;
+            }
+
+            for (PathStats stats : entry.getValue().values()) {
+                if (stats.path.equals(pathPrefix) || stats.path.startsWith(directoryPrefix)) {
+                    selected.add(stats);
+                }
+            }
+        }
+
+        return selected;
+    }
+
+    /**
+     * Requests recorded for one method and path.
+     */
+    public static final class PathStats {
+        private final String method;
+        private final String path;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final ConcurrentHistogram latency = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+
+        private PathStats(final String method, final String path) {
+            this.method = method;
+            this.path = path;
+        }
+
+        private void count(final int status) {
+            count.increment();
+
+            if (status >= 400) {
+                errors.increment();
+            }
+        }
+
+        /**
+         * @param latencyNanos time taken to serve a counted request
+         */
+        void recordLatency(final long latencyNanos) {
+            latency.recordValue(Math.max(0L, latencyNanos));
+        }
+
+        /**
+         * @param bytes size of the response of a counted request
+         */
+        void recordBytesSent(final long bytes) {
+            bytesSent.add(bytes);
+        }
+
+        /**
+         * @return request method
+         */
+        public String getMethod() {
+            return method;
+        }
+
+        /**
+         * @return request path
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return requests recorded
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * @return requests that got a 4xx or 5xx response
+         */
+        public long getErrorCount() {
+            return errors.sum();
+        }
+
+        /**
+         * @return response bytes sent, status line and headers included
+         */
+        public long getBytesSent() {
+            return bytesSent.sum();
+        }
+
+        /**
+         * @return copy of the latency histogram in nanoseconds
+         */
+        public Histogram getLatency() {
+            return latency.copy();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-6s %s count=%d errors=%d bytes=%d p50=%dus p99=%dus max=%dus",
+                    method, path, getCount(), getErrorCount(), getBytesSent(),
+                    TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(50)),
+                    TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(99)),
+                    TimeUnit.NANOSECONDS.toMicros(latency.getMaxValue()));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import org.HdrHistogram.Histogram;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Test(singleThreaded = true)
+public class RequestStatsTest {
+    private HttpServer server;
+
+    @BeforeClass
+    public void start() throws IOException {
+        server = new HttpServer(request -> {
+            if (request.getPath().startsWith("/missing")) {
+                return new HttpResponse(404);
+            }
+
+            if (request.getPath().equals("/slow")) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            return new HttpResponse(200).body("ok", "text/plain");
+        }).start();
+    }
+
+    @AfterClass
+    public void stop() throws IOException {
+        server.close();
+    }
+
+    @BeforeMethod
+    public void reset() {
+        server.getRequestStats().reset();
+    }
+
+    public void countsByMethodAndPathPrefix() throws IOException {
+        request("GET", "/account/stor/dir");
+        request("GET", "/account/stor/dir/a");
+        request("HEAD", "/account/stor/dir/a");
+        request("PUT", "/account/stor/dir/b?metadata=true");
+        request("GET", "/account/stor/directory");
+
+        final RequestStats stats = server.getRequestStats();
+
+        Assert.assertEquals(stats.getRequestCount(), 5);
+        Assert.assertEquals(stats.getRequestCount("GET"), 3);
+        Assert.assertEquals(stats.getRequestCount(null, "/account/stor/dir"), 4);
+        Assert.assertEquals(stats.getRequestCount(null, "/account/stor/dir/"), 3);
+        Assert.assertEquals(stats.getRequestCount("GET", "/account/stor/dir"), 2);
+        Assert.assertEquals(stats.getRequestCount("PUT", "/account/stor/dir/b"), 1);
+        Assert.assertEquals(stats.getRequestCount("DELETE", "/account"), 0);
+
+        final List<RequestStats.PathStats> paths = stats.getPathStats(null, "/account/stor/dir/a");
+        Assert.assertEquals(paths.size(), 2);
+        Assert.assertEquals(paths.get(0).getMethod(), "GET");
+        Assert.assertEquals(paths.get(1).getMethod(), "HEAD");
+    }
+
+    public void countsErrors() throws IOException {
+        request("GET", "/missing/one");
+        request("GET", "/missing/two");
+        request("GET", "/present");
+
+        Assert.assertEquals(server.getRequestStats().getErrorCount(null, "/"), 2);
+        Assert.assertEquals(server.getRequestStats().getErrorCount("GET", "/missing/one"), 1);
+        Assert.assertEquals(server.getRequestStats().getErrorCount(null, "/present"), 0);
+    }
+
+    public void recordsLatency() throws Exception {
+        request("GET", "/fast");
+        request("GET", "/slow");
+
+        final RequestStats stats = server.getRequestStats();
+        // latency is recorded after the response has been written, so it can trail the client
+        Assert.assertTrue(stats.awaitCompleted(null, "/", 2, 5, TimeUnit.SECONDS), stats.toString());
+
+        final Histogram slow = stats.getLatency(null, "/slow");
+        Assert.assertEquals(slow.getTotalCount(), 1);
+        Assert.assertTrue(slow.getMinValue() >= TimeUnit.MILLISECONDS.toNanos(50),
+                "slow request took " + slow.getMinValue() + "ns");
+        Assert.assertEquals(stats.getLatency(null, "/").getTotalCount(), 2);
+        Assert.assertTrue(stats.toString().contains("/slow count=1"), stats.toString());
+    }
+
+    public void awaitCompletedTimesOutWithoutResponses() throws Exception {
+        final long start = System.nanoTime();
+
+        Assert.assertFalse(server.getRequestStats().awaitCompleted("GET", "/never", 1, 50, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    public void countsResponseBytes() throws IOException {
+        request("GET", "/body");
+        request("HEAD", "/body");
+
+        final RequestStats stats = server.getRequestStats();
+        final long getBytes = stats.getBytesSent("GET", "/body");
+        final long headBytes = stats.getBytesSent("HEAD", "/body");
+
+        // same status line and headers, but only the GET has the "ok" body
+        Assert.assertEquals(getBytes - headBytes, 2L);
+        Assert.assertTrue(headBytes > "HTTP/1.1 200 OK\r\n\r\n".length(), "head bytes " + headBytes);
+        Assert.assertEquals(stats.getBytesSent(null, "/"), getBytes + headBytes);
+    }
+
+    public void resetForgetsRequests() throws IOException {
+        request("GET", "/object");
+        server.getRequestStats().reset();
+
+        Assert.assertEquals(server.getRequestStats().getRequestCount(), 0);
+        Assert.assertTrue(server.getRequestStats().getPathStats(null, "/").isEmpty());
+    }
+
+    private void request(final String method, final String target) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(server.getUrl() + target).openConnection();
+        connection.setRequestMethod(method);
+
+        if ("PUT".equals(method)) {
+            connection.setDoOutput(true);
+            connection.getOutputStream().close();
+        }
+
+        final int status = connection.getResponseCode();
+        final InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+
+        if (in != null) {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Body of an {@link HttpResponse}. Bodies write themselves straight to the
+ * connection's channel so that stored content can be sent without being
+ * copied through the heap.
+ */
+public interface ResponseBody {
+    /**
+     * @return number of bytes the body writes
+     */
+    long length();
+
+    /**
+     * Writes the whole body.
+     *
+     * @param channel connection to write to
+     * @throws IOException thrown when writing fails
+     */
+    void writeTo(WritableByteChannel channel) throws IOException;
+
+    /**
+     * Frees what the body holds once it has been written, or once it is
+     * known it won't be, as for a HEAD request. The server calls this once
+     * for every response it sends; bodies holding nothing ignore it.
+     */
+    default void release() {
+    }
+
+    /**
+     * Creates a body from an array, which must not be modified afterwards.
+     *
+     * @param bytes body content
+     * @return new body
+     */
+    static ResponseBody of(final byte[] bytes) {
+        return new ResponseBody() {
+            @Override
+            public long length() {
+                return bytes.length;
+            }
+
+            @Override
+            public void writeTo(final WritableByteChannel channel) throws IOException {
+                writeFully(channel, ByteBuffer.wrap(bytes));
+            }
+        };
+    }
+
+    /**
+     * Writes every remaining byte of a buffer.
+     *
+     * @param channel channel to write to
+     * @param buffer buffer to drain
+     * @throws IOException thrown when writing fails
+     */
+    static void writeFully(final WritableByteChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
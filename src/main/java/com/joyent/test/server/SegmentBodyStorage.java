@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link BodyStorage} appending content to segment files, so that the heap
+ * stays the same size however large the stored objects are. Content is
+ * written through a fixed buffer and served with
+ * {@link FileChannel#transferTo}, which the kernel turns into a zero-copy
+ * send when the target is a socket.
+ *
+ * <p>Each upload has a segment to itself while it is being written; uploads
+ * in parallel use different segments. Once a segment grows past the segment
+ * size it is sealed, and a sealed segment whose bodies have all been
+ * released is deleted, while an open one is truncated and reused. Segments
+ * are not compacted: a single live object keeps its whole segment on
+ * disk.</p>
+ */
+public class SegmentBodyStorage implements BodyStorage {
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentBodyStorage.class);
+
+    /**
+     * Default size after which a segment stops accepting content.
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Size of the buffer used when storing object content.
+     */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final boolean ownsDirectory;
+
+    /**
+     * Segments with room that no upload is writing to.
+     */
+    private final Queue<Segment> openSegments = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Every segment not yet deleted.
+     */
+    private final Set<Segment> segments = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger nextSegmentId = new AtomicInteger();
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong liveBytes = new AtomicLong();
+
+    /**
+     * Creates storage in a new temporary directory, removed on close.
+     *
+     * @throws IOException thrown when the directory can't be created
+     */
+    public SegmentBodyStorage() throws IOException {
+        this(Files.createTempDirectory("local-manta-segments-"), DEFAULT_SEGMENT_SIZE, true);
+    }
+
+    /**
+     * Creates storage in an existing directory.
+     *
+     * @param directory directory segment files are created in
+     * @param segmentSize size after which a segment stops accepting content
+     */
+    public SegmentBodyStorage(final Path directory, final long segmentSize) {
+        this(directory, segmentSize, false);
+    }
+
+    private SegmentBodyStorage(final Path directory, final long segmentSize, final boolean ownsDirectory) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive");
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.ownsDirectory = ownsDirectory;
+    }
+
+    @Override
+    public ObjectBody store(final InputStream in, final MessageDigest md5) throws IOException {
+        final Segment segment = checkout();
+        final long offset = segment.size;
+        final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        long position = offset;
+        boolean stored = false;
+
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                md5.update(buffer, 0, read);
+                final ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+
+                while (chunk.hasRemaining()) {
+                    position += segment.channel.write(chunk, position);
+                }
+            }
+
+            stored = true;
+        } finally {
+            in.close();
+
+            if (stored) {
+                segment.size = position;
+                segment.bodies.incrementAndGet();
+            }
+
+            // a failed upload leaves garbage that the next upload overwrites
+            checkin(segment);
+        }
+
+        final long length = position - offset;
+        storedBytes.addAndGet(length);
+        liveBytes.addAndGet(length);
+        return new SegmentBody(segment, offset, length);
+    }
+
+    @Override
+    public long getStoredBytes() {
+        return storedBytes.get();
+    }
+
+    /**
+     * @return bytes of content still referenced
+     */
+    public long getLiveBytes() {
+        return liveBytes.get();
+    }
+
+    /**
+     * @return number of segment files on disk
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return directory segment files are created in
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Segment segment : segments) {
+            segment.delete();
+        }
+
+        openSegments.clear();
+
+        if (ownsDirectory) {
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private Segment checkout() throws IOException {
+        final Segment open = openSegments.poll();
+
+        if (open != null) {
+            open.rewindIfUnused();
+            return open;
+        }
+
+        final Path path = directory.resolve(String.format("segment-%06d.dat", nextSegmentId.getAndIncrement()));
+        final Segment segment = new Segment(path, FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE));
+        segments.add(segment);
+        return segment;
+    }
+
+    private void checkin(final Segment segment) {
+        if (segment.size < segmentSize) {
+            openSegments.add(segment);
+            return;
+        }
+
+        segment.seal();
+    }
+
+    /**
+     * Append-only file holding the content of many bodies.
+     */
+    private final class Segment {
+        private final Path path;
+        private final FileChannel channel;
+
+        /**
+         * Bytes written; only changed by the upload that has the segment checked out.
+         */
+        private volatile long size = 0L;
+
+        /**
+         * Bodies in the segment that are still referenced.
+         */
+        private final AtomicInteger bodies = new AtomicInteger();
+
+        /**
+         * Transfers in progress.
+         */
+        private int pins = 0;
+        private boolean sealed = false;
+        private boolean deleted = false;
+
+        Segment(final Path path, final FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        synchronized void pin() throws ClosedChannelException {
+            if (deleted) {
+                throw new ClosedChannelException();
+            }
+
+            pins++;
+        }
+
+        synchronized void unpin() {
+            pins--;
+            deleteIfUnused();
+        }
+
+        /**
+         * Truncates the segment when nothing in it is referenced or being read.
+         */
+        synchronized void rewindIfUnused() throws IOException {
+            if (pins == 0 && bodies.get() == 0 && size > 0) {
+                channel.truncate(0);
+                size = 0;
+            }
+        }
+
+        synchronized void seal() {
+            sealed = true;
+            deleteIfUnused();
+        }
+
+        void bodyReleased() {
+            if (bodies.decrementAndGet() == 0) {
+                synchronized (this) {
+                    deleteIfUnused();
+                }
+            }
+        }
+
+        private void deleteIfUnused() {
+            if (sealed && pins == 0 && bodies.get() == 0 && !deleted) {
+                delete();
+            }
+        }
+
+        synchronized void delete() {
+            if (deleted) {
+                return;
+            }
+
+            deleted = true;
+            segments.remove(this);
+
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                LOG.warn("Unable to delete segment {}", path, e);
+            }
+        }
+    }
+
+    /**
+     * Extent of a segment holding one body.
+     */
+    private final class SegmentBody implements ObjectBody {
+        private final Segment segment;
+        private final long offset;
+        private final long length;
+
+        /**
+         * References held, starting with the one returned to the uploader.
+         */
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        SegmentBody(final Segment segment, final long offset, final long length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public long size() {
+            return length;
+        }
+
+        /**
+         * Creates a response body holding a reference to this body until it
+         * is released, so that a delete or overwrite between building the
+         * response and writing it can't free the extent for reuse.
+         */
+        @Override
+        public ResponseBody slice(final long sliceOffset, final long sliceLength) {
+            retain();
+            final AtomicBoolean released = new AtomicBoolean();
+
+            return new ResponseBody() {
+                @Override
+                public long length() {
+                    return sliceLength;
+                }
+
+                @Override
+                public void release() {
+                    if (released.compareAndSet(false, true)) {
+                        SegmentBody.this.release();
+                    }
+                }
+
+                @Override
+                public void writeTo(final WritableByteChannel target) throws IOException {
+                    segment.pin();
+
+                    try {
+                        long position = offset + sliceOffset;
+                        long remaining = sliceLength;
+
+                        while (remaining > 0) {
+                            final long sent = segment.channel.transferTo(position, remaining, target);
+
+                            if (sent == 0) {
+                                throw new EOFException(String.format("Segment %s ended at %d with %d bytes of "
+                                        + "the body left to send", segment.path, position, remaining));
+                            }
+
+                            position += sent;
+                            remaining -= sent;
+                        }
+                    } finally {
+                        segment.unpin();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void retain() {
+            if (references.getAndIncrement() <= 0) {
+                throw new IllegalStateException("Body has already been released");
+            }
+        }
+
+        @Override
+        public void release() {
+            final int remaining = references.decrementAndGet();
+
+            if (remaining == 0) {
+                liveBytes.addAndGet(-length);
+                segment.bodyReleased();
+            } else if (remaining < 0) {
+                throw new IllegalStateException("Body released more often than retained");
+            }
+        }
+    }
+}
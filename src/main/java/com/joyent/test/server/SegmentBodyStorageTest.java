@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import com.joyent.test.util.DeterministicContent;
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+@Test
+public class SegmentBodyStorageTest {
+    private static final long SEGMENT_SIZE = 1024 * 1024;
+
+    private final DeterministicContent content = new DeterministicContent(7L);
+
+    private Path directory;
+    private SegmentBodyStorage storage;
+
+    @BeforeMethod
+    public void create() throws IOException {
+        directory = Files.createTempDirectory("segment-body-storage-test-");
+        storage = new SegmentBodyStorage(directory, SEGMENT_SIZE);
+    }
+
+    @AfterMethod
+    public void destroy() throws IOException {
+        storage.close();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    public void storedContentIsServedBySlice() throws Exception {
+        final int size = 3 * 1024 * 1024 + 17;
+        final MessageDigest md5 = MantaStore.newMd5();
+        final ObjectBody body = storage.store(content.newInputStream(size), md5);
+
+        Assert.assertEquals(body.size(), size);
+        Assert.assertEquals(md5.digest(), expectedMd5(size));
+
+        final ByteArrayOutputStream range = new ByteArrayOutputStream();
+        final ResponseBody slice = body.slice(1000, 2 * 1024 * 1024);
+        Assert.assertEquals(slice.length(), 2 * 1024 * 1024);
+        slice.writeTo(Channels.newChannel(range));
+        slice.release();
+        body.release();
+
+        Assert.assertEquals(content.firstMismatch(new ByteArrayInputStream(range.toByteArray()),
+                1000, 2 * 1024 * 1024), -1L);
+    }
+
+    /**
+     * A response holds its body: deleting the object and storing another
+     * before the response is written must neither serve the new content
+     * under the old object's headers nor leave the writer spinning past the
+     * end of a truncated segment.
+     */
+    @Test(timeOut = 10_000)
+    public void deleteAndStoreBetweenSliceAndWriteServesOriginalContent() throws IOException {
+        final DeterministicContent replacement = new DeterministicContent(8L);
+
+        for (int replacementSize : new int[] {500, 1000, 4000}) {
+            try (MantaStore store = new MantaStore(storage)) {
+                store.addAccount("account");
+
+                final ObjectBody original = store.storeBody(content.newInputStream(1000), MantaStore.newMd5());
+                store.putObject("/account/stor/object", original, "application/octet-stream", new byte[16],
+                        Collections.emptyMap(), 2);
+                original.release();
+
+                final ObjectNode object = (ObjectNode) store.lookup("/account/stor/object");
+                final ResponseBody slice = object.getBody().slice(0, 1000);
+                store.delete("/account/stor/object");
+
+                final ObjectBody next = store.storeBody(replacement.newInputStream(replacementSize),
+                        MantaStore.newMd5());
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+                try {
+                    slice.writeTo(Channels.newChannel(out));
+                } finally {
+                    slice.release();
+                }
+
+                Assert.assertEquals(out.size(), 1000);
+                Assert.assertEquals(content.firstMismatch(new ByteArrayInputStream(out.toByteArray()), 0, 1000),
+                        -1L, "replacement of " + replacementSize + " bytes overwrote the sliced body");
+                Assert.assertEquals(storage.getLiveBytes(), replacementSize);
+                next.release();
+            }
+        }
+    }
+
+    public void sliceReleasesItsReferenceOnce() throws IOException {
+        final ObjectBody body = storage.store(content.newInputStream(1000), MantaStore.newMd5());
+        final ResponseBody slice = body.slice(0, 1000);
+
+        body.release();
+        Assert.assertEquals(storage.getLiveBytes(), 1000);
+
+        slice.release();
+        slice.release();
+        Assert.assertEquals(storage.getLiveBytes(), 0);
+    }
+
+    @Test(timeOut = 10_000, expectedExceptions = EOFException.class)
+    public void sliceBeyondTheSegmentFailsInsteadOfSpinning() throws IOException {
+        final ObjectBody body = storage.store(content.newInputStream(1000), MantaStore.newMd5());
+        final ResponseBody slice = body.slice(0, 2000);
+
+        try {
+            slice.writeTo(Channels.newChannel(new ByteArrayOutputStream()));
+        } finally {
+            slice.release();
+            body.release();
+        }
+    }
+
+    public void sealedSegmentsAreDeletedWhenBodiesAreReleased() throws IOException {
+        final List<ObjectBody> bodies = new ArrayList<>();
+
+        for (int i = 0; i < 6; i++) {
+            bodies.add(storage.store(content.newInputStream(600 * 1024), MantaStore.newMd5()));
+        }
+
+        Assert.assertEquals(storage.getSegmentCount(), 3);
+        Assert.assertEquals(storage.getLiveBytes(), 6 * 600 * 1024);
+
+        final ObjectBody shared = bodies.get(0);
+        shared.retain();
+
+        for (ObjectBody body : bodies) {
+            body.release();
+        }
+
+        // the first segment is still referenced through the extra reference
+        Assert.assertEquals(storage.getSegmentCount(), 1);
+        Assert.assertEquals(storage.getLiveBytes(), 600 * 1024);
+
+        shared.release();
+        Assert.assertEquals(storage.getSegmentCount(), 0);
+        Assert.assertEquals(storage.getLiveBytes(), 0);
+        Assert.assertEquals(listDirectory(), Collections.emptyList());
+    }
+
+    public void openSegmentIsReusedOnceEmpty() throws IOException {
+        final ObjectBody first = storage.store(content.newInputStream(1000), MantaStore.newMd5());
+        first.release();
+
+        final ObjectBody second = storage.store(content.newInputStream(2000), MantaStore.newMd5());
+        Assert.assertEquals(storage.getSegmentCount(), 1);
+        Assert.assertEquals(Files.size(directory.resolve(listDirectory().get(0))), 2000);
+        second.release();
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void releasedBodiesCanNotBeRetained() throws IOException {
+        final ObjectBody body = storage.store(content.newInputStream(10), MantaStore.newMd5());
+        body.release();
+        body.retain();
+    }
+
+    public void storeReleasesReplacedAndDeletedObjects() throws IOException {
+        try (MantaStore store = new MantaStore(storage)) {
+            store.addAccount("account");
+
+            for (int i = 0; i < 3; i++) {
+                final ObjectBody body = store.storeBody(content.newInputStream(1024 * 1024), MantaStore.newMd5());
+                store.putObject("/account/stor/object", body, "application/octet-stream", new byte[16],
+                        Collections.emptyMap(), 2);
+                body.release();
+            }
+
+            store.link("/account/stor/link", "/account/stor/object");
+            Assert.assertEquals(storage.getLiveBytes(), 1024 * 1024);
+
+            store.delete("/account/stor/object");
+            Assert.assertEquals(storage.getLiveBytes(), 1024 * 1024);
+
+            store.delete("/account/stor/link");
+            Assert.assertEquals(storage.getLiveBytes(), 0);
+            Assert.assertEquals(storage.getSegmentCount(), 0);
+        }
+    }
+
+    public void heapStaysFlatForLargeObjects() throws IOException {
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final long size = 64L * 1024 * 1024;
+
+        final long before = threads.getThreadAllocatedBytes(threadId);
+        final ObjectBody body = storage.store(content.newInputStream(size), MantaStore.newMd5());
+        final long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        Assert.assertEquals(body.size(), size);
+        Assert.assertTrue(allocated < 4 * 1024 * 1024, "storing 64 MiB allocated " + allocated + " bytes");
+        body.release();
+    }
+
+    private byte[] expectedMd5(final int size) throws IOException {
+        final MessageDigest md5 = MantaStore.newMd5();
+        final byte[] buffer = new byte[size];
+        content.fill(0, buffer, 0, size);
+        md5.update(buffer);
+        return md5.digest();
+    }
+
+    private List<Path> listDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            final List<Path> names = new ArrayList<>();
+            files.forEach(file -> names.add(file.getFileName()));
+            return names;
+        }
+    }
+}
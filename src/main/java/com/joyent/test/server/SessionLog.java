@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact append-only binary log of {@link Exchange}s.
+ *
+ * <p>A log starts with a four byte magic number and holds one or more
+ * sessions, one per {@link Writer} that appended to it. Each session starts
+ * with a marker carrying its wall clock start time, followed by exchanges.
+ * Numbers are unsigned LEB128 varints and strings are interned per session:
+ * the first occurrence of a header name or value is written out and later
+ * ones refer back to it, so the repetitive headers of a test run cost a byte
+ * or two each. A log cut short by a crash reads back up to its last complete
+ * exchange.</p>
+ */
+public final class SessionLog {
+    /**
+     * "MSL1".
+     */
+    static final int MAGIC = 0x4d534c31;
+
+    private static final int SESSION_RECORD = 0;
+    private static final int EXCHANGE_RECORD = 1;
+
+    private static final int BODY_NONE = 0;
+    private static final int BODY_INLINE = 1;
+    private static final int BODY_DIGEST = 2;
+
+    /**
+     * String reference meaning a literal that is not added to the table.
+     */
+    private static final int STRING_LITERAL = 0;
+
+    /**
+     * String reference meaning a literal that is added to the table.
+     */
+    private static final int STRING_INTERNED = 1;
+
+    /**
+     * Most strings interned per session, bounding the memory of both ends.
+     */
+    private static final int MAX_INTERNED_STRINGS = 1 << 16;
+
+    /**
+     * Length of a SHA-256 digest.
+     */
+    private static final int DIGEST_LENGTH = 32;
+
+    private SessionLog() {
+    }
+
+    /**
+     * Opens a log for appending a new session, creating it if needed.
+     *
+     * @param path log file
+     * @return writer positioned at the end of the log
+     * @throws IOException thrown when the file can't be opened or isn't a session log
+     */
+    public static Writer append(final Path path) throws IOException {
+        final boolean exists = Files.exists(path) && Files.size(path) > 0;
+
+        if (exists) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException(path + " is not a session log");
+                }
+            }
+        }
+
+        final OutputStream out = Files.newOutputStream(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new Writer(new DataOutputStream(new BufferedOutputStream(out)), !exists);
+    }
+
+    /**
+     * Reads every exchange of every session in a log.
+     *
+     * @param path log file
+     * @return exchanges in the order they were written
+     * @throws IOException thrown when the file can't be read or isn't a session log
+     */
+    public static List<Exchange> read(final Path path) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Reads every exchange of every session in a log.
+     *
+     * @param stream log content, not closed
+     * @return exchanges in the order they were written
+     * @throws IOException thrown when the stream can't be read or isn't a session log
+     */
+    public static List<Exchange> read(final InputStream stream) throws IOException {
+        final DataInputStream in = new DataInputStream(stream);
+        final List<Exchange> exchanges = new ArrayList<>();
+        final List<String> strings = new ArrayList<>();
+
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a session log");
+        }
+
+        while (true) {
+            final int type = in.read();
+
+            if (type == -1) {
+                return exchanges;
+            }
+
+            try {
+                if (type == SESSION_RECORD) {
+                    in.readLong();
+                    strings.clear();
+                } else if (type == EXCHANGE_RECORD) {
+                    exchanges.add(readExchange(in, strings));
+                } else {
+                    throw new IOException("Unknown record type " + type);
+                }
+            } catch (EOFException e) {
+                // the writer stopped part way through a record
+                return exchanges;
+            }
+        }
+    }
+
+    private static Exchange readExchange(final DataInputStream in, final List<String> strings) throws IOException {
+        final long startNanos = readVarLong(in);
+        final long latencyNanos = readVarLong(in);
+        final long durationNanos = readVarLong(in);
+        final String method = readString(in, strings);
+        final String target = readString(in, strings);
+        final Map<String, String> requestHeaders = readHeaders(in, strings);
+        final long requestBodyLength = readVarLong(in);
+        final byte[] requestDigest = requestBodyLength > 0 ? readBytes(in, DIGEST_LENGTH) : null;
+        final int status = (int) readVarLong(in);
+        final Map<String, String> responseHeaders = readHeaders(in, strings);
+        final int bodyMode = in.readUnsignedByte();
+        long responseBodyLength = 0;
+        byte[] responseBody = null;
+        byte[] responseDigest = null;
+
+        if (bodyMode == BODY_INLINE || bodyMode == BODY_DIGEST) {
+            responseBodyLength = readVarLong(in);
+            responseDigest = readBytes(in, DIGEST_LENGTH);
+
+            if (bodyMode == BODY_INLINE) {
+                responseBody = readBytes(in, Math.toIntExact(responseBodyLength));
+            }
+        } else if (bodyMode != BODY_NONE) {
+            throw new IOException("Unknown body encoding " + bodyMode);
+        }
+
+        return new Exchange(startNanos, latencyNanos, durationNanos, method, target, requestHeaders,
+                requestBodyLength, requestDigest, status, responseHeaders, responseBodyLength,
+                responseBody, responseDigest);
+    }
+
+    private static Map<String, String> readHeaders(final DataInputStream in, final List<String> strings)
+            throws IOException {
+        final int count = (int) readVarLong(in);
+        final Map<String, String> headers = new LinkedHashMap<>(count * 2);
+
+        for (int i = 0; i < count; i++) {
+            headers.put(readString(in, strings), readString(in, strings));
+        }
+
+        return headers;
+    }
+
+    private static String readString(final DataInputStream in, final List<String> strings) throws IOException {
+        final long reference = readVarLong(in);
+
+        if (reference == STRING_LITERAL || reference == STRING_INTERNED) {
+            final String value = new String(readBytes(in, (int) readVarLong(in)), StandardCharsets.UTF_8);
+
+            if (reference == STRING_INTERNED) {
+                strings.add(value);
+            }
+
+            return value;
+        }
+
+        final int index = (int) (reference - 2);
+
+        if (index >= strings.size()) {
+            throw new IOException("Reference to unknown string " + index);
+        }
+
+        return strings.get(index);
+    }
+
+    private static byte[] readBytes(final DataInputStream in, final int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static long readVarLong(final DataInputStream in) throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varint");
+    }
+
+    static void writeVarLong(final DataOutputStream out, final long value) throws IOException {
+        long remaining = value;
+
+        while ((remaining & ~0x7fL) != 0) {
+            out.writeByte((int) (remaining & 0x7f) | 0x80);
+            remaining >>>= 7;
+        }
+
+        out.writeByte((int) remaining);
+    }
+
+    /**
+     * Appends one session to a log. Appends are serialized, so a writer may
+     * be shared by the threads of a server.
+     */
+    public static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final long sessionStartNanos = System.nanoTime();
+        private long exchanges = 0L;
+
+        private Writer(final DataOutputStream out, final boolean newLog) throws IOException {
+            this.out = out;
+
+            if (newLog) {
+                out.writeInt(MAGIC);
+            }
+
+            out.writeByte(SESSION_RECORD);
+            out.writeLong(System.currentTimeMillis());
+            out.flush();
+        }
+
+        /**
+         * @return value of {@link System#nanoTime()} when the session started
+         */
+        public long getSessionStartNanos() {
+            return sessionStartNanos;
+        }
+
+        /**
+         * @return exchanges appended so far
+         */
+        public synchronized long getExchangeCount() {
+            return exchanges;
+        }
+
+        /**
+         * Appends an exchange and flushes it to the file.
+         *
+         * @param exchange exchange to append
+         * @throws IOException thrown when writing fails
+         */
+        public synchronized void append(final Exchange exchange) throws IOException {
+            out.writeByte(EXCHANGE_RECORD);
+            writeVarLong(out, exchange.getStartNanos());
+            writeVarLong(out, exchange.getLatencyNanos());
+            writeVarLong(out, exchange.getDurationNanos());
+            writeString(exchange.getMethod());
+            writeString(exchange.getTarget());
+            writeHeaders(exchange.getRequestHeaders());
+            writeVarLong(out, exchange.getRequestBodyLength());
+
+            if (exchange.getRequestBodyLength() > 0) {
+                out.write(exchange.getRequestBodyDigest());
+            }
+
+            writeVarLong(out, exchange.getStatus());
+            writeHeaders(exchange.getResponseHeaders());
+
+            if (exchange.getResponseBodyDigest() == null) {
+                out.writeByte(BODY_NONE);
+            } else {
+                out.writeByte(exchange.getResponseBody() != null ? BODY_INLINE : BODY_DIGEST);
+                writeVarLong(out, exchange.getResponseBodyLength());
+                out.write(exchange.getResponseBodyDigest());
+
+                if (exchange.getResponseBody() != null) {
+                    out.write(exchange.getResponseBody());
+                }
+            }
+
+            out.flush();
+            exchanges++;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+
+        private void writeHeaders(final Map<String, String> headers) throws IOException {
+            writeVarLong(out, headers.size());
+
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                writeString(header.getKey());
+                writeString(header.getValue());
+            }
+        }
+
+        private void writeString(final String value) throws IOException {
+            final Integer index = strings.get(value);
+
+            if (index != null) {
+                writeVarLong(out, index + 2L);
+                return;
+            }
+
+            final boolean intern = strings.size() < MAX_INTERNED_STRINGS;
+
+            if (intern) {
+                strings.put(value, strings.size());
+            }
+
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, intern ? STRING_INTERNED : STRING_LITERAL);
+            writeVarLong(out, bytes.length);
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import com.joyent.test.util.TokenBucket;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Server side of a connection as seen through a {@link NetworkProfile}.
+ * Bytes arriving after the server last wrote are held back for half a round
+ * trip, as are bytes the server writes after it last read, so each request
+ * and response exchange costs one round trip and a new connection pays one
+ * more for its handshake. Transfers are limited to the profile's bandwidth
+ * and every segment may be delayed by a retransmission.
+ *
+ * <p>The profile is looked up on each transfer so that it can be changed
+ * while connections are open. Instances are not thread-safe.</p>
+ */
+class ShapedChannel implements ByteChannel {
+    private final ByteChannel delegate;
+    private final Supplier<NetworkProfile> profiles;
+
+    /**
+     * Profile the buckets were created for.
+     */
+    private NetworkProfile profile;
+    private TokenBucket upstream;
+    private TokenBucket downstream;
+
+    /**
+     * True until the first byte has been read.
+     */
+    private boolean handshakePending = true;
+
+    /**
+     * True when the last transfer was a write.
+     */
+    private boolean writing = true;
+
+    ShapedChannel(final ByteChannel delegate, final Supplier<NetworkProfile> profiles) {
+        this.delegate = delegate;
+        this.profiles = profiles;
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        final int read = delegate.read(dst);
+
+        if (read <= 0) {
+            return read;
+        }
+
+        final NetworkProfile current = current();
+
+        if (!current.isIdeal()) {
+            if (handshakePending) {
+                pause(current.getRoundTrip().toNanos());
+            }
+
+            if (writing) {
+                pause(oneWayDelay(current));
+            }
+
+            pause(retransmitDelay(current, read));
+            throttle(upstream, read);
+        }
+
+        handshakePending = false;
+        writing = false;
+        return read;
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        final NetworkProfile current = current();
+
+        if (current.isIdeal()) {
+            writing = true;
+            return delegate.write(src);
+        }
+
+        if (!writing) {
+            pause(oneWayDelay(current));
+            writing = true;
+        }
+
+        int written = 0;
+
+        while (src.hasRemaining()) {
+            final int granted = downstream == null
+                    ? src.remaining()
+                    : downstream.acquire(src.remaining());
+            pause(retransmitDelay(current, granted));
+
+            final int limit = src.limit();
+            src.limit(src.position() + granted);
+
+            try {
+                while (src.hasRemaining()) {
+                    written += delegate.write(src);
+                }
+            } finally {
+                src.limit(limit);
+            }
+        }
+
+        return written;
+    }
+
+    /**
+     * Returns the channel response bodies should be written to: the
+     * connection itself while nothing is emulated, so that file content is
+     * sent without copies, otherwise this channel.
+     *
+     * @return channel to write a body to
+     */
+    WritableByteChannel bodyTarget() {
+        if (current().isIdeal()) {
+            writing = true;
+            return delegate;
+        }
+
+        return this;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return delegate.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    /**
+     * Returns the current profile, recreating the buckets when it changed.
+     */
+    private NetworkProfile current() {
+        final NetworkProfile latest = profiles.get();
+
+        if (latest != profile) {
+            profile = latest;
+            upstream = latest.getBytesPerSecond() > 0 ? TokenBucket.ofRate(latest.getBytesPerSecond()) : null;
+            downstream = latest.getBytesPerSecond() > 0 ? TokenBucket.ofRate(latest.getBytesPerSecond()) : null;
+        }
+
+        return latest;
+    }
+
+    private static long oneWayDelay(final NetworkProfile profile) {
+        final long half = profile.getRoundTrip().toNanos() / 2;
+        final long jitter = profile.getJitter().toNanos();
+
+        if (jitter == 0) {
+            return half;
+        }
+
+        return Math.max(0L, half + ThreadLocalRandom.current().nextLong(-jitter, jitter + 1));
+    }
+
+    /**
+     * Draws the retransmissions suffered by the segments carrying a transfer.
+     */
+    private static long retransmitDelay(final NetworkProfile profile, final int bytes) {
+        if (profile.getLossRate() == 0.0) {
+            return 0L;
+        }
+
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int segments = (bytes + NetworkProfile.SEGMENT_SIZE - 1) / NetworkProfile.SEGMENT_SIZE;
+        int lost = 0;
+
+        for (int i = 0; i < segments; i++) {
+            if (random.nextDouble() < profile.getLossRate()) {
+                lost++;
+            }
+        }
+
+        return lost * profile.getRetransmitTimeout().toNanos();
+    }
+
+    /**
+     * Waits until a transfer that has already happened fits the bandwidth.
+     */
+    private static void throttle(final TokenBucket bucket, final int bytes) throws InterruptedIOException {
+        if (bucket == null) {
+            return;
+        }
+
+        int remaining = bytes;
+        while (remaining > 0) {
+            remaining -= bucket.acquire(remaining);
+        }
+    }
+
+    private static void pause(final long nanos) throws InterruptedIOException {
+        if (nanos <= 0) {
+            return;
+        }
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while emulating network delay");
+        }
+    }
+}
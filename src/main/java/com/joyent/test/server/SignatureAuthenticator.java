@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import com.joyent.http.signature.KeyFingerprinter;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link Authenticator} that verifies http-signature {@code Authorization}
+ * headers and signed URL query strings against registered public keys, as
+ * Manta does.
+ *
+ * <p>Keys are registered as parsed {@link PublicKey}s under both their MD5
+ * and SHA256 fingerprints and {@link Signature} instances are kept per
+ * thread, so a verification costs the signature check alone.</p>
+ */
+public class SignatureAuthenticator implements Authenticator {
+    /**
+     * Largest difference allowed between the Date header and the clock.
+     */
+    public static final Duration MAX_CLOCK_SKEW = Duration.ofMinutes(5);
+
+    /**
+     * JCA algorithm names keyed by http-signature algorithm name.
+     */
+    private static final Map<String, String> ALGORITHMS = new HashMap<>();
+
+    static {
+        ALGORITHMS.put("rsa-sha1", "SHA1withRSA");
+        ALGORITHMS.put("rsa-sha256", "SHA256withRSA");
+        ALGORITHMS.put("rsa-sha512", "SHA512withRSA");
+        ALGORITHMS.put("dsa-sha1", "SHA1withDSA");
+        ALGORITHMS.put("dsa-sha256", "SHA256withDSA");
+        ALGORITHMS.put("ecdsa-sha256", "SHA256withECDSA");
+        ALGORITHMS.put("ecdsa-sha384", "SHA384withECDSA");
+        ALGORITHMS.put("ecdsa-sha512", "SHA512withECDSA");
+    }
+
+    /**
+     * Registered keys keyed by account, then by fingerprint.
+     */
+    private final Map<String, Map<String, PublicKey>> keys = new ConcurrentHashMap<>();
+
+    /**
+     * Signature instances of the current thread, keyed by JCA algorithm name.
+     */
+    private final ThreadLocal<Map<String, Signature>> signatures = ThreadLocal.withInitial(HashMap::new);
+
+    private final LongAdder verifications = new LongAdder();
+
+    /**
+     * Registers a public key for an account under both its MD5 and SHA256
+     * fingerprints.
+     *
+     * @param account account name
+     * @param key public key
+     */
+    public void register(final String account, final PublicKey key) {
+        final KeyPair keyPair = new KeyPair(key, null);
+        final Map<String, PublicKey> accountKeys = keys.computeIfAbsent(account, a -> new ConcurrentHashMap<>());
+        accountKeys.put(KeyFingerprinter.md5Fingerprint(keyPair), key);
+        accountKeys.put("SHA256:" + KeyFingerprinter.sha256Fingerprint(keyPair), key);
+    }
+
+    /**
+     * @return signatures verified, whether they matched or not
+     */
+    public long getVerificationCount() {
+        return verifications.sum();
+    }
+
+    @Override
+    public String authenticate(final HttpRequest request) {
+        final String authorization = request.getHeader("Authorization");
+
+        if (authorization != null) {
+            return authenticateHeader(request, authorization);
+        }
+
+        if (request.getQueryParameter("signature") != null) {
+            return authenticateQuery(request);
+        }
+
+        return null;
+    }
+
+    private String authenticateHeader(final HttpRequest request, final String authorization) {
+        final Map<String, String> parameters = KeyIdAuthenticator.parseSignature(authorization);
+        final String[] keyId = KeyIdAuthenticator.parseKeyId(parameters.get("keyId"));
+        final PublicKey key = lookup(keyId);
+        final String headers = parameters.getOrDefault("headers", "date");
+        final StringBuilder signingString = new StringBuilder(128);
+
+        for (String header : headers.toLowerCase(Locale.ROOT).trim().split("\\s+")) {
+            if (signingString.length() > 0) {
+                signingString.append('\n');
+            }
+
+            if (header.equals("(request-target)")) {
+                signingString.append(header).append(": ")
+                        .append(request.getMethod().toLowerCase(Locale.ROOT)).append(' ')
+                        .append(request.getTarget());
+                continue;
+            }
+
+            final String value = request.getHeader(header);
+
+            if (value == null) {
+                throw new MantaServerException(400, "MissingParameter",
+                        "Signed header " + header + " is missing");
+            }
+
+            signingString.append(header).append(": ").append(value);
+        }
+
+        checkDate(request);
+
+        if (!verify(parameters.get("algorithm"), key, signingString.toString(), parameters.get("signature"))) {
+            throw new MantaServerException(403, "InvalidSignature",
+                    "The signature we calculated does not match the one you sent");
+        }
+
+        return keyId[0];
+    }
+
+    /**
+     * Verifies a URL signed by the client's {@code getAsSignedURI}: the
+     * signature covers the method, host, raw path and the sorted, encoded
+     * query parameters other than the signature itself.
+     */
+    private String authenticateQuery(final HttpRequest request) {
+        final String keyIdParameter = request.getQueryParameter("keyId");
+        final String algorithm = request.getQueryParameter("algorithm");
+        final String expires = request.getQueryParameter("expires");
+
+        if (keyIdParameter == null || algorithm == null || expires == null) {
+            throw new MantaServerException(403, "InvalidQueryStringAuthentication",
+                    "Signed URLs need keyId, algorithm, expires and signature parameters");
+        }
+
+        final String[] keyId = KeyIdAuthenticator.parseKeyId(keyIdParameter);
+        final PublicKey key = lookup(keyId);
+
+        try {
+            if (Instant.ofEpochSecond(Long.parseLong(expires)).isBefore(Instant.now())) {
+                throw new MantaServerException(403, "InvalidQueryStringAuthentication",
+                        "Signed URL expired at " + expires);
+            }
+        } catch (NumberFormatException e) {
+            throw new MantaServerException(403, "InvalidQueryStringAuthentication",
+                    "Malformed expires parameter: " + expires);
+        }
+
+        final String target = request.getTarget();
+        final int queryStart = target.indexOf('?');
+        final StringBuilder signingString = new StringBuilder(256)
+                .append(request.getMethod()).append('\n')
+                .append(host(request.getHeader("Host"))).append('\n')
+                .append(queryStart < 0 ? target : target.substring(0, queryStart)).append('\n');
+
+        final Map<String, String> sorted = new TreeMap<>(request.getQueryParameters());
+        sorted.remove("signature");
+        boolean first = true;
+
+        for (Map.Entry<String, String> parameter : sorted.entrySet()) {
+            if (!first) {
+                signingString.append('&');
+            }
+
+            first = false;
+            signingString.append(encode(parameter.getKey())).append('=').append(encode(parameter.getValue()));
+        }
+
+        if (!verify(algorithm.toLowerCase(Locale.ROOT), key, signingString.toString(),
+                request.getQueryParameter("signature"))) {
+            throw new MantaServerException(403, "InvalidQueryStringAuthentication",
+                    "The signature we calculated does not match the one you sent");
+        }
+
+        return keyId[0];
+    }
+
+    private PublicKey lookup(final String[] keyId) {
+        final Map<String, PublicKey> accountKeys = keys.get(keyId[0]);
+
+        if (accountKeys == null) {
+            throw new MantaServerException(403, "AccountDoesNotExist", keyId[0] + " does not exist");
+        }
+
+        final PublicKey key = accountKeys.get(keyId[1]);
+
+        if (key == null) {
+            throw new MantaServerException(403, "KeyDoesNotExist",
+                    "Key " + keyId[1] + " is not registered for " + keyId[0]);
+        }
+
+        return key;
+    }
+
+    private static void checkDate(final HttpRequest request) {
+        final String date = request.getHeader("x-date") != null
+                ? request.getHeader("x-date") : request.getHeader("Date");
+
+        if (date == null) {
+            throw new MantaServerException(400, "MissingParameter", "Date header is required");
+        }
+
+        final Instant sent;
+
+        try {
+            sent = ZonedDateTime.parse(date, HttpServer.HTTP_DATE).toInstant();
+        } catch (DateTimeParseException e) {
+            throw new MantaServerException(400, "InvalidArgument", "Malformed date: " + date);
+        }
+
+        if (Duration.between(sent, Instant.now()).abs().compareTo(MAX_CLOCK_SKEW) > 0) {
+            throw new MantaServerException(403, "RequestExpired", "Request date " + date + " is too far off");
+        }
+    }
+
+    private boolean verify(final String algorithm, final PublicKey key, final String signingString,
+                           final String encodedSignature) {
+        final String jcaAlgorithm = ALGORITHMS.get(algorithm);
+
+        if (jcaAlgorithm == null) {
+            throw new MantaServerException(400, "InvalidAlgorithm", "Unsupported algorithm " + algorithm);
+        }
+
+        verifications.increment();
+
+        try {
+            final Signature signature = signatures.get().computeIfAbsent(jcaAlgorithm,
+                    SignatureAuthenticator::newSignature);
+            signature.initVerify(key);
+            signature.update(signingString.getBytes(StandardCharsets.UTF_8));
+            return signature.verify(Base64.getDecoder().decode(encodedSignature));
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            // malformed base64, a key of the wrong type or a malformed signature
+            return false;
+        }
+    }
+
+    private static Signature newSignature(final String jcaAlgorithm) {
+        try {
+            return Signature.getInstance(jcaAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new MantaServerException(400, "InvalidAlgorithm", jcaAlgorithm + " is not available");
+        }
+    }
+
+    /**
+     * Strips the port from a Host header, as {@link java.net.URI#getHost()}
+     * does on the client.
+     */
+    private static String host(final String hostHeader) {
+        if (hostHeader == null) {
+            return "";
+        }
+
+        final int colon = hostHeader.lastIndexOf(':');
+        final int bracket = hostHeader.lastIndexOf(']');
+        return colon > bracket ? hostHeader.substring(0, colon) : hostHeader;
+    }
+
+    private static String encode(final String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError("UTF-8 is always supported", e);
+        }
+    }
+}
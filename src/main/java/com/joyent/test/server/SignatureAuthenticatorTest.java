@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import com.joyent.http.signature.KeyFingerprinter;
+import com.joyent.http.signature.Signer;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@Test
+public class SignatureAuthenticatorTest {
+    private static final String ACCOUNT = "signer";
+
+    private final SignatureAuthenticator authenticator = new SignatureAuthenticator();
+
+    private KeyPair rsa;
+    private KeyPair ecdsa;
+    private Signer rsaSigner;
+
+    @BeforeClass
+    public void generateKeys() throws Exception {
+        final KeyPairGenerator rsaGenerator = KeyPairGenerator.getInstance("RSA");
+        rsaGenerator.initialize(2048);
+        rsa = rsaGenerator.generateKeyPair();
+        rsaSigner = new Signer.Builder(rsa).build();
+
+        final KeyPairGenerator ecGenerator = KeyPairGenerator.getInstance("EC");
+        ecGenerator.initialize(256);
+        ecdsa = ecGenerator.generateKeyPair();
+
+        authenticator.register(ACCOUNT, rsa.getPublic());
+        authenticator.register(ACCOUNT, ecdsa.getPublic());
+    }
+
+    public void acceptsSignedDateHeader() {
+        final String date = rsaSigner.defaultSignDateAsString();
+        final HttpRequest request = request("GET", "/signer/stor", "Date", date,
+                "Authorization", rsaSigner.createAuthorizationHeader(ACCOUNT, rsa, date));
+
+        Assert.assertEquals(authenticator.authenticate(request), ACCOUNT);
+    }
+
+    public void acceptsEcdsaSignature() {
+        final Signer signer = new Signer.Builder(ecdsa).build();
+        final String date = signer.defaultSignDateAsString();
+        final HttpRequest request = request("GET", "/signer/stor", "Date", date,
+                "Authorization", signer.createAuthorizationHeader(ACCOUNT, ecdsa, date));
+
+        Assert.assertEquals(authenticator.authenticate(request), ACCOUNT);
+    }
+
+    public void acceptsSignedRequestTarget() {
+        final String date = rsaSigner.defaultSignDateAsString();
+        final String signingString = "(request-target): put /signer/stor/object?x=1\ndate: " + date;
+        final String signature = Base64.getEncoder().encodeToString(
+                rsaSigner.sign(ACCOUNT, rsa, signingString.getBytes(StandardCharsets.UTF_8)));
+        final String authorization = String.format("Signature keyId=\"/%s/keys/%s\",algorithm=\"rsa-sha256\","
+                + "headers=\"(request-target) date\",signature=\"%s\"", ACCOUNT,
+                KeyFingerprinter.md5Fingerprint(rsa), signature);
+
+        Assert.assertEquals(authenticator.authenticate(request("PUT", "/signer/stor/object?x=1",
+                "Date", date, "Authorization", authorization)), ACCOUNT);
+
+        assertRejected(request("PUT", "/signer/stor/other?x=1", "Date", date, "Authorization", authorization),
+                "InvalidSignature");
+    }
+
+    public void rejectsSignatureOfDifferentDate() {
+        final String date = rsaSigner.defaultSignDateAsString();
+        final String authorization = rsaSigner.createAuthorizationHeader(ACCOUNT, rsa, date);
+
+        assertRejected(request("GET", "/signer/stor", "Date", date.replace("GMT", "+0000"),
+                "Authorization", authorization), "InvalidSignature");
+    }
+
+    public void rejectsStaleDate() {
+        final String date = HttpServer.HTTP_DATE.format(ZonedDateTime.now(ZoneOffset.UTC).minusHours(1));
+
+        assertRejected(request("GET", "/signer/stor", "Date", date,
+                "Authorization", rsaSigner.createAuthorizationHeader(ACCOUNT, rsa, date)), "RequestExpired");
+    }
+
+    public void rejectsMalformedAuthorizationHeaders() {
+        final String date = rsaSigner.defaultSignDateAsString();
+        final String keyId = String.format("keyId=\"/%s/keys/%s\"", ACCOUNT, KeyFingerprinter.md5Fingerprint(rsa));
+        final String signature = "signature=\"" + Base64.getEncoder().encodeToString(new byte[256]) + "\"";
+        final String[] malformed = {
+                "Signature algorithm=\"rsa-sha256\"," + signature,
+                "Signature " + keyId + "," + signature,
+                "Signature " + keyId + ",algorithm=\"rsa-sha256\"",
+                "Signature keyId=/signer/keys/unquoted,algorithm=rsa-sha256," + signature,
+                "Signature ",
+                "Basic c2lnbmVyOnBhc3N3b3Jk"
+        };
+
+        for (String authorization : malformed) {
+            try {
+                authenticator.authenticate(request("GET", "/signer/stor", "Date", date,
+                        "Authorization", authorization));
+                Assert.fail("Malformed header should have been rejected: " + authorization);
+            } catch (MantaServerException e) {
+                Assert.assertEquals(e.getStatus(), 401, authorization);
+                Assert.assertEquals(e.getCode(), "InvalidAuthenticationToken", authorization);
+            }
+        }
+    }
+
+    public void requestsWithoutCredentialsAreAnonymous() {
+        Assert.assertNull(authenticator.authenticate(request("GET", "/signer/public/object")));
+    }
+
+    public void acceptsSignedUrl() throws Exception {
+        final String path = "/signer/stor/file%20name.txt";
+        final long expires = Instant.now().getEpochSecond() + 3600;
+
+        Assert.assertEquals(authenticator.authenticate(request("GET", signUrl("GET", path, expires),
+                "Host", "127.0.0.1:8080")), ACCOUNT);
+
+        assertRejected(request("GET", signUrl("GET", path, expires).replace("file", "other"),
+                "Host", "127.0.0.1:8080"), "InvalidQueryStringAuthentication");
+        assertRejected(request("GET", signUrl("GET", path, expires), "Host", "localhost:8080"),
+                "InvalidQueryStringAuthentication");
+        assertRejected(request("GET", signUrl("GET", path, Instant.now().getEpochSecond() - 1),
+                "Host", "127.0.0.1:8080"), "InvalidQueryStringAuthentication");
+    }
+
+    public void verifiesInMicroseconds() {
+        final String date = rsaSigner.defaultSignDateAsString();
+        final HttpRequest request = request("GET", "/signer/stor", "Date", date,
+                "Authorization", rsaSigner.createAuthorizationHeader(ACCOUNT, rsa, date));
+        final int iterations = 2_000;
+
+        for (int i = 0; i < iterations; i++) {
+            authenticator.authenticate(request);
+        }
+
+        final long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            authenticator.authenticate(request);
+        }
+
+        final long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / iterations;
+        Assert.assertTrue(micros < 1000, "verification took " + micros + "us");
+    }
+
+    /**
+     * Signs a URL the way the client's getAsSignedURI does.
+     */
+    private String signUrl(final String method, final String rawPath, final long expires) throws Exception {
+        final String keyId = URLEncoder.encode(
+                String.format("/%s/keys/%s", ACCOUNT, KeyFingerprinter.md5Fingerprint(rsa)), "UTF-8");
+        final String query = "algorithm=RSA-SHA256&expires=" + expires + "&keyId=" + keyId;
+        final String signingString = method + "\n127.0.0.1\n" + rawPath + "\n" + query;
+        final byte[] signature = rsaSigner.sign(ACCOUNT, rsa, signingString.getBytes(StandardCharsets.UTF_8));
+
+        return rawPath + "?" + query + "&signature="
+                + URLEncoder.encode(Base64.getEncoder().encodeToString(signature), "UTF-8");
+    }
+
+    private static HttpRequest request(final String method, final String target, final String... headers) {
+        final Map<String, String> headerMap = HttpRequest.newHeaderMap();
+
+        for (int i = 0; i < headers.length; i += 2) {
+            headerMap.put(headers[i], headers[i + 1]);
+        }
+
+        return new HttpRequest(method, target, headerMap, new ByteArrayInputStream(new byte[0]), System.nanoTime());
+    }
+
+    private void assertRejected(final HttpRequest request, final String code) {
+        try {
+            authenticator.authenticate(request);
+            Assert.fail("Request should have been rejected");
+        } catch (MantaServerException e) {
+            Assert.assertEquals(e.getCode(), code, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loopback endpoint that never answers, in one of several ways, so that
+ * client timeouts can be measured without relying on an unroutable address
+ * or on the network between the test and a real endpoint.
+ *
+ * <p>Each {@link Mode} stalls a different phase of a request. Stalled
+ * connections are held open until the endpoint is closed.</p>
+ */
+public class StallingEndpoint implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(StallingEndpoint.class);
+
+    /**
+     * Longest time a connection is given to complete while filling the
+     * accept queue; a connection that takes longer means SYNs are dropped.
+     */
+    private static final int PROBE_TIMEOUT_MILLIS = 250;
+
+    /**
+     * Most connections queued while filling the accept queue.
+     */
+    private static final int MAX_QUEUED_CONNECTIONS = 64;
+
+    /**
+     * Headers of the response sent by {@link Mode#STALL_AFTER_HEADERS}.
+     */
+    private static final byte[] STALLED_RESPONSE_HEAD = ("HTTP/1.1 200 OK\r\n"
+            + "Content-Type: application/octet-stream\r\n"
+            + "Content-Length: 1048576\r\n"
+            + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+    /**
+     * Start of a TLS handshake record, without the length that would let a
+     * client read the rest.
+     */
+    private static final byte[] PARTIAL_TLS_RECORD = {0x16, 0x03, 0x03};
+
+    /**
+     * Phase of a request the endpoint stalls.
+     */
+    public enum Mode {
+        /**
+         * Connections are never established: the listening socket's accept
+         * queue is kept full, so the kernel drops new SYNs and clients time
+         * out connecting.
+         */
+        BLACK_HOLE,
+
+        /**
+         * Connections are accepted and then neither read nor written.
+         */
+        STALL_AFTER_ACCEPT,
+
+        /**
+         * The client's TLS hello is read and answered with the first bytes
+         * of a handshake record, then nothing more.
+         */
+        STALL_MID_TLS,
+
+        /**
+         * The request is read and answered with response headers promising
+         * a body that never comes.
+         */
+        STALL_AFTER_HEADERS
+    }
+
+    private final Mode mode;
+    private final List<Socket> held = new CopyOnWriteArrayList<>();
+    private final AtomicInteger accepted = new AtomicInteger();
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+    private volatile boolean running = false;
+
+    /**
+     * Creates a new endpoint; call {@link #start()} to listen.
+     *
+     * @param mode phase of a request to stall
+     */
+    public StallingEndpoint(final Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Starts listening on an ephemeral loopback port.
+     *
+     * @return this endpoint
+     * @throws IOException thrown when the port can't be bound or, for
+     *                     {@link Mode#BLACK_HOLE}, the platform doesn't drop
+     *                     SYNs for a full accept queue
+     */
+    public synchronized StallingEndpoint start() throws IOException {
+        if (running) {
+            throw new IllegalStateException("Endpoint already started");
+        }
+
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        running = true;
+
+        if (mode == Mode.BLACK_HOLE) {
+            fillAcceptQueue();
+            return this;
+        }
+
+        final String name = "stalling-endpoint-" + serverSocket.getLocalPort();
+        final AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, name + "-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(this::acceptConnections);
+
+        return this;
+    }
+
+    /**
+     * @return phase of a request the endpoint stalls
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return port listened on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return URL to use as the endpoint, https for {@link Mode#STALL_MID_TLS}
+     */
+    public String getUrl() {
+        final String scheme = mode == Mode.STALL_MID_TLS ? "https" : "http";
+        return scheme + "://" + serverSocket.getInetAddress().getHostAddress() + ":" + getPort();
+    }
+
+    /**
+     * @return connections accepted from clients
+     */
+    public int getAcceptedCount() {
+        return accepted.get();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        serverSocket.close();
+
+        for (Socket socket : held) {
+            socket.close();
+        }
+
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Connects to the endpoint until a connection attempt times out, which
+     * shows that the accept queue is full and further SYNs are dropped.
+     */
+    private void fillAcceptQueue() throws IOException {
+        final InetSocketAddress address = new InetSocketAddress(serverSocket.getInetAddress(), getPort());
+
+        for (int i = 0; i < MAX_QUEUED_CONNECTIONS; i++) {
+            final Socket socket = new Socket();
+
+            try {
+                socket.connect(address, PROBE_TIMEOUT_MILLIS);
+                held.add(socket);
+            } catch (SocketTimeoutException e) {
+                socket.close();
+                LOG.debug("Accept queue of port {} full after {} connections", getPort(), i);
+                return;
+            }
+        }
+
+        close();
+        throw new IOException("Connections to a full accept queue are not dropped on this platform");
+    }
+
+    private void acceptConnections() {
+        while (running) {
+            try {
+                final Socket socket = serverSocket.accept();
+                accepted.incrementAndGet();
+                held.add(socket);
+
+                if (mode != Mode.STALL_AFTER_ACCEPT) {
+                    executor.execute(() -> respond(socket));
+                }
+            } catch (IOException e) {
+                if (running) {
+                    LOG.warn("Unable to accept connection", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the start of a request and sends the part of a response the
+     * mode allows.
+     */
+    private void respond(final Socket socket) {
+        try {
+            final InputStream in = socket.getInputStream();
+            final OutputStream out = socket.getOutputStream();
+
+            if (mode == Mode.STALL_MID_TLS) {
+                // the whole hello arrives at once from a client
+                if (in.read(new byte[16 * 1024]) == -1) {
+                    return;
+                }
+
+                out.write(PARTIAL_TLS_RECORD);
+            } else {
+                String line;
+                do {
+                    line = HttpServer.readLine(in);
+                } while (line != null && !line.isEmpty());
+
+                if (line == null) {
+                    return;
+                }
+
+                out.write(STALLED_RESPONSE_HEAD);
+            }
+
+            out.flush();
+        } catch (IOException e) {
+            LOG.debug("Stalled connection closed", e);
+        }
+    }
+}
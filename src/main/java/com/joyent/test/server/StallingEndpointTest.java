@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+@Test
+public class StallingEndpointTest {
+    private static final int TIMEOUT_MILLIS = 300;
+
+    public void blackHoleTimesOutConnecting() throws IOException {
+        try (StallingEndpoint endpoint = new StallingEndpoint(StallingEndpoint.Mode.BLACK_HOLE).start();
+             Socket socket = new Socket()) {
+            final long start = System.nanoTime();
+
+            Assert.expectThrows(SocketTimeoutException.class, () ->
+                    socket.connect(new InetSocketAddress("127.0.0.1", endpoint.getPort()), TIMEOUT_MILLIS));
+            assertTimedOut(start);
+            Assert.assertEquals(endpoint.getAcceptedCount(), 0);
+        }
+    }
+
+    public void stallAfterAcceptTimesOutReading() throws IOException {
+        try (StallingEndpoint endpoint = new StallingEndpoint(StallingEndpoint.Mode.STALL_AFTER_ACCEPT).start();
+             Socket socket = new Socket("127.0.0.1", endpoint.getPort())) {
+            socket.setSoTimeout(TIMEOUT_MILLIS);
+            final long start = System.nanoTime();
+
+            Assert.expectThrows(SocketTimeoutException.class, () -> socket.getInputStream().read());
+            assertTimedOut(start);
+        }
+    }
+
+    public void stallMidTlsTimesOutHandshaking() throws IOException {
+        try (StallingEndpoint endpoint = new StallingEndpoint(StallingEndpoint.Mode.STALL_MID_TLS).start();
+             SSLSocket socket = (SSLSocket) SSLSocketFactory.getDefault()
+                     .createSocket("127.0.0.1", endpoint.getPort())) {
+            Assert.assertTrue(endpoint.getUrl().startsWith("https://"));
+            socket.setSoTimeout(TIMEOUT_MILLIS);
+            final long start = System.nanoTime();
+
+            Assert.expectThrows(SocketTimeoutException.class, socket::startHandshake);
+            assertTimedOut(start);
+        }
+    }
+
+    public void stallAfterHeadersTimesOutReadingBody() throws IOException {
+        try (StallingEndpoint endpoint = new StallingEndpoint(StallingEndpoint.Mode.STALL_AFTER_HEADERS).start()) {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(endpoint.getUrl() + "/object")
+                    .openConnection();
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+
+            Assert.assertEquals(connection.getResponseCode(), 200);
+            Assert.assertEquals(connection.getContentLengthLong(), 1024 * 1024);
+
+            final long start = System.nanoTime();
+
+            try (InputStream in = connection.getInputStream()) {
+                Assert.expectThrows(SocketTimeoutException.class, in::read);
+            }
+
+            assertTimedOut(start);
+        }
+    }
+
+    private static void assertTimedOut(final long startNanos) {
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+        Assert.assertTrue(elapsedMillis >= TIMEOUT_MILLIS - 10, "timed out after " + elapsedMillis + "ms");
+        Assert.assertTrue(elapsedMillis < TIMEOUT_MILLIS * 3, "timed out after " + elapsedMillis + "ms");
+    }
+}
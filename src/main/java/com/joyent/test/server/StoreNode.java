@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.server;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Entry in the {@link MantaStore} namespace. A node does not know its own
+ * name; names are the keys under which directories hold their children.
+ */
+public abstract class StoreNode {
+    /**
+     * Time the node was last modified.
+     */
+    private volatile Instant mtime;
+
+    /**
+     * Metadata headers (m-* and role-tag) as sent by the client.
+     */
+    private volatile Map<String, String> metadata;
+
+    StoreNode(final Instant mtime, final Map<String, String> metadata) {
+        this.mtime = mtime;
+        this.metadata = Collections.unmodifiableMap(metadata);
+    }
+
+    /**
+     * @return time the node was last modified
+     */
+    public Instant getMtime() {
+        return mtime;
+    }
+
+    void setMtime(final Instant mtime) {
+        this.mtime = mtime;
+    }
+
+    /**
+     * @return metadata headers as sent by the client
+     */
+    public Map<String, String> getMetadata() {
+        return metadata;
+    }
+
+    void setMetadata(final Map<String, String> metadata) {
+        this.metadata = Collections.unmodifiableMap(metadata);
+    }
+
+    /**
+     * @return true for directories
+     */
+    public abstract boolean isDirectory();
+}
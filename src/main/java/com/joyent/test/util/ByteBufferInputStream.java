@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link InputStream} reading the remaining bytes of a {@link ByteBuffer}.
+ * The stream works on its own duplicate, so the position of the buffer
+ * passed in is left alone and many streams can read one buffer at once.
+ * Instances are not thread-safe.
+ */
+public class ByteBufferInputStream extends InputStream {
+    /**
+     * End of file magic number.
+     */
+    private static final int EOF = -1;
+
+    /**
+     * Buffer being read.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Creates a new instance.
+     * @param buffer buffer whose remaining bytes are streamed
+     */
+    public ByteBufferInputStream(final ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+    }
+
+    @Override
+    public int read() {
+        if (!buffer.hasRemaining()) {
+            return EOF;
+        }
+
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!buffer.hasRemaining()) {
+            return EOF;
+        }
+
+        final int bytesToRead = Math.min(len, buffer.remaining());
+        buffer.get(b, off, bytesToRead);
+        return bytesToRead;
+    }
+
+    @Override
+    public long skip(final long n) {
+        if (n <= 0) {
+            return 0;
+        }
+
+        final int skipped = (int) Math.min(n, buffer.remaining());
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(final int readlimit) {
+        buffer.mark();
+    }
+
+    @Override
+    public synchronized void reset() {
+        buffer.reset();
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Running summary of a stream of bytes: total length, an MD5 digest of the
+ * whole stream and a CRC32 checksum for every fixed size chunk. Comparing two
+ * summaries tells you whether two streams are equal and, if they are not,
+ * which chunk differs first, while only a few bytes per chunk are kept.
+ *
+ * <p>Instances are not thread-safe.</p>
+ */
+public class ChunkedDigest {
+    /**
+     * Default number of bytes covered by each chunk checksum.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Number of bytes covered by each chunk checksum.
+     */
+    private final int chunkSize;
+
+    /**
+     * Digest over every byte seen.
+     */
+    private final MessageDigest md5 = DigestUtils.getMd5Digest();
+
+    /**
+     * Checksum of the chunk currently being filled.
+     */
+    private final CRC32 chunkChecksum = new CRC32();
+
+    /**
+     * Checksums of the chunks seen so far.
+     */
+    private int[] chunkChecksums = new int[16];
+
+    /**
+     * Number of entries used in {@link #chunkChecksums}.
+     */
+    private int chunkCount = 0;
+
+    /**
+     * Number of bytes in the chunk currently being filled.
+     */
+    private int chunkFill = 0;
+
+    /**
+     * Total number of bytes seen.
+     */
+    private long length = 0L;
+
+    /**
+     * MD5 of the stream, set once the digest is completed.
+     */
+    private byte[] md5Bytes;
+
+    /**
+     * Creates a new instance with 1 MiB chunks.
+     */
+    public ChunkedDigest() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param chunkSize number of bytes covered by each chunk checksum
+     */
+    public ChunkedDigest(final int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be greater than zero");
+        }
+
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Adds a single byte to the digest.
+     * @param b byte to add
+     */
+    public void update(final int b) {
+        ensureNotComplete();
+        md5.update((byte) b);
+        chunkChecksum.update(b);
+        length++;
+
+        if (++chunkFill == chunkSize) {
+            endChunk();
+        }
+    }
+
+    /**
+     * Adds bytes to the digest.
+     * @param b source array
+     * @param off offset of the first byte to add
+     * @param len number of bytes to add
+     */
+    public void update(final byte[] b, final int off, final int len) {
+        ensureNotComplete();
+        md5.update(b, off, len);
+        length += len;
+
+        int position = off;
+        int remaining = len;
+
+        while (remaining > 0) {
+            final int taken = Math.min(remaining, chunkSize - chunkFill);
+            chunkChecksum.update(b, position, taken);
+            chunkFill += taken;
+            position += taken;
+            remaining -= taken;
+
+            if (chunkFill == chunkSize) {
+                endChunk();
+            }
+        }
+    }
+
+    /**
+     * Marks the end of the stream, closing any trailing partial chunk. Calling
+     * this more than once has no further effect.
+     *
+     * @return this instance
+     */
+    public ChunkedDigest complete() {
+        if (md5Bytes == null) {
+            if (chunkFill > 0) {
+                endChunk();
+            }
+
+            md5Bytes = md5.digest();
+        }
+
+        return this;
+    }
+
+    /**
+     * @return true once {@link #complete()} has been called
+     */
+    public boolean isComplete() {
+        return md5Bytes != null;
+    }
+
+    /**
+     * @return number of bytes covered by each chunk checksum
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return total number of bytes seen
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return number of finished chunks; includes the trailing partial chunk once completed
+     */
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * @param index zero based chunk index
+     * @return CRC32 checksum of the chunk
+     */
+    public int getChunkChecksum(final int index) {
+        if (index < 0 || index >= chunkCount) {
+            throw new IndexOutOfBoundsException("Chunk index " + index + " of " + chunkCount);
+        }
+
+        return chunkChecksums[index];
+    }
+
+    /**
+     * @return MD5 digest of the stream
+     * @throws IllegalStateException when the digest hasn't been completed
+     */
+    public byte[] getMd5() {
+        if (md5Bytes == null) {
+            throw new IllegalStateException("Digest has not been completed");
+        }
+
+        return md5Bytes.clone();
+    }
+
+    /**
+     * Finds the offset of the first chunk that differs between two completed
+     * digests of the same chunk size. When one stream is a prefix of the other
+     * the offset is the length of the shorter stream.
+     *
+     * @param other digest to compare against
+     * @return offset of the first byte of the first differing chunk or -1 when the streams are equal
+     */
+    public long firstMismatchingChunkOffset(final ChunkedDigest other) {
+        if (chunkSize != other.chunkSize) {
+            throw new IllegalArgumentException("Digests use different chunk sizes");
+        }
+
+        final int chunks = Math.min(chunkCount, other.chunkCount);
+
+        for (int i = 0; i < chunks; i++) {
+            if (chunkChecksums[i] != other.chunkChecksums[i]) {
+                return (long) i * chunkSize;
+            }
+        }
+
+        if (length != other.length) {
+            return Math.min(length, other.length);
+        }
+
+        if (isComplete() && other.isComplete() && !MessageDigest.isEqual(md5Bytes, other.md5Bytes)) {
+            return 0L;
+        }
+
+        return -1L;
+    }
+
+    private void endChunk() {
+        if (chunkCount == chunkChecksums.length) {
+            chunkChecksums = Arrays.copyOf(chunkChecksums, chunkCount * 2);
+        }
+
+        chunkChecksums[chunkCount++] = (int) chunkChecksum.getValue();
+        chunkChecksum.reset();
+        chunkFill = 0;
+    }
+
+    private void ensureNotComplete() {
+        if (md5Bytes != null) {
+            throw new IllegalStateException("Digest has already been completed");
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import org.apache.commons.lang3.RandomUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+/**
+ * {@link InputStream} implementation that generates data with a tunable
+ * compression ratio, so that throughput and encryption tests can run on
+ * payloads resembling logs or JSON rather than only incompressible noise.
+ *
+ * <p>The stream is a sequence of short segments. Each segment is either a
+ * copy of part of a small dictionary, which DEFLATE-style compressors reduce
+ * to a back reference, or fresh random literals, which they cannot reduce.
+ * The share of literal segments is chosen so that the whole stream compresses
+ * to roughly {@code targetRatio} of its size. In {@link Mode#TEXT} the
+ * literals and the default dictionary are printable ASCII; in
+ * {@link Mode#BINARY} they are arbitrary bytes.</p>
+ *
+ * <p>Two streams created with the same arguments produce the same bytes.
+ * Instances are not thread-safe.</p>
+ */
+public class CompressibleInputStream extends InputStream {
+    /**
+     * Kind of data generated.
+     */
+    public enum Mode {
+        /** Printable ASCII resembling log lines and JSON documents. */
+        TEXT,
+        /** Arbitrary bytes. */
+        BINARY
+    }
+
+    /**
+     * End of file magic number.
+     */
+    private static final int EOF = -1;
+
+    /**
+     * Shortest segment generated.
+     */
+    private static final int MIN_SEGMENT = 32;
+
+    /**
+     * Longest segment generated; matches the longest DEFLATE back reference.
+     */
+    private static final int MAX_SEGMENT = 258;
+
+    /**
+     * Compressed size of a dictionary segment relative to its length.
+     */
+    private static final double COPY_RATIO = 0.03;
+
+    /**
+     * Compressed size of random binary literals relative to their length.
+     */
+    private static final double BINARY_LITERAL_RATIO = 1.0;
+
+    /**
+     * Compressed size of random text literals relative to their length; the
+     * alphabet has 64 symbols so each carries six bits.
+     */
+    private static final double TEXT_LITERAL_RATIO = 0.78;
+
+    /**
+     * Alphabet random text literals are drawn from.
+     */
+    private static final byte[] TEXT_ALPHABET =
+            "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 \n".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Dictionary used in text mode when none is given.
+     */
+    private static final byte[] DEFAULT_TEXT_DICTIONARY = (
+            "2019-03-14T10:15:30.123Z INFO  [http-nio-8080-exec-4] c.j.m.client.MantaClient - "
+            + "GET /user/stor/logs/app.log 200 OK content-length=4096 latency_ms=12\n"
+            + "{\"name\":\"object\",\"type\":\"object\",\"etag\":\"0a1b2c3d-4e5f-6789-abcd-ef0123456789\","
+            + "\"size\":1048576,\"mtime\":\"2019-03-14T10:15:30.123Z\",\"durability\":2}\n"
+            + "2019-03-14T10:15:31.456Z WARN  [main] c.j.m.http.MantaConnectionFactory - "
+            + "Retrying request after exception: java.net.SocketTimeoutException: Read timed out\n"
+            + "{\"name\":\"directory\",\"type\":\"directory\",\"mtime\":\"2019-03-14T10:15:31.456Z\"}\n"
+            + "2019-03-14T10:15:32.789Z DEBUG [pool-1-thread-2] o.a.h.impl.conn.PoolingHttpClientConnectionManager - "
+            + "Connection released: [id: 3][route: {s}->https://us-east.manta.joyent.com:443]"
+            + "[total kept alive: 1; route allocated: 1 of 24; total allocated: 1 of 24]\n")
+            .getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Size of the random dictionary generated in binary mode. Small enough that
+     * every part of it stays within the 32 KiB DEFLATE window even when most
+     * segments are literals.
+     */
+    private static final int DEFAULT_BINARY_DICTIONARY_SIZE = 1024;
+
+    /**
+     * Maximum number of bytes to generate.
+     */
+    private final long maximumBytes;
+
+    /**
+     * Kind of data generated.
+     */
+    private final Mode mode;
+
+    /**
+     * Probability that a segment is made of random literals.
+     */
+    private final double literalProbability;
+
+    /**
+     * Repeated content.
+     */
+    private final byte[] dictionary;
+
+    /**
+     * Source of all randomness in the stream.
+     */
+    private final SplittableRandom random;
+
+    /**
+     * Segment being read.
+     */
+    private final byte[] segment = new byte[MAX_SEGMENT];
+
+    /**
+     * Number of valid bytes in the segment.
+     */
+    private int segmentLength = 0;
+
+    /**
+     * Read position within the segment.
+     */
+    private int segmentPosition = 0;
+
+    /**
+     * Current generated byte count.
+     */
+    private long count = 0L;
+
+    /**
+     * Creates a new instance seeded with a random value.
+     *
+     * @param maximumBytes maximum number of bytes in stream
+     * @param targetRatio compressed size the stream should reach as a fraction of its size
+     * @param mode kind of data to generate
+     */
+    public CompressibleInputStream(final long maximumBytes, final double targetRatio, final Mode mode) {
+        this(maximumBytes, targetRatio, mode, RandomUtils.nextLong());
+    }
+
+    /**
+     * Creates a new instance that generates repeatable data with the default
+     * dictionary for the mode.
+     *
+     * @param maximumBytes maximum number of bytes in stream
+     * @param targetRatio compressed size the stream should reach as a fraction of its size
+     * @param mode kind of data to generate
+     * @param seed seed used to derive the generated data
+     */
+    public CompressibleInputStream(final long maximumBytes, final double targetRatio, final Mode mode,
+                                   final long seed) {
+        this(maximumBytes, targetRatio, mode, seed, null);
+    }
+
+    /**
+     * Creates a new instance that generates repeatable data from a custom
+     * dictionary. Dictionaries larger than 32 KiB fall outside the DEFLATE
+     * window and make the stream less compressible than requested. Random
+     * text carries six bits per byte, so in text mode ratios above about
+     * 0.78 yield nothing but random text.
+     *
+     * @param maximumBytes maximum number of bytes in stream
+     * @param targetRatio compressed size the stream should reach as a fraction of its size
+     * @param mode kind of data to generate
+     * @param seed seed used to derive the generated data
+     * @param dictionary content to repeat or null to use the default for the mode
+     */
+    public CompressibleInputStream(final long maximumBytes, final double targetRatio, final Mode mode,
+                                   final long seed, final byte[] dictionary) {
+        if (targetRatio <= 0 || targetRatio > 1) {
+            throw new IllegalArgumentException("Target ratio must be greater than 0 and at most 1");
+        }
+
+        if (dictionary != null && dictionary.length < MAX_SEGMENT) {
+            throw new IllegalArgumentException("Dictionary must hold at least " + MAX_SEGMENT + " bytes");
+        }
+
+        this.maximumBytes = maximumBytes;
+        this.mode = mode;
+        this.random = new SplittableRandom(seed);
+
+        final double literalRatio = mode == Mode.TEXT ? TEXT_LITERAL_RATIO : BINARY_LITERAL_RATIO;
+        this.literalProbability = Math.max(0.0, Math.min(1.0,
+                (targetRatio - COPY_RATIO) / (literalRatio - COPY_RATIO)));
+
+        if (dictionary != null) {
+            this.dictionary = dictionary.clone();
+        } else if (mode == Mode.TEXT) {
+            this.dictionary = DEFAULT_TEXT_DICTIONARY;
+        } else {
+            this.dictionary = new byte[DEFAULT_BINARY_DICTIONARY_SIZE];
+            fillLiterals(this.dictionary, this.dictionary.length);
+        }
+    }
+
+    /**
+     * @return kind of data generated
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (count >= maximumBytes) {
+            return EOF;
+        }
+
+        if (segmentPosition == segmentLength) {
+            nextSegment();
+        }
+
+        count++;
+        return segment[segmentPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (len == 0) {
+            return 0;
+        }
+
+        if (count >= maximumBytes) {
+            return EOF;
+        }
+
+        final int total = (int) Math.min(len, maximumBytes - count);
+        int written = 0;
+
+        while (written < total) {
+            if (segmentPosition == segmentLength) {
+                nextSegment();
+            }
+
+            final int chunk = Math.min(total - written, segmentLength - segmentPosition);
+            System.arraycopy(segment, segmentPosition, b, off + written, chunk);
+            segmentPosition += chunk;
+            written += chunk;
+        }
+
+        count += total;
+        return total;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(Integer.MAX_VALUE, maximumBytes - count);
+    }
+
+    /**
+     * Generates the next segment of the stream.
+     */
+    private void nextSegment() {
+        segmentLength = random.nextInt(MIN_SEGMENT, MAX_SEGMENT + 1);
+        segmentPosition = 0;
+
+        if (random.nextDouble() < literalProbability) {
+            fillLiterals(segment, segmentLength);
+        } else {
+            final int start = random.nextInt(dictionary.length - segmentLength + 1);
+            System.arraycopy(dictionary, start, segment, 0, segmentLength);
+        }
+    }
+
+    /**
+     * Fills the start of an array with random literals for the mode.
+     *
+     * @param b array to fill
+     * @param len number of bytes to fill
+     */
+    private void fillLiterals(final byte[] b, final int len) {
+        int i = 0;
+
+        while (i < len) {
+            long word = random.nextLong();
+
+            for (int j = 0; j < Long.BYTES && i < len; j++, i++) {
+                if (mode == Mode.TEXT) {
+                    b[i] = TEXT_ALPHABET[(int) (word & 63)];
+                } else {
+                    b[i] = (byte) word;
+                }
+                word >>>= 8;
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+@Test
+public class CompressibleInputStreamTest {
+    private static final int SIZE = 1024 * 1024;
+
+    private static final double TOLERANCE = 0.05;
+
+    @DataProvider(name = "ratios")
+    public Object[][] ratios() {
+        return new Object[][] {
+                {CompressibleInputStream.Mode.BINARY, 0.1},
+                {CompressibleInputStream.Mode.BINARY, 0.3},
+                {CompressibleInputStream.Mode.BINARY, 0.5},
+                {CompressibleInputStream.Mode.BINARY, 0.9},
+                {CompressibleInputStream.Mode.TEXT, 0.1},
+                {CompressibleInputStream.Mode.TEXT, 0.3},
+                {CompressibleInputStream.Mode.TEXT, 0.6},
+        };
+    }
+
+    @Test(dataProvider = "ratios")
+    public void compressesToTargetRatio(final CompressibleInputStream.Mode mode, final double target)
+            throws IOException {
+        final byte[] data = IOUtils.toByteArray(new CompressibleInputStream(SIZE, target, mode, 42L));
+        final double actual = (double) deflatedSize(data) / data.length;
+
+        Assert.assertEquals(actual, target, TOLERANCE,
+                String.format("Mode %s compressed to %.3f, expected %.3f", mode, actual, target));
+    }
+
+    public void sameSeedProducesSameData() throws IOException {
+        final byte[] first = IOUtils.toByteArray(
+                new CompressibleInputStream(100_000, 0.4, CompressibleInputStream.Mode.TEXT, 3L));
+        final byte[] second = new byte[first.length];
+
+        try (CompressibleInputStream in =
+                     new CompressibleInputStream(100_000, 0.4, CompressibleInputStream.Mode.TEXT, 3L)) {
+            int position = 0;
+            while (position < second.length) {
+                // mix single byte and odd sized reads
+                if (position % 7 == 0) {
+                    second[position++] = (byte) in.read();
+                } else {
+                    position += in.read(second, position, Math.min(333, second.length - position));
+                }
+            }
+            Assert.assertEquals(in.read(), -1);
+        }
+
+        Assert.assertEquals(second, first);
+    }
+
+    public void textModeIsPrintableAscii() throws IOException {
+        final byte[] data = IOUtils.toByteArray(
+                new CompressibleInputStream(SIZE, 0.5, CompressibleInputStream.Mode.TEXT, 9L));
+
+        for (int i = 0; i < data.length; i++) {
+            final byte b = data[i];
+            Assert.assertTrue(b == '\n' || (b >= 0x20 && b < 0x7f), "Non printable byte at " + i);
+        }
+    }
+
+    public void usesCustomDictionary() throws IOException {
+        final byte[] dictionary = new byte[512];
+        java.util.Arrays.fill(dictionary, (byte) 'x');
+
+        final byte[] data = IOUtils.toByteArray(
+                new CompressibleInputStream(SIZE, 0.05, CompressibleInputStream.Mode.BINARY, 1L, dictionary));
+        long xs = 0;
+        for (byte b : data) {
+            if (b == 'x') {
+                xs++;
+            }
+        }
+
+        Assert.assertTrue(xs > data.length * 0.9, "Expected mostly dictionary bytes, found " + xs);
+    }
+
+    private static int deflatedSize(final byte[] data) {
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        deflater.setInput(data);
+        deflater.finish();
+
+        final byte[] buffer = new byte[64 * 1024];
+        int size = 0;
+        while (!deflater.finished()) {
+            size += deflater.deflate(buffer);
+        }
+        deflater.end();
+
+        return size;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link VerifyingInputStream} when the bytes read don't match
+ * the expected content.
+ */
+public class ContentMismatchException extends IOException {
+
+    private static final long serialVersionUID = -3046128440167351875L;
+
+    /**
+     * Offset of the first byte of the first region found to differ.
+     */
+    private final long offset;
+
+    ContentMismatchException(final String message, final long offset) {
+        super(message);
+        this.offset = offset;
+    }
+
+    /**
+     * @return offset of the first byte of the first region found to differ
+     */
+    public long getOffset() {
+        return offset;
+    }
+}
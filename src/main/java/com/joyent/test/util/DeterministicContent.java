@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import org.apache.commons.lang3.RandomUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Position addressable source of pseudo-random content. The byte at any
+ * position is computed from the seed and the position alone (SplitMix64 in
+ * counter mode), so tests can work out the expected bytes of an arbitrary
+ * range or seek offset of an object without keeping the object in memory.
+ *
+ * <p>Instances are immutable and safe to share between threads.</p>
+ */
+public class DeterministicContent {
+    /**
+     * Odd constant used to advance the SplitMix64 counter.
+     */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /**
+     * View used to store a generated word into a byte array in one write.
+     */
+    private static final VarHandle LONG_VIEW =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Size of the scratch buffer used when comparing streams.
+     */
+    private static final int COMPARE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Seed the content is derived from.
+     */
+    private final long seed;
+
+    /**
+     * Creates a new instance.
+     * @param seed seed the content is derived from
+     */
+    public DeterministicContent(final long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return new instance with a random seed
+     */
+    public static DeterministicContent withRandomSeed() {
+        return new DeterministicContent(RandomUtils.nextLong());
+    }
+
+    /**
+     * @return seed the content is derived from
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Computes a single byte of content.
+     *
+     * @param position zero based position of the byte
+     * @return the byte at the position
+     */
+    public byte byteAt(final long position) {
+        return (byte) (wordAt(position >>> 3) >>> ((position & 7) << 3));
+    }
+
+    /**
+     * Computes the eight byte word containing the bytes from
+     * {@code wordIndex * 8} to {@code wordIndex * 8 + 7}, least significant
+     * byte first.
+     *
+     * @param wordIndex zero based index of the word
+     * @return the word at the index
+     */
+    public long wordAt(final long wordIndex) {
+        return mix(seed + wordIndex * GOLDEN_GAMMA);
+    }
+
+    /**
+     * Writes the content found at {@code position} into a byte array.
+     *
+     * @param position zero based position of the first byte to write
+     * @param b destination array
+     * @param off offset within the array to start writing
+     * @param len number of bytes to write
+     */
+    public void fill(final long position, final byte[] b, final int off, final int len) {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        final int end = off + len;
+        long current = position;
+        int i = off;
+
+        // finish the word the position starts in
+        while ((current & 7) != 0 && i < end) {
+            b[i++] = byteAt(current++);
+        }
+
+        long counter = seed + (current >>> 3) * GOLDEN_GAMMA;
+
+        for (; i <= end - Long.BYTES; i += Long.BYTES) {
+            LONG_VIEW.set(b, i, mix(counter));
+            counter += GOLDEN_GAMMA;
+        }
+
+        if (i < end) {
+            long word = mix(counter);
+
+            for (; i < end; i++) {
+                b[i] = (byte) word;
+                word >>>= 8;
+            }
+        }
+    }
+
+    /**
+     * Writes the content found at {@code position} into a buffer, starting at
+     * the buffer's position and advancing it by {@code len}. Heap and direct
+     * buffers of either byte order are written without intermediate copies.
+     *
+     * @param position zero based position of the first byte to write
+     * @param dst destination buffer
+     * @param len number of bytes to write, at most {@code dst.remaining()}
+     */
+    public void fill(final long position, final ByteBuffer dst, final int len) {
+        if (len < 0 || len > dst.remaining()) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (dst.hasArray()) {
+            fill(position, dst.array(), dst.arrayOffset() + dst.position(), len);
+            dst.position(dst.position() + len);
+            return;
+        }
+
+        final boolean swap = dst.order() != ByteOrder.LITTLE_ENDIAN;
+        final long end = position + len;
+        long current = position;
+
+        while ((current & 7) != 0 && current < end) {
+            dst.put(byteAt(current++));
+        }
+
+        long counter = seed + (current >>> 3) * GOLDEN_GAMMA;
+
+        for (; current <= end - Long.BYTES; current += Long.BYTES) {
+            final long word = mix(counter);
+            dst.putLong(swap ? Long.reverseBytes(word) : word);
+            counter += GOLDEN_GAMMA;
+        }
+
+        if (current < end) {
+            long word = mix(counter);
+
+            for (; current < end; current++) {
+                dst.put((byte) word);
+                word >>>= 8;
+            }
+        }
+    }
+
+    /**
+     * Creates a stream of the content starting at the beginning.
+     *
+     * @param length number of bytes in the stream
+     * @return new stream
+     */
+    public RandomInputStream newInputStream(final long length) {
+        return new RandomInputStream(this, 0L, length);
+    }
+
+    /**
+     * Creates a stream of the content between {@code offset} (inclusive) and
+     * {@code offset + length} (exclusive).
+     *
+     * @param offset zero based position of the first byte in the stream
+     * @param length number of bytes in the stream
+     * @return new stream
+     */
+    public RandomInputStream newInputStream(final long offset, final long length) {
+        return new RandomInputStream(this, offset, length);
+    }
+
+    /**
+     * Creates a channel over the first {@code length} bytes of the content.
+     *
+     * @param length number of bytes in the channel
+     * @return new channel
+     */
+    public RandomByteChannel newChannel(final long length) {
+        return new RandomByteChannel(this, length);
+    }
+
+    /**
+     * Finds the first position where bytes in an array differ from the content.
+     *
+     * @param position content position the first array byte corresponds to
+     * @param actual bytes to check
+     * @param off offset of the first byte to check in the array
+     * @param len number of bytes to check
+     * @return content position of the first difference or -1 if all bytes match
+     */
+    public long firstMismatch(final long position, final byte[] actual, final int off, final int len) {
+        for (int i = 0; i < len; i++) {
+            if (actual[off + i] != byteAt(position + i)) {
+                return position + i;
+            }
+        }
+
+        return -1L;
+    }
+
+    /**
+     * Reads a stream to its end and finds the first position where it differs
+     * from the content between {@code position} and {@code position + length}.
+     * A stream that ends early differs at the position it ended and a stream
+     * that is too long differs at {@code position + length}.
+     *
+     * @param in stream to check, not closed by this method
+     * @param position content position the first stream byte corresponds to
+     * @param length expected number of bytes in the stream
+     * @return content position of the first difference or -1 if the stream matches
+     * @throws IOException thrown when reading the stream fails
+     */
+    public long firstMismatch(final InputStream in, final long position, final long length) throws IOException {
+        final byte[] actual = new byte[COMPARE_BUFFER_SIZE];
+        final byte[] expected = new byte[COMPARE_BUFFER_SIZE];
+        long checked = 0;
+        int read;
+
+        while ((read = in.read(actual, 0, actual.length)) != -1) {
+            final int comparable = (int) Math.min(read, length - checked);
+            fill(position + checked, expected, 0, comparable);
+
+            for (int i = 0; i < comparable; i++) {
+                if (actual[i] != expected[i]) {
+                    return position + checked + i;
+                }
+            }
+
+            checked += read;
+
+            if (checked > length) {
+                return position + length;
+            }
+        }
+
+        return checked == length ? -1L : position + checked;
+    }
+
+    /**
+     * SplitMix64 finalizer; turns a counter value into a well mixed word.
+     *
+     * @param z counter value
+     * @return random word
+     */
+    private static long mix(final long z) {
+        long x = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+}
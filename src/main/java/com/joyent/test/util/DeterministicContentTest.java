@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+@Test
+public class DeterministicContentTest {
+    private static final long TEN_GIGABYTES = 10L * 1024 * 1024 * 1024;
+
+    public void byteAtMatchesFill() {
+        final DeterministicContent content = new DeterministicContent(42L);
+        final byte[] filled = new byte[1021];
+        content.fill(3, filled, 0, filled.length);
+
+        for (int i = 0; i < filled.length; i++) {
+            Assert.assertEquals(content.byteAt(3 + i), filled[i], "Mismatch at position " + (3 + i));
+        }
+    }
+
+    public void streamAtOffsetMatchesContentBeyondTenGigabytes() throws IOException {
+        final DeterministicContent content = new DeterministicContent(7L);
+        final long offset = TEN_GIGABYTES + 13;
+        final int length = 4099;
+
+        final byte[] expected = new byte[length];
+        content.fill(offset, expected, 0, length);
+
+        try (InputStream in = content.newInputStream(offset, length)) {
+            Assert.assertEquals(IOUtils.toByteArray(in), expected);
+        }
+    }
+
+    public void rangeOfFullStreamMatchesRangeStream() throws IOException {
+        final DeterministicContent content = new DeterministicContent(99L);
+        final byte[] full;
+
+        try (InputStream in = content.newInputStream(10_000)) {
+            full = IOUtils.toByteArray(in);
+        }
+
+        try (InputStream in = content.newInputStream(1_234, 5_000)) {
+            Assert.assertEquals(content.firstMismatch(new ByteArrayInputStream(full, 1_234, 5_000), 1_234, 5_000),
+                    -1L);
+            Assert.assertEquals(content.firstMismatch(in, 1_234, 5_000), -1L);
+        }
+    }
+
+    public void firstMismatchReportsExactPosition() throws IOException {
+        final DeterministicContent content = new DeterministicContent(1L);
+        final long offset = TEN_GIGABYTES;
+        final byte[] actual = new byte[200_000];
+        content.fill(offset, actual, 0, actual.length);
+        actual[150_001] ^= 0x01;
+
+        Assert.assertEquals(content.firstMismatch(offset, actual, 0, actual.length), offset + 150_001);
+        Assert.assertEquals(content.firstMismatch(new ByteArrayInputStream(actual), offset, actual.length),
+                offset + 150_001);
+    }
+
+    public void firstMismatchReportsShortAndLongStreams() throws IOException {
+        final DeterministicContent content = new DeterministicContent(1L);
+        final byte[] actual = new byte[100];
+        content.fill(0, actual, 0, actual.length);
+
+        Assert.assertEquals(content.firstMismatch(new ByteArrayInputStream(actual), 0, 101), 100L);
+        Assert.assertEquals(content.firstMismatch(new ByteArrayInputStream(actual), 0, 99), 99L);
+    }
+}
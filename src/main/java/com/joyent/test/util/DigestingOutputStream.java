@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link OutputStream} that records every byte written through it in a
+ * {@link ChunkedDigest} before passing it on. The digest is completed when
+ * the stream is closed and can then be handed to a {@link VerifyingInputStream}
+ * to check the bytes read back.
+ */
+public class DigestingOutputStream extends FilterOutputStream {
+    /**
+     * Digest of the bytes written.
+     */
+    private final ChunkedDigest digest;
+
+    /**
+     * Creates a new instance using 1 MiB chunks.
+     * @param out stream to write to
+     */
+    public DigestingOutputStream(final OutputStream out) {
+        this(out, new ChunkedDigest());
+    }
+
+    /**
+     * Creates a new instance.
+     * @param out stream to write to
+     * @param digest digest to record written bytes in
+     */
+    public DigestingOutputStream(final OutputStream out, final ChunkedDigest digest) {
+        super(out);
+        this.digest = digest;
+    }
+
+    /**
+     * @return digest of the bytes written
+     */
+    public ChunkedDigest getDigest() {
+        return digest;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        out.write(b);
+        digest.update(b);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        out.write(b, off, len);
+        digest.update(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            digest.complete();
+        }
+    }
+}
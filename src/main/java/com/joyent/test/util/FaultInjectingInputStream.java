@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link InputStream} wrapper that injects the faults described by a
+ * {@link FaultSchedule}: failures at chosen offsets with chosen exception
+ * types, short reads, per-read latency and one-off stalls. It generalizes
+ * {@link FailingInputStream}, which can only fail once after a minimum number
+ * of bytes, and behaves the same way on every run so that continuation and
+ * retry logic can be tested and timed without manual intervention.
+ *
+ * <p>Every fault that fires is recorded as an {@link Event} with its
+ * {@link System#nanoTime()} so tests can measure how long a consumer took
+ * to recover.</p>
+ */
+public class FaultInjectingInputStream extends FilterInputStream {
+    /**
+     * End of file magic number.
+     */
+    private static final int EOF = -1;
+
+    /**
+     * Record of a fault that fired.
+     */
+    public static final class Event {
+        private final FaultSchedule.Type type;
+        private final long offset;
+        private final long nanoTime;
+
+        private Event(final FaultSchedule.Type type, final long offset, final long nanoTime) {
+            this.type = type;
+            this.offset = offset;
+            this.nanoTime = nanoTime;
+        }
+
+        /**
+         * @return kind of fault that fired
+         */
+        public FaultSchedule.Type getType() {
+            return type;
+        }
+
+        /**
+         * @return stream offset the fault fired at
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return value of {@link System#nanoTime()} when the fault fired
+         */
+        public long getNanoTime() {
+            return nanoTime;
+        }
+
+        @Override
+        public String toString() {
+            return type + "@" + offset;
+        }
+    }
+
+    /**
+     * Faults to inject.
+     */
+    private final FaultSchedule schedule;
+
+    /**
+     * Flags for one-off faults (failures and stalls) that have already fired.
+     */
+    private final boolean[] fired;
+
+    /**
+     * Faults that have fired, in order.
+     */
+    private final List<Event> events = new ArrayList<>();
+
+    /**
+     * Number of bytes returned so far.
+     */
+    private long position = 0L;
+
+    /**
+     * Total time spent in injected delays.
+     */
+    private long delayedNanos = 0L;
+
+    /**
+     * Creates a new instance.
+     * @param in stream to wrap
+     * @param schedule faults to inject
+     */
+    public FaultInjectingInputStream(final InputStream in, final FaultSchedule schedule) {
+        super(in);
+        this.schedule = schedule;
+        this.fired = new boolean[schedule.getFaults().size()];
+    }
+
+    /**
+     * @return number of bytes returned so far
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return total nanoseconds spent in injected latency and stalls
+     */
+    public long getDelayedNanos() {
+        return delayedNanos;
+    }
+
+    /**
+     * @return faults that have fired, in order
+     */
+    public List<Event> getEvents() {
+        return Collections.unmodifiableList(events);
+    }
+
+    @Override
+    public int read() throws IOException {
+        beforeRead(1);
+
+        final int b = in.read();
+
+        if (b != EOF) {
+            position++;
+        }
+
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        final int allowed = beforeRead(len);
+        final int read = in.read(b, off, allowed);
+
+        if (read > 0) {
+            position += read;
+        }
+
+        return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+
+        final int allowed = beforeRead((int) Math.min(n, Integer.MAX_VALUE));
+        final long skipped = in.skip(allowed);
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Applies the faults due at the current position and works out how many
+     * bytes the next read may return.
+     *
+     * @param requested bytes the caller asked for
+     * @return bytes the read may return, at least one
+     */
+    private int beforeRead(final int requested) throws IOException {
+        final List<FaultSchedule.Fault> faults = schedule.getFaults();
+        long allowed = requested;
+
+        for (int i = 0; i < faults.size(); i++) {
+            final FaultSchedule.Fault fault = faults.get(i);
+
+            switch (fault.getType()) {
+                case FAILURE:
+                    if (!fired[i]) {
+                        if (fault.getFromOffset() <= position) {
+                            fired[i] = true;
+                            record(FaultSchedule.Type.FAILURE);
+                            throw fault.newException();
+                        }
+
+                        // stop the read at the failure offset so it fires on the next read
+                        allowed = Math.min(allowed, fault.getFromOffset() - position);
+                    }
+                    break;
+                case STALL:
+                    if (!fired[i]) {
+                        if (fault.getFromOffset() <= position) {
+                            fired[i] = true;
+                            record(FaultSchedule.Type.STALL);
+                            delay(fault.getDelayNanos());
+                        } else {
+                            allowed = Math.min(allowed, fault.getFromOffset() - position);
+                        }
+                    }
+                    break;
+                case LATENCY:
+                    if (fault.appliesAt(position)) {
+                        record(FaultSchedule.Type.LATENCY);
+                        delay(fault.getDelayNanos());
+                    }
+                    break;
+                case SHORT_READ:
+                    if (fault.appliesAt(position)) {
+                        if (fault.getMaxBytes() < allowed) {
+                            record(FaultSchedule.Type.SHORT_READ);
+                        }
+                        allowed = Math.min(allowed, fault.getMaxBytes());
+                    }
+                    break;
+                default:
+                    throw new AssertionError("Unknown fault type: " + fault.getType());
+            }
+        }
+
+        return (int) Math.max(1L, allowed);
+    }
+
+    private void record(final FaultSchedule.Type type) {
+        events.add(new Event(type, position, System.nanoTime()));
+    }
+
+    private void delay(final long nanos) throws InterruptedIOException {
+        if (nanos <= 0) {
+            return;
+        }
+
+        final long start = System.nanoTime();
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during injected delay");
+        } finally {
+            delayedNanos += System.nanoTime() - start;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+@Test
+public class FaultInjectingInputStreamTest {
+
+    public void failsAtEachScheduledOffset() throws IOException {
+        final FaultSchedule schedule = FaultSchedule.builder()
+                .failAt(10, 25)
+                .build();
+
+        try (FaultInjectingInputStream in = new FaultInjectingInputStream(new RandomInputStream(100), schedule)) {
+            final byte[] buffer = new byte[16];
+
+            Assert.assertEquals(in.read(buffer), 10, "Read should stop at the failure offset");
+            Assert.assertThrows(SpuriousIOException.class, () -> in.read(buffer));
+
+            Assert.assertEquals(in.read(buffer), 15, "Read should resume and stop at the next failure offset");
+            Assert.assertThrows(SpuriousIOException.class, () -> in.read(buffer));
+
+            Assert.assertEquals(in.getPosition(), 25);
+            Assert.assertEquals(in.getEvents().size(), 2);
+            Assert.assertEquals(in.getEvents().get(1).getOffset(), 25);
+        }
+    }
+
+    public void throwsConfiguredExceptionTypes() throws IOException {
+        final FaultSchedule schedule = FaultSchedule.builder()
+                .failAt(0, () -> new SocketTimeoutException("injected"))
+                .failAt(1, () -> new EOFException("injected"))
+                .build();
+
+        try (FaultInjectingInputStream in = new FaultInjectingInputStream(new RandomInputStream(10), schedule)) {
+            Assert.assertThrows(SocketTimeoutException.class, in::read);
+            Assert.assertNotEquals(in.read(), -1);
+            Assert.assertThrows(EOFException.class, in::read);
+        }
+    }
+
+    public void returnsShortReadsWithinRange() throws IOException {
+        final FaultSchedule schedule = FaultSchedule.builder()
+                .shortReads(0, 20, 3)
+                .build();
+
+        try (FaultInjectingInputStream in = new FaultInjectingInputStream(new RandomInputStream(100), schedule)) {
+            final byte[] buffer = new byte[50];
+            long total = 0;
+            int read;
+
+            while (total < 20) {
+                read = in.read(buffer);
+                Assert.assertTrue(read <= 3, "Expected short read, got " + read);
+                total += read;
+            }
+
+            Assert.assertEquals(in.read(buffer), 50, "Reads past the range should be full sized");
+        }
+    }
+
+    public void injectsLatencyAndStalls() throws IOException {
+        final FaultSchedule schedule = FaultSchedule.builder()
+                .latency(0, 40, Duration.ofMillis(5))
+                .stallAt(50, Duration.ofMillis(100))
+                .build();
+
+        try (FaultInjectingInputStream in = new FaultInjectingInputStream(new RandomInputStream(100), schedule)) {
+            final byte[] buffer = new byte[10];
+            long readsWithLatency = 0;
+            while (in.read(buffer) != -1) {
+                if (in.getPosition() <= 40) {
+                    readsWithLatency++;
+                }
+            }
+
+            final long delayedMillis = TimeUnit.NANOSECONDS.toMillis(in.getDelayedNanos());
+            Assert.assertTrue(delayedMillis >= readsWithLatency * 5 + 100,
+                    "Expected at least " + (readsWithLatency * 5 + 100) + " ms of delay, was " + delayedMillis);
+            Assert.assertEquals(in.getEvents().stream()
+                    .filter(e -> e.getType() == FaultSchedule.Type.STALL).count(), 1L);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Immutable description of the faults a {@link FaultInjectingInputStream}
+ * injects, keyed by stream offset. Schedules are built with {@link #builder()}
+ * and may be shared between streams; each stream tracks its own progress.
+ *
+ * <p>Example: a stream that delivers short reads throughout, stalls for two
+ * seconds at 1 MiB and then fails with a socket timeout at 3 MiB:</p>
+ * <pre>
+ * FaultSchedule schedule = FaultSchedule.builder()
+ *         .shortReads(0, Long.MAX_VALUE, 1500)
+ *         .stallAt(1024 * 1024, Duration.ofSeconds(2))
+ *         .failAt(3 * 1024 * 1024, () -&gt; new SocketTimeoutException("injected"))
+ *         .build();
+ * </pre>
+ */
+public final class FaultSchedule {
+    /**
+     * Kinds of fault that can be scheduled.
+     */
+    public enum Type {
+        /** A read throws an exception. */
+        FAILURE,
+        /** Reads return fewer bytes than requested. */
+        SHORT_READ,
+        /** Every read is delayed. */
+        LATENCY,
+        /** A single delay when the stream reaches an offset. */
+        STALL
+    }
+
+    /**
+     * A single scheduled fault.
+     */
+    public static final class Fault {
+        private final Type type;
+        private final long fromOffset;
+        private final long toOffset;
+        private final int maxBytes;
+        private final long delayNanos;
+        private final Supplier<? extends IOException> exception;
+
+        private Fault(final Type type, final long fromOffset, final long toOffset, final int maxBytes,
+                      final long delayNanos, final Supplier<? extends IOException> exception) {
+            this.type = type;
+            this.fromOffset = fromOffset;
+            this.toOffset = toOffset;
+            this.maxBytes = maxBytes;
+            this.delayNanos = delayNanos;
+            this.exception = exception;
+        }
+
+        /**
+         * @return kind of fault
+         */
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * @return offset at which the fault starts applying
+         */
+        public long getFromOffset() {
+            return fromOffset;
+        }
+
+        /**
+         * @return offset at which the fault stops applying (exclusive); equal to
+         *         the start offset for faults that fire once
+         */
+        public long getToOffset() {
+            return toOffset;
+        }
+
+        int getMaxBytes() {
+            return maxBytes;
+        }
+
+        long getDelayNanos() {
+            return delayNanos;
+        }
+
+        IOException newException() {
+            return exception.get();
+        }
+
+        boolean appliesAt(final long offset) {
+            return offset >= fromOffset && offset < toOffset;
+        }
+
+        @Override
+        public String toString() {
+            return type + "@" + fromOffset + (toOffset != fromOffset ? "-" + toOffset : "");
+        }
+    }
+
+    /**
+     * Builder for {@link FaultSchedule} instances.
+     */
+    public static final class Builder {
+        private final List<Fault> faults = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Fails the stream with a {@link SpuriousIOException} once it reaches
+         * {@code offset}. The read that would cross the offset returns only the
+         * bytes before it and the next read throws.
+         *
+         * @param offset stream offset to fail at
+         * @return this builder
+         */
+        public Builder failAt(final long offset) {
+            return failAt(offset, () -> new SpuriousIOException("Injected read failure at byte " + offset));
+        }
+
+        /**
+         * Fails the stream with a custom exception once it reaches {@code offset}.
+         *
+         * @param offset stream offset to fail at
+         * @param exception supplier of the exception to throw, e.g. {@code SocketTimeoutException::new}
+         * @return this builder
+         */
+        public Builder failAt(final long offset, final Supplier<? extends IOException> exception) {
+            checkOffset(offset);
+            faults.add(new Fault(Type.FAILURE, offset, offset, 0, 0L, exception));
+            return this;
+        }
+
+        /**
+         * Fails the stream at each of the given offsets.
+         *
+         * @param offsets stream offsets to fail at
+         * @return this builder
+         */
+        public Builder failAt(final long... offsets) {
+            for (long offset : offsets) {
+                failAt(offset);
+            }
+
+            return this;
+        }
+
+        /**
+         * Limits every read between two offsets to at most {@code maxBytes}.
+         *
+         * @param fromOffset first offset affected (inclusive)
+         * @param toOffset last offset affected (exclusive)
+         * @param maxBytes maximum bytes returned by a single read
+         * @return this builder
+         */
+        public Builder shortReads(final long fromOffset, final long toOffset, final int maxBytes) {
+            checkRange(fromOffset, toOffset);
+
+            if (maxBytes <= 0) {
+                throw new IllegalArgumentException("Short reads must return at least one byte");
+            }
+
+            faults.add(new Fault(Type.SHORT_READ, fromOffset, toOffset, maxBytes, 0L, null));
+            return this;
+        }
+
+        /**
+         * Delays every read that starts between two offsets.
+         *
+         * @param fromOffset first offset affected (inclusive)
+         * @param toOffset last offset affected (exclusive)
+         * @param perRead delay added to each read
+         * @return this builder
+         */
+        public Builder latency(final long fromOffset, final long toOffset, final Duration perRead) {
+            checkRange(fromOffset, toOffset);
+            faults.add(new Fault(Type.LATENCY, fromOffset, toOffset, 0, perRead.toNanos(), null));
+            return this;
+        }
+
+        /**
+         * Stalls once when the stream reaches {@code offset}.
+         *
+         * @param offset stream offset to stall at
+         * @param duration length of the stall
+         * @return this builder
+         */
+        public Builder stallAt(final long offset, final Duration duration) {
+            checkOffset(offset);
+            faults.add(new Fault(Type.STALL, offset, offset, 0, duration.toNanos(), null));
+            return this;
+        }
+
+        /**
+         * @return new schedule
+         */
+        public FaultSchedule build() {
+            final List<Fault> sorted = new ArrayList<>(faults);
+            sorted.sort(Comparator.comparingLong(Fault::getFromOffset));
+            return new FaultSchedule(Collections.unmodifiableList(sorted));
+        }
+
+        private static void checkOffset(final long offset) {
+            if (offset < 0) {
+                throw new IllegalArgumentException("Offset must not be negative");
+            }
+        }
+
+        private static void checkRange(final long fromOffset, final long toOffset) {
+            checkOffset(fromOffset);
+
+            if (toOffset <= fromOffset) {
+                throw new IllegalArgumentException("Offset range must not be empty");
+            }
+        }
+    }
+
+    /**
+     * Faults sorted by starting offset.
+     */
+    private final List<Fault> faults;
+
+    private FaultSchedule(final List<Fault> faults) {
+        this.faults = faults;
+    }
+
+    /**
+     * @return new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return scheduled faults sorted by starting offset
+     */
+    public List<Fault> getFaults() {
+        return faults;
+    }
+
+    @Override
+    public String toString() {
+        return "FaultSchedule" + faults;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import com.joyent.manta.client.MantaClient;
+import com.joyent.manta.config.ConfigContext;
+import com.joyent.manta.config.IntegrationTestConfigContext;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.BooleanUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Suite-wide pool of read-only fixture objects. Tests that only read an
+ * object ask the pool for a path instead of uploading their own copy; the
+ * first request for a given content uploads it under the suite base path and
+ * every later request with the same content and encryption settings reuses
+ * that object. Objects are keyed by content hash and by cipher, key id and
+ * key, so encrypted and unencrypted test runs never share an object they
+ * couldn't decrypt.
+ *
+ * <p>Pooled objects must not be modified or deleted by tests. They are
+ * removed by {@link MantaPathSuiteListener} when the suite finishes.</p>
+ */
+public final class FixtureObjectPool {
+    private static final Logger LOG = LoggerFactory.getLogger(FixtureObjectPool.class);
+
+    /**
+     * Directory under the suite base path holding pooled objects.
+     */
+    private static final String POOL_DIRECTORY = "fixture-pool";
+
+    /**
+     * Pooled object paths keyed by content and encryption settings. Paths
+     * are futures so that an upload runs outside the map while concurrent
+     * requests for the same content wait for it.
+     */
+    private static final ConcurrentMap<String, CompletableFuture<String>> OBJECTS = new ConcurrentHashMap<>();
+
+    /**
+     * Number of requests served by the pool.
+     */
+    private static final AtomicLong REQUESTS = new AtomicLong();
+
+    private FixtureObjectPool() {
+    }
+
+    /**
+     * Returns the path of an object holding a string encoded as UTF-8,
+     * uploading it if this is the first request for it.
+     *
+     * @param client client whose encryption settings the object is stored with
+     * @param content object content
+     * @return path of the pooled object
+     * @throws IOException thrown when the upload fails
+     */
+    public static String pathFor(final MantaClient client, final String content) throws IOException {
+        return pathFor(client, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the path of an object holding {@code content}, uploading it if
+     * this is the first request for it.
+     *
+     * @param client client whose encryption settings the object is stored with
+     * @param content object content, not modified
+     * @return path of the pooled object
+     * @throws IOException thrown when the upload fails
+     */
+    public static String pathFor(final MantaClient client, final byte[] content) throws IOException {
+        final ConfigContext config = client.getContext();
+        final String key = DigestUtils.sha256Hex(content) + ':' + encryptionDescriptor(config);
+        REQUESTS.incrementAndGet();
+
+        final CompletableFuture<String> upload = new CompletableFuture<>();
+        final CompletableFuture<String> existing = OBJECTS.putIfAbsent(key, upload);
+
+        if (existing != null) {
+            return await(existing);
+        }
+
+        final String directory = poolDirectory(config);
+        final String path = directory + DigestUtils.sha256Hex(key);
+
+        try {
+            client.putDirectory(directory, true);
+            client.put(path, content);
+        } catch (IOException | RuntimeException | Error e) {
+            // let a later request retry the upload
+            OBJECTS.remove(key, upload);
+            upload.completeExceptionally(e);
+            throw e;
+        }
+
+        LOG.debug("Uploaded pooled fixture {}", path);
+        upload.complete(path);
+        return path;
+    }
+
+    /**
+     * Waits for an upload started by another request.
+     */
+    private static String await(final CompletableFuture<String> upload) throws IOException {
+        try {
+            return upload.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new IOException("Concurrent upload of pooled fixture failed", e.getCause());
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Deletes every pooled object and forgets them.
+     *
+     * @param client client used to delete the objects
+     * @param config configuration the suite base path is derived from
+     * @throws IOException thrown when the deletion fails
+     */
+    static void cleanup(final MantaClient client, final ConfigContext config) throws IOException {
+        LOG.info("Fixture pool served {} requests with {} uploads", REQUESTS.get(), OBJECTS.size());
+
+        if (OBJECTS.isEmpty()) {
+            return;
+        }
+
+        client.deleteRecursive(poolDirectory(config));
+        OBJECTS.clear();
+    }
+
+    private static String poolDirectory(final ConfigContext config) {
+        return IntegrationTestConfigContext.generateBasePath(config, POOL_DIRECTORY);
+    }
+
+    /**
+     * Describes the settings that determine how an object is stored.
+     */
+    private static String encryptionDescriptor(final ConfigContext config) {
+        if (!BooleanUtils.isTrue(config.isClientEncryptionEnabled())) {
+            return "plaintext";
+        }
+
+        final byte[] keyBytes = config.getEncryptionPrivateKeyBytes();
+        final String keyDigest = keyBytes != null
+                ? DigestUtils.sha256Hex(keyBytes)
+                : String.valueOf(config.getEncryptionPrivateKeyPath());
+
+        return config.getEncryptionAlgorithm() + ':' + config.getEncryptionKeyId() + ':' + keyDigest;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Suite-wide registry of binary test fixtures loaded from the classpath.
+ * Each fixture is memory-mapped once and then shared by every test class, so
+ * large fixtures occupy page cache rather than heap. Resources packaged in a
+ * jar are extracted once to a temporary directory under their resource path,
+ * keeping their file name so content type detection by extension still works.
+ */
+public final class FixtureRegistry {
+    /**
+     * Fixtures loaded so far keyed by resource name.
+     */
+    private static final ConcurrentMap<String, Fixture> FIXTURES = new ConcurrentHashMap<>();
+
+    /**
+     * Directory resources are extracted to, created on first use.
+     */
+    private static Path extractionDirectory;
+
+    /**
+     * A mapped fixture.
+     */
+    private static final class Fixture {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+
+        private Fixture(final Path path, final MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    private FixtureRegistry() {
+    }
+
+    /**
+     * Returns a read-only view of a fixture. Each call returns a new view with
+     * its own position, so callers may consume it freely.
+     *
+     * @param resourceName classpath resource name, e.g. {@code Master-Yoda.jpg}
+     * @return view of the whole fixture
+     * @throws IOException thrown when the resource can't be found or mapped
+     */
+    public static ByteBuffer buffer(final String resourceName) throws IOException {
+        return load(resourceName).buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a stream over a fixture.
+     *
+     * @param resourceName classpath resource name
+     * @return new stream starting at the beginning of the fixture
+     * @throws IOException thrown when the resource can't be found or mapped
+     */
+    public static InputStream inputStream(final String resourceName) throws IOException {
+        return new ByteBufferInputStream(load(resourceName).buffer);
+    }
+
+    /**
+     * Returns a file holding a fixture, for APIs that upload files. The file
+     * must not be modified.
+     *
+     * @param resourceName classpath resource name
+     * @return path to a file with the fixture's content and file name
+     * @throws IOException thrown when the resource can't be found or extracted
+     */
+    public static Path path(final String resourceName) throws IOException {
+        return load(resourceName).path;
+    }
+
+    /**
+     * @param resourceName classpath resource name
+     * @return size of the fixture in bytes
+     * @throws IOException thrown when the resource can't be found or mapped
+     */
+    public static int size(final String resourceName) throws IOException {
+        return load(resourceName).buffer.capacity();
+    }
+
+    private static Fixture load(final String resourceName) throws IOException {
+        try {
+            return FIXTURES.computeIfAbsent(resourceName, name -> {
+                try {
+                    return map(locate(name));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Finds a file holding a resource, extracting it when it's not already a
+     * plain file on disk.
+     */
+    private static Path locate(final String resourceName) throws IOException {
+        final URL url = Thread.currentThread().getContextClassLoader().getResource(resourceName);
+
+        if (url == null) {
+            throw new IOException("Fixture not found on classpath: " + resourceName);
+        }
+
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return Paths.get(url.toURI());
+            } catch (URISyntaxException e) {
+                throw new IOException("Unable to resolve fixture path: " + url, e);
+            }
+        }
+
+        // keep the resource's directories so fixtures sharing a file name don't collide
+        final Path directory = extractionDirectory();
+        final Path target = directory.resolve(resourceName).normalize();
+
+        if (!target.startsWith(directory) || target.equals(directory)) {
+            throw new IOException("Fixture name escapes the extraction directory: " + resourceName);
+        }
+
+        Files.createDirectories(target.getParent());
+
+        try (InputStream in = url.openStream()) {
+            Files.copy(in, target);
+        }
+
+        return target;
+    }
+
+    private static synchronized Path extractionDirectory() throws IOException {
+        if (extractionDirectory == null) {
+            final Path directory = Files.createTempDirectory("manta-it-fixtures");
+            // deleteOnExit can't remove a directory that isn't empty, so delete the tree once extracted
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> FileUtils.deleteQuietly(directory.toFile()),
+                    "fixture-registry-cleanup"));
+            extractionDirectory = directory;
+        }
+
+        return extractionDirectory;
+    }
+
+    private static Fixture map(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Fixture is too large to map: " + path);
+            }
+
+            return new Fixture(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+}
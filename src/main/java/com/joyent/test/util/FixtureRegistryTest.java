@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+@Test
+public class FixtureRegistryTest {
+    private static final String FIXTURE = "Master-Yoda.jpg";
+
+    public void bufferMatchesResource() throws IOException {
+        final byte[] expected;
+        try (InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(FIXTURE)) {
+            expected = IOUtils.toByteArray(in);
+        }
+
+        final ByteBuffer buffer = FixtureRegistry.buffer(FIXTURE);
+        Assert.assertTrue(buffer.isReadOnly());
+        Assert.assertEquals(buffer.remaining(), expected.length);
+        Assert.assertEquals(FixtureRegistry.size(FIXTURE), expected.length);
+
+        final byte[] actual = new byte[buffer.remaining()];
+        buffer.get(actual);
+        Assert.assertEquals(actual, expected);
+
+        try (InputStream in = FixtureRegistry.inputStream(FIXTURE)) {
+            Assert.assertEquals(IOUtils.toByteArray(in), expected);
+        }
+    }
+
+    public void viewsHaveIndependentPositions() throws IOException {
+        final ByteBuffer first = FixtureRegistry.buffer(FIXTURE);
+        first.position(first.limit());
+
+        final ByteBuffer second = FixtureRegistry.buffer(FIXTURE);
+        Assert.assertEquals(second.position(), 0);
+        Assert.assertEquals(FixtureRegistry.path(FIXTURE), FixtureRegistry.path(FIXTURE));
+    }
+
+    @Test(expectedExceptions = ReadOnlyBufferException.class)
+    public void viewsAreReadOnly() throws IOException {
+        FixtureRegistry.buffer(FIXTURE).put((byte) 0);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void missingFixtureThrows() throws IOException {
+        FixtureRegistry.buffer("no-such-fixture.bin");
+    }
+
+    public void extractsResourcesFromJars() throws IOException {
+        final String name = "fixture-registry-test/packaged.bin";
+        final byte[] content = IOUtils.toByteArray(new RandomInputStream(10_000, 11L));
+        final File jar = newJar(name, content);
+
+        final ClassLoader original = Thread.currentThread().getContextClassLoader();
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {jar.toURI().toURL()}, original)) {
+            Thread.currentThread().setContextClassLoader(loader);
+
+            final Path path = FixtureRegistry.path(name);
+            Assert.assertEquals(path.getFileName().toString(), "packaged.bin");
+            Assert.assertEquals(Files.readAllBytes(path), content);
+
+            try (InputStream in = FixtureRegistry.inputStream(name)) {
+                Assert.assertEquals(IOUtils.toByteArray(in), content);
+            }
+        } finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+    }
+
+    public void extractsSameNamedResourcesFromDifferentDirectories() throws IOException {
+        final String first = "fixture-registry-test/first/same.bin";
+        final String second = "fixture-registry-test/second/same.bin";
+        final byte[] firstContent = IOUtils.toByteArray(new RandomInputStream(1_000, 12L));
+        final byte[] secondContent = IOUtils.toByteArray(new RandomInputStream(2_000, 13L));
+        final File firstJar = newJar(first, firstContent);
+        final File secondJar = newJar(second, secondContent);
+
+        final ClassLoader original = Thread.currentThread().getContextClassLoader();
+        try (URLClassLoader loader = new URLClassLoader(
+                new URL[] {firstJar.toURI().toURL(), secondJar.toURI().toURL()}, original)) {
+            Thread.currentThread().setContextClassLoader(loader);
+
+            final Path firstPath = FixtureRegistry.path(first);
+            final Path secondPath = FixtureRegistry.path(second);
+
+            Assert.assertNotEquals(firstPath, secondPath);
+            Assert.assertEquals(firstPath.getFileName().toString(), "same.bin");
+            Assert.assertEquals(secondPath.getFileName().toString(), "same.bin");
+            Assert.assertEquals(Files.readAllBytes(firstPath), firstContent);
+            Assert.assertEquals(Files.readAllBytes(secondPath), secondContent);
+        } finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+    }
+
+    private static File newJar(final String name, final byte[] content) throws IOException {
+        final File jar = File.createTempFile("fixtures", ".jar");
+        jar.deleteOnExit();
+
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+            out.putNextEntry(new JarEntry(name));
+            out.write(content);
+            out.closeEntry();
+        }
+
+        return jar;
+    }
+}
@@ -46,6 +46,12 @@ public class MantaPathSuiteListener implements ISuiteListener {
             return;
         }
 
+        try {
+            FixtureObjectPool.cleanup(mantaClient, config);
+        } catch (IOException e) {
+            LOG.warn("Unable to remove pooled fixtures", e);
+        }
+
         try {
             if (mantaClient.isDirectoryEmpty(path)) {
                 LOG.info("Removing base suite path: {}", path);
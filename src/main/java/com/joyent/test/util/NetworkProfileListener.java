@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import com.joyent.test.server.LocalMantaServer;
+import com.joyent.test.server.NetworkProfile;
+import org.apache.commons.lang3.ObjectUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestContext;
+import org.testng.ITestListener;
+import org.testng.ITestResult;
+
+/**
+ * Applies a {@link NetworkProfile} to the local Manta server for the duration
+ * of each {@code <test>}. The profile is named by the {@code networkProfile}
+ * parameter of the {@code <test>} or the suite in {@code testng-it.xml},
+ * falling back to MANTA_IT_NETWORK_PROFILE or
+ * {@code manta.it.network_profile}, for example:
+ *
+ * <pre>{@code <parameter name="networkProfile" value="cross-region"/>}</pre>
+ *
+ * <p>The server has a single profile and failsafe runs the classes of a
+ * {@code <test>} in parallel, so profiles are applied per {@code <test>}
+ * rather than per class: every class of the {@code <test>} runs under the
+ * same profile and it is only reset once all of them have finished.</p>
+ *
+ * <p>Profiles only apply when tests run against the local server
+ * ({@code manta.it.local}); a real endpoint is left alone.</p>
+ */
+public class NetworkProfileListener implements ITestListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NetworkProfileListener.class);
+
+    /**
+     * Name of the TestNG parameter selecting a profile.
+     */
+    public static final String PARAMETER = "networkProfile";
+
+    @Override
+    public void onStart(final ITestContext context) {
+        final String name = ObjectUtils.firstNonNull(
+                context.getCurrentXmlTest().getAllParameters().get(PARAMETER),
+                defaultProfileName());
+
+        if (name == null) {
+            return;
+        }
+
+        final LocalMantaServer server = LocalMantaServer.sharedInstanceIfStarted();
+
+        if (server == null) {
+            LOG.debug("Ignoring network profile {} for {}; tests are not using the local server",
+                      name, context.getName());
+            return;
+        }
+
+        final NetworkProfile profile = NetworkProfile.forName(name);
+        LOG.info("Emulating {} network (rtt {}, jitter {}, loss {}, {} B/s) for {}",
+                 profile, profile.getRoundTrip(), profile.getJitter(), profile.getLossRate(),
+                 profile.getBytesPerSecond(), context.getName());
+        server.setNetworkProfile(profile);
+    }
+
+    @Override
+    public void onFinish(final ITestContext context) {
+        final LocalMantaServer server = LocalMantaServer.sharedInstanceIfStarted();
+
+        if (server != null) {
+            final String name = defaultProfileName();
+            server.setNetworkProfile(name == null ? NetworkProfile.NONE : NetworkProfile.forName(name));
+        }
+    }
+
+    @Override
+    public void onTestStart(final ITestResult result) {
+    }
+
+    @Override
+    public void onTestSuccess(final ITestResult result) {
+    }
+
+    @Override
+    public void onTestFailure(final ITestResult result) {
+    }
+
+    @Override
+    public void onTestSkipped(final ITestResult result) {
+    }
+
+    @Override
+    public void onTestFailedButWithinSuccessPercentage(final ITestResult result) {
+    }
+
+    private static String defaultProfileName() {
+        return ObjectUtils.firstNonNull(
+                System.getenv("MANTA_IT_NETWORK_PROFILE"),
+                System.getProperty("manta.it.network_profile"));
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * {@link InputStream} of {@link DeterministicContent} whose chunks are
+ * generated ahead of the reader on a {@link ForkJoinPool}. A fixed number of
+ * chunk buffers is allocated up front and recycled: each time the reader
+ * finishes a chunk its buffer is handed back to the pool to generate the
+ * chunk {@code depth} places further on. Memory use is therefore bounded by
+ * {@code depth * chunkSize} and generation never runs more than
+ * {@code depth} chunks ahead, while an uploader reading from the stream only
+ * waits when it outpaces every worker combined.
+ *
+ * <p>The stream itself is not thread-safe; only the generation is parallel.</p>
+ */
+public class ParallelPayloadInputStream extends InputStream {
+    /**
+     * End of file magic number.
+     */
+    private static final int EOF = -1;
+
+    /**
+     * Default number of bytes generated by each task.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Content the stream is reading from.
+     */
+    private final DeterministicContent content;
+
+    /**
+     * Total number of bytes in the stream.
+     */
+    private final long length;
+
+    /**
+     * Number of bytes generated by each task.
+     */
+    private final int chunkSize;
+
+    /**
+     * Pool generating chunks.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Chunks that have been scheduled, in stream order.
+     */
+    private final ArrayDeque<ForkJoinTask<byte[]>> scheduled;
+
+    /**
+     * Stream position of the next chunk to schedule.
+     */
+    private long nextChunkPosition = 0L;
+
+    /**
+     * Chunk currently being read.
+     */
+    private byte[] current;
+
+    /**
+     * Number of valid bytes in the current chunk.
+     */
+    private int currentLength = 0;
+
+    /**
+     * Read offset within the current chunk.
+     */
+    private int currentOffset = 0;
+
+    /**
+     * Total bytes returned to the reader.
+     */
+    private long count = 0L;
+
+    /**
+     * Time the reader spent blocked waiting for a chunk to be generated.
+     */
+    private long waitNanos = 0L;
+
+    /**
+     * Number of times the reader found its next chunk unfinished.
+     */
+    private long stalls = 0L;
+
+    /**
+     * Flag indicating that the stream has been closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * Creates a new instance using 1 MiB chunks, two chunks in flight per
+     * worker and the common pool.
+     *
+     * @param content content to read from
+     * @param length number of bytes in the stream
+     */
+    public ParallelPayloadInputStream(final DeterministicContent content, final long length) {
+        this(content, length, DEFAULT_CHUNK_SIZE,
+                ForkJoinPool.commonPool().getParallelism() * 2, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param content content to read from
+     * @param length number of bytes in the stream
+     * @param chunkSize number of bytes generated by each task
+     * @param depth maximum number of chunks generated ahead of the reader
+     * @param pool pool to generate chunks on
+     */
+    public ParallelPayloadInputStream(final DeterministicContent content, final long length,
+                                      final int chunkSize, final int depth, final ForkJoinPool pool) {
+        if (chunkSize <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("Chunk size and depth must be greater than zero");
+        }
+
+        this.content = content;
+        this.length = length;
+        this.chunkSize = chunkSize;
+        this.pool = pool;
+        this.scheduled = new ArrayDeque<>(depth);
+
+        final long chunksNeeded = (length + chunkSize - 1) / chunkSize;
+
+        for (int i = 0; i < Math.min(depth, chunksNeeded); i++) {
+            schedule(new byte[chunkSize]);
+        }
+    }
+
+    /**
+     * @return total nanoseconds the reader spent waiting on chunk generation
+     */
+    public long getWaitNanos() {
+        return waitNanos;
+    }
+
+    /**
+     * @return number of chunks that weren't ready when the reader reached them
+     */
+    public long getStalls() {
+        return stalls;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureCurrent()) {
+            return EOF;
+        }
+
+        count++;
+        return current[currentOffset++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (len == 0) {
+            return 0;
+        }
+
+        int copied = 0;
+
+        while (copied < len && ensureCurrent()) {
+            final int taken = Math.min(len - copied, currentLength - currentOffset);
+            System.arraycopy(current, currentOffset, b, off + copied, taken);
+            currentOffset += taken;
+            copied += taken;
+        }
+
+        count += copied;
+
+        return copied == 0 ? EOF : copied;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return current == null ? 0 : currentLength - currentOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+
+        for (ForkJoinTask<byte[]> task : scheduled) {
+            task.cancel(false);
+        }
+
+        scheduled.clear();
+        current = null;
+    }
+
+    /**
+     * Makes sure there are unread bytes in the current chunk, moving on to the
+     * next generated chunk when needed.
+     *
+     * @return false at the end of the stream
+     */
+    private boolean ensureCurrent() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        if (current != null && currentOffset < currentLength) {
+            return true;
+        }
+
+        if (count >= length) {
+            return false;
+        }
+
+        if (current != null && nextChunkPosition < length) {
+            // recycle the finished buffer for the chunk depth places ahead
+            schedule(current);
+        }
+
+        final ForkJoinTask<byte[]> next = scheduled.poll();
+
+        if (next == null) {
+            return false;
+        }
+
+        if (!next.isDone()) {
+            stalls++;
+        }
+
+        final long start = System.nanoTime();
+
+        try {
+            current = next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for payload generation");
+        } catch (ExecutionException | CancellationException e) {
+            throw new IOException("Payload generation failed", e);
+        } finally {
+            waitNanos += System.nanoTime() - start;
+        }
+
+        currentLength = (int) Math.min(chunkSize, length - count);
+        currentOffset = 0;
+
+        return true;
+    }
+
+    private void schedule(final byte[] buffer) {
+        final long position = nextChunkPosition;
+        final int len = (int) Math.min(chunkSize, length - position);
+        nextChunkPosition += len;
+
+        scheduled.add(pool.submit(() -> {
+            content.fill(position, buffer, 0, len);
+            return buffer;
+        }));
+    }
+}
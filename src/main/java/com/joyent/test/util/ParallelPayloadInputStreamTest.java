@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+@Test
+public class ParallelPayloadInputStreamTest {
+
+    public void producesSameBytesAsContent() throws IOException {
+        final DeterministicContent content = new DeterministicContent(31L);
+        final long length = 10L * 1024 * 1024 + 17;
+        final ForkJoinPool pool = new ForkJoinPool(4);
+
+        try (InputStream in = new ParallelPayloadInputStream(content, length, 64 * 1024, 8, pool)) {
+            Assert.assertEquals(content.firstMismatch(in, 0, length), -1L);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void singleByteReadsMatchContent() throws IOException {
+        final DeterministicContent content = new DeterministicContent(32L);
+        final int length = 1_000;
+
+        try (InputStream in = new ParallelPayloadInputStream(content, length, 64, 3, ForkJoinPool.commonPool())) {
+            for (int i = 0; i < length; i++) {
+                Assert.assertEquals((byte) in.read(), content.byteAt(i), "Mismatch at " + i);
+            }
+
+            Assert.assertEquals(in.read(), -1);
+        }
+    }
+
+    public void zeroLengthStreamIsEmpty() throws IOException {
+        try (InputStream in = new ParallelPayloadInputStream(new DeterministicContent(1L), 0)) {
+            Assert.assertEquals(in.read(), -1);
+            Assert.assertEquals(in.read(new byte[10], 0, 10), -1);
+        }
+    }
+
+    public void readerDoesNotWaitOnPregeneratedChunks() throws IOException {
+        final DeterministicContent content = new DeterministicContent(33L);
+        final int chunkSize = 1024 * 1024;
+        final int chunks = 8;
+        final ForkJoinPool pool = new ForkJoinPool(4);
+
+        // the depth covers the whole payload, so every chunk is generated before the first read
+        try (ParallelPayloadInputStream in = new ParallelPayloadInputStream(content, (long) chunks * chunkSize,
+                chunkSize, chunks, pool)) {
+            Assert.assertTrue(pool.awaitQuiescence(10, TimeUnit.SECONDS), "Chunks weren't generated in time");
+            Assert.assertEquals(IOUtils.copyLarge(in, NullOutputStream.NULL_OUTPUT_STREAM), (long) chunks * chunkSize);
+
+            Assert.assertEquals(in.getStalls(), 0L);
+            Assert.assertTrue(in.getWaitNanos() < TimeUnit.MILLISECONDS.toNanos(100),
+                    "Reader waited " + in.getWaitNanos() + " ns on chunks that were ready");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void reportsTimeSpentWaitingOnGeneration() throws Exception {
+        final DeterministicContent content = new DeterministicContent(34L);
+        final long blockedMillis = 200;
+        final ForkJoinPool pool = new ForkJoinPool(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        // occupy the only worker so that generation can't start until the latch opens
+        pool.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        try (ParallelPayloadInputStream in = new ParallelPayloadInputStream(content, 4 * 1024, 1024, 2, pool)) {
+            final Thread releaser = new Thread(() -> {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(blockedMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                release.countDown();
+            });
+            releaser.start();
+
+            Assert.assertEquals(content.firstMismatch(in, 0, 4 * 1024), -1L);
+            releaser.join();
+
+            Assert.assertTrue(in.getStalls() >= 1, "The first chunk wasn't ready, yet no stall was counted");
+            Assert.assertTrue(in.getWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(blockedMillis / 2),
+                    "Reader waited only " + in.getWaitNanos() + " ns on blocked generation");
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+}
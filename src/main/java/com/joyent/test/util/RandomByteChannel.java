@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Read-only {@link SeekableByteChannel} sibling of {@link RandomInputStream}.
+ * Bytes are generated from a {@link DeterministicContent} straight into the
+ * caller's heap or direct {@link ByteBuffer}, so a channel and a stream
+ * created from the same content (or seed) yield identical data. Instances
+ * are not thread-safe.
+ */
+public class RandomByteChannel implements SeekableByteChannel {
+    /**
+     * End of file magic number.
+     */
+    private static final int EOF = -1;
+
+    /**
+     * Content the channel is reading from.
+     */
+    private final DeterministicContent content;
+
+    /**
+     * Number of bytes in the channel.
+     */
+    private final long size;
+
+    /**
+     * Position of the next byte to be read.
+     */
+    private long position = 0L;
+
+    /**
+     * Flag indicating that the channel has been closed.
+     */
+    private boolean open = true;
+
+    /**
+     * Creates a new instance seeded with a random value.
+     * @param size number of bytes in the channel
+     */
+    public RandomByteChannel(final long size) {
+        this(DeterministicContent.withRandomSeed(), size);
+    }
+
+    /**
+     * Creates a new instance that generates repeatable data.
+     * @param size number of bytes in the channel
+     * @param seed seed used to derive the generated data
+     */
+    public RandomByteChannel(final long size, final long seed) {
+        this(new DeterministicContent(seed), size);
+    }
+
+    /**
+     * Creates a new instance over existing content.
+     * @param content content to read from
+     * @param size number of bytes in the channel
+     */
+    public RandomByteChannel(final DeterministicContent content, final long size) {
+        this.content = content;
+        this.size = size;
+    }
+
+    /**
+     * @return content the channel is reading from
+     */
+    public DeterministicContent getContent() {
+        return content;
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        ensureOpen();
+
+        if (position >= size) {
+            return EOF;
+        }
+
+        final int bytesToRead = (int) Math.min(dst.remaining(), size - position);
+        content.fill(position, dst, bytesToRead);
+        position += bytesToRead;
+
+        return bytesToRead;
+    }
+
+    @Override
+    public int write(final ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(final long newPosition) throws IOException {
+        ensureOpen();
+
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Position must not be negative");
+        }
+
+        this.position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(final long newSize) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+@Test
+public class RandomByteChannelTest {
+    private static final int SIZE = 100_003;
+
+    public void heapBufferMatchesStream() throws IOException {
+        assertChannelMatchesStream(ByteBuffer.allocate(4_099));
+    }
+
+    public void directBufferMatchesStream() throws IOException {
+        assertChannelMatchesStream(ByteBuffer.allocateDirect(4_099));
+    }
+
+    public void littleEndianDirectBufferMatchesStream() throws IOException {
+        assertChannelMatchesStream(ByteBuffer.allocateDirect(4_099).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    public void canTransferIntoFileChannel() throws IOException {
+        final DeterministicContent content = new DeterministicContent(5L);
+        final File temp = File.createTempFile("random-channel", ".data");
+        FileUtils.forceDeleteOnExit(temp);
+
+        try (RandomByteChannel channel = content.newChannel(SIZE);
+             FileChannel file = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+            long transferred = 0;
+            while (transferred < SIZE) {
+                transferred += file.transferFrom(channel, transferred, SIZE - transferred);
+            }
+        }
+
+        try (InputStream in = FileUtils.openInputStream(temp)) {
+            Assert.assertEquals(content.firstMismatch(in, 0, SIZE), -1L);
+        }
+    }
+
+    @Test(expectedExceptions = ClosedChannelException.class)
+    public void cantReadAfterClose() throws IOException {
+        final RandomByteChannel channel = new RandomByteChannel(10);
+        channel.close();
+        channel.read(ByteBuffer.allocate(1));
+    }
+
+    private static void assertChannelMatchesStream(final ByteBuffer buffer) throws IOException {
+        final long seed = 12345L;
+        final long start = 7;
+        final byte[] expected = new byte[SIZE];
+        final byte[] actual = new byte[SIZE];
+
+        try (InputStream in = new RandomInputStream(SIZE + start, seed)) {
+            Assert.assertEquals(in.skip(start), start);
+            int off = 0;
+            int read;
+            while (off < SIZE && (read = in.read(expected, off, SIZE - off)) != -1) {
+                off += read;
+            }
+        }
+
+        try (RandomByteChannel channel = new RandomByteChannel(SIZE + start, seed)) {
+            channel.position(start);
+            int off = 0;
+
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                final int read = buffer.remaining();
+                buffer.get(actual, off, read);
+                off += read;
+                buffer.clear();
+            }
+
+            Assert.assertEquals(off, SIZE);
+        }
+
+        Assert.assertEquals(actual, expected, "Channel content didn't match stream content");
+    }
+}
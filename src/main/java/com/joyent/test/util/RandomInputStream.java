@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2016-2017, Joyent, Inc. All rights reserved.
+ * Copyright (c) 2016-2019, Joyent, Inc. All rights reserved.
  *
  * This Source Code Form is subject to the terms of the Mozilla Public
  * License, v. 2.0. If a copy of the MPL was not distributed with this
@@ -7,15 +7,19 @@
  */
 package com.joyent.test.util;
 
-import org.apache.commons.lang3.RandomUtils;
-
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * {@link InputStream} implementation that generates random data.
  *
+ * <p>Data is read from a {@link DeterministicContent} (SplitMix64, the
+ * algorithm behind {@link java.util.SplittableRandom}, in counter mode) and
+ * written directly into the caller's buffer, so reads neither allocate nor
+ * synchronize. Two streams created with the same seed produce the same bytes
+ * and a stream may start at any offset of the content. Instances are not
+ * thread-safe.</p>
+ *
  * @author <a href="https://github.com/dekobon">Elijah Zupancic</a>
  */
 public class RandomInputStream extends InputStream {
@@ -24,6 +28,16 @@ public class RandomInputStream extends InputStream {
      */
     private static final int EOF = -1;
 
+    /**
+     * Content the stream is reading from.
+     */
+    private final DeterministicContent content;
+
+    /**
+     * Content position of the first byte in the stream.
+     */
+    private final long offset;
+
     /**
      * Maximum number of bytes to generate.
      */
@@ -32,45 +46,102 @@ public class RandomInputStream extends InputStream {
     /**
      * Current generated byte count.
      */
-    private AtomicLong count = new AtomicLong(0L);
+    private long count = 0L;
 
     /**
-     * Creates a new instance.
+     * Creates a new instance seeded with a random value.
      * @param maximumBytes maximum number of random bytes in stream
      */
     public RandomInputStream(final long maximumBytes) {
+        this(DeterministicContent.withRandomSeed(), 0L, maximumBytes);
+    }
+
+    /**
+     * Creates a new instance that generates repeatable data.
+     * @param maximumBytes maximum number of random bytes in stream
+     * @param seed seed used to derive the generated data
+     */
+    public RandomInputStream(final long maximumBytes, final long seed) {
+        this(new DeterministicContent(seed), 0L, maximumBytes);
+    }
+
+    /**
+     * Creates a new instance that streams a window of existing content.
+     * @param content content to read from
+     * @param offset content position of the first byte in the stream
+     * @param maximumBytes maximum number of bytes in stream
+     */
+    public RandomInputStream(final DeterministicContent content, final long offset, final long maximumBytes) {
+        this.content = content;
+        this.offset = offset;
         this.maximumBytes = maximumBytes;
     }
 
+    /**
+     * @return content the stream is reading from
+     */
+    public DeterministicContent getContent() {
+        return content;
+    }
+
+    /**
+     * @return seed used to derive the generated data
+     */
+    public long getSeed() {
+        return content.getSeed();
+    }
+
+    /**
+     * @return content position of the next byte to be read
+     */
+    public long getPosition() {
+        return offset + count;
+    }
+
     @Override
     public int read() throws IOException {
-        if (count.getAndIncrement() >= maximumBytes) {
+        if (count >= maximumBytes) {
             return EOF;
         }
 
-        return RandomUtils.nextInt(0, Integer.MAX_VALUE);
+        return content.byteAt(offset + count++) & 0xff;
     }
 
     @Override
     public int read(final byte[] b, final int off, final int len) throws IOException {
-        if (count.get() >= maximumBytes) {
-            return EOF;
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
         }
 
-        final int bytesToRead;
+        if (len == 0) {
+            return 0;
+        }
 
-        if (maximumBytes - count.get() >= len) {
-            bytesToRead = len;
-        } else {
-            bytesToRead = (int)(maximumBytes - count.get());
+        if (count >= maximumBytes) {
+            return EOF;
         }
 
-        count.addAndGet(bytesToRead);
+        final int bytesToRead = (int) Math.min(len, maximumBytes - count);
+        content.fill(offset + count, b, off, bytesToRead);
+        count += bytesToRead;
+
+        return bytesToRead;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
 
-        final byte[] randomBytes = RandomUtils.nextBytes(bytesToRead);
+        final long skipped = Math.min(n, Math.max(0, maximumBytes - count));
+        count += skipped;
 
-        System.arraycopy(randomBytes, 0, b, off, bytesToRead);
+        return skipped;
+    }
 
-        return bytesToRead;
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, maximumBytes - count));
     }
 }
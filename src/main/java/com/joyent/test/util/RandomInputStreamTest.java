@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2017, Joyent, Inc. All rights reserved.
+ * Copyright (c) 2017-2019, Joyent, Inc. All rights reserved.
  *
  * This Source Code Form is subject to the terms of the Mozilla Public
  * License, v. 2.0. If a copy of the MPL was not distributed with this
@@ -10,10 +10,18 @@ package com.joyent.test.util;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 @Test
 public class RandomInputStreamTest {
+    /**
+     * Minimum single core throughput expected from the generator. Override with
+     * -Dit.random.minThroughputMBps when running on slow or heavily shared hardware.
+     */
+    private static final long MINIMUM_THROUGHPUT_MB_PER_SECOND =
+            Long.getLong("it.random.minThroughputMBps", 2000L);
+
     public void canDoSingleByteReadsForOnlyTheExpectedNumberOfBytes() throws IOException {
         final long expectedBytes = 1119;
 
@@ -21,6 +29,8 @@ public class RandomInputStreamTest {
             long actualBytesRead = 0;
 
             for (int readVal = stream.read(); readVal != -1; readVal = stream.read()) {
+                Assert.assertTrue(readVal >= 0 && readVal <= 255,
+                        "Single byte read returned a value outside of the byte range: " + readVal);
                 actualBytesRead++;
             }
 
@@ -45,4 +55,88 @@ public class RandomInputStreamTest {
                     "Number bytes actually read didn't match actual bytes read");
         }
     }
+
+    public void sameSeedProducesSameBytesRegardlessOfReadSize() throws IOException {
+        final long seed = 4815162342L;
+        final int expectedBytes = 8191;
+
+        final byte[] bulk = new byte[expectedBytes];
+        try (RandomInputStream stream = new RandomInputStream(expectedBytes, seed)) {
+            Assert.assertEquals(stream.read(bulk, 0, bulk.length), expectedBytes);
+        }
+
+        final ByteArrayOutputStream mixed = new ByteArrayOutputStream(expectedBytes);
+        try (RandomInputStream stream = new RandomInputStream(expectedBytes, seed)) {
+            final byte[] buffer = new byte[13];
+            int readSize = 1;
+            int lastReadBytes;
+
+            // alternate between single byte reads and odd sized multi-byte reads
+            while (true) {
+                if (readSize % 3 == 0) {
+                    int b = stream.read();
+                    if (b == -1) {
+                        break;
+                    }
+                    mixed.write(b);
+                } else {
+                    lastReadBytes = stream.read(buffer, 1, 1 + readSize % 12);
+                    if (lastReadBytes == -1) {
+                        break;
+                    }
+                    mixed.write(buffer, 1, lastReadBytes);
+                }
+                readSize++;
+            }
+        }
+
+        Assert.assertEquals(mixed.toByteArray(), bulk,
+                "Bytes read in varying sizes didn't match bytes read in bulk");
+    }
+
+    public void differentSeedsProduceDifferentBytes() throws IOException {
+        final byte[] first = new byte[64];
+        final byte[] second = new byte[64];
+
+        try (RandomInputStream a = new RandomInputStream(first.length, 1L);
+             RandomInputStream b = new RandomInputStream(second.length, 2L)) {
+            a.read(first);
+            b.read(second);
+        }
+
+        Assert.assertNotEquals(first, second);
+    }
+
+    public void canGenerateSeveralGigabytesPerSecondOnOneCore() throws IOException {
+        final long totalBytes = 4L * 1024 * 1024 * 1024;
+        final byte[] buffer = new byte[1024 * 1024];
+
+        // warm up so that the measured run is JIT compiled
+        try (RandomInputStream warmup = new RandomInputStream(256L * 1024 * 1024, 0L)) {
+            while (warmup.read(buffer, 0, buffer.length) != -1) {
+                // discard
+            }
+        }
+
+        long generated = 0;
+        final long start = System.nanoTime();
+
+        try (RandomInputStream stream = new RandomInputStream(totalBytes, 1L)) {
+            int lastReadBytes;
+            while ((lastReadBytes = stream.read(buffer, 0, buffer.length)) != -1) {
+                generated += lastReadBytes;
+            }
+        }
+
+        final long elapsedNanos = System.nanoTime() - start;
+        final long megabytesPerSecond = (generated * 1_000L) / Math.max(1L, elapsedNanos);
+
+        System.out.printf("RandomInputStream generated [%d] bytes in [%d] ms: [%d] MB/s\n",
+                generated, elapsedNanos / 1_000_000L, megabytesPerSecond);
+
+        Assert.assertEquals(generated, totalBytes);
+        Assert.assertTrue(megabytesPerSecond >= MINIMUM_THROUGHPUT_MB_PER_SECOND,
+                String.format("Expected at least [%d] MB/s, actually [%d] MB/s",
+                        MINIMUM_THROUGHPUT_MB_PER_SECOND, megabytesPerSecond));
+    }
 }
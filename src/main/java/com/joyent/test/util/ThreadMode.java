@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Kind of thread concurrent test code runs its tasks on.
+ *
+ * <p>The project targets Java 11, so virtual threads are created through
+ * reflection and are only available when running on a JVM that has them
+ * enabled (Java 21, or 19 and 20 with {@code --enable-preview}). On other
+ * JVMs {@link #VIRTUAL} falls back to platform threads with a warning, so
+ * the same suite runs everywhere.</p>
+ */
+public enum ThreadMode {
+    /**
+     * Daemon platform threads, pooled when an executor is asked for.
+     */
+    PLATFORM,
+
+    /**
+     * A new virtual thread per task.
+     */
+    VIRTUAL;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ThreadMode.class);
+
+    /**
+     * Creates named virtual thread factories, or null when virtual threads
+     * aren't available.
+     */
+    private static final VirtualThreads VIRTUAL_THREADS = VirtualThreads.lookup();
+
+    /**
+     * Looks up a mode by name, ignoring case.
+     *
+     * @param name platform or virtual
+     * @return the named mode
+     * @throws IllegalArgumentException thrown when there is no such mode
+     */
+    public static ThreadMode forName(final String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * @return whether this JVM can create virtual threads
+     */
+    public static boolean virtualThreadsAvailable() {
+        return VIRTUAL_THREADS != null;
+    }
+
+    /**
+     * @return this mode, or {@link #PLATFORM} when virtual threads are asked
+     *         for but unavailable
+     */
+    public ThreadMode effective() {
+        return this == VIRTUAL && !virtualThreadsAvailable() ? PLATFORM : this;
+    }
+
+    /**
+     * Creates an executor running at most {@code maxThreads} tasks at once on
+     * platform threads, or every task on its own virtual thread. Virtual
+     * thread executors don't bound concurrency; callers submit no more tasks
+     * than they want in flight.
+     *
+     * @param namePrefix prefix of the thread names
+     * @param maxThreads size of the platform thread pool
+     * @return new executor, to be shut down by the caller
+     */
+    public ExecutorService newExecutor(final String namePrefix, final int maxThreads) {
+        if (effective() == VIRTUAL) {
+            return VIRTUAL_THREADS.newThreadPerTaskExecutor(namePrefix);
+        }
+
+        warnIfFallingBack();
+        return Executors.newFixedThreadPool(maxThreads, newPlatformThreadFactory(namePrefix));
+    }
+
+    /**
+     * Creates an unstarted thread.
+     *
+     * @param name thread name
+     * @param task task the thread runs
+     * @return new thread
+     */
+    public Thread newThread(final String name, final Runnable task) {
+        if (effective() == VIRTUAL) {
+            return VIRTUAL_THREADS.newThreadFactory(name).newThread(task);
+        }
+
+        warnIfFallingBack();
+        final Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * @param thread thread to check
+     * @return whether the thread is a virtual thread
+     */
+    public static boolean isVirtual(final Thread thread) {
+        return VIRTUAL_THREADS != null && VIRTUAL_THREADS.isVirtual(thread);
+    }
+
+    private void warnIfFallingBack() {
+        if (this == VIRTUAL) {
+            LOG.warn("Virtual threads are not available on Java {}, using platform threads",
+                    System.getProperty("java.specification.version"));
+        }
+    }
+
+    private static ThreadFactory newPlatformThreadFactory(final String namePrefix) {
+        final AtomicInteger count = new AtomicInteger();
+
+        return runnable -> {
+            final Thread thread = new Thread(runnable, namePrefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Reflective access to the virtual thread API of Java 21.
+     */
+    private static final class VirtualThreads {
+        private final Method ofVirtual;
+        private final Method name;
+        private final Method factory;
+        private final Method newThreadPerTaskExecutor;
+        private final Method isVirtual;
+
+        private VirtualThreads() throws ReflectiveOperationException {
+            final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            this.ofVirtual = Thread.class.getMethod("ofVirtual");
+            this.name = builder.getMethod("name", String.class, long.class);
+            this.factory = builder.getMethod("factory");
+            this.newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor",
+                    ThreadFactory.class);
+            this.isVirtual = Thread.class.getMethod("isVirtual");
+        }
+
+        /**
+         * @return access to virtual threads, or null when the JVM lacks them
+         *         or has them disabled
+         */
+        private static VirtualThreads lookup() {
+            try {
+                final VirtualThreads virtualThreads = new VirtualThreads();
+                // preview releases throw UnsupportedOperationException here
+                virtualThreads.newThreadFactory("probe");
+                return virtualThreads;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LOG.debug("Virtual threads are not available", e);
+                return null;
+            }
+        }
+
+        private ThreadFactory newThreadFactory(final String namePrefix) {
+            try {
+                final Object builder = name.invoke(ofVirtual.invoke(null), namePrefix + "-", 1L);
+                return (ThreadFactory) factory.invoke(builder);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            } catch (InvocationTargetException e) {
+                throw unchecked(e);
+            }
+        }
+
+        private ExecutorService newThreadPerTaskExecutor(final String namePrefix) {
+            try {
+                return (ExecutorService) newThreadPerTaskExecutor.invoke(null, newThreadFactory(namePrefix));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            } catch (InvocationTargetException e) {
+                throw unchecked(e);
+            }
+        }
+
+        private boolean isVirtual(final Thread thread) {
+            try {
+                return (Boolean) isVirtual.invoke(thread);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            } catch (InvocationTargetException e) {
+                throw unchecked(e);
+            }
+        }
+
+        private static RuntimeException unchecked(final InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                return (RuntimeException) e.getCause();
+            }
+
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+
+            return new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Test
+public class ThreadModeTest {
+
+    public void parsesNamesIgnoringCase() {
+        Assert.assertEquals(ThreadMode.forName("virtual"), ThreadMode.VIRTUAL);
+        Assert.assertEquals(ThreadMode.forName(" Platform "), ThreadMode.PLATFORM);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void rejectsUnknownNames() {
+        ThreadMode.forName("green");
+    }
+
+    public void platformExecutorRunsTasksOnNamedDaemonThreads() throws Exception {
+        final ExecutorService executor = ThreadMode.PLATFORM.newExecutor("platform-test", 2);
+
+        try {
+            final Thread thread = executor.submit(Thread::currentThread).get();
+
+            Assert.assertTrue(thread.getName().startsWith("platform-test-"), thread.getName());
+            Assert.assertTrue(thread.isDaemon());
+            Assert.assertFalse(ThreadMode.isVirtual(thread));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void platformExecutorBoundsConcurrency() throws Exception {
+        final int maxThreads = 3;
+        final ExecutorService executor = ThreadMode.PLATFORM.newExecutor("platform-test", maxThreads);
+        final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        try {
+            for (int i = 0; i < 100; i++) {
+                executor.submit(() -> threads.add(Thread.currentThread()));
+            }
+
+            executor.shutdown();
+            Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            Assert.assertTrue(threads.size() <= maxThreads, "Ran on " + threads.size() + " threads");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs on every JVM: virtual threads where available, platform threads
+     * otherwise.
+     */
+    public void virtualExecutorRunsTasksConcurrently() throws Exception {
+        final int tasks = 64;
+        final ExecutorService executor = ThreadMode.VIRTUAL.newExecutor("virtual-test", tasks);
+        final CountDownLatch allStarted = new CountDownLatch(tasks);
+
+        try {
+            for (int i = 0; i < tasks; i++) {
+                executor.submit(() -> {
+                    allStarted.countDown();
+                    // only returns when every task is running at once
+                    return allStarted.await(10, TimeUnit.SECONDS);
+                });
+            }
+
+            Assert.assertTrue(allStarted.await(10, TimeUnit.SECONDS), "Tasks didn't run concurrently");
+
+            final Thread thread = executor.submit(Thread::currentThread).get();
+            Assert.assertEquals(ThreadMode.isVirtual(thread), ThreadMode.virtualThreadsAvailable());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void newThreadIsUnstartedAndNamed() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(1);
+
+        for (ThreadMode mode : ThreadMode.values()) {
+            final Thread thread = mode.newThread("thread-test-" + mode, ran::countDown);
+
+            Assert.assertEquals(thread.getState(), Thread.State.NEW);
+            Assert.assertTrue(thread.getName().startsWith("thread-test-" + mode), thread.getName());
+            Assert.assertEquals(ThreadMode.isVirtual(thread), mode.effective() == ThreadMode.VIRTUAL);
+        }
+
+        final Thread thread = ThreadMode.VIRTUAL.newThread("thread-test", ran::countDown);
+        thread.start();
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+        Assert.assertEquals(ran.getCount(), 0L);
+    }
+
+    public void fallsBackToPlatformWhenVirtualThreadsAreMissing() {
+        Assert.assertEquals(ThreadMode.PLATFORM.effective(), ThreadMode.PLATFORM);
+        Assert.assertEquals(ThreadMode.VIRTUAL.effective(),
+                ThreadMode.virtualThreadsAvailable() ? ThreadMode.VIRTUAL : ThreadMode.PLATFORM);
+    }
+}
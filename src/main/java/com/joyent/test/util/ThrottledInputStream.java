@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link InputStream} wrapper whose reads are limited by a {@link TokenBucket}.
+ * Wrapping a download in one of these emulates a slow link in-process: TCP
+ * flow control pushes the limit back to the server, so the transfer takes as
+ * long as it would over a link of the bucket's rate.
+ */
+public class ThrottledInputStream extends FilterInputStream {
+    /**
+     * End of file magic number.
+     */
+    private static final int EOF = -1;
+
+    /**
+     * Bucket limiting reads.
+     */
+    private final TokenBucket bucket;
+
+    /**
+     * Time the first byte is measured from.
+     */
+    private final long startNanos;
+
+    /**
+     * Time the first byte was read or -1 if nothing has been read.
+     */
+    private long firstByteNanos = -1L;
+
+    /**
+     * Number of bytes read so far.
+     */
+    private long count = 0L;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param in stream to throttle
+     * @param bucket bucket limiting reads, possibly shared with other streams
+     */
+    public ThrottledInputStream(final InputStream in, final TokenBucket bucket) {
+        this(in, bucket, System.nanoTime());
+    }
+
+    /**
+     * Creates a new instance measuring the time to first byte from
+     * {@code startNanos}. Pass the time a request was sent to include the
+     * round trip and response headers, which are over by the time the
+     * response stream can be wrapped.
+     *
+     * @param in stream to throttle
+     * @param bucket bucket limiting reads, possibly shared with other streams
+     * @param startNanos {@link System#nanoTime()} the time to first byte is measured from
+     */
+    public ThrottledInputStream(final InputStream in, final TokenBucket bucket, final long startNanos) {
+        super(in);
+        this.bucket = bucket;
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * @return number of bytes read so far
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return nanoseconds between the start time, by default when the stream
+     *         was created, and reading its first byte or -1 if nothing has
+     *         been read yet
+     */
+    public long getTimeToFirstByteNanos() {
+        return firstByteNanos < 0 ? -1L : firstByteNanos - startNanos;
+    }
+
+    @Override
+    public int read() throws IOException {
+        bucket.acquire(1);
+        final int b = in.read();
+
+        if (b == EOF) {
+            bucket.release(1);
+        } else {
+            recordRead(1);
+        }
+
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        final int granted = bucket.acquire(len);
+        final int read = in.read(b, off, granted);
+        bucket.release(granted - Math.max(read, 0));
+
+        if (read > 0) {
+            recordRead(read);
+        }
+
+        return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+
+        final int granted = bucket.acquire((int) Math.min(n, Integer.MAX_VALUE));
+        final long skipped = in.skip(granted);
+        bucket.release((int) (granted - skipped));
+        count += skipped;
+        return skipped;
+    }
+
+    private void recordRead(final int read) {
+        if (firstByteNanos < 0) {
+            firstByteNanos = System.nanoTime();
+        }
+
+        count += read;
+    }
+}
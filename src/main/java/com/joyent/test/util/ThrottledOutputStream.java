@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link OutputStream} wrapper whose writes are limited by a {@link TokenBucket}.
+ * Large writes are split into pieces no larger than the bucket's burst size so
+ * the wrapped stream sees a steady flow rather than bursts and pauses.
+ */
+public class ThrottledOutputStream extends FilterOutputStream {
+    /**
+     * Bucket limiting writes.
+     */
+    private final TokenBucket bucket;
+
+    /**
+     * Number of bytes written so far.
+     */
+    private long count = 0L;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param out stream to throttle
+     * @param bucket bucket limiting writes, possibly shared with other streams
+     */
+    public ThrottledOutputStream(final OutputStream out, final TokenBucket bucket) {
+        super(out);
+        this.bucket = bucket;
+    }
+
+    /**
+     * @return number of bytes written so far
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        bucket.acquire(1);
+        out.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        int written = 0;
+
+        while (written < len) {
+            final int granted = bucket.acquire(len - written);
+            out.write(b, off + written, granted);
+            written += granted;
+            count += granted;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+@Test
+public class ThrottledStreamTest {
+    private static final int RATE = 256 * 1024;
+
+    public void inputStreamIsLimitedToRate() throws IOException {
+        final TokenBucket bucket = new TokenBucket(RATE, 16 * 1024);
+        final DeterministicContent content = new DeterministicContent(7L);
+        final long length = RATE / 2 + bucket.getBurstBytes();
+
+        final long start = System.nanoTime();
+        try (ThrottledInputStream in = new ThrottledInputStream(content.newInputStream(length), bucket)) {
+            Assert.assertEquals(content.firstMismatch(in, 0, length), -1L);
+            Assert.assertEquals(in.getCount(), length);
+        }
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // the initial burst is free, the remaining half second of data is not
+        Assert.assertTrue(elapsedMillis >= 450, "Transfer finished too quickly: " + elapsedMillis + " ms");
+    }
+
+    public void timeToFirstByteIsUnsetUntilARead() throws IOException {
+        try (ThrottledInputStream in = new ThrottledInputStream(new RandomInputStream(10),
+                new TokenBucket(RATE, 1024))) {
+            Assert.assertEquals(in.getTimeToFirstByteNanos(), -1L);
+            Assert.assertTrue(in.read() >= 0);
+            Assert.assertTrue(in.getTimeToFirstByteNanos() >= 0);
+        }
+    }
+
+    public void timeToFirstByteIncludesWaitingForTokens() throws IOException {
+        final TokenBucket bucket = new TokenBucket(RATE, 16 * 1024);
+        // drain the burst so reading another 16 KiB waits for its tokens, about 62 ms
+        bucket.acquire(bucket.getBurstBytes());
+
+        try (ThrottledInputStream in = new ThrottledInputStream(new RandomInputStream(16 * 1024), bucket)) {
+            Assert.assertTrue(in.read(new byte[16 * 1024]) > 0);
+            final long millis = TimeUnit.NANOSECONDS.toMillis(in.getTimeToFirstByteNanos());
+            Assert.assertTrue(millis >= 50, "First byte arrived after " + millis + " ms");
+        }
+    }
+
+    public void timeToFirstByteIsMeasuredFromTheGivenStart() throws Exception {
+        final long start = System.nanoTime();
+        // stands in for the request round trip before a response stream can be wrapped
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        try (ThrottledInputStream in = new ThrottledInputStream(new RandomInputStream(10),
+                new TokenBucket(RATE, 1024), start)) {
+            Assert.assertTrue(in.read() >= 0);
+            final long millis = TimeUnit.NANOSECONDS.toMillis(in.getTimeToFirstByteNanos());
+            Assert.assertTrue(millis >= 50, "First byte arrived after " + millis + " ms");
+        }
+    }
+
+    public void outputStreamIsLimitedToRate() throws IOException {
+        final TokenBucket bucket = new TokenBucket(RATE, 16 * 1024);
+        final long length = RATE / 2 + bucket.getBurstBytes();
+
+        final long start = System.nanoTime();
+        try (ThrottledOutputStream out = new ThrottledOutputStream(new NullOutputStream(), bucket);
+             InputStream in = new RandomInputStream(length)) {
+            IOUtils.copy(in, out, 64 * 1024);
+            Assert.assertEquals(out.getCount(), length);
+        }
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Assert.assertTrue(elapsedMillis >= 450, "Transfer finished too quickly: " + elapsedMillis + " ms");
+    }
+
+    public void sharedBucketCapsAggregateRate() throws Exception {
+        final TokenBucket bucket = new TokenBucket(RATE, 8 * 1024);
+        final long perStream = RATE / 4;
+
+        final long start = System.nanoTime();
+        final CompletableFuture<?>[] readers = new CompletableFuture<?>[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = CompletableFuture.runAsync(() -> {
+                try (InputStream in = new ThrottledInputStream(new RandomInputStream(perStream), bucket)) {
+                    IOUtils.copy(in, new NullOutputStream());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        CompletableFuture.allOf(readers).get(10, TimeUnit.SECONDS);
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // four streams of a quarter second each share one bucket: roughly one second in total
+        Assert.assertTrue(elapsedMillis >= 900, "Aggregate transfer finished too quickly: " + elapsedMillis + " ms");
+    }
+
+    public void shortReadsReturnUnusedTokens() throws IOException {
+        final TokenBucket bucket = new TokenBucket(1024, 1024);
+
+        try (ThrottledInputStream in = new ThrottledInputStream(new RandomInputStream(10), bucket)) {
+            final byte[] buffer = new byte[1024];
+            Assert.assertEquals(in.read(buffer), 10);
+            Assert.assertEquals(in.read(buffer), -1);
+        }
+
+        // the bucket should still hold most of its burst; had the unused
+        // tokens been kept, this would wait about a second
+        final long start = System.nanoTime();
+        bucket.acquire(1000);
+        final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue(millis < 500, "Waited " + millis + " ms for returned tokens");
+    }
+}
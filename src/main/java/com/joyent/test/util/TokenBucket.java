@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket used to cap the bandwidth of {@link ThrottledInputStream} and
+ * {@link ThrottledOutputStream}. Tokens are bytes; they accumulate at
+ * {@code bytesPerSecond} up to {@code burstBytes}. A single bucket may be
+ * shared by any number of streams on any number of threads to impose an
+ * aggregate cap, e.g. to emulate several connections sharing one slow link.
+ *
+ * <p>Callers reserve tokens before they have been earned and then sleep off
+ * the debt outside the lock, so waiting threads are served in the order they
+ * arrived and no thread sleeps while holding the bucket.</p>
+ */
+public class TokenBucket {
+    /**
+     * Nanoseconds in one second.
+     */
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Rate tokens are added at.
+     */
+    private final long bytesPerSecond;
+
+    /**
+     * Maximum number of tokens that can accumulate and the largest grant.
+     */
+    private final int burstBytes;
+
+    /**
+     * Available tokens; negative when callers have reserved tokens not yet earned.
+     */
+    private double tokens;
+
+    /**
+     * Time tokens were last added.
+     */
+    private long lastRefillNanos;
+
+    /**
+     * Creates a new bucket that starts full.
+     *
+     * @param bytesPerSecond sustained rate
+     * @param burstBytes largest number of bytes that can be transferred without waiting
+     */
+    public TokenBucket(final long bytesPerSecond, final int burstBytes) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+
+        if (burstBytes <= 0) {
+            throw new IllegalArgumentException("Burst size must be positive");
+        }
+
+        this.bytesPerSecond = bytesPerSecond;
+        this.burstBytes = burstBytes;
+        this.tokens = burstBytes;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Creates a bucket allowing a burst of one tenth of a second of traffic.
+     *
+     * @param bytesPerSecond sustained rate
+     * @return new bucket
+     */
+    public static TokenBucket ofRate(final long bytesPerSecond) {
+        return new TokenBucket(bytesPerSecond, (int) Math.max(1L, Math.min(Integer.MAX_VALUE, bytesPerSecond / 10)));
+    }
+
+    /**
+     * @return sustained rate in bytes per second
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @return largest number of bytes granted at once
+     */
+    public int getBurstBytes() {
+        return burstBytes;
+    }
+
+    /**
+     * Waits until up to {@code requested} bytes may be transferred.
+     *
+     * @param requested number of bytes the caller would like to transfer
+     * @return number of bytes granted, between 1 and {@code min(requested, burstBytes)}
+     * @throws InterruptedIOException thrown when interrupted while waiting
+     */
+    public int acquire(final int requested) throws InterruptedIOException {
+        final int granted = Math.max(1, Math.min(requested, burstBytes));
+        final long waitNanos = reserve(granted);
+
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+            }
+        }
+
+        return granted;
+    }
+
+    /**
+     * Returns tokens that were acquired but not used, for example when a read
+     * returned fewer bytes than were granted.
+     *
+     * @param unused number of bytes to give back
+     */
+    public synchronized void release(final int unused) {
+        if (unused > 0) {
+            tokens = Math.min(burstBytes, tokens + unused);
+        }
+    }
+
+    /**
+     * Takes tokens from the bucket, possibly going into debt.
+     *
+     * @param count number of tokens to take
+     * @return nanoseconds the caller must wait for the debt to be repaid
+     */
+    private synchronized long reserve(final int count) {
+        final long now = System.nanoTime();
+        tokens = Math.min(burstBytes, tokens + (double) (now - lastRefillNanos) * bytesPerSecond / NANOS_PER_SECOND);
+        lastRefillNanos = now;
+        tokens -= count;
+
+        if (tokens >= 0) {
+            return 0L;
+        }
+
+        return (long) (-tokens * NANOS_PER_SECOND / bytesPerSecond);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link InputStream} that checks the bytes read through it against a
+ * completed {@link ChunkedDigest}, typically one recorded by a
+ * {@link DigestingOutputStream} while uploading. Each chunk is checked as
+ * soon as it has been read and the length and MD5 are checked at the end of
+ * the stream. A {@link ContentMismatchException} carrying the offset of the
+ * first differing chunk is thrown on the first discrepancy.
+ */
+public class VerifyingInputStream extends FilterInputStream {
+    /**
+     * End of file magic number.
+     */
+    private static final int EOF = -1;
+
+    /**
+     * Digest of the expected content.
+     */
+    private final ChunkedDigest expected;
+
+    /**
+     * Digest of the bytes read so far.
+     */
+    private final ChunkedDigest actual;
+
+    /**
+     * Number of chunks that have been checked.
+     */
+    private int verifiedChunks = 0;
+
+    /**
+     * Creates a new instance.
+     * @param in stream to read from
+     * @param expected completed digest of the expected content
+     */
+    public VerifyingInputStream(final InputStream in, final ChunkedDigest expected) {
+        super(in);
+
+        if (!expected.isComplete()) {
+            throw new IllegalArgumentException("Expected digest must be completed before verifying");
+        }
+
+        this.expected = expected;
+        this.actual = new ChunkedDigest(expected.getChunkSize());
+    }
+
+    /**
+     * @return number of bytes read and verified so far
+     */
+    public long getVerifiedLength() {
+        return actual.getLength();
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = in.read();
+
+        if (b == EOF) {
+            verifyEnd();
+        } else {
+            actual.update(b);
+            verifyChunks();
+        }
+
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int read = in.read(b, off, len);
+
+        if (read == EOF) {
+            verifyEnd();
+        } else {
+            actual.update(b, off, read);
+            verifyChunks();
+        }
+
+        return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        throw new IOException("Skipping would leave content unverified");
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void verifyChunks() throws ContentMismatchException {
+        // checked first: a longer stream fills the chunk that is partial in the expected digest
+        if (actual.getLength() > expected.getLength()) {
+            throw new ContentMismatchException(String.format(
+                    "Stream is longer than the expected [%d] bytes", expected.getLength()),
+                    expected.getLength());
+        }
+
+        final int readable = Math.min(actual.getChunkCount(), expected.getChunkCount());
+
+        for (; verifiedChunks < readable; verifiedChunks++) {
+            if (actual.getChunkChecksum(verifiedChunks) != expected.getChunkChecksum(verifiedChunks)) {
+                final long start = (long) verifiedChunks * expected.getChunkSize();
+                final long end = Math.min(start + expected.getChunkSize(), expected.getLength());
+                throw new ContentMismatchException(String.format(
+                        "Content differs from expected within bytes [%d, %d)", start, end), start);
+            }
+        }
+    }
+
+    private void verifyEnd() throws ContentMismatchException {
+        if (actual.isComplete()) {
+            return;
+        }
+
+        if (actual.getLength() < expected.getLength()) {
+            throw new ContentMismatchException(String.format(
+                    "Stream ended after [%d] of the expected [%d] bytes",
+                    actual.getLength(), expected.getLength()), actual.getLength());
+        }
+
+        actual.complete();
+        verifyChunks();
+
+        final long mismatch = actual.firstMismatchingChunkOffset(expected);
+
+        if (mismatch != -1L) {
+            throw new ContentMismatchException(String.format(
+                    "Content MD5 differs from expected although chunk checksums match, first suspect offset [%d]",
+                    mismatch), mismatch);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2019, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.test.util;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+@Test
+public class VerifyingInputStreamTest {
+    private static final int CHUNK_SIZE = 1000;
+
+    public void acceptsIdenticalContent() throws IOException {
+        final byte[] data = upload(10_500);
+        final ChunkedDigest digest = digestOf(data);
+
+        try (VerifyingInputStream in = new VerifyingInputStream(new ByteArrayInputStream(data), digest)) {
+            Assert.assertEquals(IOUtils.copyLarge(in, NullOutputStream.NULL_OUTPUT_STREAM), data.length);
+            Assert.assertEquals(in.getVerifiedLength(), data.length);
+        }
+
+        Assert.assertEquals(digest.getMd5(), DigestUtils.md5(data));
+        Assert.assertEquals(digest.getChunkCount(), 11);
+    }
+
+    public void reportsOffsetOfFirstCorruptChunk() throws IOException {
+        final byte[] data = upload(10_500);
+        final ChunkedDigest digest = digestOf(data);
+        data[7_321] ^= 0x10;
+
+        assertMismatchAt(new ByteArrayInputStream(data), digest, 7_000L);
+    }
+
+    public void reportsTruncatedContent() throws IOException {
+        final byte[] data = upload(10_500);
+        final ChunkedDigest digest = digestOf(data);
+
+        assertMismatchAt(new ByteArrayInputStream(data, 0, 10_000), digest, 10_000L);
+    }
+
+    public void reportsExcessContent() throws IOException {
+        final byte[] data = upload(10_500);
+        final ChunkedDigest digest = new ChunkedDigest(CHUNK_SIZE);
+        digest.update(data, 0, 9_999);
+        digest.complete();
+
+        assertMismatchAt(new ByteArrayInputStream(data), digest, 9_999L);
+    }
+
+    private static void assertMismatchAt(final InputStream source, final ChunkedDigest digest,
+                                         final long expectedOffset) throws IOException {
+        try (InputStream in = new VerifyingInputStream(source, digest)) {
+            IOUtils.copyLarge(in, NullOutputStream.NULL_OUTPUT_STREAM);
+            Assert.fail("Expected content mismatch was not detected");
+        } catch (ContentMismatchException e) {
+            Assert.assertEquals(e.getOffset(), expectedOffset, e.getMessage());
+        }
+    }
+
+    private static byte[] upload(final int length) throws IOException {
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream(length);
+
+        try (InputStream in = new RandomInputStream(length)) {
+            IOUtils.copy(in, bout);
+        }
+
+        return bout.toByteArray();
+    }
+
+    private static ChunkedDigest digestOf(final byte[] data) throws IOException {
+        final DigestingOutputStream out = new DigestingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM,
+                new ChunkedDigest(CHUNK_SIZE));
+
+        try (OutputStream closing = out) {
+            // write in odd sized pieces so writes straddle chunk boundaries
+            for (int off = 0; off < data.length; off += 333) {
+                closing.write(data, off, Math.min(333, data.length - off));
+            }
+        }
+
+        return out.getDigest();
+    }
+}